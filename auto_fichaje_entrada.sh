@@ -137,19 +137,13 @@ get_schedule_timezone() {
     echo "$timezone"
 }
 
-# Función para obtener el siguiente ID de la secuencia
+# Función para reservar el siguiente ID de fichajes_seq
+# (incremento atómico: no pisa los bloques que ya ha reservado el backend)
 get_next_id() {
-    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "SELECT next_val FROM hibernate_sequence;")
+    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "UPDATE fichajes_seq SET next_val = LAST_INSERT_ID(next_val + 1); SELECT LAST_INSERT_ID() - 1;")
     echo $next_id
 }
 
-# Función para actualizar el contador de hibernate_sequence
-update_hibernate_sequence() {
-    local current_id=$1
-    local new_id=$((current_id + 1))
-    TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "UPDATE hibernate_sequence SET next_val = $new_id;"
-}
-
 # Función para obtener horarios próximos de la base de datos
 get_upcoming_schedules() {
     local dia_semana="$1"
@@ -418,17 +412,18 @@ insert_fichaje_entrada() {
     if [[ $? -eq 0 ]]; then
         log_message "INFO" "Fichaje ENTRADA auto-generado para $user_numero ($descripcion) a las $hora UTC" "$LOG_FILE"
         
-        # Actualizar ultimo_fichaje en tabla usuarios
+        # Actualizar estado en usuarios y presencias
         local datetime_utc="$fecha $hora"
         TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
             UPDATE usuarios
-            SET ultimo_fichaje = '$datetime_utc UTC - ENTRADA', working = 1
+            SET working = 1, version = version + 1
             WHERE id = $user_id;
+            INSERT INTO presencias (usuario_id, working, last_tipo, last_punch_at, last_fichaje_id)
+            VALUES ($user_id, 1, 'ENTRADA', '$datetime_utc', $fichaje_id)
+            ON DUPLICATE KEY UPDATE working = 1, last_tipo = 'ENTRADA',
+                last_punch_at = '$datetime_utc', last_fichaje_id = $fichaje_id;
         "
         
-        # Actualizar hibernate_sequence
-        update_hibernate_sequence $fichaje_id
-        
         # Calcular e insertar estimación de horas SOLO para este turno específico
         local dia_semana=$(get_current_day_of_week)
         local horas_estimadas
@@ -37,19 +37,13 @@ export TZ=UTC
 # FUNCIONES AUXILIARES
 # =============================================================================
 
-# Función para obtener el siguiente ID de la secuencia
+# Función para reservar el siguiente ID de fichajes_seq
+# (incremento atómico: no pisa los bloques que ya ha reservado el backend)
 get_next_id() {
-    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "SELECT next_val FROM hibernate_sequence;")
+    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "UPDATE fichajes_seq SET next_val = LAST_INSERT_ID(next_val + 1); SELECT LAST_INSERT_ID() - 1;")
     echo $next_id
 }
 
-# Función para actualizar el contador de hibernate_sequence
-update_hibernate_sequence() {
-    local current_id=$1
-    local new_id=$((current_id + 1))
-    TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "UPDATE hibernate_sequence SET next_val = $new_id;"
-}
-
 # Función para convertir horas a segundos
 hours_to_seconds() {
     local hours="$1"
@@ -149,22 +143,23 @@ insert_auto_exit_fichaje() {
     if [[ $? -eq 0 ]]; then
         log_message "INFO" "Fichaje de salida automática insertado para usuario $user_id (ID: $fichaje_id) a las $exit_time UTC" "$LOG_FILE"
 
-        # Actualizar ultimo_fichaje en tabla usuarios (forzar UTC)
+        # Actualizar estado en usuarios y presencias (forzar UTC)
         TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
             UPDATE usuarios
-            SET ultimo_fichaje = '$exit_datetime UTC - SALIDA', working = 0
+            SET working = 0, version = version + 1
             WHERE id = $user_id;
+            INSERT INTO presencias (usuario_id, working, last_tipo, last_punch_at, last_fichaje_id)
+            VALUES ($user_id, 0, 'SALIDA', '$exit_datetime', $fichaje_id)
+            ON DUPLICATE KEY UPDATE working = 0, last_tipo = 'SALIDA',
+                last_punch_at = '$exit_datetime', last_fichaje_id = $fichaje_id;
         "
 
         if [[ $? -eq 0 ]]; then
-            log_message "INFO" "Campo ultimo_fichaje actualizado para usuario $user_id" "$LOG_FILE"
+            log_message "INFO" "Presencia actualizada para usuario $user_id" "$LOG_FILE"
         else
-            log_message "ERROR" "No se pudo actualizar ultimo_fichaje para usuario $user_id" "$LOG_FILE"
+            log_message "ERROR" "No se pudo actualizar la presencia del usuario $user_id" "$LOG_FILE"
         fi
 
-        # Actualizar hibernate_sequence
-        update_hibernate_sequence $fichaje_id
-
     else
         log_message "ERROR" "No se pudo insertar fichaje de salida automática para usuario $user_id" "$LOG_FILE"
     fi
@@ -226,30 +221,27 @@ main() {
     local current_timestamp=$(TZ=UTC date +%s)
 
     # Buscar empleados que han fichado entrada y están trabajando
+    # (recorrido del índice (working, last_tipo) de presencias)
     local query="
-        SELECT u.id, u.numero, u.nombre_empleado, u.ultimo_fichaje
-        FROM usuarios u
-        WHERE u.working = 1
+        SELECT u.id, u.numero, u.nombre_empleado, DATE_FORMAT(p.last_punch_at, '%Y-%m-%d %H:%i:%s')
+        FROM presencias p
+        JOIN usuarios u ON u.id = p.usuario_id
+        WHERE p.working = 1
+        AND p.last_tipo = 'ENTRADA'
         AND u.de_baja = 0
-        AND u.ultimo_fichaje LIKE '%ENTRADA%'
     "
 
     # Ejecutar consulta y procesar resultados (forzar UTC en MySQL)
-    TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "$query" | while read -r user_id user_numero nombre_empleado ultimo_fichaje; do
+    TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "$query" | while IFS=$'\t' read -r user_id user_numero nombre_empleado entry_datetime; do
 
         log_message "DEBUG" "Procesando usuario $user_id ($nombre_empleado) - Número: $user_numero" "$LOG_FILE"
-        log_message "DEBUG" "Último fichaje: $ultimo_fichaje" "$LOG_FILE"
-
-        # Extraer datetime de entrada del último fichaje
-        local entry_datetime=$(echo "$ultimo_fichaje" | grep -o '[0-9]\{4\}-[0-9]\{2\}-[0-9]\{2\} [0-9]\{2\}:[0-9]\{2\}:[0-9]\{2\}')
 
         if [[ -z "$entry_datetime" ]]; then
-            log_message "ERROR" "No se pudo extraer datetime de entrada para usuario $user_id" "$LOG_FILE"
-            log_message "DEBUG" "Texto del último fichaje: '$ultimo_fichaje'" "$LOG_FILE"
+            log_message "ERROR" "Presencia sin fecha de entrada para usuario $user_id" "$LOG_FILE"
             continue
         fi
 
-        log_message "DEBUG" "Datetime de entrada extraído: $entry_datetime" "$LOG_FILE"
+        log_message "DEBUG" "Datetime de entrada: $entry_datetime" "$LOG_FILE"
 
         # Obtener estimación para este usuario y fecha
         local estimation_hours=$(get_user_estimation "$user_id" "$user_numero" "$entry_datetime" 2>>"$LOG_FILE")
@@ -45,19 +45,13 @@ CONFIGURACION_USUARIOS["1234567890"]="2:8:13:55:14:15:19:55:20:15:TestUser"
 # FUNCIONES AUXILIARES
 # =============================================================================
 
-# Función para obtener el siguiente ID de la secuencia
+# Función para reservar el siguiente ID de fichajes_seq
+# (incremento atómico: no pisa los bloques que ya ha reservado el backend)
 get_next_id() {
-    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "SELECT next_val FROM hibernate_sequence;")
+    local next_id=$(TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -se "UPDATE fichajes_seq SET next_val = LAST_INSERT_ID(next_val + 1); SELECT LAST_INSERT_ID() - 1;")
     echo $next_id
 }
 
-# Función para actualizar el contador de hibernate_sequence
-update_hibernate_sequence() {
-    local current_id=$1
-    local new_id=$((current_id + 1))
-    TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "UPDATE hibernate_sequence SET next_val = $new_id;"
-}
-
 # Función para generar número aleatorio entre min y max
 random_between() {
     local min=$1
@@ -160,16 +154,19 @@ insert_fichaje() {
     if [[ $? -eq 0 ]]; then
         log_message "INFO" "Fichaje $tipo insertado para usuario $user_numero (ID: $fichaje_id) a las $hora UTC" "$LOG_FILE"
         
-        # Actualizar ultimo_fichaje en tabla usuarios
+        # Actualizar estado en usuarios y presencias
         local datetime_utc="$fecha $hora"
+        local working=$(if [[ "$tipo" == "ENTRADA" ]]; then echo "1"; else echo "0"; fi)
         TZ=UTC mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
             UPDATE usuarios
-            SET ultimo_fichaje = '$datetime_utc UTC - $tipo', working = $(if [[ "$tipo" == "ENTRADA" ]]; then echo "1"; else echo "0"; fi)
+            SET working = $working, version = version + 1
             WHERE id = $user_id;
+            INSERT INTO presencias (usuario_id, working, last_tipo, last_punch_at, last_fichaje_id)
+            VALUES ($user_id, $working, '$tipo', '$datetime_utc', $fichaje_id)
+            ON DUPLICATE KEY UPDATE working = $working, last_tipo = '$tipo',
+                last_punch_at = '$datetime_utc', last_fichaje_id = $fichaje_id;
         "
         
-        # Actualizar hibernate_sequence
-        update_hibernate_sequence $fichaje_id
         return 0
     else
         log_message "ERROR" "No se pudo insertar fichaje $tipo para usuario $user_numero" "$LOG_FILE"
@@ -9,8 +9,11 @@ import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurationExcludeFilter;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.TypeExcludeFilter;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
@@ -24,7 +27,11 @@ import com.fichajespi.service.RolService;
 import com.fichajespi.service.UsuarioService;
 
 @SpringBootApplication
-@ComponentScan({"com.fichajespi", "com.estimaciones"})
+// Los mismos filtros que @SpringBootApplication: sin ellos se cargan las
+// configuraciones anidadas de los tests
+@ComponentScan(basePackages = { "com.fichajespi", "com.estimaciones" }, excludeFilters = {
+		@ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class),
+		@ComponentScan.Filter(type = FilterType.CUSTOM, classes = AutoConfigurationExcludeFilter.class) })
 @EnableJpaRepositories({"com.fichajespi.repository", "com.estimaciones.repository"})
 @EntityScan({"com.fichajespi.entity", "com.estimaciones.model"})
 @EnableScheduling
@@ -0,0 +1,560 @@
+package com.fichajespi.analisis;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.config.Ejecutores.Rechazo;
+import com.fichajespi.dto.entity.AnalisisResumenDto;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IUsuarioAnalisis;
+import com.fichajespi.entity.AnalisisDia;
+import com.fichajespi.entity.Calendario;
+import com.fichajespi.entity.DiaLaborable;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.AnalisisDiaRepository;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.repository.VacacionesRepository;
+import com.fichajespi.service.CalendarioService;
+import com.fichajespi.service.DiaLaborableService;
+import com.fichajespi.service.FicharService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Análisis de los fichajes de un día laborable para toda la plantilla.
+ *
+ * Los fichajes, permisos y vacaciones del día se cargan de una vez en un
+ * DaySnapshot; los fichajes se toman del EvaluadorIncremental cuando ha
+ * seguido el día completo, y las entradas fuera de hora que este ya ha
+ * avisado no se repiten. Los usuarios se leen por bloques (paginando por id) y cada
+ * bloque se procesa en su propia transacción en un grupo de hilos acotado:
+ * las reglas de ReglasFichaje se evalúan con los datos del snapshot y las
+ * incidencias, sus emails (bandeja de salida) y los cambios de usuario se
+ * escriben por lotes. Los emails de una ejecución se retienen hasta que
+ * termina y salen en resumen: uno a RRHH y uno por empleado afectado. El cierre de los fichajes impares se hace una vez
+ * confirmada la transacción (si FicharService lo rechaza, queda como
+ * incidencia); en los días pasados, en cambio, se guarda en
+ * la misma transacción una salida explícita que no toca el estado actual
+ * del usuario (working, versión, presencia).
+ *
+ * Cada día analizado sin fallos se anota en analisis_dias. ponerAlDia
+ * analiza los días que falten (al arrancar y cada noche) y reanalizar
+ * vuelve a pasar un rango; los días se reparten entre varios hilos. Los
+ * días pasados se analizan en modo histórico, sin tocar el estado actual
+ * de vacaciones de los usuarios, y un día ya anotado no repite
+ * incidencias, emails ni descuentos de vacaciones.
+ *
+ * El tiempo de cada fase se publica en la métrica "fichajes.analisis".
+ */
+@Service
+public class AnalisisFichajes {
+
+	private static final String SUBJECT = "Incidencia";
+	private static final String ORIGEN = "analisis";
+	// Hora del fichaje de salida que cierra un día con fichajes impares
+	private static final LocalTime CIERRE = LocalTime.of(23, 59, 59);
+	// Cabe un reanálisis del rango máximo (366 días)
+	private static final int DIAS_COLA = 400;
+
+	@Autowired
+	private CalendarioService calendarioService;
+	@Autowired
+	private DiaLaborableService diaService;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private DaySnapshotLoader snapshotLoader;
+	@Autowired
+	private EvaluadorIncremental evaluador;
+	@Autowired
+	private VacacionesRepository vacacionesRepository;
+	@Autowired
+	private AnalisisDiaRepository analisisDiaRepository;
+	@Autowired
+	private EventSender eventSender;
+	@Autowired
+	private FicharService ficharService;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private Ejecutores ejecutores;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${analisis.lote:500}")
+	private int lote;
+	@Value("${analisis.hilos:4}")
+	private int hilos;
+	@Value("${analisis.dias-paralelo:4}")
+	private int diasParalelo;
+	@Value("${analisis.recuperar-max-dias:31}")
+	private int recuperarMaxDias;
+
+	private ExecutorService executor;
+	private ExecutorService dias;
+	// Días que se están analizando, para no pasar dos veces a la vez el mismo
+	private final Set<LocalDate> enCurso = ConcurrentHashMap.newKeySet();
+	private TransactionTemplate transactionTemplate;
+	private Timer timerCarga;
+	private Timer timerEvaluacion;
+	private Timer timerEscritura;
+	private Timer timerNotificacion;
+
+	@PostConstruct
+	public void init() {
+		// Cola corta: si los hilos no dan abasto, el hilo que pagina los
+		// usuarios procesa el bloque y deja de leer más
+		executor = ejecutores.crear("analisis", "AnalisisThread-", hilos, hilos,
+				Rechazo.LLAMANTE);
+		// Cada día pagina sus usuarios y reparte los bloques en el grupo anterior
+		dias = ejecutores.crear("analisis-dias", "AnalisisDiaThread-", diasParalelo,
+				DIAS_COLA, Rechazo.LLAMANTE);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		timerCarga = timer("carga");
+		timerEvaluacion = timer("evaluacion");
+		timerEscritura = timer("escritura");
+		timerNotificacion = timer("notificacion");
+	}
+
+	@PreDestroy
+	public void close() {
+		dias.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/** Análisis nocturno de un día: actualiza también el estado de vacaciones. */
+	public AnalisisResumenDto analizar(LocalDate dia) {
+		String envio = nuevoEnvio();
+		try {
+			return analizar(dia, false, envio);
+		} finally {
+			liberar(envio);
+		}
+	}
+
+	/**
+	 * Analiza los días sin anotar hasta el indicado, empezando como mucho
+	 * recuperarMaxDias atrás y nunca antes del primer día anotado (lo
+	 * anterior ya lo analizaron versiones sin marca de agua). Los días
+	 * pasados van en paralelo y el último al final, en modo nocturno.
+	 */
+	public CompletableFuture<List<AnalisisResumenDto>> ponerAlDia(LocalDate hasta) {
+		LocalDate desde = analisisDiaRepository.findPrimerDia()
+				.map(primero -> primero.isAfter(hasta.minusDays(recuperarMaxDias))
+						? primero
+						: hasta.minusDays(recuperarMaxDias))
+				.orElse(hasta);
+		Set<LocalDate> anotados = new HashSet<>(
+				analisisDiaRepository.findDiasEntre(desde, hasta));
+
+		List<LocalDate> pendientes = new ArrayList<>();
+		for (LocalDate dia = desde; dia.isBefore(hasta); dia = dia.plusDays(1))
+			if (!anotados.contains(dia))
+				pendientes.add(dia);
+		if (!pendientes.isEmpty())
+			logger.logInfo("Recuperando " + pendientes.size()
+					+ " días sin analizar desde " + pendientes.get(0));
+
+		String envio = nuevoEnvio();
+		CompletableFuture<List<AnalisisResumenDto>> pasados = analizarDias(pendientes,
+				envio);
+		if (!anotados.contains(hasta))
+			pasados = pasados.thenApplyAsync(resumenes -> {
+				resumenes.add(analizar(hasta, false, envio));
+				return resumenes;
+			}, dias);
+		return pasados.whenComplete((resumenes, e) -> liberar(envio));
+	}
+
+	/** Vuelve a analizar un rango de días sin repetir lo ya generado. */
+	public CompletableFuture<List<AnalisisResumenDto>> reanalizar(LocalDate desde,
+			LocalDate hasta) {
+		List<LocalDate> rango = new ArrayList<>();
+		for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1))
+			rango.add(dia);
+		String envio = nuevoEnvio();
+		return analizarDias(rango, envio).whenComplete((resumenes, e) -> liberar(envio));
+	}
+
+	public List<AnalisisDia> analizados(LocalDate desde, LocalDate hasta) {
+		return analisisDiaRepository.findByDiaBetweenOrderByDia(desde, hasta);
+	}
+
+	// Días pasados en paralelo; un día que falla se queda sin anotar
+	private CompletableFuture<List<AnalisisResumenDto>> analizarDias(
+			List<LocalDate> lista, String envio) {
+		List<CompletableFuture<AnalisisResumenDto>> futuros = new ArrayList<>();
+		for (LocalDate dia : lista)
+			futuros.add(CompletableFuture.supplyAsync(() -> analizar(dia, true, envio), dias)
+					.exceptionally(e -> {
+						logger.logError("Fallo analizando el día " + dia + ": " + e);
+						return null;
+					}));
+		return CompletableFuture.allOf(futuros.toArray(new CompletableFuture[0]))
+				.thenApply(v -> futuros.stream()
+						.map(CompletableFuture::join)
+						.filter(Objects::nonNull)
+						.collect(Collectors.toCollection(ArrayList::new)));
+	}
+
+	private AnalisisResumenDto analizar(LocalDate dia, boolean historico,
+			String envio) {
+		if (!enCurso.add(dia)) {
+			logger.logWarn("El día " + dia + " ya se está analizando");
+			return AnalisisResumenDto.builder().dia(dia).omitido(true).build();
+		}
+		try {
+			return analizarDia(dia, historico, envio);
+		} finally {
+			enCurso.remove(dia);
+		}
+	}
+
+	private AnalisisResumenDto analizarDia(LocalDate dia, boolean historico,
+			String envio) {
+		long inicio = System.nanoTime();
+		boolean repetido = analisisDiaRepository.existsById(dia);
+
+		// Calendario activo y día laborable correspondiente
+		Calendario calendario = calendarioService.getActive().orElse(null);
+		DiaLaborable diaLaborable = calendario == null ? null
+				: diaService.getByDiaInActiveCalendar(dia, calendario).orElse(null);
+		if (diaLaborable == null) {
+			logger.logInfo("El día " + dia + " no es laborable, no se analiza");
+			AnalisisResumenDto resumen = AnalisisResumenDto.builder()
+					.dia(dia).repetido(repetido).build();
+			anotar(resumen);
+			return resumen;
+		}
+
+		Fases fases = new Fases();
+		long t0 = System.nanoTime();
+		// Si el evaluador ha seguido el día no hace falta volver a leer los fichajes
+		DaySnapshot snapshot = evaluador.fichajes(dia)
+				.map(fichajes -> snapshotLoader.cargar(dia, fichajes, historico))
+				.orElseGet(() -> snapshotLoader.cargar(dia, historico));
+		Analisis analisis = new Analisis(snapshot, evaluador.avisados(dia),
+				diaLaborable, calendario, historico, repetido, envio);
+		fases.registrar(fases.carga, timerCarga, System.nanoTime() - t0);
+
+		List<Future<?>> bloques = new ArrayList<>();
+		Long desde = 0L;
+		List<IUsuarioAnalisis> usuarios;
+		do {
+			usuarios = usuarioRepository.findAnalisisDesde(desde,
+					PageRequest.of(0, lote));
+			if (usuarios.isEmpty())
+				break;
+			desde = usuarios.get(usuarios.size() - 1).getId();
+			List<IUsuarioAnalisis> bloque = usuarios;
+			bloques.add(executor.submit(
+					() -> procesar(bloque, analisis, fases)));
+		} while (usuarios.size() == lote);
+
+		int fallidos = 0;
+		for (Future<?> bloque : bloques) {
+			try {
+				bloque.get();
+			} catch (ExecutionException e) {
+				// Un bloque fallido no impide analizar el resto
+				fallidos++;
+				logger.logError("Fallo analizando un bloque del día " + dia + ": "
+						+ e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Análisis interrumpido", e);
+			}
+		}
+
+		AnalisisResumenDto resumen = AnalisisResumenDto.builder()
+				.dia(dia)
+				.usuarios(fases.usuarios.get())
+				.incidencias(fases.incidencias.get())
+				.fichajesCerrados(fases.cerrados.get())
+				.bloquesFallidos(fallidos)
+				.repetido(repetido)
+				.msCarga(ms(fases.carga))
+				.msEvaluacion(ms(fases.evaluacion))
+				.msEscritura(ms(fases.escritura))
+				.msNotificacion(ms(fases.notificacion))
+				.msTotal(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))
+				.build();
+		logger.logInfo("Análisis de fichajes: " + resumen);
+		// Con bloques fallidos el día se vuelve a intentar en la siguiente puesta al día
+		if (fallidos == 0)
+			anotar(resumen);
+		return resumen;
+	}
+
+	private void procesar(List<IUsuarioAnalisis> usuarios, Analisis analisis,
+			Fases fases) {
+
+		DaySnapshot snapshot = analisis.snapshot;
+		LocalDate dia = analisis.diaLaborable.getDia();
+		List<Incidencia> incidencias = new ArrayList<>();
+		List<FichajeLoteDto> cierres = new ArrayList<>();
+		List<Fichaje> salidas = new ArrayList<>();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			long t1 = System.nanoTime();
+			List<ResultadoAnalisis> resultados = new ArrayList<>(usuarios.size());
+			for (IUsuarioAnalisis u : usuarios) {
+				ResultadoAnalisis r = ReglasFichaje.evaluar(u,
+						snapshot.fichajes(u.getId()),
+						snapshot.permisos(u.getId()),
+						snapshot.vacaciones(u.getId()),
+						analisis.diaLaborable, analisis.calendario,
+						analisis.historico);
+				// Ya generadas por un análisis anterior o por el evaluador
+				r.getIncidencias().removeAll(snapshot.incidencias(u.getId()));
+				if (analisis.avisados.contains(u.getId()))
+					r.getIncidencias().remove(Incidencias.NO_ENTRA_A_TIEMPO);
+				resultados.add(r);
+			}
+
+			long t2 = System.nanoTime();
+			escribir(usuarios, resultados, dia, analisis, incidencias, cierres,
+					salidas);
+			// Al repetir un día las incidencias nuevas quedan en la aplicación, sin email
+			if (!analisis.repetido)
+				eventSender.queueEvents(SUBJECT, incidencias, usuarios.stream()
+						.filter(u -> u.getEmail() != null)
+						.collect(Collectors.toMap(IUsuarioAnalisis::getId,
+								IUsuarioAnalisis::getEmail)),
+						analisis.envio);
+			long t3 = System.nanoTime();
+
+			fases.registrar(fases.evaluacion, timerEvaluacion, t2 - t1);
+			fases.registrar(fases.escritura, timerEscritura, t3 - t2);
+		});
+
+		long t4 = System.nanoTime();
+		int cerrados = salidas.size();
+		if (!cierres.isEmpty())
+			cerrados += cerrar(cierres, usuarios, dia, incidencias);
+		fases.registrar(fases.notificacion, timerNotificacion,
+				System.nanoTime() - t4);
+
+		fases.usuarios.addAndGet(usuarios.size());
+		fases.incidencias.addAndGet(incidencias.size());
+		fases.cerrados.addAndGet(cerrados);
+	}
+
+	// Cierres de hoy por FicharService: cuentan los guardados (o ya
+	// guardados). Uno rechazado, p. ej. porque el empleado ha fichado
+	// después de medianoche, queda como incidencia para RRHH
+	private int cerrar(List<FichajeLoteDto> cierres, List<IUsuarioAnalisis> usuarios,
+			LocalDate dia, List<Incidencia> incidencias) {
+		List<FichajeLoteResultado> resultados = ficharService.ficharLote(cierres);
+		Map<String, IUsuarioAnalisis> porNumero = usuarios.stream()
+				.collect(Collectors.toMap(IUsuarioAnalisis::getNumero, u -> u));
+		int cerrados = 0;
+		List<IUsuarioAnalisis> rechazados = new ArrayList<>();
+		for (FichajeLoteResultado r : resultados) {
+			if (EstadosFichajeLote.CREADO.toString().equals(r.getEstado())
+					|| EstadosFichajeLote.DUPLICADO.toString().equals(r.getEstado())) {
+				cerrados++;
+				continue;
+			}
+			logger.logWarn("No se pudo cerrar el fichaje del empleado "
+					+ r.getNumeroUsuario() + " el día " + dia + ": " + r.getMensaje());
+			if (porNumero.containsKey(r.getNumeroUsuario()))
+				rechazados.add(porNumero.get(r.getNumeroUsuario()));
+		}
+
+		if (!rechazados.isEmpty())
+			transactionTemplate.executeWithoutResult(status -> {
+				List<Incidencia> nuevas = rechazados.stream()
+						.map(u -> incidencia(dia, u, Incidencias.CIERRE_RECHAZADO))
+						.collect(Collectors.toList());
+				eventSender.createEvents(nuevas);
+				incidencias.addAll(nuevas);
+			});
+		return cerrados;
+	}
+
+	private void escribir(List<IUsuarioAnalisis> usuarios,
+			List<ResultadoAnalisis> resultados, LocalDate dia, Analisis analisis,
+			List<Incidencia> incidencias, List<FichajeLoteDto> cierres,
+			List<Fichaje> salidas) {
+
+		List<Long> consumidas = new ArrayList<>();
+		List<Long> aVacaciones = new ArrayList<>();
+		List<Long> deVuelta = new ArrayList<>();
+		List<Long> descontar = new ArrayList<>();
+
+		for (int i = 0; i < resultados.size(); i++) {
+			IUsuarioAnalisis u = usuarios.get(i);
+			ResultadoAnalisis r = resultados.get(i);
+			consumidas.addAll(r.getVacacionesConsumidas());
+			if (r.getEnVacaciones() != null)
+				(r.getEnVacaciones() ? aVacaciones : deVuelta).add(u.getId());
+			// El día de vacaciones se descuenta solo la primera vez
+			if (r.isDescontarVacaciones() && !analisis.repetido)
+				descontar.add(u.getId());
+			for (String resumen : r.getIncidencias())
+				incidencias.add(incidencia(dia, u, resumen));
+			// Un segundo análisis del mismo día no vuelve a cerrarlo
+			String clave = "A-" + dia + "-" + u.getId();
+			if (r.isCerrarFichaje() && analisis.historico)
+				// El tipo no sale del estado actual, que es el de hoy
+				salidas.add(Fichaje.builder()
+						.dia(dia)
+						.hora(CIERRE)
+						.tipo(TipoFichaje.SALIDA.toString())
+						.origen(ORIGEN)
+						.clave(clave)
+						.usuario(usuarioRepository.getById(u.getId()))
+						.build());
+			else if (r.isCerrarFichaje())
+				cierres.add(FichajeLoteDto.builder()
+						.numeroUsuario(u.getNumero())
+						.dia(dia)
+						.hora(CIERRE)
+						.origen(ORIGEN)
+						.clave(clave)
+						.build());
+		}
+
+		if (!consumidas.isEmpty())
+			vacacionesRepository.marcarConsumidas(consumidas);
+		if (!aVacaciones.isEmpty())
+			usuarioRepository.updateEnVacaciones(aVacaciones, true);
+		if (!deVuelta.isEmpty())
+			usuarioRepository.updateEnVacaciones(deVuelta, false);
+		if (!descontar.isEmpty())
+			usuarioRepository.descontarDiaVacaciones(descontar);
+		if (!incidencias.isEmpty())
+			eventSender.createEvents(incidencias);
+		if (!salidas.isEmpty()) {
+			Set<String> existentes = new HashSet<>(fichajeRepository.findClavesExistentes(
+					salidas.stream().map(Fichaje::getClave).collect(Collectors.toList())));
+			salidas.removeIf(f -> existentes.contains(f.getClave()));
+			fichajeRepository.saveAll(salidas);
+		}
+	}
+
+	private Incidencia incidencia(LocalDate dia, IUsuarioAnalisis u,
+			String resumen) {
+		return EventSender.nuevaIncidencia(dia,
+				usuarioRepository.getById(u.getId()), u.getNombreEmpleado(),
+				u.getNumero(), resumen);
+	}
+
+	// Cada ejecución agrupa los emails de todos sus días en un solo envío
+	private static String nuevoEnvio() {
+		return "analisis-" + UUID.randomUUID();
+	}
+
+	private void liberar(String envio) {
+		try {
+			eventSender.releaseEvents(envio);
+		} catch (RuntimeException e) {
+			// Sin liberar, los emails salen al acabar la retención
+			logger.logError("No se pudo liberar el envío " + envio + ": "
+					+ e.getMessage());
+		}
+	}
+
+	private void anotar(AnalisisResumenDto resumen) {
+		analisisDiaRepository.save(AnalisisDia.builder()
+				.dia(resumen.getDia())
+				.analizadoEn(LocalDateTime.now())
+				.usuarios(resumen.getUsuarios())
+				.incidencias(resumen.getIncidencias())
+				.duracionMs(resumen.getMsTotal())
+				.build());
+	}
+
+	private Timer timer(String fase) {
+		return Timer.builder("fichajes.analisis")
+				.description("Duración de cada fase del análisis nocturno")
+				.tag("fase", fase)
+				.register(meterRegistry);
+	}
+
+	private static long ms(LongAdder nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+	}
+
+	// Datos del día compartidos por todos sus bloques
+	private static class Analisis {
+		private final DaySnapshot snapshot;
+		private final Set<Long> avisados;
+		private final DiaLaborable diaLaborable;
+		private final Calendario calendario;
+		private final boolean historico;
+		private final boolean repetido;
+		private final String envio;
+
+		Analisis(DaySnapshot snapshot, Set<Long> avisados,
+				DiaLaborable diaLaborable, Calendario calendario,
+				boolean historico, boolean repetido, String envio) {
+			this.snapshot = snapshot;
+			this.avisados = avisados;
+			this.diaLaborable = diaLaborable;
+			this.calendario = calendario;
+			this.historico = historico;
+			this.repetido = repetido;
+			this.envio = envio;
+		}
+	}
+
+	// Totales de una ejecución, sumados desde los hilos de los bloques
+	private static class Fases {
+		private final LongAdder carga = new LongAdder();
+		private final LongAdder evaluacion = new LongAdder();
+		private final LongAdder escritura = new LongAdder();
+		private final LongAdder notificacion = new LongAdder();
+		private final AtomicInteger usuarios = new AtomicInteger();
+		private final AtomicInteger incidencias = new AtomicInteger();
+		private final AtomicInteger cerrados = new AtomicInteger();
+
+		void registrar(LongAdder total, Timer timer, long nanos) {
+			total.add(nanos);
+			timer.record(nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.fichajespi.analisis;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
+import com.fichajespi.dto.interfaces.IIncidenciaAnalisis;
+import com.fichajespi.dto.interfaces.IPermisoAnalisis;
+import com.fichajespi.dto.interfaces.IVacacionesAnalisis;
+import com.fichajespi.util.LongHashMap;
+
+/**
+ * Fichajes, permisos aprobados, vacaciones e incidencias ya generadas de
+ * toda la plantilla para un día, indexados por id de usuario.
+ *
+ * Se construye una vez por día analizado (ver DaySnapshotLoader) y después
+ * solo se lee, así que los bloques del análisis pueden consultarlo desde
+ * varios hilos.
+ */
+public class DaySnapshot {
+
+	private final LocalDate dia;
+	private final LongHashMap<List<LocalTime>> fichajes;
+	private final LongHashMap<List<IPermisoAnalisis>> permisos;
+	private final LongHashMap<List<IVacacionesAnalisis>> vacaciones;
+	private final LongHashMap<List<String>> incidencias;
+
+	DaySnapshot(LocalDate dia, List<IFichajeAnalisis> fichajes,
+			List<IPermisoAnalisis> permisos, List<IVacacionesAnalisis> vacaciones,
+			List<IIncidenciaAnalisis> incidencias) {
+		this.dia = dia;
+		this.fichajes = new LongHashMap<>();
+		// Las filas llegan ordenadas por usuario y hora
+		for (IFichajeAnalisis f : fichajes)
+			anadir(this.fichajes, f.getUsuarioId(), f.getHora());
+		this.permisos = new LongHashMap<>();
+		for (IPermisoAnalisis p : permisos)
+			anadir(this.permisos, p.getUsuarioId(), p);
+		this.vacaciones = new LongHashMap<>();
+		for (IVacacionesAnalisis v : vacaciones)
+			anadir(this.vacaciones, v.getUsuarioId(), v);
+		this.incidencias = new LongHashMap<>();
+		for (IIncidenciaAnalisis i : incidencias)
+			anadir(this.incidencias, i.getUsuarioId(), i.getResumen());
+	}
+
+	public LocalDate getDia() {
+		return dia;
+	}
+
+	/** Horas de los fichajes del usuario, ordenadas. */
+	public List<LocalTime> fichajes(long usuarioId) {
+		return obtener(fichajes, usuarioId);
+	}
+
+	/** Permisos aprobados del usuario para el día. */
+	public List<IPermisoAnalisis> permisos(long usuarioId) {
+		return obtener(permisos, usuarioId);
+	}
+
+	/** Periodos de vacaciones sin agotar que ya han empezado. */
+	public List<IVacacionesAnalisis> vacaciones(long usuarioId) {
+		return obtener(vacaciones, usuarioId);
+	}
+
+	/** Resumen de las incidencias que el usuario ya tiene ese día. */
+	public List<String> incidencias(long usuarioId) {
+		return obtener(incidencias, usuarioId);
+	}
+
+	private static <T> void anadir(LongHashMap<List<T>> mapa, long usuarioId,
+			T valor) {
+		List<T> lista = mapa.get(usuarioId);
+		if (lista == null) {
+			lista = new ArrayList<>(2);
+			mapa.put(usuarioId, lista);
+		}
+		lista.add(valor);
+	}
+
+	private static <T> List<T> obtener(LongHashMap<List<T>> mapa,
+			long usuarioId) {
+		List<T> lista = mapa.get(usuarioId);
+		return lista == null ? Collections.emptyList()
+				: Collections.unmodifiableList(lista);
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.fichajespi.analisis;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.IncidenciaRepository;
+import com.fichajespi.repository.PermisoRepository;
+import com.fichajespi.repository.VacacionesRepository;
+
+/**
+ * Carga un DaySnapshot con cuatro consultas, sea cual sea el tamaño de la
+ * plantilla (tres si los fichajes ya están en memoria).
+ */
+@Component
+public class DaySnapshotLoader {
+
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private PermisoRepository permisoRepository;
+	@Autowired
+	private VacacionesRepository vacacionesRepository;
+	@Autowired
+	private IncidenciaRepository incidenciaRepository;
+
+	/**
+	 * @param historico para volver a analizar un día pasado: las vacaciones
+	 *                  son los periodos que cubren el día, aunque ya se
+	 *                  hayan dado por agotados
+	 */
+	@Transactional(readOnly = true)
+	public DaySnapshot cargar(LocalDate dia, boolean historico) {
+		return cargar(dia, fichajeRepository.findAnalisisByDia(dia), historico);
+	}
+
+	/** Con los fichajes ya en memoria (ver EvaluadorIncremental). */
+	@Transactional(readOnly = true)
+	public DaySnapshot cargar(LocalDate dia, List<IFichajeAnalisis> fichajes,
+			boolean historico) {
+		return new DaySnapshot(dia, fichajes,
+				permisoRepository.findAnalisisByDia(dia),
+				historico ? vacacionesRepository.findAnalisisVigentesEn(dia)
+						: vacacionesRepository.findAnalisisSinAgotarHasta(dia),
+				incidenciaRepository.findAnalisisByDia(dia));
+	}
+
+}
@@ -0,0 +1,359 @@
+package com.fichajespi.analisis;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.config.Ejecutores.Rechazo;
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
+import com.fichajespi.entity.Calendario;
+import com.fichajespi.entity.DiaLaborable;
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.IncidenciaRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.service.CalendarioService;
+import com.fichajespi.service.DiaLaborableService;
+import com.fichajespi.util.LongHashMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Evalúa la jornada de cada empleado a medida que ficha.
+ *
+ * Con cada fichaje confirmado actualiza el estado del día del empleado
+ * (primera entrada, tramo abierto y minutos trabajados) y, en cuanto la
+ * primera entrada cae fuera del margen del calendario, genera la incidencia
+ * NO_ENTRA_A_TIEMPO sin esperar al análisis nocturno.
+ *
+ * Se guardan el día en curso y el anterior. El análisis nocturno toma de
+ * aquí los fichajes del día que cierra (si coinciden con la base de datos)
+ * y no repite los avisos ya enviados.
+ */
+@Component
+public class EvaluadorIncremental {
+
+	private static final String SUBJECT = "Incidencia";
+	// Una entrada de turno con retrasos; si se llena, avisa el hilo que ficha
+	private static final int AVISOS_COLA = 1000;
+
+	@Autowired
+	private CalendarioService calendarioService;
+	@Autowired
+	private DiaLaborableService diaService;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private IncidenciaRepository incidenciaRepository;
+	@Autowired
+	private EventSender eventSender;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private Ejecutores ejecutores;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private LoggerService logger;
+
+	// Solo un hilo carga un día nuevo; se toma antes que el monitor
+	private final Object carga = new Object();
+	private Jornada actual;
+	private Jornada anterior;
+	private ExecutorService avisos;
+	private TransactionTemplate transactionTemplate;
+	private Counter enviados;
+
+	@PostConstruct
+	public void init() {
+		// Los avisos se guardan y envían fuera del hilo que ha fichado
+		avisos = ejecutores.crear("evaluador", "EvaluadorThread-", 1, AVISOS_COLA,
+				Rechazo.LLAMANTE);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(
+				TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		enviados = Counter.builder("fichajes.evaluador.avisos")
+				.description("Incidencias de entrada generadas en tiempo real")
+				.register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void close() {
+		avisos.shutdown();
+	}
+
+	@TransactionalEventListener
+	public void onFichajeRegistrado(FichajeRegistradoEvent event) {
+		Jornada jornada = jornada(event.getDia());
+		if (jornada == null || jornada.diaLaborable == null)
+			return;
+		boolean avisar;
+		synchronized (this) {
+			avisar = jornada.aplicar(event.getFichajeId(), event.getUsuarioId(),
+					event.getHora());
+		}
+		if (avisar)
+			avisos.execute(() -> avisar(event));
+	}
+
+	/**
+	 * Fichajes del día ordenados por usuario y hora, si se ha seguido el día
+	 * y el número coincide con la base de datos (los scripts de auto-fichaje
+	 * escriben directamente en la tabla).
+	 */
+	public Optional<List<IFichajeAnalisis>> fichajes(LocalDate dia) {
+		int enMemoria;
+		synchronized (this) {
+			Jornada jornada = buscar(dia);
+			if (jornada == null)
+				return Optional.empty();
+			enMemoria = jornada.fichajes;
+		}
+		if (fichajeRepository.countByDia(dia) != enMemoria)
+			return Optional.empty();
+		synchronized (this) {
+			Jornada jornada = buscar(dia);
+			if (jornada == null || jornada.fichajes != enMemoria)
+				return Optional.empty();
+			return Optional.of(jornada.listar());
+		}
+	}
+
+	/** Usuarios a los que ya se ha avisado de NO_ENTRA_A_TIEMPO ese día. */
+	public synchronized Set<Long> avisados(LocalDate dia) {
+		Jornada jornada = buscar(dia);
+		return jornada == null ? Collections.emptySet()
+				: new HashSet<>(jornada.avisados);
+	}
+
+	private Jornada buscar(LocalDate dia) {
+		if (actual != null && actual.dia.equals(dia))
+			return actual;
+		if (anterior != null && anterior.dia.equals(dia))
+			return anterior;
+		return null;
+	}
+
+	// Jornada del fichaje; la crea al llegar el primer fichaje de un día nuevo
+	private Jornada jornada(LocalDate dia) {
+		synchronized (this) {
+			if (existente(dia))
+				return buscar(dia);
+		}
+		// Las consultas de la carga no bloquean a los fichajes del otro día
+		// ni al análisis nocturno; solo esperan los que necesitan este día
+		synchronized (carga) {
+			synchronized (this) {
+				if (existente(dia))
+					return buscar(dia);
+			}
+			Jornada jornada;
+			try {
+				jornada = cargar(dia);
+			} catch (RuntimeException e) {
+				logger.logWarn("No se pudo preparar la evaluación del día " + dia
+						+ ": " + e.getMessage());
+				return null;
+			}
+			synchronized (this) {
+				anterior = actual;
+				actual = jornada;
+			}
+			return jornada;
+		}
+	}
+
+	// Día ya cargado, o atrasado: los fichajes atrasados los recoge el
+	// análisis nocturno
+	private boolean existente(LocalDate dia) {
+		return buscar(dia) != null || actual != null && dia.isBefore(actual.dia);
+	}
+
+	private Jornada cargar(LocalDate dia) {
+		Calendario calendario = calendarioService.getActive().orElse(null);
+		DiaLaborable diaLaborable = calendario == null ? null
+				: diaService.getByDiaInActiveCalendar(dia, calendario).orElse(null);
+		Jornada jornada = new Jornada(dia, diaLaborable, calendario);
+		if (diaLaborable == null)
+			return jornada;
+
+		// Tras un reinicio se recupera lo que ya se ha fichado ese día
+		jornada.sinControl.addAll(usuarioRepository.findIdsSinControlHorario());
+		jornada.avisados.addAll(incidenciaRepository
+				.findUsuarioIdsByDiaAndResumen(dia, Incidencias.NO_ENTRA_A_TIEMPO));
+		Set<Long> pendientes = new HashSet<>();
+		for (IFichajeAnalisis f : fichajeRepository.findAnalisisByDia(dia))
+			if (jornada.aplicar(f.getId(), f.getUsuarioId(), f.getHora()))
+				pendientes.add(f.getUsuarioId());
+		// Entradas fuera de hora sin incidencia: las genera el análisis nocturno
+		jornada.avisados.removeAll(pendientes);
+		return jornada;
+	}
+
+	private void avisar(FichajeRegistradoEvent event) {
+		try {
+			Incidencia incidencia = EventSender.nuevaIncidencia(event.getDia(),
+					usuarioRepository.getById(event.getUsuarioId()),
+					event.getNombreUsuario(), event.getNumeroUsuario(),
+					Incidencias.NO_ENTRA_A_TIEMPO);
+			List<Incidencia> incidencias = Collections.singletonList(incidencia);
+			transactionTemplate.executeWithoutResult(status -> {
+				eventSender.createEvents(incidencias);
+				eventSender.queueEvents(SUBJECT, incidencias, Collections.singletonMap(
+						event.getUsuarioId(),
+						usuarioRepository.findEmailById(event.getUsuarioId()).orElse(null)));
+			});
+			enviados.increment();
+		} catch (RuntimeException e) {
+			logger.logError("No se pudo generar el aviso de entrada de "
+					+ event.getNumeroUsuario() + ": " + e.getMessage());
+		}
+	}
+
+	private static class Jornada {
+		private final LocalDate dia;
+		private final DiaLaborable diaLaborable;
+		private final Calendario calendario;
+		private final LongHashMap<EstadoDia> estados = new LongHashMap<>();
+		private final Set<Long> sinControl = new HashSet<>();
+		private final Set<Long> avisados = new HashSet<>();
+		private int fichajes;
+
+		Jornada(LocalDate dia, DiaLaborable diaLaborable, Calendario calendario) {
+			this.dia = dia;
+			this.diaLaborable = diaLaborable;
+			this.calendario = calendario;
+		}
+
+		/** Devuelve true si hay que avisar de NO_ENTRA_A_TIEMPO. */
+		boolean aplicar(Long fichajeId, Long usuarioId, LocalTime hora) {
+			EstadoDia estado = estados.get(usuarioId);
+			if (estado == null) {
+				estado = new EstadoDia(usuarioId);
+				estados.put(usuarioId, estado);
+			}
+			if (!estado.anadir(fichajeId, hora))
+				return false;
+			fichajes++;
+
+			if (avisados.contains(usuarioId) || sinControl.contains(usuarioId)
+					|| !hora.equals(estado.primeraEntrada())
+					|| !ReglasFichaje.entradaFueraDeHora(hora, diaLaborable,
+							calendario))
+				return false;
+			avisados.add(usuarioId);
+			return true;
+		}
+
+		List<IFichajeAnalisis> listar() {
+			List<IFichajeAnalisis> lista = new ArrayList<>(fichajes);
+			estados.forEachValue(estado -> lista.addAll(estado.fichajes));
+			return lista;
+		}
+	}
+
+	// Fichajes de un empleado en el día, ordenados por hora
+	static class EstadoDia {
+		private final Long usuarioId;
+		private final List<Fichada> fichajes = new ArrayList<>(4);
+		private long minutosTrabajados;
+		private LocalTime tramoAbierto;
+
+		EstadoDia(Long usuarioId) {
+			this.usuarioId = usuarioId;
+		}
+
+		boolean anadir(Long fichajeId, LocalTime hora) {
+			for (Fichada f : fichajes)
+				if (f.id.equals(fichajeId))
+					return false;
+
+			Fichada nueva = new Fichada(fichajeId, usuarioId, hora);
+			if (fichajes.isEmpty() || !hora.isBefore(fichajes.get(fichajes.size() - 1).hora)) {
+				// Caso normal: llega en orden y se actualizan los totales
+				fichajes.add(nueva);
+				if (tramoAbierto == null) {
+					tramoAbierto = hora;
+				} else {
+					minutosTrabajados += Duration.between(tramoAbierto, hora).toMinutes();
+					tramoAbierto = null;
+				}
+				return true;
+			}
+
+			// Fichaje atrasado (lotes de terminales sin conexión): se recalcula
+			int i = 0;
+			while (i < fichajes.size() && !hora.isBefore(fichajes.get(i).hora))
+				i++;
+			fichajes.add(i, nueva);
+			List<LocalTime> horas = new ArrayList<>(fichajes.size());
+			for (Fichada f : fichajes)
+				horas.add(f.hora);
+			minutosTrabajados = ReglasFichaje.minutosTrabajados(horas);
+			tramoAbierto = horas.size() % 2 == 0 ? null : horas.get(horas.size() - 1);
+			return true;
+		}
+
+		LocalTime primeraEntrada() {
+			return fichajes.isEmpty() ? null : fichajes.get(0).hora;
+		}
+
+		long getMinutosTrabajados() {
+			return minutosTrabajados;
+		}
+
+		LocalTime getTramoAbierto() {
+			return tramoAbierto;
+		}
+	}
+
+	private static class Fichada implements IFichajeAnalisis {
+		private final Long id;
+		private final Long usuarioId;
+		private final LocalTime hora;
+
+		Fichada(Long id, Long usuarioId, LocalTime hora) {
+			this.id = id;
+			this.usuarioId = usuarioId;
+			this.hora = hora;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public Long getUsuarioId() {
+			return usuarioId;
+		}
+
+		public LocalTime getHora() {
+			return hora;
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.fichajespi.analisis;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import com.fichajespi.dto.interfaces.IPermisoAnalisis;
+import com.fichajespi.dto.interfaces.IUsuarioAnalisis;
+import com.fichajespi.dto.interfaces.IVacacionesAnalisis;
+import com.fichajespi.entity.Calendario;
+import com.fichajespi.entity.DiaLaborable;
+import com.fichajespi.events.Incidencias;
+
+/**
+ * Reglas del análisis de fichajes de un empleado en un día laborable.
+ *
+ * No consulta ni escribe nada: recibe los datos ya cargados y devuelve lo
+ * que hay que cambiar, así que se puede evaluar en paralelo.
+ */
+public final class ReglasFichaje {
+
+	private ReglasFichaje() {
+	}
+
+	/**
+	 * @param fichajes horas de los fichajes del día, ordenadas
+	 * @param permisos permisos aprobados para ese día
+	 * @param vacaciones periodos aprobados y sin agotar
+	 * @param historico  día pasado que se vuelve a analizar: las vacaciones
+	 *                   se deciden solo por los periodos y no se cambia el
+	 *                   estado actual del usuario
+	 */
+	public static ResultadoAnalisis evaluar(IUsuarioAnalisis usuario,
+			List<LocalTime> fichajes, List<IPermisoAnalisis> permisos,
+			List<IVacacionesAnalisis> vacaciones, DiaLaborable diaLaborable,
+			Calendario calendario, boolean historico) {
+
+		ResultadoAnalisis resultado = new ResultadoAnalisis(usuario.getId());
+		LocalDate dia = diaLaborable.getDia();
+
+		// Un periodo vigente marca al usuario de vacaciones; los que ya han
+		// pasado se marcan como agotados
+		boolean antes = Boolean.TRUE.equals(usuario.getEnVacaciones());
+		boolean enVacaciones = antes;
+		boolean vigente = false;
+		for (IVacacionesAnalisis v : vacaciones) {
+			if (!dia.isBefore(v.getInicio()) && !dia.isAfter(v.getFin())) {
+				vigente = true;
+			} else if (dia.isAfter(v.getFin())) {
+				resultado.getVacacionesConsumidas().add(v.getId());
+				enVacaciones = false;
+			}
+		}
+		if (vigente)
+			enVacaciones = true;
+		if (historico) {
+			enVacaciones = vigente;
+			resultado.getVacacionesConsumidas().clear();
+		} else if (enVacaciones != antes) {
+			resultado.setEnVacaciones(enVacaciones);
+		}
+
+		if (enVacaciones) { // Usuario de vacaciones: descontar día
+			resultado.setDescontarVacaciones(true);
+			return resultado;
+		}
+		if (Boolean.TRUE.equals(usuario.getDeBaja())) // De baja no se comprueban los fichajes
+			return resultado;
+
+		if (fichajes.isEmpty()) { // No se han realizado fichajes
+			resultado.getIncidencias().add(Incidencias.AUSENCIA);
+			return resultado;
+		}
+		if (fichajes.size() % 2 != 0) { // impar: se cierra el fichaje abierto
+			resultado.setCerrarFichaje(true);
+			resultado.getIncidencias().add(Incidencias.FICHAJE_IMPAR);
+			return resultado;
+		}
+
+		long minTrabajados = minutosTrabajados(fichajes);
+		long minTeoricos = Duration.between(diaLaborable.getHoraInicio(),
+				diaLaborable.getHoraFin()).toMinutes();
+
+		if (fichajes.size() > 2) {
+			// Salidas sin permiso que las justifique
+			if (permisos.isEmpty())
+				resultado.getIncidencias().add(Incidencias.AUSENCIA_NO_AUTORIZADA);
+			minTeoricos -= minutosPermisos(permisos);
+		}
+		if (minTrabajados < minTeoricos)
+			resultado.getIncidencias().add(Incidencias.MENOS_HORAS);
+
+		if (entradaFueraDeHora(fichajes.get(0), diaLaborable, calendario))
+			resultado.getIncidencias().add(Incidencias.NO_ENTRA_A_TIEMPO);
+
+		return resultado;
+	}
+
+	/** Si la primera entrada cae fuera del margen del calendario. */
+	public static boolean entradaFueraDeHora(LocalTime entrada,
+			DiaLaborable diaLaborable, Calendario calendario) {
+		LocalTime entradaTeorica = diaLaborable.getHoraInicio();
+		LocalTime limiteInfEntrada = entradaTeorica
+				.minusMinutes(calendario.getMinutosMenosEntrada());
+		LocalTime limiteSupEntrada = entradaTeorica
+				.plusMinutes(calendario.getMinutosMasEntrada());
+		return entrada.isBefore(limiteInfEntrada) || entrada.isAfter(limiteSupEntrada);
+	}
+
+	static long minutosTrabajados(List<LocalTime> fichajes) {
+		long minTrabajados = 0;
+		// Minutos transcurridos entre cada pareja entrada-salida
+		for (int i = 0; i + 1 < fichajes.size(); i += 2)
+			minTrabajados += Duration.between(fichajes.get(i), fichajes.get(i + 1))
+					.toMinutes();
+		return minTrabajados;
+	}
+
+	static long minutosPermisos(List<IPermisoAnalisis> permisos) {
+		long minutosPermiso = 0;
+		for (IPermisoAnalisis p : permisos)
+			minutosPermiso += Duration.between(p.getHoraInicio(), p.getHoraFin())
+					.toMinutes();
+		return minutosPermiso;
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.fichajespi.analisis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Lo que hay que escribir para un empleado tras evaluar su día.
+ */
+@Getter
+public class ResultadoAnalisis {
+
+	private final Long usuarioId;
+	// Nuevo valor de enVacaciones; null si no cambia
+	private Boolean enVacaciones;
+	private boolean descontarVacaciones;
+	private boolean cerrarFichaje;
+	private final List<Long> vacacionesConsumidas = new ArrayList<>();
+	private final List<String> incidencias = new ArrayList<>();
+
+	ResultadoAnalisis(Long usuarioId) {
+		this.usuarioId = usuarioId;
+	}
+
+	void setEnVacaciones(Boolean enVacaciones) {
+		this.enVacaciones = enVacaciones;
+	}
+
+	void setDescontarVacaciones(boolean descontarVacaciones) {
+		this.descontarVacaciones = descontarVacaciones;
+	}
+
+	void setCerrarFichaje(boolean cerrarFichaje) {
+		this.cerrarFichaje = cerrarFichaje;
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.fichajespi.busqueda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fichajespi.busqueda.IndiceUsuarios.Doc;
+import com.fichajespi.dto.entity.UsuarioBusquedaDto;
+import com.fichajespi.dto.interfaces.IUsuarioBusqueda;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.util.Acentos;
+import com.fichajespi.util.LongHashMap;
+
+/**
+ * Búsqueda de empleados de los selectores de usuario, en memoria.
+ *
+ * Busca en nombre, número, DNI y email sin tildes ni mayúsculas. Salen
+ * primero los que coinciden enteros con algún campo, después aquellos en
+ * los que todas las palabras buscadas empiezan palabra y al final los que
+ * solo las contienen; dentro de cada grupo, por nombre.
+ *
+ * El índice se carga al arrancar y se recarga cada
+ * busqueda.usuarios.refresco-ms. UsuarioService avisa al guardar o borrar y
+ * el cambio se aplica al confirmar la transacción sin reconstruir el
+ * índice, hasta que se acumulan busqueda.usuarios.max-cambios.
+ */
+@Component
+public class BuscadorUsuarios {
+
+	public static final int LIMITE_MAX = 50;
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${busqueda.usuarios.max-cambios:256}")
+	private int maxCambios = 256;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private IndiceUsuarios indice = IndiceUsuarios.construir(Collections.emptyList());
+	// Guardados y borrados posteriores al índice, por id
+	private LongHashMap<Doc> cambios = new LongHashMap<>();
+	// Cambios recibidos mientras se recarga, para aplicarlos sobre la recarga
+	private List<Doc> duranteRecarga;
+
+	@PostConstruct
+	public void init() {
+		cargar();
+	}
+
+	@Scheduled(initialDelayString = "${busqueda.usuarios.refresco-ms:300000}", fixedDelayString = "${busqueda.usuarios.refresco-ms:300000}")
+	public void cargar() {
+		lock.writeLock().lock();
+		try {
+			duranteRecarga = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		IndiceUsuarios nuevo = null;
+		try {
+			List<IUsuarioBusqueda> filas = usuarioRepository.findBusquedaAll();
+			List<Doc> docs = new ArrayList<>(filas.size());
+			for (IUsuarioBusqueda fila : filas)
+				docs.add(new Doc(UsuarioBusquedaDto.builder()
+						.id(fila.getId())
+						.numero(fila.getNumero())
+						.nombreEmpleado(fila.getNombreEmpleado())
+						.dni(fila.getDni())
+						.email(fila.getEmail())
+						.build()));
+			nuevo = IndiceUsuarios.construir(docs);
+		} catch (RuntimeException e) {
+			logger.logWarn("No se pudo cargar el buscador de usuarios: " + e.getMessage());
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (nuevo != null) {
+				indice = nuevo;
+				cambios = new LongHashMap<>();
+			}
+			for (Doc doc : duranteRecarga)
+				aplicar(doc);
+			duranteRecarga = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Como mucho limite (hasta LIMITE_MAX) empleados que casan con q. */
+	public List<UsuarioBusquedaDto> buscar(String q, int limite) {
+		String texto = normalizar(q).trim();
+		limite = Math.max(1, Math.min(limite, LIMITE_MAX));
+		if (texto.isEmpty())
+			return Collections.emptyList();
+		String[] palabras = texto.split("\\s+");
+
+		List<Doc> exactos = new ArrayList<>();
+		List<Doc> inicio = new ArrayList<>();
+		List<Doc> contiene = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			LongHashMap<Doc> modificados = cambios;
+			indice.buscar(texto, palabras, limite, modificados, exactos, inicio, contiene);
+			modificados.forEachValue(doc -> {
+				if (doc.usuario != null)
+					clasificar(doc, texto, palabras, exactos, inicio, contiene);
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		List<UsuarioBusquedaDto> resultado = new ArrayList<>(limite);
+		for (List<Doc> grupo : List.of(exactos, inicio, contiene)) {
+			grupo.sort(Doc.POR_NOMBRE);
+			for (Doc doc : grupo) {
+				if (resultado.size() == limite)
+					return resultado;
+				resultado.add(doc.usuario);
+			}
+		}
+		return resultado;
+	}
+
+	public void guardado(Usuario usuario) {
+		Doc doc = new Doc(UsuarioBusquedaDto.builder()
+				.id(usuario.getId())
+				.numero(usuario.getNumero())
+				.nombreEmpleado(usuario.getNombreEmpleado())
+				.dni(usuario.getDni())
+				.email(usuario.getEmail())
+				.build());
+		alConfirmar(() -> registrar(doc));
+	}
+
+	public void borrado(Long id) {
+		Doc doc = new Doc(id);
+		alConfirmar(() -> registrar(doc));
+	}
+
+	static String normalizar(String texto) {
+		return texto == null ? "" : Acentos.quitar(texto).toLowerCase(Locale.ROOT);
+	}
+
+	private void registrar(Doc doc) {
+		boolean recargar;
+		lock.writeLock().lock();
+		try {
+			aplicar(doc);
+			if (duranteRecarga != null)
+				duranteRecarga.add(doc);
+			recargar = duranteRecarga == null && cambios.size() > maxCambios;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (recargar)
+			cargar();
+	}
+
+	// Guardar sin cambiar nombre, número, DNI ni email no toca el índice
+	private void aplicar(Doc doc) {
+		Doc actual = cambios.get(doc.id);
+		if (actual == null)
+			actual = indice.porId(doc.id);
+		if (actual == null ? doc.usuario == null : actual.mismoUsuario(doc))
+			return;
+		cambios.put(doc.id, doc);
+	}
+
+	private void alConfirmar(Runnable accion) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			accion.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(
+				new TransactionSynchronization() {
+					@Override
+					public void afterCommit() {
+						accion.run();
+					}
+				});
+	}
+
+	private static void clasificar(Doc doc, String texto, String[] palabras,
+			List<Doc> exactos, List<Doc> inicio, List<Doc> contiene) {
+		if (doc.esCampo(texto)) {
+			exactos.add(doc);
+			return;
+		}
+		int coincidencia = IndiceUsuarios.coincidencia(doc, palabras);
+		if (coincidencia == IndiceUsuarios.INICIO)
+			inicio.add(doc);
+		else if (coincidencia == IndiceUsuarios.CONTIENE)
+			contiene.add(doc);
+	}
+
+}
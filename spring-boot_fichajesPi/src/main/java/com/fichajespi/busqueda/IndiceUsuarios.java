@@ -0,0 +1,252 @@
+package com.fichajespi.busqueda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fichajespi.dto.entity.UsuarioBusquedaDto;
+import com.fichajespi.util.LongHashMap;
+
+/**
+ * Índice de BuscadorUsuarios; no cambia una vez construido.
+ *
+ * Los documentos (un empleado cada uno) van en orden de nombre. Se indexan
+ * los trigramas de todo el texto, para las palabras buscadas de N letras o
+ * más, y la primera y las dos primeras letras de cada palabra, para las más
+ * cortas. Cada clave apunta a la lista ordenada de los documentos que la
+ * tienen, así que una búsqueda es la intersección de unas pocas listas.
+ */
+final class IndiceUsuarios {
+
+	static final int N = 3;
+	static final int NINGUNA = 0;
+	static final int INICIO = 1;
+	static final int CONTIENE = 2;
+
+	private static final char SEPARADOR = '\n';
+
+	private final Doc[] docs;
+	private final LongHashMap<Lista> gramas;
+	// Valor completo de cada campo, para los que coinciden enteros
+	private final Map<String, Lista> campos;
+	private final LongHashMap<Doc> porId;
+
+	private IndiceUsuarios(Doc[] docs, LongHashMap<Lista> gramas, Map<String, Lista> campos,
+			LongHashMap<Doc> porId) {
+		this.docs = docs;
+		this.gramas = gramas;
+		this.campos = campos;
+		this.porId = porId;
+	}
+
+	static IndiceUsuarios construir(List<Doc> lista) {
+		Doc[] docs = lista.toArray(new Doc[0]);
+		Arrays.sort(docs, Doc.POR_NOMBRE);
+		LongHashMap<Lista> gramas = new LongHashMap<>();
+		Map<String, Lista> campos = new HashMap<>();
+		LongHashMap<Doc> porId = new LongHashMap<>(docs.length);
+
+		for (int d = 0; d < docs.length; d++) {
+			Doc doc = docs[d];
+			porId.put(doc.id, doc);
+			for (String campo : doc.campos)
+				if (!campo.isEmpty())
+					campos.computeIfAbsent(campo, k -> new Lista()).anadir(d);
+			String texto = doc.texto;
+			for (int i = 0; i + N <= texto.length(); i++)
+				anadir(gramas, trigrama(texto, i), d);
+			for (int i = 0; i < texto.length(); i++)
+				if (inicioPalabra(texto, i)) {
+					anadir(gramas, prefijo(texto, i, 1), d);
+					if (i + 1 < texto.length())
+						anadir(gramas, prefijo(texto, i, 2), d);
+				}
+		}
+		gramas.forEachValue(Lista::recortar);
+		return new IndiceUsuarios(docs, gramas, campos, porId);
+	}
+
+	Doc porId(long id) {
+		return porId.get(id);
+	}
+
+	/**
+	 * Reparte los documentos que casan entre los tres grupos, sin los que
+	 * están en modificados. Como mucho limite en inicio y en contiene: los que
+	 * siguen van detrás por nombre.
+	 */
+	void buscar(String texto, String[] palabras, int limite, LongHashMap<Doc> modificados,
+			List<Doc> exactos, List<Doc> inicio, List<Doc> contiene) {
+		boolean hayModificados = modificados.size() > 0;
+		Lista iguales = campos.get(texto);
+		if (iguales != null)
+			for (int i = 0; i < iguales.n; i++) {
+				Doc doc = docs[iguales.docs[i]];
+				if (!hayModificados || modificados.get(doc.id) == null)
+					exactos.add(doc);
+			}
+
+		List<Lista> listas = new ArrayList<>();
+		// Además, las dos primeras letras de cada palabra larga al inicio de
+		// una palabra: sin ellas el documento no puede estar en inicio
+		List<Lista> iniciales = new ArrayList<>();
+		for (String palabra : palabras) {
+			if (palabra.length() < N) {
+				Lista lista = gramas.get(prefijo(palabra, 0, palabra.length()));
+				if (lista == null)
+					return;
+				listas.add(lista);
+				iniciales.add(lista);
+				continue;
+			}
+			for (int i = 0; i + N <= palabra.length(); i++) {
+				Lista lista = gramas.get(trigrama(palabra, i));
+				if (lista == null)
+					return;
+				listas.add(lista);
+				iniciales.add(lista);
+			}
+			iniciales.add(gramas.get(prefijo(palabra, 0, 2)));
+		}
+
+		if (!iniciales.contains(null))
+			recorrer(iniciales, texto, palabras, modificados, INICIO, inicio, limite);
+		// Si ya hay limite en inicio, los que solo contienen no llegan a salir
+		if (inicio.size() < limite)
+			recorrer(listas, texto, palabras, modificados, CONTIENE, contiene, limite);
+	}
+
+	// Los documentos de la intersección de listas con esa coincidencia, hasta limite
+	private void recorrer(List<Lista> listas, String texto, String[] palabras,
+			LongHashMap<Doc> modificados, int buscada, List<Doc> destino, int limite) {
+		boolean hayModificados = modificados.size() > 0;
+		listas.sort(Comparator.comparingInt(l -> l.n));
+		Lista menor = listas.get(0);
+		siguiente: for (int i = 0; i < menor.n && destino.size() < limite; i++) {
+			int d = menor.docs[i];
+			for (int j = 1; j < listas.size(); j++) {
+				Lista otra = listas.get(j);
+				if (Arrays.binarySearch(otra.docs, 0, otra.n, d) < 0)
+					continue siguiente;
+			}
+			Doc doc = docs[d];
+			if (doc.esCampo(texto) || hayModificados && modificados.get(doc.id) != null)
+				continue;
+			if (coincidencia(doc, palabras) == buscada)
+				destino.add(doc);
+		}
+	}
+
+	/** INICIO si todas las palabras empiezan palabra en doc, CONTIENE si alguna va en medio. */
+	static int coincidencia(Doc doc, String[] palabras) {
+		int coincidencia = INICIO;
+		for (String palabra : palabras) {
+			if (doc.empiezaPalabra(palabra))
+				continue;
+			// Las palabras cortas solo se buscan al inicio
+			if (palabra.length() < N || !doc.texto.contains(palabra))
+				return NINGUNA;
+			coincidencia = CONTIENE;
+		}
+		return coincidencia;
+	}
+
+	private static void anadir(LongHashMap<Lista> gramas, long clave, int doc) {
+		Lista lista = gramas.get(clave);
+		if (lista == null) {
+			lista = new Lista();
+			gramas.put(clave, lista);
+		}
+		lista.anadir(doc);
+	}
+
+	private static long trigrama(String texto, int i) {
+		return ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16)
+				| texto.charAt(i + 2);
+	}
+
+	// Marcado con el bit 48 para no chocar con los trigramas
+	private static long prefijo(String texto, int i, int letras) {
+		return (1L << 48) | ((long) texto.charAt(i) << 16)
+				| (letras == 2 ? texto.charAt(i + 1) : 0);
+	}
+
+	private static boolean inicioPalabra(String texto, int i) {
+		return Character.isLetterOrDigit(texto.charAt(i))
+				&& (i == 0 || !Character.isLetterOrDigit(texto.charAt(i - 1)));
+	}
+
+	/** Un empleado; sin usuario, uno borrado. */
+	static final class Doc {
+		static final Comparator<Doc> POR_NOMBRE = Comparator
+				.comparing((Doc d) -> d.orden)
+				.thenComparingLong(d -> d.id);
+
+		final long id;
+		final UsuarioBusquedaDto usuario;
+		final String[] campos;
+		final String texto;
+		final String orden;
+
+		Doc(UsuarioBusquedaDto usuario) {
+			this.id = usuario.getId();
+			this.usuario = usuario;
+			this.campos = new String[] {
+					BuscadorUsuarios.normalizar(usuario.getNombreEmpleado()),
+					BuscadorUsuarios.normalizar(usuario.getNumero()),
+					BuscadorUsuarios.normalizar(usuario.getDni()),
+					BuscadorUsuarios.normalizar(usuario.getEmail()) };
+			this.texto = String.join(String.valueOf(SEPARADOR), campos);
+			this.orden = campos[0];
+		}
+
+		Doc(long id) {
+			this.id = id;
+			this.usuario = null;
+			this.campos = new String[0];
+			this.texto = "";
+			this.orden = "";
+		}
+
+		boolean esCampo(String valor) {
+			for (String campo : campos)
+				if (campo.equals(valor))
+					return true;
+			return false;
+		}
+
+		boolean empiezaPalabra(String palabra) {
+			for (int i = texto.indexOf(palabra); i >= 0; i = texto.indexOf(palabra, i + 1))
+				if (i == 0 || !Character.isLetterOrDigit(texto.charAt(i - 1)))
+					return true;
+			return false;
+		}
+
+		boolean mismoUsuario(Doc otro) {
+			return Objects.equals(usuario, otro.usuario);
+		}
+	}
+
+	// Documentos en orden creciente, sin repetir
+	private static final class Lista {
+		private int[] docs = new int[2];
+		private int n;
+
+		void anadir(int doc) {
+			if (n > 0 && docs[n - 1] == doc)
+				return;
+			if (n == docs.length)
+				docs = Arrays.copyOf(docs, n * 2);
+			docs[n++] = doc;
+		}
+
+		void recortar() {
+			docs = Arrays.copyOf(docs, n);
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.fichajespi.concurrent;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Conjunto fijo de cerrojos repartidos por hash de la clave.
+ *
+ * Dos claves iguales comparten siempre el mismo cerrojo, mientras que claves
+ * distintas casi nunca coinciden, de modo que las operaciones sobre
+ * empleados distintos avanzan en paralelo.
+ */
+public class StripedLock {
+
+	private final ReentrantLock[] locks;
+	private final int mask;
+
+	public StripedLock(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		locks = new ReentrantLock[size];
+		for (int i = 0; i < size; i++)
+			locks[i] = new ReentrantLock();
+		mask = size - 1;
+	}
+
+	public <T> T withLock(Object key, Supplier<T> action) {
+		ReentrantLock lock = locks[indexOf(key)];
+		lock.lock();
+		try {
+			return action.get();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adquiere los cerrojos de todas las claves siempre en el mismo orden para
+	 * evitar interbloqueos entre llamadas concurrentes.
+	 */
+	public <T> T withLocks(Collection<?> keys, Supplier<T> action) {
+		TreeSet<Integer> indexes = new TreeSet<>();
+		for (Object key : keys)
+			indexes.add(indexOf(key));
+
+		int acquired = 0;
+		Integer[] ordered = indexes.toArray(new Integer[0]);
+		try {
+			for (Integer i : ordered) {
+				locks[i].lock();
+				acquired++;
+			}
+			return action.get();
+		} finally {
+			for (int i = acquired - 1; i >= 0; i--)
+				locks[ordered[i]].unlock();
+		}
+	}
+
+	public int stripes() {
+		return locks.length;
+	}
+
+	private int indexOf(Object key) {
+		int h = key == null ? 0 : key.hashCode();
+		h ^= (h >>> 16);
+		return h & mask;
+	}
+
+}
@@ -1,13 +1,17 @@
 package com.fichajespi.config;
 
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.fichajespi.config.Ejecutores.Rechazo;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 @EnableAsync
@@ -15,16 +19,34 @@ public class AsyncConfiguration {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncConfiguration.class);
 
-	@Bean(name = "taskExecutor")
-	public Executor taskExecutor() {
-		LOGGER.debug("Creating Async Task Executor");
-		final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-		executor.setCorePoolSize(2);
-		executor.setMaxPoolSize(2);
-		executor.setQueueCapacity(100);
-		executor.setThreadNamePrefix("EmailThread-");
-		executor.initialize();
-		return executor;
+	@Bean
+	public Ejecutores ejecutores(MeterRegistry meterRegistry,
+			@Value("${ejecutores.hilos-virtuales:false}") boolean virtuales) {
+		if (virtuales && !Ejecutores.hayHilosVirtuales()) {
+			LOGGER.warn("ejecutores.hilos-virtuales requiere JDK 21 o superior, se usan hilos normales");
+			virtuales = false;
+		}
+		return new Ejecutores(meterRegistry, virtuales);
+	}
+
+	// Emails sueltos (EmailService.sendEmail): si la cola está llena se
+	// guardan en la bandeja de salida en vez de ejecutarse en el llamante
+	@Bean(name = "mailExecutor")
+	public ExecutorService mailExecutor(Ejecutores ejecutores,
+			@Value("${ejecutores.mail.hilos:2}") int hilos,
+			@Value("${ejecutores.mail.cola:100}") int cola) {
+		LOGGER.debug("Creating mail executor");
+		return ejecutores.crear("mail", "EmailThread-", hilos, cola, Rechazo.ABORTAR);
+	}
+
+	// Avisos de vacaciones y permisos (@Async("notificacionesExecutor"))
+	@Bean(name = "notificacionesExecutor")
+	public ExecutorService notificacionesExecutor(Ejecutores ejecutores,
+			@Value("${ejecutores.notificaciones.hilos:2}") int hilos,
+			@Value("${ejecutores.notificaciones.cola:200}") int cola) {
+		LOGGER.debug("Creating notifications executor");
+		return ejecutores.crear("notificaciones", "NotificacionThread-", hilos, cola,
+				Rechazo.LLAMANTE);
 	}
 
 }
@@ -0,0 +1,89 @@
+package com.fichajespi.config;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.metamodel.EntityType;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Comprueba al arrancar que existen los índices que declaran las entidades
+ * en @Table(indexes), después de Flyway y de ddl-auto.
+ *
+ * Si falta alguno (una migración que no se ha aplicado, una tabla creada a
+ * mano) se avisa en el log, o no arranca con esquema.indices.estricto=true.
+ */
+@Component
+public class ComprobacionIndices {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ComprobacionIndices.class);
+
+	// Se inyecta para comprobar el esquema ya actualizado por Hibernate
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	@Autowired
+	private DataSource dataSource;
+
+	@Value("${esquema.indices.estricto:false}")
+	private boolean estricto;
+
+	@PostConstruct
+	public void init() throws SQLException {
+		List<String> ausentes = ausentes();
+		if (ausentes.isEmpty())
+			return;
+		String mensaje = "Faltan índices en la base de datos: " + String.join(", ", ausentes);
+		if (estricto)
+			throw new IllegalStateException(mensaje);
+		LOGGER.warn("{}; las consultas que los usan recorren la tabla entera", mensaje);
+	}
+
+	/** Los índices declarados que no están en la base de datos, como tabla.indice. */
+	public List<String> ausentes() throws SQLException {
+		List<String> ausentes = new ArrayList<>();
+		try (Connection connection = dataSource.getConnection()) {
+			for (EntityType<?> entidad : entityManagerFactory.getMetamodel().getEntities()) {
+				Table table = entidad.getJavaType().getAnnotation(Table.class);
+				if (table == null || table.indexes().length == 0)
+					continue;
+				Set<String> existentes = indices(connection, table.name());
+				for (Index index : table.indexes())
+					if (!existentes.contains(index.name().toLowerCase(Locale.ROOT)))
+						ausentes.add(table.name() + "." + index.name());
+			}
+		}
+		return ausentes;
+	}
+
+	private Set<String> indices(Connection connection, String tabla) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		if (metaData.storesUpperCaseIdentifiers())
+			tabla = tabla.toUpperCase(Locale.ROOT);
+		Set<String> nombres = new HashSet<>();
+		try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, tabla,
+				false, false)) {
+			while (rs.next())
+				if (rs.getString("INDEX_NAME") != null)
+					nombres.add(rs.getString("INDEX_NAME").toLowerCase(Locale.ROOT));
+		}
+		return nombres;
+	}
+
+}
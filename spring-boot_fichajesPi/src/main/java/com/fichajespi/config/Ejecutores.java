@@ -0,0 +1,132 @@
+package com.fichajespi.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Crea los grupos de hilos de la aplicación: con nombre, un número fijo de
+ * hilos, cola acotada y política de rechazo explícita.
+ *
+ * Cada grupo publica sus métricas etiquetadas con ejecutor=nombre: hilos
+ * activos, tareas en cola, rechazos y, por tarea, el tiempo de espera en la
+ * cola y el de ejecución. Con hilos virtuales (JDK 21+) se mantienen el
+ * límite de tareas simultáneas y la cola; solo cambia el tipo de hilo.
+ */
+public class Ejecutores {
+
+	public enum Rechazo {
+		/** Cola llena: la tarea la ejecuta el hilo que la envía. */
+		LLAMANTE,
+		/** Cola llena: RejectedExecutionException, quien envía decide (p. ej. guardarla). */
+		ABORTAR
+	}
+
+	private final MeterRegistry meterRegistry;
+	private final boolean virtuales;
+
+	public Ejecutores(MeterRegistry meterRegistry, boolean virtuales) {
+		this.meterRegistry = meterRegistry;
+		this.virtuales = virtuales;
+	}
+
+	/** True si la JVM tiene hilos virtuales (Thread.ofVirtual, JDK 21+). */
+	public static boolean hayHilosVirtuales() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	public ExecutorService crear(String nombre, String prefijo, int hilos, int cola,
+			Rechazo rechazo) {
+		RejectedExecutionHandler politica = rechazo == Rechazo.LLAMANTE
+				? new ThreadPoolExecutor.CallerRunsPolicy()
+				: new ThreadPoolExecutor.AbortPolicy();
+		Counter rechazos = Counter.builder("fichajes.ejecutor.rechazos")
+				.description("Tareas que no caben en la cola")
+				.tag("ejecutor", nombre)
+				.register(meterRegistry);
+		EjecutorMedido executor = new EjecutorMedido(hilos, cola, hilos(prefijo),
+				(tarea, e) -> {
+					rechazos.increment();
+					politica.rejectedExecution(tarea, e);
+				},
+				timer("fichajes.ejecutor.espera", "Tiempo de las tareas en la cola", nombre),
+				timer("fichajes.ejecutor.tarea", "Duración de las tareas", nombre));
+
+		Gauge.builder("fichajes.ejecutor.activos", executor, ThreadPoolExecutor::getActiveCount)
+				.description("Hilos ejecutando una tarea")
+				.tag("ejecutor", nombre)
+				.register(meterRegistry);
+		Gauge.builder("fichajes.ejecutor.cola", executor, e -> e.getQueue().size())
+				.description("Tareas esperando un hilo libre")
+				.tag("ejecutor", nombre)
+				.register(meterRegistry);
+		return executor;
+	}
+
+	private ThreadFactory hilos(String prefijo) {
+		if (virtuales) {
+			try {
+				// Thread.ofVirtual().name(prefijo, 1).factory(), compilando para Java 11
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+				Object conNombre = builder.getMethod("name", String.class, long.class)
+						.invoke(ofVirtual, prefijo, 1L);
+				return (ThreadFactory) builder.getMethod("factory").invoke(conNombre);
+			} catch (ReflectiveOperationException e) {
+				// JVM sin hilos virtuales: se usan hilos normales
+			}
+		}
+		return new CustomizableThreadFactory(prefijo);
+	}
+
+	private Timer timer(String metrica, String descripcion, String nombre) {
+		return Timer.builder(metrica)
+				.description(descripcion)
+				.tag("ejecutor", nombre)
+				.register(meterRegistry);
+	}
+
+	// Mide cada tarea desde que se envía; submit e invokeAll pasan por execute
+	private static class EjecutorMedido extends ThreadPoolExecutor {
+		private final Timer espera;
+		private final Timer duracion;
+
+		EjecutorMedido(int hilos, int cola, ThreadFactory threadFactory,
+				RejectedExecutionHandler rechazo, Timer espera, Timer duracion) {
+			super(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(cola), threadFactory, rechazo);
+			this.espera = espera;
+			this.duracion = duracion;
+		}
+
+		@Override
+		public void execute(Runnable tarea) {
+			long enviada = System.nanoTime();
+			super.execute(() -> {
+				long inicio = System.nanoTime();
+				espera.record(inicio - enviada, TimeUnit.NANOSECONDS);
+				try {
+					tarea.run();
+				} finally {
+					duracion.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+				}
+			});
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.fichajespi.config;
+
+import java.util.Properties;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fichajespi.mail.JavaMailSenderPool;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sustituye el JavaMailSender de Spring Boot por uno que reutiliza las
+ * conexiones SMTP. Se configura con las mismas propiedades spring.mail.*
+ * más las del grupo de conexiones (email.smtp.*).
+ */
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+
+	@Bean
+	public JavaMailSenderPool javaMailSender(MailProperties properties,
+			MeterRegistry meterRegistry,
+			@Value("${email.smtp.conexiones:2}") int conexiones,
+			@Value("${email.smtp.mensajes-por-conexion:100}") int mensajesPorConexion,
+			@Value("${email.smtp.inactividad-ms:60000}") long inactividadMs,
+			@Value("${email.smtp.espera-ms:30000}") long esperaMs) {
+		JavaMailSenderPool sender = new JavaMailSenderPool(conexiones,
+				mensajesPorConexion, inactividadMs, esperaMs);
+		sender.setHost(properties.getHost());
+		if (properties.getPort() != null)
+			sender.setPort(properties.getPort());
+		sender.setUsername(properties.getUsername());
+		sender.setPassword(properties.getPassword());
+		sender.setProtocol(properties.getProtocol());
+		if (properties.getDefaultEncoding() != null)
+			sender.setDefaultEncoding(properties.getDefaultEncoding().name());
+		if (!properties.getProperties().isEmpty()) {
+			Properties javaMail = new Properties();
+			javaMail.putAll(properties.getProperties());
+			sender.setJavaMailProperties(javaMail);
+		}
+		sender.registrar(meterRegistry);
+		return sender;
+	}
+
+}
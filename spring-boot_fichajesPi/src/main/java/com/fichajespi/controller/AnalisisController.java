@@ -0,0 +1,73 @@
+package com.fichajespi.controller;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fichajespi.analisis.AnalisisFichajes;
+import com.fichajespi.dto.entity.Mensaje;
+import com.fichajespi.entity.AnalisisDia;
+import com.fichajespi.logger.LoggerService;
+
+import io.swagger.annotations.ApiOperation;
+
+@RestController
+@RequestMapping("/analisis")
+public class AnalisisController {
+
+	// Un año y un día bisiesto
+	private static final long MAX_DIAS = 366;
+
+	@Autowired
+	AnalisisFichajes analisisFichajes;
+	@Autowired
+	LoggerService logger;
+
+	@ApiOperation("Vuelve a analizar en segundo plano los fichajes de un rango de días pasados, sin repetir incidencias ya generadas")
+	@PostMapping("/reanalizar")
+	public ResponseEntity<Mensaje> reanalizar(
+			@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate desde,
+			@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate hasta) {
+
+		long dias = ChronoUnit.DAYS.between(desde, hasta) + 1;
+		if (dias < 1 || dias > MAX_DIAS || !hasta.isBefore(LocalDate.now()))
+			return ResponseEntity
+					.status(HttpStatus.BAD_REQUEST)
+					.body(new Mensaje("El rango debe ser de días pasados y de como máximo "
+							+ MAX_DIAS + " días"));
+
+		analisisFichajes.reanalizar(desde, hasta).whenComplete((resumenes, e) -> {
+			if (e != null)
+				logger.logError("Fallo reanalizando del " + desde + " al " + hasta
+						+ ": " + e);
+			else
+				logger.logInfo("Reanálisis del " + desde + " al " + hasta + ": "
+						+ resumenes.size() + " días analizados");
+		});
+		return ResponseEntity
+				.status(HttpStatus.ACCEPTED)
+				.body(new Mensaje("Analizando " + dias + " días"));
+	}
+
+	@ApiOperation("Obtiene los días ya analizados de un rango")
+	@GetMapping("/dias")
+	public ResponseEntity<List<AnalisisDia>> analizados(
+			@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate desde,
+			@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate hasta) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(analisisFichajes.analizados(desde, hasta));
+	}
+
+}
@@ -1,15 +1,18 @@
 package com.fichajespi.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -18,17 +21,23 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fichajespi.controller.common.CommonController;
 import com.fichajespi.dto.converter.FichajeDtoConverter;
 import com.fichajespi.dto.entity.FichajeDto;
 import com.fichajespi.dto.entity.FichajeDtoReqRes;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.Mensaje;
+import com.fichajespi.dto.entity.TicketStreamDto;
 import com.fichajespi.entity.Fichaje;
+import com.fichajespi.journal.FichajeJournalService;
 import com.fichajespi.mail.EmailService;
-import com.fichajespi.security.entity.RrhhDto;
-import com.fichajespi.security.service.GetInfoFromToken;
+import com.fichajespi.security.service.TicketsStream;
 import com.fichajespi.service.FichajeService;
+import com.fichajespi.service.FicharService;
 import com.fichajespi.specifications.FichajeSpecifications;
+import com.fichajespi.stream.DifusionFichajes;
 
 import io.swagger.annotations.ApiOperation;
 
@@ -38,21 +47,87 @@ import io.swagger.annotations.ApiOperation;
 public class FichajeController
 		extends CommonController<Fichaje, FichajeService> {
 
+	private static final Set<String> ORDENABLES = Set.of(
+			"id", "dia", "hora", "tipo", "origen", "usuarioNombreEmpleado", "usuarioNumero");
+
 	@Autowired
 	FichajeDtoConverter dtoConverter;
 	@Autowired
 	FichajeSpecifications specifications;
 	@Autowired
-	GetInfoFromToken getInfoFromToken;
+	FicharService ficharService;
+	@Autowired(required = false)
+	FichajeJournalService journalService;
+	@Autowired
+	DifusionFichajes difusion;
+	@Autowired
+	TicketsStream ticketsStream;
+
+	@Value("${fichaje.lote.max:10000}")
+	int maxLote;
 
 	@PostMapping("/now")
 	public ResponseEntity<?> nuevoFichajeNow(
 			@RequestBody FichajeDtoReqRes fichajeDto) {
 		//System.out.println("Fichaje");
+		// Con el diario activo se responde sin esperar a la base de datos
+		FichajeDtoReqRes respuesta = journalService == null ? null
+				: journalService.encolar(fichajeDto);
+		if (respuesta == null)
+			respuesta = ficharService.fichar(fichajeDto);
+
 		return ResponseEntity
 				.status(HttpStatus.CREATED)
-				.body(dtoConverter.fichar(fichajeDto));
+				.body(respuesta);
+
+	}
+
+	@Override
+	protected Set<String> ordenables() {
+		return ORDENABLES;
+	}
+
+	@ApiOperation("Registra un lote de fichajes de terminales o scripts, devuelve el resultado de cada uno")
+	@PostMapping("/batch")
+	public ResponseEntity<?> nuevosFichajesBatch(
+			@RequestBody List<FichajeLoteDto> lote) {
+
+		if (lote.size() > maxLote)
+			return ResponseEntity
+					.status(HttpStatus.BAD_REQUEST)
+					.body(new Mensaje("El lote no puede superar los "
+							+ maxLote + " fichajes."));
 
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(ficharService.ficharLote(lote));
+	}
+
+	@ApiOperation("Envía cada fichaje confirmado como evento SSE, para refrescar paneles sin consultar la lista."
+			+ " Con la cabecera Authorization o, desde EventSource, con ?ticket= de /stream/ticket")
+	@GetMapping("/stream")
+	public ResponseEntity<?> stream() {
+
+		SseEmitter emitter = difusion.suscribir();
+		if (emitter == null)
+			return ResponseEntity
+					.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.contentType(MediaType.APPLICATION_JSON)
+					.body(new Mensaje("Demasiados paneles conectados, inténtelo más tarde."));
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.contentType(MediaType.TEXT_EVENT_STREAM)
+				.body(emitter);
+	}
+
+	@ApiOperation("Ticket de un solo uso y pocos segundos para abrir /stream con EventSource, que no envía cabeceras")
+	@PostMapping("/stream/ticket")
+	public ResponseEntity<TicketStreamDto> ticketStream() {
+		return ResponseEntity
+				.status(HttpStatus.CREATED)
+				.body(new TicketStreamDto(ticketsStream.emitir(
+						SecurityContextHolder.getContext().getAuthentication())));
 	}
 
 	@ApiOperation("Obtiene una lista paginada y filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
@@ -65,81 +140,40 @@ public class FichajeController
 			@RequestParam(defaultValue = "true") boolean asc,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setNumeroUsuario(tokenUser.getNumber());
-		}
-
-		Specification<Fichaje> spec = Specification
-				.where(dto.getNombreUsuario() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getNombreUsuario()))
-				.and(dto.getNumeroUsuario() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getNumeroUsuario()))
-				.and(dto.getTipo() == null ? null
-						: specifications.tipoContains(
-								dto.getTipo()))
-				.and(dto.getHoraDesde() == null ? null
-						: specifications.horaMayorQue(
-								dto.getHoraDesde()))
-				.and(dto.getHoraHasta() == null ? null
-						: specifications.horaMenorQue(
-								dto.getHoraHasta()))
-				.and(dto.getDiaDesde() == null ? null
-						: specifications.diaMayorQue(
-								dto.getDiaDesde()))
-				.and(dto.getDiaHasta() == null ? null
-						: specifications.diaMenorQue(
-								dto.getDiaHasta()));
+		Specification<Fichaje> spec = propios(spec(dto), token, specifications::usuarioId);
 
 		Page<Fichaje> entities = service.pagesAndSpec(
 				spec,
-				PageRequest.of(page, size, Sort.by(order)));
-
-		if (!asc)
-			entities = service.pagesAndSpec(
-					spec,
-					PageRequest.of(page, size, Sort.by(order).descending()));
+				pageable(page, size, order, asc));
 
 		return ResponseEntity
 				.status(HttpStatus.OK)
 				.body(entities);
 	}
 
+	@ApiOperation("Obtiene una página filtrada a partir del cursor de la anterior, sin contar el total salvo que se pida")
+	@PostMapping("/seekFiltered")
+	public ResponseEntity<?> seekDtoSpec(
+			@RequestBody FichajeDto dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String order,
+			@RequestParam(defaultValue = "true") boolean asc,
+			@RequestParam(defaultValue = "false") boolean total,
+			@RequestHeader("authorization") String token) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(service.seekAndSpec(propios(spec(dto), token, specifications::usuarioId), orden(order), asc, cursor, size, total));
+	}
+
 	@ApiOperation("Obtiene una lista filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/listFiltered")
 	public ResponseEntity<List<Fichaje>> filteredList(
 			@RequestBody FichajeDto dto,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setNumeroUsuario(tokenUser.getNumber());
-		}
-
-		Specification<Fichaje> spec = Specification
-				.where(dto.getNombreUsuario() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getNombreUsuario()))
-				.and(dto.getNumeroUsuario() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getNumeroUsuario()))
-				.and(dto.getTipo() == null ? null
-						: specifications.tipoContains(
-								dto.getTipo()))
-				.and(dto.getHoraDesde() == null ? null
-						: specifications.horaMayorQue(
-								dto.getHoraDesde()))
-				.and(dto.getHoraHasta() == null ? null
-						: specifications.horaMenorQue(
-								dto.getHoraHasta()))
-				.and(dto.getDiaDesde() == null ? null
-						: specifications.diaMayorQue(
-								dto.getDiaDesde()))
-				.and(dto.getDiaHasta() == null ? null
-						: specifications.diaMenorQue(
-								dto.getDiaHasta()));
+		Specification<Fichaje> spec = propios(spec(dto), token, specifications::usuarioId);
 
 		List<Fichaje> entities = service.filterAndList(spec);
 
@@ -161,4 +195,28 @@ public class FichajeController
 		});
 	}
 
+	private Specification<Fichaje> spec(FichajeDto dto) {
+		return Specification
+				.where(dto.getNombreUsuario() == null ? null
+						: specifications.nombreUsuario(
+								dto.getNombreUsuario(), dto.getModo()))
+				.and(dto.getNumeroUsuario() == null ? null
+						: specifications.numeroUsuario(
+								dto.getNumeroUsuario(), dto.getModo()))
+				.and(dto.getTipo() == null ? null
+						: specifications.tipoContains(
+								dto.getTipo()))
+				.and(dto.getHoraDesde() == null ? null
+						: specifications.horaMayorQue(
+								dto.getHoraDesde()))
+				.and(dto.getHoraHasta() == null ? null
+						: specifications.horaMenorQue(
+								dto.getHoraHasta()))
+				.and(dto.getDiaDesde() == null ? null
+						: specifications.diaMayorQue(
+								dto.getDiaDesde()))
+				.and(dto.getDiaHasta() == null ? null
+						: specifications.diaMenorQue(
+								dto.getDiaHasta()));
+	}
 }
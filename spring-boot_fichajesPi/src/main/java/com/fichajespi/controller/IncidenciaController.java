@@ -1,11 +1,10 @@
 package com.fichajespi.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -38,6 +37,9 @@ import io.swagger.annotations.ApiOperation;
 public class IncidenciaController
 		extends CommonController<Incidencia, IncidenciaService> {
 
+	private static final Set<String> ORDENABLES = Set.of(
+			"id", "dia", "resuelta", "resumen", "usuarioNombreEmpleado", "usuarioNumero");
+
 //	@Autowired
 //	IncidenciaDtoConverter dtoConverter;
 	@Autowired
@@ -55,6 +57,11 @@ public class IncidenciaController
 //			return ResponseEntity.ok(result);
 //	}
 
+	@Override
+	protected Set<String> ordenables() {
+		return ORDENABLES;
+	}
+
 	@ApiOperation("Obtiene una lista paginada y filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/pagesFiltered")
 	public ResponseEntity<Page<Incidencia>> pageDtoSpec(
@@ -64,43 +71,11 @@ public class IncidenciaController
 			@RequestParam(defaultValue = "id") String order,
 			@RequestParam(defaultValue = "true") boolean asc) {
 
-		Specification<Incidencia> spec = Specification
-				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
-				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
-				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
-				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
-				.and(dto.getExplicacion() == null ? null
-						: specifications.explicacionContains(
-								dto.getExplicacion()))
-				.and(dto.getResumen() == null ? null
-						: specifications.resumenContains(
-								dto.getResumen()))
-				.and(dto.getResuelta() == null ? null
-						: specifications.isResuelta(
-								dto.getResuelta()))
-				.and(dto.getDiaDesde() == null ? null
-						: specifications.diaDesde(
-								dto.getDiaDesde()))
-				.and(dto.getDiaHasta() == null ? null
-						: specifications.diaHasta(
-								dto.getDiaHasta()));
+		Specification<Incidencia> spec = spec(dto);
 
 		Page<Incidencia> entities = service.pagesAndSpec(
 				spec,
-				PageRequest.of(page, size, Sort.by(order)));
-
-		if (!asc)
-			entities = service.pagesAndSpec(
-					spec,
-					PageRequest.of(page, size, Sort.by(order).descending()));
+				pageable(page, size, order, asc));
 
 //		Page<VacacionesDto> entitiesDto = entities
 //				.map(usu -> dtoConverter.inverseTransform(usu));
@@ -111,38 +86,26 @@ public class IncidenciaController
 
 	}
 
+	@ApiOperation("Obtiene una página filtrada a partir del cursor de la anterior, sin contar el total salvo que se pida")
+	@PostMapping("/seekFiltered")
+	public ResponseEntity<?> seekDtoSpec(
+			@RequestBody IncidenciaDtoFilter dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String order,
+			@RequestParam(defaultValue = "true") boolean asc,
+			@RequestParam(defaultValue = "false") boolean total) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(service.seekAndSpec(spec(dto), orden(order), asc, cursor, size, total));
+	}
+
 	@ApiOperation("Obtiene una lista filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/listFiltered")
 	public ResponseEntity<List<Incidencia>> filteredList(@RequestBody IncidenciaDtoFilter dto) {
 
-		Specification<Incidencia> spec = Specification
-				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
-				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
-				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
-				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
-				.and(dto.getExplicacion() == null ? null
-						: specifications.explicacionContains(
-								dto.getExplicacion()))
-				.and(dto.getResumen() == null ? null
-						: specifications.resumenContains(
-								dto.getResumen()))
-				.and(dto.getResuelta() == null ? null
-						: specifications.isResuelta(
-								dto.getResuelta()))
-				.and(dto.getDiaDesde() == null ? null
-						: specifications.diaDesde(
-								dto.getDiaDesde()))
-				.and(dto.getDiaHasta() == null ? null
-						: specifications.diaHasta(
-								dto.getDiaHasta()));
+		Specification<Incidencia> spec = spec(dto);
 
 		List<Incidencia> entities = service.filterAndList(spec);
 
@@ -186,4 +149,35 @@ public class IncidenciaController
 		List<ITopIncidencias> result = service.topIncidenciasLast12Months();
 		return ResponseEntity.ok(result);
 	}
+
+	private Specification<Incidencia> spec(IncidenciaDtoFilter dto) {
+		return Specification
+				.where(dto.getUsuarioNombre() == null ? null
+						: specifications.nombreUsuario(
+								dto.getUsuarioNombre(), dto.getModo()))
+				.and(dto.getUsuarioEmail() == null ? null
+						: specifications.emailUsuario(
+								dto.getUsuarioEmail(), dto.getModo()))
+				.and(dto.getUsuarioNumero() == null ? null
+						: specifications.numeroUsuario(
+								dto.getUsuarioNumero(), dto.getModo()))
+				.and(dto.getUsuarioDni() == null ? null
+						: specifications.dniUsuario(
+								dto.getUsuarioDni(), dto.getModo()))
+				.and(dto.getExplicacion() == null ? null
+						: specifications.explicacionContains(
+								dto.getExplicacion()))
+				.and(dto.getResumen() == null ? null
+						: specifications.resumenContains(
+								dto.getResumen()))
+				.and(dto.getResuelta() == null ? null
+						: specifications.isResuelta(
+								dto.getResuelta()))
+				.and(dto.getDiaDesde() == null ? null
+						: specifications.diaDesde(
+								dto.getDiaDesde()))
+				.and(dto.getDiaHasta() == null ? null
+						: specifications.diaHasta(
+								dto.getDiaHasta()));
+	}
 }
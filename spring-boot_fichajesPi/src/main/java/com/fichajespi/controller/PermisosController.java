@@ -1,11 +1,10 @@
 package com.fichajespi.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -30,8 +29,6 @@ import com.fichajespi.dto.interfaces.IUsuarioDtoEstadistica;
 import com.fichajespi.entity.Permiso;
 import com.fichajespi.entity.enums.EstadosPeticion;
 import com.fichajespi.mail.EmailService;
-import com.fichajespi.security.entity.RrhhDto;
-import com.fichajespi.security.service.GetInfoFromToken;
 import com.fichajespi.service.PermisoService;
 import com.fichajespi.specifications.PermisoSpecifications;
 
@@ -43,14 +40,15 @@ import io.swagger.annotations.ApiOperation;
 public class PermisosController
 		extends CommonController<Permiso, PermisoService> {
 
+	private static final Set<String> ORDENABLES = Set.of(
+			"id", "dia", "horaInicio", "horaFin", "estado", "descripcion", "usuarioNombreEmpleado", "usuarioNumero");
+
 	@Autowired
 	PermisoDtoConverter dtoConverter;
 	@Autowired
 	EmailService emailService;
 	@Autowired
 	PermisoSpecifications specifications;
-	@Autowired
-	GetInfoFromToken getInfoFromToken;
 
 	@PostMapping("/create")
 	public ResponseEntity<?> newPermiso(@RequestBody PermisoDto dto) {
@@ -127,6 +125,11 @@ public class PermisosController
 		});
 	}
 
+	@Override
+	protected Set<String> ordenables() {
+		return ORDENABLES;
+	}
+
 	@ApiOperation("Obtiene una lista paginada y filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/pagesFiltered")
 	public ResponseEntity<Page<Permiso>> pageDtoSpec(
@@ -137,61 +140,11 @@ public class PermisosController
 			@RequestParam(defaultValue = "true") boolean asc,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setUsuarioNumero(tokenUser.getNumber());
-		}
-
-		Specification<Permiso> spec = Specification
-				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
-				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
-				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
-				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
-				.and(dto.getDiaDesde() == null ? null
-						: specifications.diaDesde(
-								dto.getDiaDesde()))
-				.and(dto.getDiaHasta() == null ? null
-						: specifications.diaHasta(
-								dto.getDiaHasta()))
-				.and(dto.getHoraInicioDesde() == null ? null
-						: specifications.horaInicioDesde(
-								dto.getHoraInicioDesde()))
-				.and(dto.getHoraInicioHasta() == null ? null
-						: specifications.horaInicioHasta(
-								dto.getHoraInicioHasta()))
-				.and(dto.getHoraFinDesde() == null ? null
-						: specifications.horaFinDesde(
-								dto.getHoraFinDesde()))
-				.and(dto.getHoraFinHasta() == null ? null
-						: specifications.horaFinHasta(
-								dto.getHoraFinHasta()))
-				.and(dto.getDescripcion() == null ? null
-						: specifications.descripcionContains(
-								dto.getDescripcion()))
-				.and(dto.getEstado() == null ? null
-						: specifications.estadoContains(
-								dto.getEstado()))
-//				.and(dto.getAprobado() == null ? null
-//						: specifications.isAprobada(
-//								dto.getAprobado()))
-		;
+		Specification<Permiso> spec = propios(spec(dto), token, specifications::usuarioId);
 
 		Page<Permiso> entities = service.pagesAndSpec(
 				spec,
-				PageRequest.of(page, size, Sort.by(order)));
-
-		if (!asc)
-			entities = service.pagesAndSpec(
-					spec,
-					PageRequest.of(page, size, Sort.by(order).descending()));
+				pageable(page, size, order, asc));
 
 //		Page<VacacionesDto> entitiesDto = entities
 //				.map(usu -> dtoConverter.inverseTransform(usu));
@@ -202,30 +155,66 @@ public class PermisosController
 
 	}
 
+	@ApiOperation("Obtiene una página filtrada a partir del cursor de la anterior, sin contar el total salvo que se pida")
+	@PostMapping("/seekFiltered")
+	public ResponseEntity<?> seekDtoSpec(
+			@RequestBody PermisoDtoFilter dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String order,
+			@RequestParam(defaultValue = "true") boolean asc,
+			@RequestParam(defaultValue = "false") boolean total,
+			@RequestHeader("authorization") String token) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(service.seekAndSpec(propios(spec(dto), token, specifications::usuarioId), orden(order), asc, cursor, size, total));
+	}
+
 	@ApiOperation("Obtiene una lista filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/listFiltered")
 	public ResponseEntity<List<Permiso>> filteredList(
 			@RequestBody PermisoDtoFilter dto,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setUsuarioNumero(tokenUser.getNumber());
-		}
+		Specification<Permiso> spec = propios(spec(dto), token, specifications::usuarioId);
+
+		List<Permiso> entities = service.filterAndList(spec);
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(entities);
+
+	}
+
+	@ApiOperation("Obtiene el número de permisos de los últimos 12 meses")
+	@GetMapping("/count")
+	public ResponseEntity<?> countLast12Months() {
+		ChartDataDto result = service.numberOfPermisosLast12Months();
+		return ResponseEntity.ok(result);
+	}
 
-		Specification<Permiso> spec = Specification
+	@ApiOperation("Obtiene el número de permisos por usuario de los últimos 12 meses")
+	@GetMapping("/count/users")
+	public ResponseEntity<?> countUsersLast12Months() {
+		List<IUsuarioDtoEstadistica> result = service.numberOfPermisosPerUserLast12Months();
+		return ResponseEntity.ok(result);
+	}
+
+	private Specification<Permiso> spec(PermisoDtoFilter dto) {
+		return Specification
 				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
+						: specifications.nombreUsuario(
+								dto.getUsuarioNombre(), dto.getModo()))
 				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
+						: specifications.numeroUsuario(
+								dto.getUsuarioNumero(), dto.getModo()))
 				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
+						: specifications.dniUsuario(
+								dto.getUsuarioDni(), dto.getModo()))
 				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
+						: specifications.emailUsuario(
+								dto.getUsuarioEmail(), dto.getModo()))
 				.and(dto.getDiaDesde() == null ? null
 						: specifications.diaDesde(
 								dto.getDiaDesde()))
@@ -254,27 +243,5 @@ public class PermisosController
 //						: specifications.isAprobada(
 //								dto.getAprobado()))
 		;
-
-		List<Permiso> entities = service.filterAndList(spec);
-
-		return ResponseEntity
-				.status(HttpStatus.OK)
-				.body(entities);
-
 	}
-
-	@ApiOperation("Obtiene el número de permisos de los últimos 12 meses")
-	@GetMapping("/count")
-	public ResponseEntity<?> countLast12Months() {
-		ChartDataDto result = service.numberOfPermisosLast12Months();
-		return ResponseEntity.ok(result);
-	}
-
-	@ApiOperation("Obtiene el número de permisos por usuario de los últimos 12 meses")
-	@GetMapping("/count/users")
-	public ResponseEntity<?> countUsersLast12Months() {
-		List<IUsuarioDtoEstadistica> result = service.numberOfPermisosPerUserLast12Months();
-		return ResponseEntity.ok(result);
-	}
-
 }
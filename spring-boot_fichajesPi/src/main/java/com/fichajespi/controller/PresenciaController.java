@@ -0,0 +1,55 @@
+package com.fichajespi.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fichajespi.dto.entity.Mensaje;
+import com.fichajespi.dto.entity.PresenciaDto;
+import com.fichajespi.dto.entity.PresenciaResumenDto;
+import com.fichajespi.presencia.RegistroPresencias;
+import com.fichajespi.service.common.PaginacionNoValidaException;
+
+import io.swagger.annotations.ApiOperation;
+
+@RestController
+@RequestMapping("/presence")
+public class PresenciaController {
+
+	@Autowired
+	RegistroPresencias registro;
+
+	@ApiOperation("Obtiene una lista paginada de los empleados presentes, ordenada por nombre, sin consultar la base de datos")
+	@GetMapping
+	public ResponseEntity<Page<PresenciaDto>> presentes(
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "20") int size) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(registro.presentes(page, size));
+	}
+
+	@ApiOperation("Obtiene el número de empleados presentes y ausentes")
+	@GetMapping("/count")
+	public ResponseEntity<PresenciaResumenDto> resumen() {
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(registro.resumen());
+	}
+
+	// Página o tamaño de página no válidos
+	@ExceptionHandler(PaginacionNoValidaException.class)
+	public ResponseEntity<Mensaje> peticionNoValida(PaginacionNoValidaException e) {
+		return ResponseEntity
+				.status(HttpStatus.BAD_REQUEST)
+				.body(new Mensaje(e.getMessage()));
+	}
+
+}
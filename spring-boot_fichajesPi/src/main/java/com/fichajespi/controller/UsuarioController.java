@@ -1,11 +1,10 @@
 package com.fichajespi.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,9 +19,11 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fichajespi.busqueda.BuscadorUsuarios;
 import com.fichajespi.controller.common.CommonController;
 import com.fichajespi.dto.converter.UsuarioDtoConverter;
 import com.fichajespi.dto.entity.Mensaje;
+import com.fichajespi.dto.entity.UsuarioBusquedaDto;
 import com.fichajespi.dto.entity.UsuarioDto;
 import com.fichajespi.dto.entity.UsuarioDtoEdit;
 import com.fichajespi.dto.entity.UsuarioDtoEditPassword;
@@ -40,12 +41,22 @@ import io.swagger.annotations.ApiOperation;
 public class UsuarioController
 		extends CommonController<Usuario, UsuarioService> {
 
+	private static final Set<String> ORDENABLES = Set.of(
+			"id", "nombreEmpleado", "email", "numero", "dni", "diasVacaciones", "horasGeneradas", "enVacaciones", "deBaja", "working");
+
 	@Autowired
 	UsuarioDtoConverter dtoConverter;
 	@Autowired
 	JwtProvider jwtProvider;
 	@Autowired
 	UsuarioSpecifications specifications;
+	@Autowired
+	BuscadorUsuarios buscador;
+
+	@Override
+	protected Set<String> ordenables() {
+		return ORDENABLES;
+	}
 
 	@ApiOperation("Obtiene una lista paginada y filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/pagesFiltered")
@@ -56,49 +67,11 @@ public class UsuarioController
 			@RequestParam(defaultValue = "id") String order,
 			@RequestParam(defaultValue = "true") boolean asc) {
 
-		Specification<Usuario> spec = Specification
-				.where(dto.getNombreEmpleado() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getNombreEmpleado()))
-				.and(dto.getEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getEmail()))
-				.and(dto.getNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getNumero()))
-				.and(dto.getDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getDni()))
-				.and(dto.getWorking() == null ? null
-						: specifications.isWorking(
-								dto.getWorking()))
-				.and(dto.getEnVacaciones() == null ? null
-						: specifications.isEnVacaciones(
-								dto.getEnVacaciones()))
-				.and(dto.getDeBaja() == null ? null
-						: specifications.isDeBaja(
-								dto.getDeBaja()))
-				.and(dto.getDiasVacacionesDesde() == null ? null
-						: specifications.diasDesde(
-								dto.getDiasVacacionesDesde()))
-				.and(dto.getDiasVacacionesHasta() == null ? null
-						: specifications.diasHasta(
-								dto.getDiasVacacionesHasta()))
-				.and(dto.getHorasGeneradasDesde() == null ? null
-						: specifications.horasDesde(
-								dto.getHorasGeneradasDesde()))
-				.and(dto.getHorasGeneradasHasta() == null ? null
-						: specifications.horasHasta(
-								dto.getHorasGeneradasHasta()));
+		Specification<Usuario> spec = spec(dto);
 
 		Page<Usuario> entities = service.pagesAndSpec(
 				spec,
-				PageRequest.of(page, size, Sort.by(order)));
-
-		if (!asc)
-			entities = service.pagesAndSpec(
-					spec,
-					PageRequest.of(page, size, Sort.by(order).descending()));
+				pageable(page, size, order, asc));
 
 		Page<UsuarioDto> entitiesDto = entities
 				.map(usu -> dtoConverter.inverseTransform(usu));
@@ -109,44 +82,38 @@ public class UsuarioController
 
 	}
 
+	@ApiOperation("Obtiene una página filtrada a partir del cursor de la anterior, sin contar el total salvo que se pida")
+	@PostMapping("/seekFiltered")
+	public ResponseEntity<?> seekDtoSpec(
+			@RequestBody UsuarioDtoFilter dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String order,
+			@RequestParam(defaultValue = "true") boolean asc,
+			@RequestParam(defaultValue = "false") boolean total) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(service.seekAndSpec(spec(dto), orden(order), asc, cursor, size, total)
+						.map(usu -> dtoConverter.inverseTransform(usu)));
+	}
+
+	@ApiOperation("Busca empleados por nombre, número, DNI o email para los selectores de usuario, sin consultar la base de datos")
+	@GetMapping("/search")
+	public ResponseEntity<List<UsuarioBusquedaDto>> search(
+			@RequestParam String q,
+			@RequestParam(defaultValue = "10") int size) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(buscador.buscar(q, size));
+	}
+
 	@ApiOperation("Obtiene una lista filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/listFiltered")
 	public ResponseEntity<List<Usuario>> filteredList(@RequestBody UsuarioDtoFilter dto) {
 
-		Specification<Usuario> spec = Specification
-				.where(dto.getNombreEmpleado() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getNombreEmpleado()))
-				.and(dto.getEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getEmail()))
-				.and(dto.getNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getNumero()))
-				.and(dto.getDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getDni()))
-				.and(dto.getWorking() == null ? null
-						: specifications.isWorking(
-								dto.getWorking()))
-				.and(dto.getEnVacaciones() == null ? null
-						: specifications.isEnVacaciones(
-								dto.getEnVacaciones()))
-				.and(dto.getDeBaja() == null ? null
-						: specifications.isDeBaja(
-								dto.getDeBaja()))
-				.and(dto.getDiasVacacionesDesde() == null ? null
-						: specifications.diasDesde(
-								dto.getDiasVacacionesDesde()))
-				.and(dto.getDiasVacacionesHasta() == null ? null
-						: specifications.diasHasta(
-								dto.getDiasVacacionesHasta()))
-				.and(dto.getHorasGeneradasDesde() == null ? null
-						: specifications.horasDesde(
-								dto.getHorasGeneradasDesde()))
-				.and(dto.getHorasGeneradasHasta() == null ? null
-						: specifications.horasHasta(
-								dto.getHorasGeneradasHasta()));
+		Specification<Usuario> spec = spec(dto);
 
 		List<Usuario> entities = service.filterAndList(spec);
 
@@ -224,4 +191,40 @@ public class UsuarioController
 		}
 	}
 
+	private Specification<Usuario> spec(UsuarioDtoFilter dto) {
+		return Specification
+				.where(dto.getNombreEmpleado() == null ? null
+						: specifications.nombreUsuario(
+								dto.getNombreEmpleado(), dto.getModo()))
+				.and(dto.getEmail() == null ? null
+						: specifications.emailUsuario(
+								dto.getEmail(), dto.getModo()))
+				.and(dto.getNumero() == null ? null
+						: specifications.numeroUsuario(
+								dto.getNumero(), dto.getModo()))
+				.and(dto.getDni() == null ? null
+						: specifications.dniUsuario(
+								dto.getDni(), dto.getModo()))
+				.and(dto.getWorking() == null ? null
+						: specifications.isWorking(
+								dto.getWorking()))
+				.and(dto.getEnVacaciones() == null ? null
+						: specifications.isEnVacaciones(
+								dto.getEnVacaciones()))
+				.and(dto.getDeBaja() == null ? null
+						: specifications.isDeBaja(
+								dto.getDeBaja()))
+				.and(dto.getDiasVacacionesDesde() == null ? null
+						: specifications.diasDesde(
+								dto.getDiasVacacionesDesde()))
+				.and(dto.getDiasVacacionesHasta() == null ? null
+						: specifications.diasHasta(
+								dto.getDiasVacacionesHasta()))
+				.and(dto.getHorasGeneradasDesde() == null ? null
+						: specifications.horasDesde(
+								dto.getHorasGeneradasDesde()))
+				.and(dto.getHorasGeneradasHasta() == null ? null
+						: specifications.horasHasta(
+								dto.getHorasGeneradasHasta()));
+	}
 }
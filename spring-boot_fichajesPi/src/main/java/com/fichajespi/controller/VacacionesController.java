@@ -1,11 +1,10 @@
 package com.fichajespi.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -27,8 +26,6 @@ import com.fichajespi.dto.entity.VacacionesDtoFilter;
 import com.fichajespi.entity.Vacaciones;
 import com.fichajespi.entity.enums.EstadosPeticion;
 import com.fichajespi.mail.EmailService;
-import com.fichajespi.security.entity.RrhhDto;
-import com.fichajespi.security.service.GetInfoFromToken;
 import com.fichajespi.service.VacacionesService;
 import com.fichajespi.specifications.VacacionesSpecifications;
 
@@ -40,14 +37,15 @@ import io.swagger.annotations.ApiOperation;
 public class VacacionesController
 		extends CommonController<Vacaciones, VacacionesService> {
 
+	private static final Set<String> ORDENABLES = Set.of(
+			"id", "inicio", "fin", "estado", "consumidas", "usuarioNombreEmpleado", "usuarioNumero");
+
 	@Autowired
 	VacacionesDtoConverter dtoConverter;
 	@Autowired
 	EmailService emailService;
 	@Autowired
 	VacacionesSpecifications specifications;
-	@Autowired
-	GetInfoFromToken getInfoFromToken;
 
 	@PostMapping("/create")
 	public ResponseEntity<?> newVacaciones(@RequestBody VacacionesDto dto) {
@@ -129,6 +127,11 @@ public class VacacionesController
 //			return ResponseEntity.ok(result);
 //	}
 
+	@Override
+	protected Set<String> ordenables() {
+		return ORDENABLES;
+	}
+
 	@ApiOperation("Obtiene una lista paginada y filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/pagesFiltered")
 	public ResponseEntity<Page<Vacaciones>> pageDtoSpec(
@@ -139,54 +142,11 @@ public class VacacionesController
 			@RequestParam(defaultValue = "true") boolean asc,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setUsuarioNumero(tokenUser.getNumber());
-		}
-
-		Specification<Vacaciones> spec = Specification
-				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
-				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
-				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
-				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
-				.and(dto.getConsumidas() == null ? null
-						: specifications.areConsumidas(
-								dto.getConsumidas()))
-//				.and(dto.getAprobado() == null ? null
-//						: specifications.areAprobadas(
-//								dto.getAprobado()))
-				.and(dto.getEstado() == null ? null
-						: specifications.estadoContains(
-								dto.getEstado()))
-				.and(dto.getInicioDesde() == null ? null
-						: specifications.inicioDesde(
-								dto.getInicioDesde()))
-				.and(dto.getInicioHasta() == null ? null
-						: specifications.inicioHasta(
-								dto.getInicioHasta()))
-				.and(dto.getFinDesde() == null ? null
-						: specifications.inicioDesde(
-								dto.getFinDesde()))
-				.and(dto.getFinHasta() == null ? null
-						: specifications.inicioHasta(
-								dto.getFinHasta()));
+		Specification<Vacaciones> spec = propios(spec(dto), token, specifications::usuarioId);
 
 		Page<Vacaciones> entities = service.pagesAndSpec(
 				spec,
-				PageRequest.of(page, size, Sort.by(order)));
-
-		if (!asc)
-			entities = service.pagesAndSpec(
-					spec,
-					PageRequest.of(page, size, Sort.by(order).descending()));
+				pageable(page, size, order, asc));
 
 //		Page<VacacionesDto> entitiesDto = entities
 //				.map(usu -> dtoConverter.inverseTransform(usu));
@@ -197,30 +157,41 @@ public class VacacionesController
 
 	}
 
+	@ApiOperation("Obtiene una página filtrada a partir del cursor de la anterior, sin contar el total salvo que se pida")
+	@PostMapping("/seekFiltered")
+	public ResponseEntity<?> seekDtoSpec(
+			@RequestBody VacacionesDtoFilter dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String order,
+			@RequestParam(defaultValue = "true") boolean asc,
+			@RequestParam(defaultValue = "false") boolean total,
+			@RequestHeader("authorization") String token) {
+
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.body(service.seekAndSpec(propios(spec(dto), token, specifications::usuarioId), orden(order), asc, cursor, size, total));
+	}
+
 	@ApiOperation("Obtiene una lista filtrada de objetos, el filtro se realiza a través de un DTO de ejemplo")
 	@PostMapping("/listFiltered")
 	public ResponseEntity<List<Vacaciones>> filteredList(
 			@RequestBody VacacionesDtoFilter dto,
 			@RequestHeader("authorization") String token) {
 
-		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
-		if (tokenUser.isRrhh()) {
-			dto.setUsuarioNumero(tokenUser.getNumber());
-		}
-
 		Specification<Vacaciones> spec = Specification
 				.where(dto.getUsuarioNombre() == null ? null
-						: specifications.nombreUsuarioContains(
-								dto.getUsuarioNombre()))
+						: specifications.nombreUsuario(
+								dto.getUsuarioNombre(), dto.getModo()))
 				.and(dto.getUsuarioNumero() == null ? null
-						: specifications.numeroUsuarioContains(
-								dto.getUsuarioNumero()))
+						: specifications.numeroUsuario(
+								dto.getUsuarioNumero(), dto.getModo()))
 				.and(dto.getUsuarioDni() == null ? null
-						: specifications.dniUsuarioContains(
-								dto.getUsuarioDni()))
+						: specifications.dniUsuario(
+								dto.getUsuarioDni(), dto.getModo()))
 				.and(dto.getUsuarioEmail() == null ? null
-						: specifications.emailUsuarioContains(
-								dto.getUsuarioEmail()))
+						: specifications.emailUsuario(
+								dto.getUsuarioEmail(), dto.getModo()))
 				.and(dto.getConsumidas() == null ? null
 						: specifications.areConsumidas(
 								dto.getConsumidas()))
@@ -240,11 +211,48 @@ public class VacacionesController
 						: specifications.inicioHasta(
 								dto.getFinHasta()));
 
-		List<Vacaciones> entities = service.filterAndList(spec);
+		List<Vacaciones> entities = service.filterAndList(propios(spec, token, specifications::usuarioId));
 
 		return ResponseEntity
 				.status(HttpStatus.OK)
 				.body(entities);
 
 	}
+
+	private Specification<Vacaciones> spec(VacacionesDtoFilter dto) {
+		return Specification
+				.where(dto.getUsuarioNombre() == null ? null
+						: specifications.nombreUsuario(
+								dto.getUsuarioNombre(), dto.getModo()))
+				.and(dto.getUsuarioNumero() == null ? null
+						: specifications.numeroUsuario(
+								dto.getUsuarioNumero(), dto.getModo()))
+				.and(dto.getUsuarioDni() == null ? null
+						: specifications.dniUsuario(
+								dto.getUsuarioDni(), dto.getModo()))
+				.and(dto.getUsuarioEmail() == null ? null
+						: specifications.emailUsuario(
+								dto.getUsuarioEmail(), dto.getModo()))
+				.and(dto.getConsumidas() == null ? null
+						: specifications.areConsumidas(
+								dto.getConsumidas()))
+//				.and(dto.getAprobado() == null ? null
+//						: specifications.areAprobadas(
+//								dto.getAprobado()))
+				.and(dto.getEstado() == null ? null
+						: specifications.estadoContains(
+								dto.getEstado()))
+				.and(dto.getInicioDesde() == null ? null
+						: specifications.inicioDesde(
+								dto.getInicioDesde()))
+				.and(dto.getInicioHasta() == null ? null
+						: specifications.inicioHasta(
+								dto.getInicioHasta()))
+				.and(dto.getFinDesde() == null ? null
+						: specifications.inicioDesde(
+								dto.getFinDesde()))
+				.and(dto.getFinHasta() == null ? null
+						: specifications.inicioHasta(
+								dto.getFinHasta()));
+	}
 }
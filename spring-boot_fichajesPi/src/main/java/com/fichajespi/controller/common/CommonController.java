@@ -1,12 +1,27 @@
 package com.fichajespi.controller.common;
 
+import java.util.Set;
+import java.util.function.Function;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 
+import com.fichajespi.dto.entity.Mensaje;
+import com.fichajespi.security.entity.RrhhDto;
+import com.fichajespi.security.service.GetInfoFromToken;
 import com.fichajespi.service.common.CommonService;
+import com.fichajespi.service.common.PaginacionNoValidaException;
 
 import io.swagger.annotations.ApiOperation;
 
@@ -14,6 +29,8 @@ public class CommonController<E, S extends CommonService<E>> {
 
 	@Autowired
 	protected S service;
+	@Autowired
+	protected GetInfoFromToken getInfoFromToken;
 
 //
 //	@ApiOperation("Devuelve una lista con paginación de los objetos")
@@ -34,6 +51,49 @@ public class CommonController<E, S extends CommonService<E>> {
 //
 //	}
 
+	// Columnas por las que se puede ordenar, en el formato de Sort.by
+	// ("usuarioNombreEmpleado" es usuario.nombreEmpleado)
+	protected Set<String> ordenables() {
+		return Set.of("id");
+	}
+
+	// Un solo Pageable con la dirección ya puesta: una consulta de datos y
+	// como mucho un count, también en orden descendente
+	protected Pageable pageable(int page, int size, String order, boolean asc) {
+		if (page < 0 || size < 1)
+			throw new PaginacionNoValidaException("Página o tamaño de página no válidos");
+		return PageRequest.of(page, size, asc ? Direction.ASC : Direction.DESC, orden(order));
+	}
+
+	// La columna de orden como ruta de atributos, si está entre las ordenables
+	protected String orden(String order) {
+		if (!ordenables().contains(order))
+			throw new PaginacionNoValidaException("No se puede ordenar por " + order);
+		return PropertyPath.from(order, getEntityClass()).toDotPath();
+	}
+
+	// Sin RRHH cada uno ve solo lo suyo: por el usuario_id del token, que
+	// usa el índice, y no por un LIKE del número que también casa con otros
+	protected Specification<E> propios(Specification<E> spec, String token,
+			Function<Long, Specification<E>> usuarioId) {
+		RrhhDto tokenUser = getInfoFromToken.rrhhInfo(token);
+		return tokenUser.isRrhh()
+				? spec.and(usuarioId.apply(tokenUser.getId()))
+				: spec;
+	}
+
+	// Orden, página o cursor no válidos
+	@ExceptionHandler(PaginacionNoValidaException.class)
+	public ResponseEntity<Mensaje> peticionNoValida(PaginacionNoValidaException e) {
+		return ResponseEntity
+				.status(HttpStatus.BAD_REQUEST)
+				.body(new Mensaje(e.getMessage()));
+	}
+
+	private Class<?> getEntityClass() {
+		return GenericTypeResolver.resolveTypeArguments(getClass(), CommonController.class)[0];
+	}
+
 	@ApiOperation("Obtiene el objeto con el id indicado")
 	@GetMapping("/{id}")
 	public ResponseEntity<?> getById(@PathVariable Long id) {
@@ -1,10 +1,5 @@
 package com.fichajespi.dto.converter;
 
-import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -12,8 +7,7 @@ import com.fichajespi.dto.entity.FichajeDto;
 import com.fichajespi.dto.entity.FichajeDtoReqRes;
 import com.fichajespi.entity.Fichaje;
 import com.fichajespi.entity.Usuario;
-import com.fichajespi.entity.enums.TipoFichaje;
-import com.fichajespi.service.FichajeService;
+import com.fichajespi.service.FicharService;
 import com.fichajespi.service.UsuarioService;
 
 @Component
@@ -22,7 +16,7 @@ public class FichajeDtoConverter {
 	@Autowired
 	private UsuarioService service;
 	@Autowired
-	private FichajeService fichajeService;
+	private FicharService ficharService;
 
 	public FichajeDto inverseTransform(Fichaje f) {
 
@@ -45,44 +39,7 @@ public class FichajeDtoConverter {
 	}
 
 	public FichajeDtoReqRes fichar(FichajeDtoReqRes fichajeDto) {
-
-		// Usar UTC para consistencia global
-		fichajeDto.setHora(LocalTime.now(ZoneOffset.UTC));
-		fichajeDto.setDia(LocalDate.now(ZoneOffset.UTC));
-
-		Fichaje fichaje = transform(fichajeDto);
-
-		Usuario usuario = fichaje.getUsuario();
-		if (usuario != null) {
-			boolean workingState = usuario.getWorking();
-			if (workingState)
-				fichaje.setTipo(TipoFichaje.SALIDA.toString());
-//				fichaje.setTipo("SALIDA");
-			else
-				fichaje.setTipo(TipoFichaje.ENTRADA.toString());
-//				fichaje.setTipo("ENTRADA");
-			usuario.setWorking(!workingState);
-			StringBuilder sb = new StringBuilder();
-			sb.append(fichaje.getDia());
-			sb.append(" ");
-			DateTimeFormatter myTime = DateTimeFormatter.ofPattern("HH:mm:ss");
-			sb.append(myTime.format(fichaje.getHora()));
-			sb.append(" UTC - ");  // Indicar que la hora es UTC
-			sb.append(fichaje.getTipo());
-			usuario.setUltimoFichaje(sb.toString());
-			service.save(usuario);
-			fichaje.setUsuario(usuario);
-			fichajeService.save(fichaje);
-			fichajeDto
-					.setNombreUsuario(fichaje.getUsuario().getNombreEmpleado());
-			fichajeDto.setHora(fichaje.getHora());
-			fichajeDto.setTipo(
-					fichaje.getUsuario().getWorking() ? "entrada" : "salida");
-
-			return fichajeDto;
-		}
-		return null;
-
+		return ficharService.fichar(fichajeDto);
 	}
 
 }
@@ -0,0 +1,35 @@
+package com.fichajespi.dto.entity;
+
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalisisResumenDto {
+
+	@JsonFormat(pattern = "yyyy-MM-dd")
+	private LocalDate dia;
+	private int usuarios;
+	private int incidencias;
+	private int fichajesCerrados;
+	private int bloquesFallidos;
+	// Ya estaba analizado: no se repiten avisos ni descuentos de vacaciones
+	private boolean repetido;
+	// Otra ejecución estaba analizando el mismo día
+	private boolean omitido;
+	// Tiempo de cada fase sumado entre bloques, en milisegundos
+	private long msCarga;
+	private long msEvaluacion;
+	private long msEscritura;
+	private long msNotificacion;
+	private long msTotal;
+
+}
@@ -5,6 +5,8 @@ import java.time.LocalTime;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
+import com.fichajespi.specifications.common.Coincidencia;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -34,4 +36,7 @@ public class FichajeDto {
 	private String tipo;
 	private String origen;
 
+	// Cómo se comparan los campos del usuario; sin indicar, CONTIENE
+	private Coincidencia modo;
+
 }
@@ -0,0 +1,29 @@
+package com.fichajespi.dto.entity;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FichajeLoteDto {
+
+	// Hora y día del terminal, en UTC
+	@JsonFormat(pattern = "HH:mm:ss")
+	private LocalTime hora;
+	@JsonFormat(pattern = "dd-MM-yyyy")
+	private LocalDate dia;
+	private String numeroUsuario;
+	private String origen;
+	// Clave de idempotencia generada por el terminal
+	private String clave;
+
+}
@@ -0,0 +1,20 @@
+package com.fichajespi.dto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FichajeLoteResultado {
+
+	private String clave;
+	private String numeroUsuario;
+	private String estado;
+	private String tipo;
+	private String mensaje;
+
+}
@@ -0,0 +1,30 @@
+package com.fichajespi.dto.entity;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FichajeStreamDto {
+
+	private Long id;
+	// Día y hora en UTC
+	@JsonFormat(pattern = "yyyy-MM-dd")
+	private LocalDate dia;
+	@JsonFormat(pattern = "HH:mm:ss")
+	private LocalTime hora;
+	private String tipo;
+	private String origen;
+	private String numeroUsuario;
+	private String nombreUsuario;
+
+}
@@ -0,0 +1,28 @@
+package com.fichajespi.dto.entity;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaCursor<E> {
+	private List<E> content;
+	private int size;
+	// Cursor de la página siguiente, null en la última
+	private String siguiente;
+	// Solo si se pide: exacto hasta paginacion.total.max, a partir de ahí es el mínimo
+	private Long total;
+	private Boolean totalExacto;
+
+	public <D> PaginaCursor<D> map(Function<? super E, ? extends D> conversor) {
+		return new PaginaCursor<D>(
+				content.stream().map(conversor).collect(Collectors.toList()),
+				size, siguiente, total, totalExacto);
+	}
+}
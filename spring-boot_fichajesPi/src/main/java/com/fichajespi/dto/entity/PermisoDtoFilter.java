@@ -5,6 +5,8 @@ import java.time.LocalTime;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
+import com.fichajespi.specifications.common.Coincidencia;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -34,4 +36,7 @@ public class PermisoDtoFilter {
 	private String usuarioNombre;
 	private String usuarioDni;
 	private String usuarioEmail;
+
+	// Cómo se comparan los campos del usuario; sin indicar, CONTIENE
+	private Coincidencia modo;
 }
@@ -0,0 +1,26 @@
+package com.fichajespi.dto.entity;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenciaDto {
+
+	private Long usuarioId;
+	private String numero;
+	private String nombreEmpleado;
+	private String tipo;
+	// Instante del último fichaje, en UTC
+	@JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+	private LocalDateTime desde;
+
+}
@@ -0,0 +1,17 @@
+package com.fichajespi.dto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenciaResumenDto {
+
+	private int presentes;
+	private int ausentes;
+
+}
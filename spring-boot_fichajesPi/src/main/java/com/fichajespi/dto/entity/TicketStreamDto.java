@@ -0,0 +1,12 @@
+package com.fichajespi.dto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TicketStreamDto {
+	private String ticket;
+}
@@ -0,0 +1,20 @@
+package com.fichajespi.dto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsuarioBusquedaDto {
+
+	private Long id;
+	private String numero;
+	private String nombreEmpleado;
+	private String dni;
+	private String email;
+
+}
@@ -1,5 +1,7 @@
 package com.fichajespi.dto.entity;
 
+import com.fichajespi.specifications.common.Coincidencia;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,4 +30,7 @@ public class UsuarioDtoFilter {
 
 	private Boolean working;
 
+	// Cómo se comparan los campos del usuario; sin indicar, CONTIENE
+	private Coincidencia modo;
+
 }
@@ -4,6 +4,8 @@ import java.time.LocalDate;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
+import com.fichajespi.specifications.common.Coincidencia;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -30,4 +32,7 @@ public class VacacionesDtoFilter {
 	private String usuarioDni;
 	private String usuarioEmail;
 
+	// Cómo se comparan los campos del usuario; sin indicar, CONTIENE
+	private Coincidencia modo;
+
 }
@@ -0,0 +1,13 @@
+package com.fichajespi.dto.interfaces;
+
+import java.time.LocalTime;
+
+public interface IFichajeAnalisis {
+
+	Long getId();
+
+	Long getUsuarioId();
+
+	LocalTime getHora();
+
+}
@@ -0,0 +1,9 @@
+package com.fichajespi.dto.interfaces;
+
+public interface IIncidenciaAnalisis {
+
+	Long getUsuarioId();
+
+	String getResumen();
+
+}
@@ -0,0 +1,13 @@
+package com.fichajespi.dto.interfaces;
+
+import java.time.LocalTime;
+
+public interface IPermisoAnalisis {
+
+	Long getUsuarioId();
+
+	LocalTime getHoraInicio();
+
+	LocalTime getHoraFin();
+
+}
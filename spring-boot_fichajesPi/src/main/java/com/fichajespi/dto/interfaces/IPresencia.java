@@ -0,0 +1,17 @@
+package com.fichajespi.dto.interfaces;
+
+import java.time.LocalDateTime;
+
+public interface IPresencia {
+
+	Long getUsuarioId();
+
+	String getNumero();
+
+	String getNombreEmpleado();
+
+	String getUltimoTipo();
+
+	LocalDateTime getUltimoFichajeEn();
+
+}
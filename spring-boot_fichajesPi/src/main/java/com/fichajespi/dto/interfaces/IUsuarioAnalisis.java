@@ -0,0 +1,17 @@
+package com.fichajespi.dto.interfaces;
+
+public interface IUsuarioAnalisis {
+
+	Long getId();
+
+	String getNumero();
+
+	String getNombreEmpleado();
+
+	String getEmail();
+
+	Boolean getEnVacaciones();
+
+	Boolean getDeBaja();
+
+}
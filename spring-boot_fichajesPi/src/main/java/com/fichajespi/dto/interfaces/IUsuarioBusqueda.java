@@ -0,0 +1,15 @@
+package com.fichajespi.dto.interfaces;
+
+public interface IUsuarioBusqueda {
+
+	Long getId();
+
+	String getNumero();
+
+	String getNombreEmpleado();
+
+	String getDni();
+
+	String getEmail();
+
+}
@@ -0,0 +1,15 @@
+package com.fichajespi.dto.interfaces;
+
+public interface IUsuarioFichaje {
+
+	Long getId();
+
+	String getNumero();
+
+	String getNombreEmpleado();
+
+	Boolean getWorking();
+
+	Long getVersion();
+
+}
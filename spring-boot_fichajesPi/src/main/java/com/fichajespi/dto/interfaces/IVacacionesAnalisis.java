@@ -0,0 +1,15 @@
+package com.fichajespi.dto.interfaces;
+
+import java.time.LocalDate;
+
+public interface IVacacionesAnalisis {
+
+	Long getId();
+
+	Long getUsuarioId();
+
+	LocalDate getInicio();
+
+	LocalDate getFin();
+
+}
@@ -0,0 +1,47 @@
+package com.fichajespi.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Día ya analizado por el análisis nocturno (marca de agua).
+ *
+ * Al arrancar y cada noche se analizan los días que falten desde el
+ * último registrado; un día que se vuelve a analizar no repite
+ * incidencias, avisos ni descuentos de vacaciones.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "analisis_dias")
+public class AnalisisDia {
+
+	@Id
+	@JsonFormat(pattern = "yyyy-MM-dd")
+	private LocalDate dia;
+
+	@Column(name = "analizado_en")
+	private LocalDateTime analizadoEn;
+
+	private Integer usuarios;
+
+	private Integer incidencias;
+
+	@Column(name = "duracion_ms")
+	private Long duracionMs;
+
+}
@@ -7,8 +7,10 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -26,7 +28,8 @@ import lombok.NoArgsConstructor;
 public class Calendario {
 
 	@Id
-	@GeneratedValue()
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "calendarios_seq")
+	@SequenceGenerator(name = "calendarios_seq", sequenceName = "calendarios_seq", allocationSize = 50)
 	private Long id;
 
 	@NotNull
@@ -7,9 +7,11 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
@@ -28,7 +30,8 @@ import lombok.NoArgsConstructor;
 public class DiaLaborable {
 
 	@Id
-	@GeneratedValue()
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "dias_laborables_seq")
+	@SequenceGenerator(name = "dias_laborables_seq", sequenceName = "dias_laborables_seq", allocationSize = 50)
 	private Long id;
 
 //	@NotNull
@@ -0,0 +1,89 @@
+package com.fichajespi.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Email pendiente de envío (bandeja de salida).
+ *
+ * Se guarda en la misma transacción que lo que lo origina y lo envía
+ * DespachadorEmails; al enviarse se borra. Los destinatarios de RRHH no se
+ * guardan: se resuelven al enviar, una vez por lote.
+ *
+ * Los emails de un mismo envío (una ejecución del análisis) se retienen
+ * hasta que este termina y se mandan juntos: uno por destinatario con
+ * todas sus incidencias.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "emails_salida", indexes = {
+		@Index(name = "idx_emails_salida_pendientes", columnList = "fallido, siguiente_intento"),
+		@Index(name = "idx_emails_salida_envio", columnList = "envio") })
+public class EmailSalida {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "emails_salida_seq")
+	@SequenceGenerator(name = "emails_salida_seq", sequenceName = "emails_salida_seq", allocationSize = 50)
+	private Long id;
+
+	// Email del empleado; null si solo va a RRHH
+	private String destinatario;
+
+	@Column(name = "copia_rrhh")
+	private Boolean copiaRrhh;
+
+	private String asunto;
+
+	@Column(columnDefinition = "TEXT")
+	private String cuerpo;
+
+	private Integer intentos;
+
+	@Column(name = "siguiente_intento")
+	private LocalDateTime siguienteIntento;
+
+	// Agotados los reintentos: se conserva para revisarlo, no se vuelve a enviar
+	private Boolean fallido;
+
+	@Column(length = 500)
+	private String error;
+
+	@Column(name = "creado_en")
+	private LocalDateTime creadoEn;
+
+	// Envío agrupado al que pertenece; null si se manda suelto
+	@Column(length = 64)
+	private String envio;
+
+	public static EmailSalida nuevo(String destinatario, boolean copiaRrhh,
+			String asunto, String cuerpo) {
+		LocalDateTime ahora = LocalDateTime.now();
+		return EmailSalida.builder()
+				.destinatario(destinatario)
+				.copiaRrhh(copiaRrhh)
+				.asunto(asunto)
+				.cuerpo(cuerpo)
+				.intentos(0)
+				.siguienteIntento(ahora)
+				.fallido(false)
+				.creadoEn(ahora)
+				.build();
+	}
+
+}
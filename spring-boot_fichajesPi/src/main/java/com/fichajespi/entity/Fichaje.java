@@ -3,14 +3,19 @@ package com.fichajespi.entity;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.sun.istack.NotNull;
 
@@ -24,11 +29,12 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "fichajes")
+@Table(name = "fichajes", indexes = @Index(name = "idx_fichajes_usuario_dia_hora", columnList = "usuario_id, dia, hora"))
 public class Fichaje {
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "fichajes_seq")
+	@SequenceGenerator(name = "fichajes_seq", sequenceName = "fichajes_seq", allocationSize = 50)
 	private Long id;
 
 //	@NotNull
@@ -57,4 +63,9 @@ public class Fichaje {
 
 	@NotNull
 	private String origen;
+
+	// Clave de idempotencia de los fichajes recibidos por lotes
+	@JsonIgnore
+	@Column(unique = true, length = 64)
+	private String clave;
 }
@@ -5,10 +5,14 @@ import java.time.LocalDate;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -23,11 +27,13 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "incidencias")
+@Table(name = "incidencias", uniqueConstraints = @UniqueConstraint(name = "uk_incidencias_usuario_dia_resumen", columnNames = {
+		"usuario_id", "dia", "resumen" }), indexes = @Index(name = "idx_incidencias_dia", columnList = "dia"))
 public class Incidencia {
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "incidencias_seq")
+	@SequenceGenerator(name = "incidencias_seq", sequenceName = "incidencias_seq", allocationSize = 50)
 	private Long id;
 
 	@JsonIgnore
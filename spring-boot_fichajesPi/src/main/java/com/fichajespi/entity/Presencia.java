@@ -0,0 +1,46 @@
+package com.fichajespi.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Último fichaje de cada empleado, mantenido por el camino de fichaje.
+ *
+ * Sustituye al texto "yyyy-MM-dd HH:mm:ss UTC - TIPO" de
+ * Usuario.ultimoFichaje, que ahora se deriva de esta tabla.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "presencias", indexes = @Index(name = "idx_presencias_working_tipo", columnList = "working, last_tipo"))
+public class Presencia {
+
+	@Id
+	@Column(name = "usuario_id")
+	private Long usuarioId;
+
+	private Boolean working;
+
+	@Column(name = "last_tipo", length = 10)
+	private String ultimoTipo;
+
+	// En UTC, como el día y la hora de los fichajes
+	@Column(name = "last_punch_at")
+	private LocalDateTime ultimoFichajeEn;
+
+	@Column(name = "last_fichaje_id")
+	private Long ultimoFichajeId;
+
+}
@@ -7,14 +7,19 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotBlank;
 
+import org.hibernate.annotations.Formula;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sun.istack.NotNull;
 
@@ -31,7 +36,8 @@ import lombok.NoArgsConstructor;
 public class Usuario {
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "usuarios_seq")
+	@SequenceGenerator(name = "usuarios_seq", sequenceName = "usuarios_seq", allocationSize = 50)
 	private Long id;
 
 	@NotNull
@@ -88,8 +94,17 @@ public class Usuario {
 	@OneToMany(mappedBy = "usuario", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<Fichaje> fichajes;
 
+	// Texto "yyyy-MM-dd HH:mm:ss UTC - TIPO" derivado de presencias, solo lectura.
+	// Sin CAST(... AS CHAR): Hibernate toma CHAR por una columna y le pone el alias
+	@Formula("(SELECT CONCAT(LEFT(CONCAT(p.last_punch_at, ''), 19), ' UTC - ', p.last_tipo) FROM presencias p WHERE p.usuario_id = id)")
 	private String ultimoFichaje;
 
+	// Control de concurrencia optimista del estado de fichaje
+	@JsonIgnore
+	@Version
+	@Column(columnDefinition = "bigint default 0")
+	private Long version;
+
 	@JsonIgnore
 //	@JsonIgnoreProperties(value = { "usuario" })
 	@OneToMany(mappedBy = "usuario", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
@@ -0,0 +1,5 @@
+package com.fichajespi.entity.enums;
+
+public enum EstadosFichajeLote {
+	CREADO, DUPLICADO, RECHAZADO
+}
@@ -1,10 +1,17 @@
 package com.fichajespi.events;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.fichajespi.entity.EmailSalida;
 import com.fichajespi.entity.Incidencia;
 import com.fichajespi.entity.Usuario;
 import com.fichajespi.mail.EmailService;
@@ -18,11 +25,13 @@ public class EventSender {
 	@Autowired
 	private EmailService emailService;
 
+	@Value("${email.outbox.resumen:true}")
+	private boolean resumen;
+
+	@Transactional
 	public void createEvent(String subject, String descripcion, LocalDate dia,
 			Usuario usuario, String resumen) {
 
-		String[] destinatarios = emailService.getDestinatarios(usuario);
-
 		// Creamos la incidencia
 		Incidencia incidencia = new Incidencia();
 		incidencia.setDescripcion(descripcion);
@@ -32,7 +41,75 @@ public class EventSender {
 		incidencia.setResuelta(false);
 		incidencia.setExplicacion("");
 		incidenciaService.save(incidencia);
-		emailService.sendEmail(destinatarios, subject, descripcion);
+		emailService.encolar(Collections.singletonList(
+				EmailSalida.nuevo(usuario.getEmail(), true, subject, descripcion)));
+	}
+
+	// Incidencia sin guardar, con la misma descripción que los emails
+	public static Incidencia nuevaIncidencia(LocalDate dia, Usuario usuario,
+			String nombreEmpleado, String numero, String resumen) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("El día: " + dia);
+		sb.append("\n\nEl usuario " + nombreEmpleado);
+		sb.append(" con el número " + numero);
+		sb.append(" ha generado la siguiente incidencia");
+		sb.append(":\n\n");
+		sb.append(resumen);
+
+		Incidencia incidencia = new Incidencia();
+		incidencia.setDescripcion(sb.toString());
+		incidencia.setDia(dia);
+		incidencia.setUsuario(usuario);
+		incidencia.setResumen(resumen);
+		incidencia.setResuelta(false);
+		incidencia.setExplicacion("");
+		return incidencia;
+	}
+
+	// Incidencias del análisis nocturno: se guardan por lotes, sin repetir las
+	// que ya existen, dentro de la transacción del bloque y se notifican
+	// cuando esta se ha confirmado
+	public void createEvents(List<Incidencia> incidencias) {
+		incidenciaService.upsertAll(incidencias);
+	}
+
+	// Emails de las incidencias (al empleado y a RRHH): van a la bandeja de
+	// salida en la misma transacción que las incidencias
+	public void queueEvents(String subject, List<Incidencia> incidencias,
+			Map<Long, String> emails) {
+		queueEvents(subject, incidencias, emails, null);
+	}
+
+	// Con envío y el modo resumen activo, los emails se agrupan al terminar
+	// la ejecución: uno para RRHH y uno por empleado afectado
+	public void queueEvents(String subject, List<Incidencia> incidencias,
+			Map<Long, String> emails, String envio) {
+		if (incidencias.isEmpty())
+			return;
+		if (envio == null || !resumen) {
+			List<EmailSalida> salida = new ArrayList<>(incidencias.size());
+			for (Incidencia incidencia : incidencias)
+				salida.add(EmailSalida.nuevo(emails.get(incidencia.getUsuario().getId()),
+						true, subject, incidencia.getDescripcion()));
+			emailService.encolar(salida);
+			return;
+		}
+
+		List<EmailSalida> salida = new ArrayList<>(incidencias.size() * 2);
+		for (Incidencia incidencia : incidencias) {
+			salida.add(EmailSalida.nuevo(null, true, subject,
+					incidencia.getDescripcion()));
+			String email = emails.get(incidencia.getUsuario().getId());
+			if (email != null)
+				salida.add(EmailSalida.nuevo(email, false, subject,
+						incidencia.getDescripcion()));
+		}
+		emailService.encolarAgrupados(envio, salida);
+	}
+
+	// Fin de la ejecución: sus emails agrupados ya se pueden enviar
+	public void releaseEvents(String envio) {
+		emailService.liberar(envio);
 	}
 
 }
@@ -0,0 +1,31 @@
+package com.fichajespi.events;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Se publica por cada fichaje guardado por FicharService. Los oyentes con
+ * @TransactionalEventListener lo reciben solo si la transacción confirma.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class FichajeRegistradoEvent {
+
+	private final Long fichajeId;
+	private final Long usuarioId;
+	private final String numeroUsuario;
+	private final String nombreUsuario;
+	// Día y hora en UTC
+	private final LocalDate dia;
+	private final LocalTime hora;
+	private final String tipo;
+	private final String origen;
+	// Clave de idempotencia, solo en los fichajes que llegan por lotes
+	private final String clave;
+
+}
@@ -5,5 +5,6 @@ public class Incidencias {
 	public static final String MENOS_HORAS = "No se ha trabajado el tiempo suficiente.";
 	public static final String FICHAJE_IMPAR = "El número de fichajes es impar.";
 	public static final String AUSENCIA_NO_AUTORIZADA = "Se ha asuentado del centro de trabajo sin justificación.";
+	public static final String CIERRE_RECHAZADO = "No se ha podido cerrar el último fichaje del día.";
 	public static final String NO_ENTRA_A_TIEMPO = "El fichaje de entrada se ha realizado fuera de los límites permitidos.";
 }
@@ -0,0 +1,226 @@
+package com.fichajespi.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Diario de fichajes en un fichero proyectado en memoria.
+ *
+ * El fichero es un búfer circular de registros de tamaño fijo precedido de
+ * una cabecera con la siguiente secuencia a escribir y la siguiente a
+ * volcar en base de datos. Un fichaje se da por registrado cuando su
+ * registro y la cabecera se han forzado a disco; el volcado avanza la
+ * secuencia de volcado solo después de confirmar la transacción.
+ *
+ * Cada registro lleva un CRC, de modo que un registro a medio escribir por
+ * una caída (que nunca llegó a confirmarse al cliente) se descarta al abrir.
+ */
+public class FichajeJournal implements Closeable {
+
+	private static final int MAGIC = 0x464A524E; // "FJRN"
+	private static final int FORMATO = 1;
+
+	private static final int CABECERA = 64;
+	private static final int POS_ID = 8;
+	private static final int POS_CAPACIDAD = 16;
+	private static final int POS_ESCRITURA = 24;
+	private static final int POS_VOLCADO = 32;
+
+	static final int REGISTRO = 128;
+	static final int MAX_NUMERO = 48;
+	static final int MAX_ORIGEN = 56;
+	private static final int POS_CRC = REGISTRO - 4;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final long id;
+	private final long capacidad;
+	private long escritura;
+	private long volcado;
+
+	public FichajeJournal(Path path, long capacidadNueva) throws IOException {
+		if (path.getParent() != null)
+			Files.createDirectories(path.getParent());
+		boolean nuevo = !Files.exists(path) || Files.size(path) == 0;
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long capacidadFichero = nuevo ? capacidadNueva : leerCapacidad();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				CABECERA + capacidadFichero * REGISTRO);
+
+		if (nuevo) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMATO);
+			buffer.putLong(POS_ID, new SecureRandom().nextLong() & Long.MAX_VALUE);
+			buffer.putLong(POS_CAPACIDAD, capacidadFichero);
+			buffer.putLong(POS_ESCRITURA, 0);
+			buffer.putLong(POS_VOLCADO, 0);
+			buffer.force();
+		} else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMATO) {
+			channel.close();
+			throw new IOException("Fichero de diario no reconocido: " + path);
+		}
+
+		id = buffer.getLong(POS_ID);
+		capacidad = buffer.getLong(POS_CAPACIDAD);
+		escritura = buffer.getLong(POS_ESCRITURA);
+		volcado = buffer.getLong(POS_VOLCADO);
+		descartarIncompletos();
+	}
+
+	/**
+	 * Añade un fichaje y lo fuerza a disco. Devuelve false si el diario está
+	 * lleno o los datos no caben en un registro.
+	 */
+	public synchronized boolean append(long instante, String numero,
+			String origen) {
+		byte[] bytesNumero = numero.getBytes(StandardCharsets.UTF_8);
+		byte[] bytesOrigen = recortar(origen == null ? ""
+				: origen, MAX_ORIGEN);
+		if (bytesNumero.length > MAX_NUMERO || escritura - volcado >= capacidad)
+			return false;
+
+		ByteBuffer registro = ByteBuffer.allocate(REGISTRO);
+		registro.putLong(escritura);
+		registro.putLong(instante);
+		registro.putShort((short) bytesNumero.length);
+		registro.put(bytesNumero);
+		registro.position(18 + MAX_NUMERO);
+		registro.putShort((short) bytesOrigen.length);
+		registro.put(bytesOrigen);
+		registro.putInt(POS_CRC, crc(registro.array()));
+
+		ByteBuffer destino = buffer.duplicate();
+		destino.position(posicion(escritura));
+		destino.put(registro.array());
+		escritura++;
+		buffer.putLong(POS_ESCRITURA, escritura);
+		buffer.force();
+		return true;
+	}
+
+	/** Devuelve hasta max fichajes pendientes de volcar, en orden. */
+	public synchronized List<Entrada> pendientes(int max) {
+		List<Entrada> entradas = new ArrayList<>();
+		for (long seq = volcado; seq < escritura && entradas.size() < max; seq++)
+			entradas.add(leer(seq));
+		return entradas;
+	}
+
+	/** Marca como volcados todos los fichajes hasta seq, incluido. */
+	public synchronized void confirmar(long seq) {
+		if (seq < volcado)
+			return;
+		volcado = Math.min(seq + 1, escritura);
+		buffer.putLong(POS_VOLCADO, volcado);
+		buffer.force();
+	}
+
+	public synchronized long profundidad() {
+		return escritura - volcado;
+	}
+
+	/** Instante del fichaje pendiente más antiguo, o null si no hay. */
+	public synchronized Long instantePrimerPendiente() {
+		return volcado < escritura ? buffer.getLong(posicion(volcado) + 8) : null;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getCapacidad() {
+		return capacidad;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	private Entrada leer(long seq) {
+		byte[] registro = new byte[REGISTRO];
+		ByteBuffer origen = buffer.duplicate();
+		origen.position(posicion(seq));
+		origen.get(registro);
+
+		ByteBuffer r = ByteBuffer.wrap(registro);
+		long instante = r.getLong(8);
+		String numero = new String(registro, 18, r.getShort(16),
+				StandardCharsets.UTF_8);
+		String origenFichaje = new String(registro, 20 + MAX_NUMERO,
+				r.getShort(18 + MAX_NUMERO), StandardCharsets.UTF_8);
+		return new Entrada(seq, instante, numero, origenFichaje);
+	}
+
+	/**
+	 * Retrocede la secuencia de escritura mientras el último registro no sea
+	 * válido: su escritura se interrumpió antes de confirmarse.
+	 */
+	private void descartarIncompletos() {
+		while (escritura > volcado && !valido(escritura - 1))
+			escritura--;
+		buffer.putLong(POS_ESCRITURA, escritura);
+		buffer.force();
+	}
+
+	private boolean valido(long seq) {
+		byte[] registro = new byte[REGISTRO];
+		ByteBuffer origen = buffer.duplicate();
+		origen.position(posicion(seq));
+		origen.get(registro);
+		ByteBuffer r = ByteBuffer.wrap(registro);
+		return r.getLong(0) == seq && r.getInt(POS_CRC) == crc(registro);
+	}
+
+	private long leerCapacidad() throws IOException {
+		ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+		channel.read(cabecera, 0);
+		return cabecera.getLong(POS_CAPACIDAD);
+	}
+
+	private int posicion(long seq) {
+		return (int) (CABECERA + (seq % capacidad) * REGISTRO);
+	}
+
+	private static int crc(byte[] registro) {
+		CRC32 crc = new CRC32();
+		crc.update(registro, 0, POS_CRC);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] recortar(String valor, int max) {
+		byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+		while (bytes.length > max) {
+			valor = valor.substring(0, valor.length() - 1);
+			bytes = valor.getBytes(StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+
+	@Getter
+	@AllArgsConstructor
+	public static class Entrada {
+		private final long seq;
+		private final long instante;
+		private final String numero;
+		private final String origen;
+	}
+
+}
@@ -0,0 +1,328 @@
+package com.fichajespi.journal;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fichajespi.dto.entity.FichajeDtoReqRes;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IUsuarioFichaje;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.journal.FichajeJournal.Entrada;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.service.FicharService;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Modo de fichaje diferido (fichaje.journal.enabled=true).
+ *
+ * POST /fichaje/now escribe el fichaje en el diario local y responde sin
+ * esperar a MySQL. El tipo (entrada o salida) se calcula con un estado en
+ * memoria de cada empleado: su último fichaje guardado más los del diario
+ * aún no volcados. Los fichajes guardados por otros caminos (lotes, cierres
+ * del análisis) lo actualizan con su FichajeRegistradoEvent; los de los
+ * scripts de auto-fichaje, que escriben directamente en MySQL, se recogen
+ * al refrescar.
+ *
+ * Un proceso periódico vuelca el diario a la tabla fichajes a través de
+ * FicharService.ficharLote. Cada fichaje lleva la clave "J-<diario>-<seq>",
+ * así que si la aplicación cae después de confirmar un volcado pero antes
+ * de avanzar el diario, al repetirlo esos fichajes salen como DUPLICADO y no
+ * se insertan dos veces. Si otro camino ha guardado entretanto un fichaje
+ * posterior, el del diario se guarda igualmente en su hora.
+ */
+@Service
+@ConditionalOnProperty(name = "fichaje.journal.enabled", havingValue = "true")
+public class FichajeJournalService {
+
+	private static final int TAMANO_IN = 1000;
+
+	@Autowired
+	private FicharService ficharService;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${fichaje.journal.path:./data/fichajes.journal}")
+	private String path;
+	@Value("${fichaje.journal.capacidad:65536}")
+	private long capacidad;
+	@Value("${fichaje.journal.lote:1000}")
+	private int maxLote;
+	@Value("${fichaje.journal.refresco-ms:60000}")
+	private long refrescoMs;
+
+	private final Map<String, Estado> estados = new ConcurrentHashMap<>();
+	private FichajeJournal journal;
+	private Timer timerVolcado;
+	private long ultimoRefresco;
+
+	@PostConstruct
+	public void init() throws IOException {
+		journal = new FichajeJournal(Paths.get(path), capacidad);
+		recuperar();
+
+		timerVolcado = Timer.builder("fichajes.journal.volcado")
+				.description("Duración de cada volcado del diario a base de datos")
+				.register(meterRegistry);
+		Gauge.builder("fichajes.journal.profundidad", journal,
+				FichajeJournal::profundidad)
+				.description("Fichajes del diario pendientes de volcar")
+				.register(meterRegistry);
+		Gauge.builder("fichajes.journal.retraso", this,
+				FichajeJournalService::retrasoSegundos)
+				.description("Antigüedad del fichaje pendiente más antiguo")
+				.baseUnit("seconds")
+				.register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		journal.close();
+	}
+
+	/**
+	 * Registra el fichaje en el diario. Devuelve null si debe hacerse por el
+	 * camino directo: empleado desconocido en memoria o diario lleno.
+	 */
+	public FichajeDtoReqRes encolar(FichajeDtoReqRes fichajeDto) {
+		String numero = fichajeDto.getNumeroUsuario();
+		Estado estado = numero == null ? null : estados.get(numero);
+		if (estado == null)
+			return null;
+
+		for (int intento = 0; intento < 2; intento++) {
+			synchronized (estado) {
+				Instant ahora = Instant.now();
+				if (journal.append(ahora.toEpochMilli(), numero,
+						fichajeDto.getOrigen())) {
+					LocalDateTime utc = LocalDateTime.ofInstant(ahora,
+							ZoneOffset.UTC);
+					fichajeDto.setDia(utc.toLocalDate());
+					fichajeDto.setHora(utc.toLocalTime());
+					fichajeDto.setNombreUsuario(estado.nombre);
+					fichajeDto.setTipo(estado.previsto() ? "salida" : "entrada");
+					estado.pendientes++;
+					return fichajeDto;
+				}
+				// Sin fichajes pendientes el camino directo no altera el orden
+				if (estado.pendientes == 0)
+					return null;
+			}
+			volcar();
+		}
+		return null;
+	}
+
+	@Scheduled(fixedDelayString = "${fichaje.journal.volcado-ms:200}")
+	public synchronized void volcar() {
+		List<Entrada> entradas = journal.pendientes(maxLote);
+		if (entradas.isEmpty()) {
+			refrescar();
+			return;
+		}
+
+		List<FichajeLoteDto> lote = entradas.stream()
+				.map(this::toLoteDto)
+				.collect(Collectors.toList());
+		List<FichajeLoteResultado> resultados;
+		try {
+			// Ya confirmados al empleado: se guardan aunque otro camino haya
+			// registrado entretanto un fichaje posterior
+			resultados = timerVolcado.record(() -> ficharService.ficharLote(lote, true));
+		} catch (RuntimeException e) {
+			logger.logWarn("No se pudo volcar el diario de fichajes: "
+					+ e.getMessage());
+			return;
+		}
+		journal.confirmar(entradas.get(entradas.size() - 1).getSeq());
+
+		for (int i = 0; i < resultados.size(); i++)
+			corregir(lote.get(i), resultados.get(i));
+	}
+
+	/**
+	 * Fichajes guardados por los demás caminos. Los del propio diario se
+	 * confirman al volcar, junto con su resultado.
+	 */
+	@TransactionalEventListener
+	public void onFichajeRegistrado(FichajeRegistradoEvent event) {
+		if (event.getClave() != null && event.getClave().startsWith(prefijoClave()))
+			return;
+		Estado estado = estados.computeIfAbsent(event.getNumeroUsuario(),
+				n -> new Estado(event.getNombreUsuario(), false));
+		synchronized (estado) {
+			estado.confirmar(event.getTipo(),
+					LocalDateTime.of(event.getDia(), event.getHora()));
+		}
+	}
+
+	private double retrasoSegundos() {
+		Long instante = journal.instantePrimerPendiente();
+		return instante == null ? 0
+				: Math.max(0, System.currentTimeMillis() - instante) / 1000.0;
+	}
+
+	/**
+	 * Pasa el fichaje volcado de pendiente a guardado, con el tipo que le ha
+	 * dado la base de datos. Los DUPLICADO ya estaban guardados al arrancar y
+	 * no cuentan como pendientes.
+	 */
+	private void corregir(FichajeLoteDto fichaje, FichajeLoteResultado resultado) {
+		Estado estado = estados.get(resultado.getNumeroUsuario());
+		if (estado == null)
+			return;
+		synchronized (estado) {
+			if (EstadosFichajeLote.CREADO.toString().equals(resultado.getEstado())) {
+				estado.pendientes--;
+				estado.confirmar(resultado.getTipo(),
+						LocalDateTime.of(fichaje.getDia(), fichaje.getHora()));
+			} else if (EstadosFichajeLote.RECHAZADO.toString()
+					.equals(resultado.getEstado())) {
+				estado.pendientes--;
+				logger.logWarn("Fichaje del diario rechazado para "
+						+ resultado.getNumeroUsuario() + ": "
+						+ resultado.getMensaje());
+			}
+		}
+	}
+
+	/**
+	 * Recarga desde base de datos el estado de los empleados sin fichajes
+	 * pendientes, para recoger los cambios de scripts, lotes y altas.
+	 */
+	private void refrescar() {
+		if (System.currentTimeMillis() - ultimoRefresco < refrescoMs)
+			return;
+		try {
+			for (IUsuarioFichaje usuario : usuarioRepository.findFichajeAll()) {
+				Estado estado = estados.computeIfAbsent(usuario.getNumero(),
+						n -> new Estado(usuario.getNombreEmpleado(),
+								Boolean.TRUE.equals(usuario.getWorking())));
+				synchronized (estado) {
+					if (estado.pendientes == 0) {
+						estado.nombre = usuario.getNombreEmpleado();
+						estado.working = Boolean.TRUE.equals(usuario.getWorking());
+					}
+				}
+			}
+			ultimoRefresco = System.currentTimeMillis();
+		} catch (RuntimeException e) {
+			logger.logWarn("No se pudo refrescar el estado de los empleados: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Carga el estado de base de datos y aplica encima los fichajes del
+	 * diario que no llegaron a volcarse antes de la última parada.
+	 */
+	private void recuperar() {
+		for (IUsuarioFichaje usuario : usuarioRepository.findFichajeAll())
+			estados.put(usuario.getNumero(), new Estado(
+					usuario.getNombreEmpleado(),
+					Boolean.TRUE.equals(usuario.getWorking())));
+
+		List<Entrada> pendientes = journal.pendientes(Integer.MAX_VALUE);
+		List<String> claves = pendientes.stream()
+				.map(this::clave)
+				.collect(Collectors.toList());
+		Set<String> volcadas = new HashSet<>();
+		for (int i = 0; i < claves.size(); i += TAMANO_IN)
+			volcadas.addAll(fichajeRepository.findClavesExistentes(new ArrayList<>(
+					claves.subList(i, Math.min(i + TAMANO_IN, claves.size())))));
+
+		// Los ya volcados están en el estado leído de base de datos
+		for (Entrada entrada : pendientes) {
+			Estado estado = estados.get(entrada.getNumero());
+			if (estado != null && !volcadas.contains(clave(entrada)))
+				estado.pendientes++;
+		}
+		ultimoRefresco = System.currentTimeMillis();
+
+		if (!pendientes.isEmpty())
+			logger.logInfo("Diario de fichajes con " + pendientes.size()
+					+ " fichajes pendientes de volcar");
+	}
+
+	private FichajeLoteDto toLoteDto(Entrada entrada) {
+		LocalDateTime utc = LocalDateTime.ofInstant(
+				Instant.ofEpochMilli(entrada.getInstante()), ZoneOffset.UTC);
+		return FichajeLoteDto.builder()
+				.dia(utc.toLocalDate())
+				.hora(utc.toLocalTime())
+				.numeroUsuario(entrada.getNumero())
+				.origen(entrada.getOrigen())
+				.clave(clave(entrada))
+				.build();
+	}
+
+	private String clave(Entrada entrada) {
+		return prefijoClave() + entrada.getSeq();
+	}
+
+	private String prefijoClave() {
+		return "J-" + Long.toHexString(journal.getId()) + "-";
+	}
+
+	private static class Estado {
+		String nombre;
+		// Según el último fichaje guardado en base de datos
+		boolean working;
+		LocalDateTime ultimoEn;
+		// Fichajes del diario aún sin guardar
+		int pendientes;
+
+		Estado(String nombre, boolean working) {
+			this.nombre = nombre;
+			this.working = working;
+		}
+
+		// Cada fichaje pendiente alterna el estado guardado
+		boolean previsto() {
+			return working != (pendientes % 2 == 1);
+		}
+
+		// El evento de otro camino y el volcado pueden llegar en cualquier
+		// orden: vale el fichaje más reciente
+		void confirmar(String tipo, LocalDateTime en) {
+			if (ultimoEn != null && en.isBefore(ultimoEn))
+				return;
+			working = TipoFichaje.ENTRADA.toString().equals(tipo);
+			ultimoEn = en;
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.fichajespi.mail;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fichajespi.entity.EmailSalida;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.EmailSalidaRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Vacía la bandeja de salida de emails (emails_salida).
+ *
+ * Cada pasada lee los pendientes por lotes, resuelve los destinatarios de
+ * RRHH una vez por lote y envía los emails al ritmo máximo configurado. Los
+ * enviados se borran; los que fallan se reprograman con una espera que se
+ * duplica en cada intento y, agotados los intentos, se marcan como
+ * fallidos. Un servidor de correo caído solo retrasa los emails: quien los
+ * genera ya ha terminado.
+ *
+ * Los emails de un envío agrupado se juntan en un resumen por destinatario
+ * y se mandan varios por conexión SMTP, así que el número de conexiones
+ * depende de los destinatarios y no de las incidencias.
+ */
+@Component
+public class DespachadorEmails {
+
+	private static final String REMITENTE = "noreply@fichajespi.es";
+	private static final String SEPARADOR = "\n\n----------------------------------------\n\n";
+
+	@Autowired
+	private EmailSalidaRepository repository;
+	@Autowired
+	private JavaMailSender javaMailSender;
+	@Autowired
+	private EmailService emailService;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${email.outbox.intervalo-ms:5000}")
+	private long intervaloMs;
+	@Value("${email.outbox.lote:100}")
+	private int lote;
+	@Value("${email.outbox.por-minuto:120}")
+	private int porMinuto;
+	@Value("${email.outbox.max-intentos:8}")
+	private int maxIntentos;
+	@Value("${email.outbox.espera-inicial-ms:30000}")
+	private long esperaInicialMs;
+	@Value("${email.outbox.espera-max-ms:3600000}")
+	private long esperaMaxMs;
+
+	private ScheduledExecutorService hilo;
+	private TransactionTemplate transactionTemplate;
+	// Momento (System.nanoTime) a partir del cual se puede enviar el siguiente
+	private long siguienteEnvio;
+	private Counter enviados;
+	private Counter reintentos;
+	private Counter fallidos;
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		enviados = contador("enviado", "Emails enviados desde la bandeja de salida");
+		reintentos = contador("reintento", "Envíos fallidos que se reprograman");
+		fallidos = contador("fallido", "Emails descartados tras agotar los intentos");
+		// Hilo propio: el ritmo de envío duerme entre emails y no debe
+		// retrasar las tareas @Scheduled
+		hilo = Executors.newSingleThreadScheduledExecutor(
+				new CustomizableThreadFactory("EmailOutboxThread-"));
+		hilo.scheduleWithFixedDelay(this::pasada, intervaloMs, intervaloMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void close() {
+		hilo.shutdownNow();
+	}
+
+	/** Envía todo lo pendiente; devuelve el número de emails enviados. */
+	public int despachar() throws InterruptedException {
+		int total = 0;
+		List<EmailSalida> pendientes;
+		do {
+			pendientes = repository.findPendientes(LocalDateTime.now(),
+					PageRequest.of(0, lote));
+			if (pendientes.isEmpty())
+				break;
+
+			List<String> rrhh = null;
+			List<Long> ok = new ArrayList<>();
+			List<EmailSalida> reprogramados = new ArrayList<>();
+			Set<String> agrupados = new HashSet<>();
+			for (EmailSalida email : pendientes) {
+				if (rrhh == null && (Boolean.TRUE.equals(email.getCopiaRrhh())
+						|| email.getEnvio() != null))
+					rrhh = emailService.getDestinatariosRrhh();
+				if (email.getEnvio() != null) {
+					// El envío completo, aunque tenga emails fuera de este lote
+					if (agrupados.add(email.getEnvio()))
+						total += resumir(email.getEnvio(), rrhh);
+					continue;
+				}
+				String[] para = destinatarios(email, rrhh);
+				if (para.length == 0) {
+					logger.logWarn("Email " + email.getId() + " sin destinatarios, se descarta");
+					ok.add(email.getId());
+					continue;
+				}
+				esperarTurno();
+				try {
+					javaMailSender.send(mensaje(email, para));
+					ok.add(email.getId());
+					enviados.increment();
+				} catch (MailException e) {
+					contar(reprogramar(email, e));
+					reprogramados.add(email);
+				}
+			}
+			guardar(ok, reprogramados);
+			total += ok.size();
+		} while (pendientes.size() == lote);
+		return total;
+	}
+
+	/**
+	 * Manda los emails pendientes de un envío agrupados por destinatario
+	 * (RRHH por un lado y cada empleado por otro), varios por conexión SMTP.
+	 * Devuelve el número de emails de la bandeja resueltos.
+	 */
+	private int resumir(String envio, List<String> rrhh) throws InterruptedException {
+		Map<String, List<EmailSalida>> grupos = new LinkedHashMap<>();
+		for (EmailSalida email : repository.findPendientesByEnvio(envio,
+				LocalDateTime.now()))
+			grupos.computeIfAbsent(email.getCopiaRrhh() + "|" + email.getDestinatario(),
+					k -> new ArrayList<>()).add(email);
+
+		List<Long> ok = new ArrayList<>();
+		List<EmailSalida> reprogramados = new ArrayList<>();
+		List<List<EmailSalida>> conexion = new ArrayList<>();
+		List<SimpleMailMessage> mensajes = new ArrayList<>();
+		for (List<EmailSalida> grupo : grupos.values()) {
+			String[] para = destinatarios(grupo.get(0), rrhh);
+			if (para.length == 0) {
+				logger.logWarn("Resumen del envío " + envio + " sin destinatarios, se descarta");
+				grupo.forEach(e -> ok.add(e.getId()));
+				continue;
+			}
+			esperarTurno();
+			conexion.add(grupo);
+			mensajes.add(resumen(grupo, para));
+			if (mensajes.size() == lote) {
+				enviar(conexion, mensajes, ok, reprogramados);
+				conexion.clear();
+				mensajes.clear();
+			}
+		}
+		if (!mensajes.isEmpty())
+			enviar(conexion, mensajes, ok, reprogramados);
+		guardar(ok, reprogramados);
+		return ok.size();
+	}
+
+	// Una sola llamada a JavaMailSender: todos los mensajes por la misma conexión
+	private void enviar(List<List<EmailSalida>> grupos, List<SimpleMailMessage> mensajes,
+			List<Long> ok, List<EmailSalida> reprogramados) {
+		Map<Object, Exception> fallos = Collections.emptyMap();
+		MailException error = null;
+		try {
+			javaMailSender.send(mensajes.toArray(new SimpleMailMessage[0]));
+		} catch (MailSendException e) {
+			fallos = e.getFailedMessages();
+			error = e;
+		} catch (MailException e) {
+			error = e;
+		}
+
+		for (int i = 0; i < mensajes.size(); i++) {
+			List<EmailSalida> grupo = grupos.get(i);
+			// Sin detalle por mensaje (p. ej. no se pudo conectar) fallan todos
+			if (error == null || !fallos.isEmpty() && !fallos.containsKey(mensajes.get(i))) {
+				grupo.forEach(e -> ok.add(e.getId()));
+				enviados.increment();
+				continue;
+			}
+			boolean fallido = false;
+			for (EmailSalida email : grupo)
+				fallido = reprogramar(email, error);
+			contar(fallido);
+			reprogramados.addAll(grupo);
+		}
+	}
+
+	private void pasada() {
+		try {
+			despachar();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			// Sin capturar, scheduleWithFixedDelay dejaría de programar pasadas
+			logger.logError("Fallo vaciando la bandeja de emails: " + e.getMessage());
+		}
+	}
+
+	private String[] destinatarios(EmailSalida email, List<String> rrhh) {
+		List<String> para = new ArrayList<>(
+				Boolean.TRUE.equals(email.getCopiaRrhh()) ? rrhh : Collections.emptyList());
+		if (email.getDestinatario() != null)
+			para.add(email.getDestinatario());
+		return para.toArray(new String[0]);
+	}
+
+	private SimpleMailMessage resumen(List<EmailSalida> grupo, String[] para) {
+		EmailSalida primero = grupo.get(0);
+		if (grupo.size() == 1)
+			return mensaje(primero, para);
+		StringBuilder sb = new StringBuilder();
+		for (EmailSalida email : grupo) {
+			if (sb.length() > 0)
+				sb.append(SEPARADOR);
+			sb.append(email.getCuerpo());
+		}
+		SimpleMailMessage msg = mensaje(primero, para);
+		msg.setSubject(primero.getAsunto() + " (" + grupo.size() + ")");
+		msg.setText(sb.toString());
+		return msg;
+	}
+
+	private SimpleMailMessage mensaje(EmailSalida email, String[] para) {
+		SimpleMailMessage msg = new SimpleMailMessage();
+		msg.setTo(para);
+		msg.setSubject(email.getAsunto());
+		msg.setText(email.getCuerpo());
+		msg.setFrom(REMITENTE);
+		return msg;
+	}
+
+	/** Devuelve true si se han agotado los intentos. */
+	private boolean reprogramar(EmailSalida email, MailException e) {
+		int intentos = email.getIntentos() == null ? 1 : email.getIntentos() + 1;
+		email.setIntentos(intentos);
+		email.setError(e.getMessage() == null ? e.getClass().getSimpleName()
+				: e.getMessage().substring(0, Math.min(500, e.getMessage().length())));
+		if (intentos >= maxIntentos) {
+			email.setFallido(true);
+			logger.logError("Email " + email.getId() + " descartado tras "
+					+ intentos + " intentos: " + email.getError());
+			return true;
+		}
+		// 1, 2, 4, 8... veces la espera inicial, hasta la máxima
+		long espera = Math.min(esperaMaxMs,
+				esperaInicialMs << Math.min(intentos - 1, 20));
+		email.setSiguienteIntento(LocalDateTime.now().plusNanos(
+				TimeUnit.MILLISECONDS.toNanos(espera)));
+		return false;
+	}
+
+	// Un mensaje no enviado: se reintenta o se da por fallido
+	private void contar(boolean fallido) {
+		(fallido ? fallidos : reintentos).increment();
+	}
+
+	private void guardar(List<Long> enviados, List<EmailSalida> reprogramados) {
+		transactionTemplate.executeWithoutResult(status -> {
+			if (!enviados.isEmpty())
+				repository.deleteEnviados(enviados);
+			if (!reprogramados.isEmpty())
+				repository.saveAll(reprogramados);
+		});
+	}
+
+	// Como mucho porMinuto envíos por minuto, repartidos uniformemente
+	private void esperarTurno() throws InterruptedException {
+		long ahora = System.nanoTime();
+		if (siguienteEnvio - ahora > 0)
+			TimeUnit.NANOSECONDS.sleep(siguienteEnvio - ahora);
+		siguienteEnvio = Math.max(ahora, siguienteEnvio)
+				+ TimeUnit.MINUTES.toNanos(1) / porMinuto;
+	}
+
+	private Counter contador(String resultado, String descripcion) {
+		return Counter.builder("fichajes.email.outbox")
+				.description(descripcion)
+				.tag("resultado", resultado)
+				.register(meterRegistry);
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.fichajespi.mail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fichajespi.entity.Rol;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.repository.RolRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.security.enums.RolNombre;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Caché de los roles y de los emails de RRHH, que se consultan en cada
+ * notificación de vacaciones y permisos y en cada envío de incidencias.
+ *
+ * UsuarioService y RolService la invalidan al guardar o borrar, de nuevo al
+ * terminar la transacción (para no quedarse con lo leído antes de
+ * confirmar), y una carga que coincide con una invalidación no se guarda.
+ * Los aciertos y fallos se publican en "fichajes.email.directorio".
+ */
+@Component
+public class DirectorioDestinatarios {
+
+	@Autowired
+	private RolRepository rolRepository;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final Map<RolNombre, Rol> roles = new ConcurrentHashMap<>();
+	private volatile List<String> rrhh;
+	// Cambia con cada invalidación
+	private final AtomicLong version = new AtomicLong();
+
+	private Counter rolesAcierto;
+	private Counter rolesFallo;
+	private Counter rrhhAcierto;
+	private Counter rrhhFallo;
+
+	@PostConstruct
+	public void init() {
+		rolesAcierto = contador("roles", "acierto");
+		rolesFallo = contador("roles", "fallo");
+		rrhhAcierto = contador("rrhh", "acierto");
+		rrhhFallo = contador("rrhh", "fallo");
+	}
+
+	public Optional<Rol> getRol(RolNombre nombre) {
+		Rol rol = roles.get(nombre);
+		if (rol != null) {
+			rolesAcierto.increment();
+			return Optional.of(rol);
+		}
+		rolesFallo.increment();
+		long v = version.get();
+		Optional<Rol> cargado = rolRepository.findByRolNombre(nombre);
+		// Un rol que aún no existe no se guarda: se crea al arrancar
+		if (cargado.isPresent() && version.get() == v)
+			roles.put(nombre, cargado.get());
+		return cargado;
+	}
+
+	public List<String> getDestinatariosRrhh() {
+		List<String> emails = rrhh;
+		if (emails != null) {
+			rrhhAcierto.increment();
+			return emails;
+		}
+		rrhhFallo.increment();
+		long v = version.get();
+		emails = getRol(RolNombre.ROLE_RRHH)
+				.map(rol -> usuarioRepository.findByRolesIn(Collections.singleton(rol)))
+				.orElse(Collections.emptyList())
+				.stream()
+				.map(Usuario::getEmail)
+				.collect(Collectors.collectingAndThen(Collectors.toList(),
+						Collections::unmodifiableList));
+		if (version.get() == v)
+			rrhh = emails;
+		return emails;
+	}
+
+	/** Usuarios o roles modificados: se vuelve a leer todo. */
+	public void invalidar() {
+		limpiar();
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(
+					new TransactionSynchronization() {
+						@Override
+						public void afterCompletion(int status) {
+							limpiar();
+						}
+					});
+	}
+
+	private void limpiar() {
+		version.incrementAndGet();
+		roles.clear();
+		rrhh = null;
+	}
+
+	private Counter contador(String cache, String resultado) {
+		return Counter.builder("fichajes.email.directorio")
+				.description("Consultas de roles y destinatarios de RRHH")
+				.tag("cache", cache)
+				.tag("resultado", resultado)
+				.register(meterRegistry);
+	}
+
+}
@@ -1,21 +1,26 @@
 package com.fichajespi.mail;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.fichajespi.entity.Rol;
+import com.fichajespi.entity.EmailSalida;
 import com.fichajespi.entity.Usuario;
-import com.fichajespi.security.enums.RolNombre;
-import com.fichajespi.service.RolService;
+import com.fichajespi.repository.EmailSalidaRepository;
 import com.fichajespi.service.UsuarioService;
 
 @Service
@@ -26,49 +31,85 @@ public class EmailService {
 	@Autowired
 	private UsuarioService usuarioService;
 	@Autowired
-	private RolService rolService;
+	private DirectorioDestinatarios directorio;
+	@Autowired
+	private EmailSalidaRepository emailSalidaRepository;
+	@Autowired
+	@Qualifier("mailExecutor")
+	private ExecutorService mailExecutor;
+
+	@Value("${email.outbox.retencion-ms:21600000}")
+	private long retencionMs;
+
+	/**
+	 * Guarda los emails en la bandeja de salida dentro de la transacción en
+	 * curso; los envía DespachadorEmails cuando se confirma.
+	 */
+	public void encolar(List<EmailSalida> emails) {
+		emailSalidaRepository.saveAll(emails);
+	}
+
+	/**
+	 * Como encolar, pero los emails se retienen hasta liberar el envío y
+	 * se mandan agrupados por destinatario. Si el envío no se libera (el
+	 * proceso se cae a mitad), salen igualmente pasada la retención máxima.
+	 */
+	public void encolarAgrupados(String envio, List<EmailSalida> emails) {
+		LocalDateTime retenerHasta = LocalDateTime.now().plusNanos(
+				TimeUnit.MILLISECONDS.toNanos(retencionMs));
+		for (EmailSalida email : emails) {
+			email.setEnvio(envio);
+			email.setSiguienteIntento(retenerHasta);
+		}
+		emailSalidaRepository.saveAll(emails);
+	}
+
+	@Transactional
+	public void liberar(String envio) {
+		emailSalidaRepository.liberarEnvio(envio, LocalDateTime.now());
+	}
 
-	@Async
 	public void sendEmail(String[] to, String subject, String body) {
 		SimpleMailMessage msg = new SimpleMailMessage();
 		msg.setTo(to);
 		msg.setSubject(subject);
 		msg.setText(body);
 		msg.setFrom("noreply@fichajespi.es");
-		javaMailSender.send(msg);
+		try {
+			mailExecutor.execute(() -> javaMailSender.send(msg));
+		} catch (RejectedExecutionException e) {
+			// Cola llena: a la bandeja de salida, que lo envía con reintentos
+			encolar(Arrays.stream(to)
+					.map(para -> EmailSalida.nuevo(para, false, subject, body))
+					.collect(Collectors.toList()));
+		}
 	}
 
-
-	@Async
 	public void sendEmail(String to, String subject, String body) {
-		SimpleMailMessage msg = new SimpleMailMessage();
-		msg.setTo(to);
-		msg.setSubject(subject);
-		msg.setText(body);
-		msg.setFrom("noreply@fichajespi.es");
-		javaMailSender.send(msg);
+		sendEmail(new String[] { to }, subject, body);
 	}
 
 	public String[] getDestinatarios(Usuario usuario) {
-		// Obtenemos el rol de rrhh
-		Rol rol = rolService.findByRolNombre(RolNombre.ROLE_RRHH).get();
-		// Lo añadimos a un hashset para realizar una búsqueda
-		Set<Rol> roles = new HashSet<>();
-		roles.add(rol);
-		// Obtenemos los usuarios con rol de rrhh
-		List<Usuario> usuariosRrhh = usuarioService.findByRoles(roles);
-		// Obtenemos sus emails
-		List<String> destinatariosList = usuariosRrhh.stream()
-				.map(u -> u.getEmail()).collect(Collectors.toList());
+		return getDestinatarios(getDestinatariosRrhh(), usuario.getEmail());
+	}
+
+	public String[] getDestinatarios(List<String> destinatariosRrhh,
+			String emailUsuario) {
+		List<String> destinatariosList = new ArrayList<>(destinatariosRrhh);
 		// Añadimos el email del usuario causante de la incidencia
-		destinatariosList.add(usuario.getEmail());
+		destinatariosList.add(emailUsuario);
 		Object[] objArr = destinatariosList.toArray();
 		return Arrays.copyOf(objArr,
 				objArr.length,
 				String[].class);
 	}
 
-	@Async
+	public List<String> getDestinatariosRrhh() {
+		// Emails de los usuarios con rol de rrhh, de la caché
+		return directorio.getDestinatariosRrhh();
+	}
+
+	@Async("notificacionesExecutor")
 	public void sendNotification(String numeroUsuario, String subject,
 			String body) {
 		Usuario usuario = usuarioService.findByNumero(numeroUsuario)
@@ -0,0 +1,234 @@
+package com.fichajespi.mail;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * JavaMailSender que reutiliza las conexiones SMTP.
+ *
+ * JavaMailSenderImpl abre y cierra una conexión (con su STARTTLS y su
+ * autenticación) en cada llamada a send. Aquí se mantiene un grupo
+ * pequeño de conexiones ya autenticadas: cada envío toma una libre (o
+ * espera a que quede alguna), manda todos sus mensajes por ella y la
+ * devuelve. Las conexiones se renuevan tras un número de mensajes o un
+ * tiempo sin uso, y si el servidor corta una a mitad de envío se reconecta
+ * y se reintenta el mensaje una vez.
+ */
+public class JavaMailSenderPool extends JavaMailSenderImpl {
+
+	private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+	private final int conexiones;
+	private final int mensajesPorConexion;
+	private final long inactividadMs;
+	private final long esperaMs;
+	private final Semaphore permisos;
+	// Las últimas usadas primero: las que sobran caducan por inactividad
+	private final LinkedBlockingDeque<Conexion> libres = new LinkedBlockingDeque<>();
+
+	private Timer envio;
+	private Counter fallos;
+	private Counter reconexiones;
+
+	public JavaMailSenderPool(int conexiones, int mensajesPorConexion,
+			long inactividadMs, long esperaMs) {
+		this.conexiones = conexiones;
+		this.mensajesPorConexion = mensajesPorConexion;
+		this.inactividadMs = inactividadMs;
+		this.esperaMs = esperaMs;
+		this.permisos = new Semaphore(conexiones, true);
+	}
+
+	public void registrar(MeterRegistry meterRegistry) {
+		Gauge.builder("fichajes.email.smtp.cola", permisos, Semaphore::getQueueLength)
+				.description("Envíos esperando una conexión SMTP libre")
+				.register(meterRegistry);
+		Gauge.builder("fichajes.email.smtp.conexiones", this,
+				p -> p.conexiones - p.permisos.availablePermits())
+				.description("Conexiones SMTP en uso")
+				.tag("estado", "en_uso")
+				.register(meterRegistry);
+		Gauge.builder("fichajes.email.smtp.conexiones", libres, LinkedBlockingDeque::size)
+				.description("Conexiones SMTP abiertas sin usar")
+				.tag("estado", "libre")
+				.register(meterRegistry);
+		envio = Timer.builder("fichajes.email.smtp.envio")
+				.description("Duración del envío de cada mensaje")
+				.register(meterRegistry);
+		fallos = Counter.builder("fichajes.email.smtp.fallos")
+				.description("Mensajes que el servidor SMTP no ha aceptado")
+				.register(meterRegistry);
+		reconexiones = Counter.builder("fichajes.email.smtp.reconexiones")
+				.description("Conexiones SMTP abiertas de nuevo")
+				.register(meterRegistry);
+	}
+
+	public void close() {
+		Conexion conexion;
+		while ((conexion = libres.pollFirst()) != null)
+			cerrar(conexion);
+	}
+
+	@Override
+	protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages)
+			throws MailException {
+		Map<Object, Exception> fallidos = new LinkedHashMap<>();
+		Conexion conexion;
+		try {
+			conexion = tomar();
+		} catch (MessagingException e) {
+			// Igual que JavaMailSenderImpl: sin conexión fallan todos
+			for (int i = 0; i < mimeMessages.length; i++)
+				fallidos.put(original(mimeMessages, originalMessages, i), e);
+			contarFallos(mimeMessages.length);
+			throw new MailSendException("Mail server connection failed", e, fallidos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MailSendException("Interrupted waiting for an SMTP connection", e);
+		}
+
+		try {
+			for (int i = 0; i < mimeMessages.length; i++) {
+				long inicio = System.nanoTime();
+				try {
+					enviar(conexion, mimeMessages[i]);
+				} catch (MessagingException e) {
+					fallidos.put(original(mimeMessages, originalMessages, i), e);
+					contarFallos(1);
+				} finally {
+					if (envio != null)
+						envio.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+				}
+			}
+		} finally {
+			devolver(conexion);
+		}
+
+		if (!fallidos.isEmpty())
+			throw new MailSendException(fallidos);
+	}
+
+	private Conexion tomar() throws MessagingException, InterruptedException {
+		if (!permisos.tryAcquire(esperaMs, TimeUnit.MILLISECONDS))
+			throw new MessagingException("No SMTP connection available after "
+					+ esperaMs + " ms");
+		try {
+			Conexion conexion;
+			boolean caducadas = false;
+			while ((conexion = libres.pollFirst()) != null) {
+				if (vigente(conexion))
+					return conexion;
+				cerrar(conexion);
+				caducadas = true;
+			}
+			conexion = new Conexion(connectTransport());
+			if (caducadas && reconexiones != null)
+				reconexiones.increment();
+			return conexion;
+		} catch (MessagingException | RuntimeException e) {
+			permisos.release();
+			throw e;
+		}
+	}
+
+	private void devolver(Conexion conexion) {
+		conexion.ultimoUso = System.nanoTime();
+		libres.offerFirst(conexion);
+		permisos.release();
+	}
+
+	// isConnected manda un NOOP: detecta las conexiones que el servidor ha cerrado
+	private boolean vigente(Conexion conexion) {
+		return !conexion.cerrada && conexion.enviados < mensajesPorConexion
+				&& System.nanoTime() - conexion.ultimoUso < TimeUnit.MILLISECONDS
+						.toNanos(inactividadMs)
+				&& conexion.transport.isConnected();
+	}
+
+	private void enviar(Conexion conexion, MimeMessage mensaje)
+			throws MessagingException {
+		// Como JavaMailSenderImpl: fecha de envío y Message-ID propio si lo hay
+		if (mensaje.getSentDate() == null)
+			mensaje.setSentDate(new Date());
+		String messageId = mensaje.getMessageID();
+		mensaje.saveChanges();
+		if (messageId != null)
+			mensaje.setHeader(HEADER_MESSAGE_ID, messageId);
+		Address[] destinatarios = mensaje.getAllRecipients();
+		if (destinatarios == null)
+			destinatarios = new Address[0];
+
+		if (conexion.cerrada || conexion.enviados >= mensajesPorConexion)
+			reconectar(conexion);
+		try {
+			conexion.transport.sendMessage(mensaje, destinatarios);
+		} catch (MessagingException e) {
+			// Rechazado por el servidor: no se reintenta
+			if (conexion.transport.isConnected())
+				throw e;
+			// Conexión cortada (inactividad, reinicio del servidor): otra vez
+			reconectar(conexion);
+			conexion.transport.sendMessage(mensaje, destinatarios);
+		}
+		conexion.enviados++;
+	}
+
+	private void reconectar(Conexion conexion) throws MessagingException {
+		cerrar(conexion);
+		// Si no se puede abrir, el siguiente mensaje lo vuelve a intentar
+		conexion.cerrada = true;
+		conexion.transport = connectTransport();
+		conexion.cerrada = false;
+		conexion.enviados = 0;
+		if (reconexiones != null)
+			reconexiones.increment();
+	}
+
+	private void cerrar(Conexion conexion) {
+		try {
+			conexion.transport.close();
+		} catch (MessagingException e) {
+			// Ya estaba cerrada
+		}
+	}
+
+	private void contarFallos(int n) {
+		if (fallos != null)
+			fallos.increment(n);
+	}
+
+	private static Object original(MimeMessage[] mimeMessages,
+			Object[] originalMessages, int i) {
+		return originalMessages != null ? originalMessages[i] : mimeMessages[i];
+	}
+
+	private static class Conexion {
+		private Transport transport;
+		private int enviados;
+		private boolean cerrada;
+		private long ultimoUso = System.nanoTime();
+
+		Conexion(Transport transport) {
+			this.transport = transport;
+		}
+	}
+
+}
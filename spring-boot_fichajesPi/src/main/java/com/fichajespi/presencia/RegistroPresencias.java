@@ -0,0 +1,193 @@
+package com.fichajespi.presencia;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fichajespi.dto.entity.PresenciaDto;
+import com.fichajespi.dto.entity.PresenciaResumenDto;
+import com.fichajespi.dto.interfaces.IPresencia;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.PresenciaRepository;
+import com.fichajespi.service.common.PaginacionNoValidaException;
+import com.fichajespi.util.LongHashMap;
+
+/**
+ * Quién está en el edificio, en memoria.
+ *
+ * Se carga al arrancar desde la tabla presencias y se actualiza con cada
+ * fichaje confirmado, así que GET /presence no consulta la base de datos.
+ * Los cambios que no pasan por la aplicación (scripts de auto-fichaje) se
+ * recogen con una recarga periódica.
+ */
+@Component
+public class RegistroPresencias {
+
+	private static final Comparator<PresenciaDto> POR_NOMBRE = Comparator
+			.comparing(PresenciaDto::getNombreEmpleado,
+					Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+			.thenComparing(PresenciaDto::getUsuarioId);
+
+	@Autowired
+	private PresenciaRepository presenciaRepository;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${paginacion.size.max:100}")
+	private int sizeMax = 100;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private LongHashMap<PresenciaDto> porUsuario = new LongHashMap<>();
+	private int presentes;
+	// Fichajes recibidos mientras se recarga, para aplicarlos sobre la recarga
+	private List<FichajeRegistradoEvent> duranteRecarga;
+	// Presentes ordenados por nombre; null si ha cambiado algo desde el último listado
+	private volatile List<PresenciaDto> listado;
+
+	@PostConstruct
+	public void init() {
+		cargar();
+	}
+
+	@Scheduled(initialDelayString = "${presencia.refresco-ms:60000}", fixedDelayString = "${presencia.refresco-ms:60000}")
+	public void cargar() {
+		lock.writeLock().lock();
+		try {
+			duranteRecarga = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		LongHashMap<PresenciaDto> nuevo = null;
+		try {
+			List<IPresencia> filas = presenciaRepository.findAllConUsuario();
+			nuevo = new LongHashMap<>(filas.size());
+			for (IPresencia fila : filas)
+				nuevo.put(fila.getUsuarioId(), PresenciaDto.builder()
+						.usuarioId(fila.getUsuarioId())
+						.numero(fila.getNumero())
+						.nombreEmpleado(fila.getNombreEmpleado())
+						.tipo(fila.getUltimoTipo())
+						.desde(fila.getUltimoFichajeEn())
+						.build());
+		} catch (RuntimeException e) {
+			logger.logWarn("No se pudieron cargar las presencias: " + e.getMessage());
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (nuevo != null) {
+				porUsuario = nuevo;
+				presentes = 0;
+				porUsuario.forEachValue(p -> {
+					if (presente(p))
+						presentes++;
+				});
+			}
+			for (FichajeRegistradoEvent event : duranteRecarga)
+				aplicar(event);
+			duranteRecarga = null;
+			listado = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@TransactionalEventListener
+	public void onFichajeRegistrado(FichajeRegistradoEvent event) {
+		lock.writeLock().lock();
+		try {
+			aplicar(event);
+			if (duranteRecarga != null)
+				duranteRecarga.add(event);
+			listado = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public PresenciaResumenDto resumen() {
+		lock.readLock().lock();
+		try {
+			return PresenciaResumenDto.builder()
+					.presentes(presentes)
+					.ausentes(porUsuario.size() - presentes)
+					.build();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Una página de más de sizeMax filas se recorta a sizeMax
+	public Page<PresenciaDto> presentes(int page, int size) {
+		if (page < 0 || size < 1)
+			throw new PaginacionNoValidaException("Página o tamaño de página no válidos");
+		size = Math.min(size, sizeMax);
+
+		List<PresenciaDto> todos = listado;
+		if (todos == null) {
+			lock.readLock().lock();
+			try {
+				List<PresenciaDto> nuevo = new ArrayList<>(presentes);
+				porUsuario.forEachValue(p -> {
+					if (presente(p))
+						nuevo.add(p);
+				});
+				nuevo.sort(POR_NOMBRE);
+				todos = Collections.unmodifiableList(nuevo);
+				listado = todos;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		PageRequest pageable = PageRequest.of(page, size);
+		int desde = (int) Math.min(pageable.getOffset(), todos.size());
+		int hasta = (int) Math.min((long) desde + size, todos.size());
+		return new PageImpl<>(todos.subList(desde, hasta), pageable,
+				todos.size());
+	}
+
+	private void aplicar(FichajeRegistradoEvent event) {
+		PresenciaDto nueva = PresenciaDto.builder()
+				.usuarioId(event.getUsuarioId())
+				.numero(event.getNumeroUsuario())
+				.nombreEmpleado(event.getNombreUsuario())
+				.tipo(event.getTipo())
+				.desde(LocalDateTime.of(event.getDia(), event.getHora())
+						.truncatedTo(ChronoUnit.SECONDS))
+				.build();
+		// Un fichaje guardado detrás del último (diario) no cambia la presencia
+		PresenciaDto anterior = porUsuario.get(event.getUsuarioId());
+		if (anterior != null && anterior.getDesde() != null
+				&& nueva.getDesde().isBefore(anterior.getDesde()))
+			return;
+		porUsuario.put(event.getUsuarioId(), nueva);
+		if (anterior != null && presente(anterior))
+			presentes--;
+		if (presente(nueva))
+			presentes++;
+	}
+
+	private static boolean presente(PresenciaDto presencia) {
+		return TipoFichaje.ENTRADA.toString().equals(presencia.getTipo());
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.fichajespi.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.fichajespi.entity.AnalisisDia;
+
+@Repository
+public interface AnalisisDiaRepository extends JpaRepository<AnalisisDia, LocalDate> {
+
+	@Query("SELECT MIN(a.dia) FROM AnalisisDia a")
+	Optional<LocalDate> findPrimerDia();
+
+	@Query("SELECT a.dia FROM AnalisisDia a WHERE a.dia BETWEEN ?1 AND ?2")
+	List<LocalDate> findDiasEntre(LocalDate desde, LocalDate hasta);
+
+	List<AnalisisDia> findByDiaBetweenOrderByDia(LocalDate desde, LocalDate hasta);
+
+}
@@ -0,0 +1,33 @@
+package com.fichajespi.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.fichajespi.entity.EmailSalida;
+
+@Repository
+public interface EmailSalidaRepository extends JpaRepository<EmailSalida, Long> {
+
+	@Query("SELECT e FROM EmailSalida e WHERE e.fallido = FALSE AND e.siguienteIntento <= ?1 ORDER BY e.id")
+	List<EmailSalida> findPendientes(LocalDateTime ahora, Pageable pageable);
+
+	@Query("SELECT e FROM EmailSalida e WHERE e.envio = ?1 AND e.fallido = FALSE AND e.siguienteIntento <= ?2 ORDER BY e.id")
+	List<EmailSalida> findPendientesByEnvio(String envio, LocalDateTime ahora);
+
+	// Solo los retenidos: los que ya han fallado mantienen su espera
+	@Modifying
+	@Query("UPDATE EmailSalida e SET e.siguienteIntento = ?2 WHERE e.envio = ?1 AND e.intentos = 0 AND e.fallido = FALSE")
+	int liberarEnvio(String envio, LocalDateTime ahora);
+
+	@Modifying
+	@Query("DELETE FROM EmailSalida e WHERE e.id IN ?1")
+	int deleteEnviados(Collection<Long> ids);
+
+}
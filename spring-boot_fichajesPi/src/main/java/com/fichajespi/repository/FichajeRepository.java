@@ -1,12 +1,17 @@
 package com.fichajespi.repository;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
 import com.fichajespi.entity.Fichaje;
 import com.fichajespi.entity.Usuario;
 
@@ -14,4 +19,18 @@ import com.fichajespi.entity.Usuario;
 public interface FichajeRepository extends JpaRepository<Fichaje, Long>, JpaSpecificationExecutor<Fichaje> {
 
 	List<Fichaje> findByUsuarioAndDiaOrderByHora(Usuario usuario, LocalDate dia);
+
+	@Query("SELECT f.clave FROM Fichaje f WHERE f.clave IN ?1")
+	List<String> findClavesExistentes(Collection<String> claves);
+
+	@Query("SELECT f.id AS id, f.usuario.id AS usuarioId, f.hora AS hora FROM Fichaje f WHERE f.dia = ?1 ORDER BY f.usuario.id, f.hora")
+	List<IFichajeAnalisis> findAnalisisByDia(LocalDate dia);
+
+	long countByDia(LocalDate dia);
+
+	// Tipos de los fichajes del empleado anteriores a ese momento, del más reciente
+	@Query("SELECT f.tipo FROM Fichaje f WHERE f.usuario.id = ?1"
+			+ " AND (f.dia < ?2 OR (f.dia = ?2 AND f.hora < ?3)) ORDER BY f.dia DESC, f.hora DESC")
+	List<String> findTiposAnteriores(Long usuarioId, LocalDate dia, LocalTime hora,
+			Pageable pageable);
 }
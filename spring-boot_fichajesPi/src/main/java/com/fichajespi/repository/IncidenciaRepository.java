@@ -1,5 +1,6 @@
 package com.fichajespi.repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,16 +8,24 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.fichajespi.dto.interfaces.IIncidenciaAnalisis;
 import com.fichajespi.dto.interfaces.ITopIncidencias;
 import com.fichajespi.dto.interfaces.IUsuarioDtoEstadistica;
 import com.fichajespi.entity.Incidencia;
 
 @Repository
 public interface IncidenciaRepository extends JpaRepository<Incidencia, Long>,
-		JpaSpecificationExecutor<Incidencia> {
+		JpaSpecificationExecutor<Incidencia>, IncidenciaRepositoryCustom {
 
 	List<Incidencia> findByUsuarioId(Long id);
 
+	@Query("SELECT i.usuario.id FROM Incidencia i WHERE i.dia = ?1 AND i.resumen = ?2")
+	List<Long> findUsuarioIdsByDiaAndResumen(LocalDate dia, String resumen);
+
+	// Incidencias ya generadas para el día: un segundo análisis no las repite
+	@Query("SELECT i.usuario.id AS usuarioId, i.resumen AS resumen FROM Incidencia i WHERE i.dia = ?1")
+	List<IIncidenciaAnalisis> findAnalisisByDia(LocalDate dia);
+
 	@Query(value = "SELECT COUNT(i.dia) numero FROM incidencias i WHERE MONTH(i.dia)=?1 AND YEAR(i.dia)=?2", nativeQuery = true)
 	Integer countNumberOfIncidenciasOfMonth(int mes, int year);
 
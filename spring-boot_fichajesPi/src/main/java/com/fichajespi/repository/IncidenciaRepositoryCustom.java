@@ -0,0 +1,15 @@
+package com.fichajespi.repository;
+
+import java.util.List;
+
+import com.fichajespi.entity.Incidencia;
+
+public interface IncidenciaRepositoryCustom {
+
+	/**
+	 * Inserta por lotes las incidencias que no existan ya para el mismo
+	 * usuario, día y resumen; las existentes no se modifican.
+	 */
+	void upsertAll(List<Incidencia> incidencias);
+
+}
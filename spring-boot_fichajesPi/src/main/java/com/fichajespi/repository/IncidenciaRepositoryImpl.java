@@ -0,0 +1,75 @@
+package com.fichajespi.repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.fichajespi.entity.Incidencia;
+
+/**
+ * Upsert de incidencias sobre la clave única (usuario_id, dia, resumen).
+ *
+ * Los ids salen del mismo generador que usa Hibernate (incidencias_seq,
+ * pooled-lo), así que no se pisan con los de save(). Las filas van en lotes
+ * de JDBC que el driver reescribe como un INSERT de varias filas
+ * (rewriteBatchedStatements); si la incidencia ya existe se conservan su
+ * explicación y su estado de resolución.
+ */
+public class IncidenciaRepositoryImpl implements IncidenciaRepositoryCustom {
+
+	private static final String UPSERT = "INSERT INTO incidencias"
+			+ " (id, descripcion, resumen, dia, resuelta, explicacion, usuario_id)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int lote;
+
+	@Override
+	public void upsertAll(List<Incidencia> incidencias) {
+		if (incidencias.isEmpty())
+			return;
+
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		IdentifierGenerator generador = session
+				.getEntityPersister(Incidencia.class.getName(), incidencias.get(0))
+				.getIdentifierGenerator();
+		for (Incidencia incidencia : incidencias)
+			if (incidencia.getId() == null)
+				incidencia.setId((Long) generador.generate(session, incidencia));
+
+		// El INSERT va por JDBC: antes se vuelcan los cambios pendientes de la sesión
+		session.flush();
+		session.doWork(connection -> {
+			try (PreparedStatement ps = connection.prepareStatement(UPSERT)) {
+				int pendientes = 0;
+				for (Incidencia incidencia : incidencias) {
+					ps.setLong(1, incidencia.getId());
+					ps.setString(2, incidencia.getDescripcion());
+					ps.setString(3, incidencia.getResumen());
+					ps.setDate(4, Date.valueOf(incidencia.getDia()));
+					ps.setBoolean(5, Boolean.TRUE.equals(incidencia.getResuelta()));
+					ps.setString(6, incidencia.getExplicacion());
+					ps.setLong(7, incidencia.getUsuario().getId());
+					ps.addBatch();
+					if (++pendientes == lote) {
+						ps.executeBatch();
+						pendientes = 0;
+					}
+				}
+				if (pendientes > 0)
+					ps.executeBatch();
+			}
+		});
+	}
+
+}
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.fichajespi.dto.interfaces.IPermisoAnalisis;
 import com.fichajespi.dto.interfaces.IUsuarioDtoEstadistica;
 import com.fichajespi.entity.Permiso;
 import com.fichajespi.entity.Usuario;
@@ -18,6 +19,9 @@ public interface PermisoRepository extends JpaRepository<Permiso, Long>,
 
 	List<Permiso> findByUsuarioAndAprobadoTrue(Usuario usuario);
 
+	@Query("SELECT p.usuario.id AS usuarioId, p.horaInicio AS horaInicio, p.horaFin AS horaFin FROM Permiso p WHERE p.dia = ?1 AND p.aprobado = TRUE")
+	List<IPermisoAnalisis> findAnalisisByDia(LocalDate dia);
+
 	@Query(value = "SELECT SUM(TIME_TO_SEC(TIMEDIFF(p.hora_fin, p.hora_inicio))) numero FROM permisos p WHERE MONTH(p.dia)=?1 AND YEAR(p.dia)=?2 AND aprobado =1", nativeQuery = true)
 	Integer countNumberOfPermisosOfMonth(int mes, int year);
 
@@ -0,0 +1,27 @@
+package com.fichajespi.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.fichajespi.dto.interfaces.IPresencia;
+import com.fichajespi.entity.Presencia;
+
+@Repository
+public interface PresenciaRepository extends JpaRepository<Presencia, Long> {
+
+	@Query("SELECT p.usuarioId AS usuarioId, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, p.ultimoTipo AS ultimoTipo, p.ultimoFichajeEn AS ultimoFichajeEn FROM Presencia p, Usuario u WHERE u.id = p.usuarioId")
+	List<IPresencia> findAllConUsuario();
+
+	// Inserta o actualiza en una sola sentencia, sin leer antes la fila
+	@Modifying
+	@Query(value = "INSERT INTO presencias (usuario_id, working, last_tipo, last_punch_at, last_fichaje_id) VALUES (?1, ?2, ?3, ?4, ?5) "
+			+ "ON DUPLICATE KEY UPDATE working = VALUES(working), last_tipo = VALUES(last_tipo), last_punch_at = VALUES(last_punch_at), last_fichaje_id = VALUES(last_fichaje_id)", nativeQuery = true)
+	int registrar(Long usuarioId, Boolean working, String ultimoTipo,
+			LocalDateTime ultimoFichajeEn, Long ultimoFichajeId);
+
+}
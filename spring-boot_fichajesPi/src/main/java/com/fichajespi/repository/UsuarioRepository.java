@@ -1,13 +1,20 @@
 package com.fichajespi.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.fichajespi.dto.interfaces.IUsuarioAnalisis;
+import com.fichajespi.dto.interfaces.IUsuarioBusqueda;
+import com.fichajespi.dto.interfaces.IUsuarioFichaje;
 import com.fichajespi.entity.Rol;
 import com.fichajespi.entity.Usuario;
 
@@ -34,5 +41,46 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long>,
 
 	List<Usuario> findByRolesIn(Set<Rol> roles);
 
+	// Proyección ligera para fichar: sin roles ni colecciones
+	@Query("SELECT u.id AS id, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, u.working AS working, u.version AS version FROM Usuario u WHERE u.numero = ?1")
+	Optional<IUsuarioFichaje> findFichajeByNumero(String numero);
+
+	@Query("SELECT u.id AS id, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, u.working AS working, u.version AS version FROM Usuario u WHERE u.numero IN ?1")
+	List<IUsuarioFichaje> findFichajeByNumeroIn(Collection<String> numeros);
+
+	@Query("SELECT u.id AS id, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, u.working AS working, u.version AS version FROM Usuario u")
+	List<IUsuarioFichaje> findFichajeAll();
+
+	// Página del análisis nocturno, por id para no depender de OFFSET
+	@Query("SELECT u.id AS id, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, u.email AS email, u.enVacaciones AS enVacaciones, u.deBaja AS deBaja FROM Usuario u WHERE (u.admin IS NULL OR u.admin = FALSE) AND u.id > ?1 ORDER BY u.id")
+	List<IUsuarioAnalisis> findAnalisisDesde(Long id, Pageable pageable);
+
+	// Campos del buscador de empleados (BuscadorUsuarios)
+	@Query("SELECT u.id AS id, u.numero AS numero, u.nombreEmpleado AS nombreEmpleado, u.dni AS dni, u.email AS email FROM Usuario u")
+	List<IUsuarioBusqueda> findBusquedaAll();
+
+	// Usuarios con token válido (RevocacionTokens)
+	@Query("SELECT u.numero FROM Usuario u")
+	List<String> findAllNumeros();
+
+	// Usuarios a los que no se les controla la hora de entrada
+	@Query("SELECT u.id FROM Usuario u WHERE u.admin = TRUE OR u.enVacaciones = TRUE OR u.deBaja = TRUE")
+	List<Long> findIdsSinControlHorario();
+
+	@Query("SELECT u.email FROM Usuario u WHERE u.id = ?1")
+	Optional<String> findEmailById(Long id);
+
+	@Modifying
+	@Query("UPDATE Usuario u SET u.enVacaciones = ?2, u.version = u.version + 1 WHERE u.id IN ?1")
+	int updateEnVacaciones(Collection<Long> ids, Boolean enVacaciones);
+
+	@Modifying
+	@Query("UPDATE Usuario u SET u.diasVacaciones = u.diasVacaciones - 1, u.version = u.version + 1 WHERE u.id IN ?1")
+	int descontarDiaVacaciones(Collection<Long> ids);
+
+	// Devuelve 0 si otro proceso ha modificado el usuario desde la lectura
+	@Modifying
+	@Query("UPDATE Usuario u SET u.working = ?2, u.version = u.version + 1 WHERE u.id = ?1 AND u.version = ?3")
+	int updateEstadoFichaje(Long id, Boolean working, Long version);
 
 }
@@ -1,11 +1,16 @@
 package com.fichajespi.repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.fichajespi.dto.interfaces.IVacacionesAnalisis;
 import com.fichajespi.entity.Usuario;
 import com.fichajespi.entity.Vacaciones;
 
@@ -17,4 +22,16 @@ public interface VacacionesRepository extends JpaRepository<Vacaciones, Long>,
 			Usuario usuario);
 
 	List<Vacaciones> findByUsuarioId(Long id);
+
+	// Periodos sin agotar que ya han empezado: los vigentes y los que hay que dar por agotados
+	@Query("SELECT v.id AS id, v.usuario.id AS usuarioId, v.inicio AS inicio, v.fin AS fin FROM Vacaciones v WHERE v.consumidas = FALSE AND v.aprobado = TRUE AND v.inicio <= ?1")
+	List<IVacacionesAnalisis> findAnalisisSinAgotarHasta(LocalDate dia);
+
+	// Periodos aprobados que cubren el día, agotados o no (días ya pasados)
+	@Query("SELECT v.id AS id, v.usuario.id AS usuarioId, v.inicio AS inicio, v.fin AS fin FROM Vacaciones v WHERE v.aprobado = TRUE AND v.inicio <= ?1 AND v.fin >= ?1")
+	List<IVacacionesAnalisis> findAnalisisVigentesEn(LocalDate dia);
+
+	@Modifying
+	@Query("UPDATE Vacaciones v SET v.consumidas = TRUE WHERE v.id IN ?1")
+	int marcarConsumidas(Collection<Long> ids);
 }
@@ -80,17 +80,23 @@ public class MainSecurity extends WebSecurityConfigurerAdapter {
 				.authorizeRequests()
 				.antMatchers("/calendario/**").hasRole(RRHH)
 				.antMatchers("/dia/**").hasRole(RRHH)
+				.antMatchers("/analisis/**").hasRole(RRHH)
 				.antMatchers("/horarios/**").hasRole(RRHH)
 				.antMatchers("/fichaje/now").permitAll()
+				// Los lotes traen día y hora del cliente: solo con credenciales de RRHH
+				.antMatchers("/fichaje/batch").hasRole(RRHH)
 				.antMatchers("/api/estimaciones", "/api/estimaciones/").permitAll()
 				.antMatchers("/public/usuario/id/**").permitAll()
 //				.antMatchers("/fichaje/now").hasRole(USER)
 				.antMatchers("/fichaje/pagesFiltered").hasRole(USER)
 				.antMatchers("/fichaje/listFiltered").hasRole(USER)
+				.antMatchers("/fichaje/seekFiltered").hasRole(USER)
 				.antMatchers("/fichaje/**").hasRole(RRHH)
+				.antMatchers("/presence/**").hasRole(USER)
 				.antMatchers("/permiso/create").hasRole(USER)
 				.antMatchers("/permiso/pagesFiltered").hasRole(USER)
 				.antMatchers("/permiso/listFiltered").hasRole(USER)
+				.antMatchers("/permiso/seekFiltered").hasRole(USER)
 				.antMatchers("/permiso/**").hasRole(RRHH)
 				.antMatchers("/usuario/password/**").hasRole(USER)
 				.antMatchers("/usuario/miusuario").hasRole(USER)
@@ -99,10 +105,13 @@ public class MainSecurity extends WebSecurityConfigurerAdapter {
 				.antMatchers("/vacaciones/create").hasRole(USER)
 				.antMatchers("/vacaciones/pagesFiltered").hasRole(USER)
 				.antMatchers("/vacaciones/listFiltered").hasRole(USER)
+				.antMatchers("/vacaciones/seekFiltered").hasRole(USER)
 				.antMatchers("/vacaciones/**").hasRole(RRHH)
 				.antMatchers("/auth/nuevo").hasRole(RRHH)
 				.antMatchers("/auth/login").permitAll()
 				.antMatchers("/test/**").permitAll()
+				.antMatchers("/actuator/health").permitAll()
+				.antMatchers("/actuator/**").hasRole(RRHH)
 				//.antMatchers("/**").permitAll() // Usar para testear la api sin login
 				.anyRequest().authenticated()
 				.and()
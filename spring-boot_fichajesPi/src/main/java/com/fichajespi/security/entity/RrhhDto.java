@@ -14,4 +14,5 @@ public class RrhhDto {
 	
 	private boolean rrhh;
 	private String number;
+	private Long id;
 }
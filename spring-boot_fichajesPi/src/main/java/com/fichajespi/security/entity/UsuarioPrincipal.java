@@ -1,6 +1,7 @@
 package com.fichajespi.security.entity;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -9,6 +10,9 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import com.fichajespi.entity.Usuario;
+import com.fichajespi.security.enums.RolNombre;
+
+import io.jsonwebtoken.Claims;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -43,6 +47,28 @@ public class UsuarioPrincipal implements UserDetails {
 				authorities);
 	}
 
+	// Desde el token firmado, sin leer el usuario: sin contraseña
+	public static UsuarioPrincipal build(Claims claims) {
+
+		List<?> roles = claims.get("roles", List.class);
+		List<GrantedAuthority> authorities = roles == null ? Collections.emptyList()
+				: roles.stream()
+						.map(rol -> new SimpleGrantedAuthority(rol.toString()))
+						.collect(Collectors.toList());
+
+		return new UsuarioPrincipal(
+				claims.getSubject(),
+				claims.get("nombre", String.class),
+				null,
+				claims.get("id", Long.class),
+				authorities);
+	}
+
+	public boolean hasRol(RolNombre rol) {
+		return authorities.stream()
+				.anyMatch(a -> rol.name().equals(a.getAuthority()));
+	}
+
 	@Override
 	public String getUsername() {
 		return numero;
@@ -2,24 +2,44 @@ package com.fichajespi.security.jwt;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import com.fichajespi.security.entity.UsuarioPrincipal;
+import com.fichajespi.util.Acentos;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.SignatureException;
 import io.jsonwebtoken.UnsupportedJwtException;
-
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Emite y comprueba los tokens.
+ *
+ * La clave y el parser se crean una vez. Los tokens ya comprobados se
+ * guardan, indexados por su firma (que ya es un hash del token), hasta que
+ * caducan: cada petición los vuelve a presentar y así no se repiten la
+ * verificación HMAC ni la lectura del JSON. Los aciertos y fallos se
+ * publican en "fichajes.jwt.cache".
+ */
 @Component
 public class JwtProvider {
 	private final static Logger logger = LoggerFactory.getLogger(JwtProvider.class);
@@ -30,6 +50,28 @@ public class JwtProvider {
 	@Value("${jwt.expiration}")
 	private int expiration;
 
+	@Value("${jwt.cache.max:10000}")
+	private int cacheMax;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private SecretKeySpec clave;
+	private JwtParser parser;
+	private final Map<String, Verificado> verificados = new ConcurrentHashMap<>();
+
+	private Counter aciertos;
+	private Counter fallos;
+
+	@PostConstruct
+	public void init() {
+		clave = new SecretKeySpec(secret.getBytes(), SignatureAlgorithm.HS512.getJcaName());
+		// Sin estado tras configurarlo: se comparte entre peticiones
+		parser = Jwts.parser().setSigningKey(clave);
+		aciertos = contador("acierto");
+		fallos = contador("fallo");
+	}
+
 	public String generateToken(Authentication authentication) {
 		UsuarioPrincipal usuarioPrincipal = (UsuarioPrincipal) authentication.getPrincipal();
 		List<String> roles = usuarioPrincipal.getAuthorities().stream()
@@ -39,23 +81,50 @@ public class JwtProvider {
 		return Jwts.builder()
 				.setSubject(usuarioPrincipal.getUsername())
 				.claim("roles", roles)
-				.claim("nombre", sanitizeString(usuarioPrincipal.getNombre()))
+				.claim("nombre", Acentos.quitar(usuarioPrincipal.getNombre()))
 				.claim("id", usuarioPrincipal.getId())
 				.setIssuedAt(new Date())
 				.setExpiration(new Date(new Date().getTime() + expiration))
-				.signWith(SignatureAlgorithm.HS512, secret.getBytes())
+				.signWith(SignatureAlgorithm.HS512, clave)
 				.compact();
 	}
 
 	public String getSubjectFromToken(String token) {
-		return Jwts.parser().setSigningKey(secret.getBytes()).parseClaimsJws(token).getBody()
-				.getSubject();
+		Claims claims = getClaims(token);
+		return claims != null ? claims.getSubject() : null;
 	}
 
 	public boolean validateToken(String token) {
+		return getClaims(token) != null;
+	}
+
+	/** Claims de un token válido; null si no lo es (el motivo queda en el log). */
+	public Claims getClaims(String token) {
+		// Sin las tres partes no se llega a lanzar la excepción del parser
+		int punto = token == null ? -1 : token.lastIndexOf('.');
+		if (punto <= 0 || punto == token.length() - 1 || token.indexOf('.') == punto) {
+			logger.error(token == null || token.isEmpty() ? "token vacío" : "token mal formado");
+			return null;
+		}
+
+		String firma = token.substring(punto + 1);
+		Verificado verificado = verificados.get(firma);
+		// Misma firma con otro contenido: no es el token verificado
+		if (verificado != null && verificado.token.equals(token)) {
+			if (System.currentTimeMillis() < verificado.caduca) {
+				aciertos.increment();
+				return verificado.claims;
+			}
+			verificados.remove(firma, verificado);
+			logger.error("token expirado");
+			return null;
+		}
+
+		fallos.increment();
 		try {
-			Jwts.parser().setSigningKey(secret.getBytes()).parseClaimsJws(token);
-			return true;
+			Claims claims = parser.parseClaimsJws(token).getBody();
+			guardar(firma, new Verificado(token, claims));
+			return claims;
 		} catch (MalformedJwtException e) {
 			logger.error("token mal formado");
 		} catch (UnsupportedJwtException e) {
@@ -67,20 +136,38 @@ public class JwtProvider {
 		} catch (SignatureException e) {
 			logger.error("fail en la firma");
 		}
-		return false;
+		return null;
 	}
 
-	private String sanitizeString(String input) {
-
-		String acentos = "ÃÀÁÄÂÈÉËÊÌÍÏÎÒÓÖÔÙÚÜÛãàáäâèéëêìíïîòóöôùúüûÑñÇç";
-		String original = "AAAAAEEEEIIIIOOOOUUUUaaaaaeeeeiiiioooouuuunncc";
-
-		for (int i = 0; i < acentos.length(); i++) {
-			input = input.replace(acentos.charAt(i), original.charAt(i));
+	private void guardar(String firma, Verificado verificado) {
+		if (verificados.size() >= cacheMax) {
+			long ahora = System.currentTimeMillis();
+			verificados.values().removeIf(v -> v.caduca <= ahora);
+			// Todos vigentes: se empieza de nuevo antes que crecer sin límite
+			if (verificados.size() >= cacheMax)
+				verificados.clear();
 		}
+		verificados.put(firma, verificado);
+	}
 
-		return input;
+	private Counter contador(String resultado) {
+		return Counter.builder("fichajes.jwt.cache")
+				.description("Tokens ya verificados en peticiones anteriores")
+				.tag("resultado", resultado)
+				.register(meterRegistry);
+	}
 
+	private static class Verificado {
+		private final String token;
+		private final Claims claims;
+		private final long caduca;
+
+		Verificado(String token, Claims claims) {
+			this.token = token;
+			this.claims = claims;
+			this.caduca = claims.getExpiration() != null ? claims.getExpiration().getTime()
+					: Long.MAX_VALUE;
+		}
 	}
 
 }
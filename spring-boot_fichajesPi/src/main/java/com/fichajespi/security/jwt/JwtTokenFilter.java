@@ -4,11 +4,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.fichajespi.security.service.UserDetailsServiceImpl;
+import com.fichajespi.security.entity.UsuarioPrincipal;
+import com.fichajespi.security.service.RevocacionTokens;
+import com.fichajespi.security.service.TicketsStream;
+
+import io.jsonwebtoken.Claims;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -19,24 +23,35 @@ import java.io.IOException;
 public class JwtTokenFilter extends OncePerRequestFilter {
 
     private final static Logger logger = LoggerFactory.getLogger(JwtTokenFilter.class);
+    private final static String STREAM = "/fichaje/stream";
 
     @Autowired
     JwtProvider jwtProvider;
 
     @Autowired
-    UserDetailsServiceImpl userDetailsService;
+    RevocacionTokens revocacionTokens;
+
+    @Autowired
+    TicketsStream ticketsStream;
 
     @Override
     protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain filterChain) throws ServletException, IOException {
         try {
             String token = getToken(req);
-            if(token != null && jwtProvider.validateToken(token)){
-                String nombreUsuario = jwtProvider.getSubjectFromToken(token);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(nombreUsuario);
+            // Una sola lectura del token y ninguna consulta: el principal sale de los claims
+            Claims claims = token != null ? jwtProvider.getClaims(token) : null;
+            if(claims != null && !revocacionTokens.revocado(claims.getSubject())){
+                UsuarioPrincipal principal = UsuarioPrincipal.build(claims);
 
+                // El token queda como credencial para que GetInfoFromToken lo reconozca
                 UsernamePasswordAuthenticationToken auth =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                        new UsernamePasswordAuthenticationToken(principal, token, principal.getAuthorities());
                 SecurityContextHolder.getContext().setAuthentication(auth);
+            } else if(token == null && esStream(req) && req.getParameter("ticket") != null){
+                // EventSource no envía cabeceras: el stream se abre con un ticket
+                Authentication auth = ticketsStream.canjear(req.getParameter("ticket"));
+                if(auth != null && !revocacionTokens.revocado(auth.getName()))
+                    SecurityContextHolder.getContext().setAuthentication(auth);
             }
         } catch (Exception e){
             logger.error("fail en el método doFilter " + e.getMessage());
@@ -44,6 +59,10 @@ public class JwtTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(req, res);
     }
 
+    private boolean esStream(HttpServletRequest request){
+        return STREAM.equals(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
     private String getToken(HttpServletRequest request){
         String header = request.getHeader("Authorization");
         if(header != null && header.startsWith("Bearer"))
@@ -1,22 +1,24 @@
 package com.fichajespi.security.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
-import com.fichajespi.entity.Rol;
-import com.fichajespi.entity.Usuario;
 import com.fichajespi.security.entity.RrhhDto;
+import com.fichajespi.security.entity.UsuarioPrincipal;
 import com.fichajespi.security.enums.RolNombre;
 import com.fichajespi.security.jwt.JwtProvider;
-import com.fichajespi.service.UsuarioService;
+
+import io.jsonwebtoken.Claims;
 
 @Service
 public class GetInfoFromToken {
 
-	@Autowired
-	UsuarioService usuarioService;
 	@Autowired
 	JwtProvider jwtProvider;
+	@Autowired
+	RevocacionTokens revocacionTokens;
 
 	public RrhhDto rrhhInfo(String token) {
 
@@ -24,18 +26,29 @@ public class GetInfoFromToken {
 
 		boolean response = true;
 		String numeroUsuario = "";
-
-		if (jwtProvider.validateToken(token)) {
-			numeroUsuario = jwtProvider.getSubjectFromToken(token);
-			Usuario usuario = usuarioService.findByNumero(numeroUsuario).orElse(null);
-			if (usuario != null) {
-				for (Rol rol : usuario.getRoles()) {
-					if (rol.getRolNombre() == RolNombre.ROLE_RRHH)
-						response = false;
-				}
-			}
+		Long idUsuario = null;
+
+		UsuarioPrincipal principal = getPrincipal(token);
+		if (principal != null) {
+			numeroUsuario = principal.getNumero();
+			idUsuario = principal.getId();
+			if (principal.hasRol(RolNombre.ROLE_RRHH))
+				response = false;
 		}
 
-		return new RrhhDto(response, numeroUsuario);
+		return new RrhhDto(response, numeroUsuario, idUsuario);
+	}
+
+	// El de JwtTokenFilter si es el mismo token; si no, se lee de nuevo
+	private UsuarioPrincipal getPrincipal(String token) {
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		if (auth != null && token.equals(auth.getCredentials())
+				&& auth.getPrincipal() instanceof UsuarioPrincipal)
+			return (UsuarioPrincipal) auth.getPrincipal();
+
+		Claims claims = jwtProvider.getClaims(token);
+		if (claims == null || revocacionTokens.revocado(claims.getSubject()))
+			return null;
+		return UsuarioPrincipal.build(claims);
 	}
 }
@@ -0,0 +1,77 @@
+package com.fichajespi.security.service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fichajespi.repository.UsuarioRepository;
+
+/**
+ * Tokens de usuarios que ya no existen.
+ *
+ * El filtro JWT no lee el usuario en cada petición; para no aceptar hasta
+ * que caduque el token de un usuario borrado se guarda el conjunto de
+ * números de usuario, que se vuelve a leer (una sola consulta) cada ttl-ms
+ * o cuando UsuarioService guarda o borra. Con jwt.revocacion.ttl-ms=0 no se
+ * comprueba.
+ */
+@Component
+public class RevocacionTokens {
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+
+	@Value("${jwt.revocacion.ttl-ms:30000}")
+	private long ttlMs;
+
+	private volatile Numeros numeros;
+
+	public boolean revocado(String numero) {
+		if (ttlMs <= 0)
+			return false;
+		Numeros actuales = numeros;
+		if (actuales == null || System.nanoTime() - actuales.leidos > TimeUnit.MILLISECONDS
+				.toNanos(ttlMs))
+			actuales = cargar();
+		return !actuales.numeros.contains(numero);
+	}
+
+	public void invalidar() {
+		numeros = null;
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(
+					new TransactionSynchronization() {
+						@Override
+						public void afterCompletion(int status) {
+							numeros = null;
+						}
+					});
+	}
+
+	// Una sola consulta aunque lleguen muchas peticiones a la vez
+	private synchronized Numeros cargar() {
+		Numeros actuales = numeros;
+		if (actuales != null && System.nanoTime() - actuales.leidos <= TimeUnit.MILLISECONDS
+				.toNanos(ttlMs))
+			return actuales;
+		actuales = new Numeros(new HashSet<>(usuarioRepository.findAllNumeros()));
+		numeros = actuales;
+		return actuales;
+	}
+
+	private static class Numeros {
+		private final Set<String> numeros;
+		private final long leidos = System.nanoTime();
+
+		Numeros(Set<String> numeros) {
+			this.numeros = numeros;
+		}
+	}
+
+}
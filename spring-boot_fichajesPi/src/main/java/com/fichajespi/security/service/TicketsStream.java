@@ -0,0 +1,68 @@
+package com.fichajespi.security.service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tickets de un solo uso para abrir GET /fichaje/stream desde el navegador.
+ *
+ * EventSource no puede enviar la cabecera Authorization: el panel pide un
+ * ticket con su token (POST /fichaje/stream/ticket) y abre el stream con
+ * ?ticket=. El ticket caduca a los ttl-ms y se borra al usarlo, así que el
+ * token no aparece en la URL ni en los logs de acceso.
+ */
+@Component
+public class TicketsStream {
+
+	private final SecureRandom random = new SecureRandom();
+	private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+	@Value("${fichaje.stream.ticket-ms:30000}")
+	private long ttlMs = 30000;
+
+	public String emitir(Authentication auth) {
+		purgar();
+		byte[] bytes = new byte[24];
+		random.nextBytes(bytes);
+		String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		tickets.put(id, new Ticket(auth,
+				System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+		return id;
+	}
+
+	/** La autenticación del ticket, o null si no existe, ya se usó o ha caducado. */
+	public Authentication canjear(String id) {
+		Ticket ticket = tickets.remove(id);
+		if (ticket == null || ticket.caducado(System.nanoTime()))
+			return null;
+		return ticket.auth;
+	}
+
+	// Los que no se llegan a usar
+	private void purgar() {
+		long ahora = System.nanoTime();
+		tickets.values().removeIf(t -> t.caducado(ahora));
+	}
+
+	private static class Ticket {
+		private final Authentication auth;
+		private final long caduca;
+
+		Ticket(Authentication auth, long caduca) {
+			this.auth = auth;
+			this.caduca = caduca;
+		}
+
+		boolean caducado(long ahora) {
+			return ahora - caduca > 0;
+		}
+	}
+
+}
@@ -0,0 +1,388 @@
+package com.fichajespi.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fichajespi.concurrent.StripedLock;
+import com.fichajespi.dto.entity.FichajeDtoReqRes;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IUsuarioFichaje;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Presencia;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.PresenciaRepository;
+import com.fichajespi.repository.UsuarioRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Camino rápido de fichaje usado por POST /fichaje/now.
+ *
+ * Busca al usuario con una proyección ligera (sin roles ni colecciones),
+ * cambia su estado, guarda el fichaje y actualiza su presencia en una única
+ * transacción. La latencia de cada fichaje se publica en la métrica
+ * "fichajes.fichar" y cada fichaje guardado se anuncia con un
+ * FichajeRegistradoEvent.
+ *
+ * Los fichajes de un mismo empleado se serializan con un cerrojo por número
+ * de empleado y, como segunda barrera frente a otros procesos (scripts de
+ * auto-fichaje, otros nodos), el cambio de estado comprueba la versión del
+ * usuario y se reintenta si ha cambiado entre la lectura y la escritura.
+ *
+ * Los lotes de POST /fichaje/batch siguen las mismas reglas, pero se
+ * resuelven con consultas IN y se insertan con JDBC batching en una sola
+ * transacción. Un fichaje del lote anterior al último guardado del empleado
+ * se rechaza: su tipo saldría del estado actual y la presencia retrocedería.
+ * El diario de fichajes sí los guarda (ya se los ha confirmado al empleado):
+ * en su hora, con el tipo que sigue al fichaje anterior y sin tocar el
+ * estado ni la presencia.
+ */
+@Service
+public class FicharService {
+
+	private static final int LONGITUD_CLAVE = 64;
+	private static final int TAMANO_IN = 1000;
+
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private PresenciaRepository presenciaRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Value("${fichaje.lock.stripes:256}")
+	private int stripes;
+	@Value("${fichaje.reintentos:5}")
+	private int reintentos;
+	@Value("${fichaje.lote.tolerancia-segundos:300}")
+	private long toleranciaSegundos;
+
+	private StripedLock locks;
+	private TransactionTemplate transactionTemplate;
+	private Timer timer;
+	private Timer timerLote;
+	private Counter conflictos;
+	private Counter atrasados;
+
+	@PostConstruct
+	public void init() {
+		locks = new StripedLock(stripes);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		timer = Timer.builder("fichajes.fichar")
+				.description("Latencia de cada fichaje, transacción incluida")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		timerLote = Timer.builder("fichajes.lote")
+				.description("Latencia de cada lote de fichajes")
+				.register(meterRegistry);
+		conflictos = Counter.builder("fichajes.conflictos")
+				.description("Fichajes reintentados por cambio de versión del usuario")
+				.register(meterRegistry);
+		atrasados = Counter.builder("fichajes.lote.atrasados")
+				.description("Fichajes del diario guardados detrás del último del empleado")
+				.register(meterRegistry);
+	}
+
+	public FichajeDtoReqRes fichar(FichajeDtoReqRes fichajeDto) {
+		return timer.record(() -> locks.withLock(
+				fichajeDto.getNumeroUsuario(),
+				() -> conReintentos(() -> transactionTemplate
+						.execute(status -> registrar(fichajeDto)))));
+	}
+
+	public List<FichajeLoteResultado> ficharLote(List<FichajeLoteDto> lote) {
+		return ficharLote(lote, false);
+	}
+
+	/**
+	 * @param guardarAtrasados guarda en vez de rechazar los fichajes anteriores
+	 *                         al último del empleado; solo para fichajes ya
+	 *                         confirmados, como los del diario
+	 */
+	public List<FichajeLoteResultado> ficharLote(List<FichajeLoteDto> lote,
+			boolean guardarAtrasados) {
+		Set<String> numeros = lote.stream()
+				.map(FichajeLoteDto::getNumeroUsuario)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toSet());
+		return timerLote.record(() -> locks.withLocks(numeros,
+				() -> conReintentos(() -> transactionTemplate
+						.execute(status -> registrarLote(lote, numeros, guardarAtrasados)))));
+	}
+
+	private <T> T conReintentos(Supplier<T> operacion) {
+		for (int intento = 1;; intento++) {
+			try {
+				return operacion.get();
+			} catch (ObjectOptimisticLockingFailureException e) {
+				conflictos.increment();
+				if (intento >= reintentos)
+					throw e;
+			}
+		}
+	}
+
+	private FichajeDtoReqRes registrar(FichajeDtoReqRes fichajeDto) {
+
+		IUsuarioFichaje usuario = usuarioRepository
+				.findFichajeByNumero(fichajeDto.getNumeroUsuario())
+				.orElse(null);
+		if (usuario == null)
+			return null;
+
+		// Usar UTC para consistencia global
+		LocalDate dia = LocalDate.now(ZoneOffset.UTC);
+		LocalTime hora = LocalTime.now(ZoneOffset.UTC);
+
+		boolean working = Boolean.TRUE.equals(usuario.getWorking());
+		TipoFichaje tipo = working ? TipoFichaje.SALIDA : TipoFichaje.ENTRADA;
+
+		int actualizados = usuarioRepository.updateEstadoFichaje(
+				usuario.getId(), !working, usuario.getVersion());
+		if (actualizados == 0)
+			throw new ObjectOptimisticLockingFailureException(Usuario.class,
+					usuario.getId());
+
+		Fichaje fichaje = fichajeRepository.save(Fichaje.builder()
+				.dia(dia)
+				.hora(hora)
+				.tipo(tipo.toString())
+				.origen(fichajeDto.getOrigen())
+				.usuario(usuarioRepository.getById(usuario.getId()))
+				.build());
+		registrarPresencia(usuario.getId(), fichaje);
+		publicar(usuario, fichaje);
+
+		fichajeDto.setDia(dia);
+		fichajeDto.setHora(hora);
+		fichajeDto.setNombreUsuario(usuario.getNombreEmpleado());
+		fichajeDto.setTipo(working ? "salida" : "entrada");
+		return fichajeDto;
+	}
+
+	private List<FichajeLoteResultado> registrarLote(List<FichajeLoteDto> lote,
+			Set<String> numeros, boolean guardarAtrasados) {
+
+		Map<String, IUsuarioFichaje> usuarios = new HashMap<>();
+		for (List<String> bloque : bloques(numeros))
+			usuarioRepository.findFichajeByNumeroIn(bloque)
+					.forEach(u -> usuarios.put(u.getNumero(), u));
+
+		Set<String> claves = lote.stream()
+				.map(FichajeLoteDto::getClave)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toSet());
+		Set<String> existentes = new HashSet<>();
+		for (List<String> bloque : bloques(claves))
+			existentes.addAll(fichajeRepository.findClavesExistentes(bloque));
+
+		// Último fichaje guardado de cada empleado
+		Map<Long, LocalDateTime> anteriores = new HashMap<>();
+		for (List<Long> bloque : bloques(usuarios.values().stream()
+				.map(IUsuarioFichaje::getId).collect(Collectors.toList())))
+			for (Presencia p : presenciaRepository.findAllById(bloque))
+				if (p.getUltimoFichajeEn() != null)
+					anteriores.put(p.getUsuarioId(), p.getUltimoFichajeEn());
+
+		LocalDateTime limite = LocalDateTime.now(ZoneOffset.UTC)
+				.plusSeconds(toleranciaSegundos);
+		FichajeLoteResultado[] resultados = new FichajeLoteResultado[lote.size()];
+		Map<String, List<Integer>> porUsuario = new LinkedHashMap<>();
+		Map<String, List<Integer>> atrasadosPorUsuario = new LinkedHashMap<>();
+		Set<String> vistas = new HashSet<>();
+
+		for (int i = 0; i < lote.size(); i++) {
+			FichajeLoteDto item = lote.get(i);
+			String clave = item.getClave();
+			if (!usuarios.containsKey(item.getNumeroUsuario()))
+				resultados[i] = rechazado(item, "Usuario no encontrado");
+			else if (item.getDia() == null || item.getHora() == null)
+				resultados[i] = rechazado(item, "El día y la hora son obligatorios");
+			else if (LocalDateTime.of(item.getDia(), item.getHora()).isAfter(limite))
+				resultados[i] = rechazado(item, "Fichaje con fecha futura");
+			else if (clave != null && clave.length() > LONGITUD_CLAVE)
+				resultados[i] = rechazado(item, "Clave demasiado larga");
+			else if (clave != null && (existentes.contains(clave) || !vistas.add(clave)))
+				resultados[i] = resultado(item, EstadosFichajeLote.DUPLICADO, null, null);
+			else if (anteriorAlUltimo(item,
+					anteriores.get(usuarios.get(item.getNumeroUsuario()).getId()))) {
+				if (guardarAtrasados)
+					atrasadosPorUsuario.computeIfAbsent(item.getNumeroUsuario(),
+							n -> new ArrayList<>()).add(i);
+				else
+					resultados[i] = rechazado(item, "Fichaje anterior al último registrado");
+			} else
+				porUsuario.computeIfAbsent(item.getNumeroUsuario(),
+						n -> new ArrayList<>()).add(i);
+		}
+
+		List<Fichaje> nuevos = new ArrayList<>();
+		Map<Long, Fichaje> ultimos = new LinkedHashMap<>();
+		List<IUsuarioFichaje> propietarios = new ArrayList<>();
+		// Atrasados: todos anteriores al último guardado, así que el fichaje
+		// que les precede ya está en la tabla. Estado y presencia no cambian
+		atrasadosPorUsuario.forEach((numero, indices) -> {
+			ordenarPorHora(lote, indices);
+			IUsuarioFichaje usuario = usuarios.get(numero);
+			Usuario referencia = usuarioRepository.getById(usuario.getId());
+			FichajeLoteDto primero = lote.get(indices.get(0));
+			boolean working = fichajeRepository.findTiposAnteriores(usuario.getId(),
+					primero.getDia(), primero.getHora(), PageRequest.of(0, 1)).stream()
+					.anyMatch(TipoFichaje.ENTRADA.toString()::equals);
+			for (Integer i : indices) {
+				TipoFichaje tipo = working ? TipoFichaje.SALIDA : TipoFichaje.ENTRADA;
+				working = !working;
+				nuevos.add(fichaje(lote.get(i), tipo, referencia));
+				propietarios.add(usuario);
+				resultados[i] = resultado(lote.get(i), EstadosFichajeLote.CREADO, tipo,
+						"Guardado detrás del último fichaje");
+				atrasados.increment();
+			}
+		});
+
+		porUsuario.forEach((numero, indices) -> {
+			// Los tipos se asignan en el orden en que se ficharon
+			ordenarPorHora(lote, indices);
+
+			IUsuarioFichaje usuario = usuarios.get(numero);
+			Usuario referencia = usuarioRepository.getById(usuario.getId());
+			boolean working = Boolean.TRUE.equals(usuario.getWorking());
+			for (Integer i : indices) {
+				FichajeLoteDto item = lote.get(i);
+				TipoFichaje tipo = working ? TipoFichaje.SALIDA : TipoFichaje.ENTRADA;
+				working = !working;
+				Fichaje fichaje = fichaje(item, tipo, referencia);
+				nuevos.add(fichaje);
+				ultimos.put(usuario.getId(), fichaje);
+				propietarios.add(usuario);
+				resultados[i] = resultado(item, EstadosFichajeLote.CREADO,
+						tipo, null);
+			}
+
+			int actualizados = usuarioRepository.updateEstadoFichaje(
+					usuario.getId(), working, usuario.getVersion());
+			if (actualizados == 0)
+				throw new ObjectOptimisticLockingFailureException(Usuario.class,
+						usuario.getId());
+		});
+
+		fichajeRepository.saveAll(nuevos);
+		// Solo los posteriores al último guardado: la presencia solo avanza
+		ultimos.forEach(this::registrarPresencia);
+		// Los ids se asignan al guardar
+		for (int i = 0; i < nuevos.size(); i++)
+			publicar(propietarios.get(i), nuevos.get(i));
+		return Arrays.asList(resultados);
+	}
+
+	private static void ordenarPorHora(List<FichajeLoteDto> lote, List<Integer> indices) {
+		indices.sort(Comparator.comparing((Integer i) -> LocalDateTime
+				.of(lote.get(i).getDia(), lote.get(i).getHora()))
+				.thenComparing(i -> i));
+	}
+
+	private static Fichaje fichaje(FichajeLoteDto item, TipoFichaje tipo, Usuario usuario) {
+		return Fichaje.builder()
+				.dia(item.getDia())
+				.hora(item.getHora())
+				.tipo(tipo.toString())
+				.origen(item.getOrigen())
+				.clave(item.getClave())
+				.usuario(usuario)
+				.build();
+	}
+
+	private FichajeLoteResultado rechazado(FichajeLoteDto item, String mensaje) {
+		return resultado(item, EstadosFichajeLote.RECHAZADO, null, mensaje);
+	}
+
+	private FichajeLoteResultado resultado(FichajeLoteDto item,
+			EstadosFichajeLote estado, TipoFichaje tipo, String mensaje) {
+		return FichajeLoteResultado.builder()
+				.clave(item.getClave())
+				.numeroUsuario(item.getNumeroUsuario())
+				.estado(estado.toString())
+				.tipo(tipo == null ? null : tipo.toString())
+				.mensaje(mensaje)
+				.build();
+	}
+
+	// Con la misma precisión que guarda la presencia
+	private static boolean anteriorAlUltimo(FichajeLoteDto item, LocalDateTime ultimo) {
+		return ultimo != null && LocalDateTime.of(item.getDia(), item.getHora())
+				.truncatedTo(ChronoUnit.SECONDS).isBefore(ultimo);
+	}
+
+	private <T> List<List<T>> bloques(Collection<T> valores) {
+		List<T> lista = new ArrayList<>(valores);
+		List<List<T>> bloques = new ArrayList<>();
+		for (int i = 0; i < lista.size(); i += TAMANO_IN)
+			bloques.add(lista.subList(i, Math.min(i + TAMANO_IN, lista.size())));
+		return bloques;
+	}
+
+	private void publicar(IUsuarioFichaje usuario, Fichaje fichaje) {
+		eventPublisher.publishEvent(FichajeRegistradoEvent.builder()
+				.fichajeId(fichaje.getId())
+				.usuarioId(usuario.getId())
+				.numeroUsuario(usuario.getNumero())
+				.nombreUsuario(usuario.getNombreEmpleado())
+				.dia(fichaje.getDia())
+				.hora(fichaje.getHora())
+				.tipo(fichaje.getTipo())
+				.origen(fichaje.getOrigen())
+				.clave(fichaje.getClave())
+				.build());
+	}
+
+	private void registrarPresencia(Long usuarioId, Fichaje fichaje) {
+		// La columna no guarda fracciones de segundo: truncar en vez de redondear
+		presenciaRepository.registrar(usuarioId,
+				TipoFichaje.ENTRADA.toString().equals(fichaje.getTipo()),
+				fichaje.getTipo(),
+				LocalDateTime.of(fichaje.getDia(), fichaje.getHora())
+						.truncatedTo(ChronoUnit.SECONDS),
+				fichaje.getId());
+	}
+
+}
@@ -24,6 +24,11 @@ public class IncidenciaService extends CommonServiceImpl<Incidencia, IncidenciaR
 		return repository.findByUsuarioId(id);
 	}
 
+	// Una incidencia por usuario, día y resumen: repetir un análisis no duplica filas
+	public void upsertAll(List<Incidencia> incidencias) {
+		repository.upsertAll(incidencias);
+	}
+
 	public ChartDataDto numberOfIncidenciasLast12Months() {
 
 		ChartDataDto result = new ChartDataDto();
@@ -4,9 +4,11 @@ import java.util.Optional;
 
 import javax.transaction.Transactional;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.fichajespi.entity.Rol;
+import com.fichajespi.mail.DirectorioDestinatarios;
 import com.fichajespi.security.enums.RolNombre;
 import com.fichajespi.repository.RolRepository;
 import com.fichajespi.service.common.CommonServiceImpl;
@@ -15,8 +17,24 @@ import com.fichajespi.service.common.CommonServiceImpl;
 @Transactional
 public class RolService extends CommonServiceImpl<Rol, RolRepository> {
 
+	@Autowired
+	private DirectorioDestinatarios directorio;
+
+	// Se consulta en cada alta y edición de usuario: se sirve de la caché
 	public Optional<Rol> findByRolNombre(RolNombre rolNombre) {
-		return repository.findByRolNombre(rolNombre);
+		return directorio.getRol(rolNombre);
+	}
+
+	@Override
+	public Rol save(Rol entity) {
+		directorio.invalidar();
+		return super.save(entity);
+	}
+
+	@Override
+	public void delete(Long id) {
+		directorio.invalidar();
+		super.delete(id);
 	}
 
 }
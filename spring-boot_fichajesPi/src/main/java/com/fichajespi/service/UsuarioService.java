@@ -6,17 +6,49 @@ import java.util.Set;
 
 import javax.transaction.Transactional;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.fichajespi.busqueda.BuscadorUsuarios;
 import com.fichajespi.entity.Rol;
 import com.fichajespi.entity.Usuario;
+import com.fichajespi.mail.DirectorioDestinatarios;
 import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.security.service.RevocacionTokens;
 import com.fichajespi.service.common.CommonServiceImpl;
 
 @Service
 @Transactional
 public class UsuarioService extends CommonServiceImpl<Usuario, UsuarioRepository> {
 
+	@Autowired
+	private DirectorioDestinatarios directorio;
+	@Autowired
+	private RevocacionTokens revocacionTokens;
+	@Autowired
+	private BuscadorUsuarios buscador;
+
+	// Puede cambiar el email o los roles: los destinatarios de RRHH se recargan.
+	// Un usuario nuevo debe poder usar su token antes de que caduque la caché,
+	// y el buscador lo recoge al confirmar
+	@Override
+	public Usuario save(Usuario entity) {
+		directorio.invalidar();
+		revocacionTokens.invalidar();
+		Usuario guardado = super.save(entity);
+		buscador.guardado(guardado);
+		return guardado;
+	}
+
+	@Override
+	public void delete(Long id) {
+		directorio.invalidar();
+		// Los tokens ya emitidos no vuelven a leer el usuario
+		revocacionTokens.invalidar();
+		super.delete(id);
+		buscador.borrado(id);
+	}
+
 //	public Optional<Usuario> findByEmail(String email) {
 //		return repository.findByEmail(email);
 //	}
@@ -8,6 +8,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 
+import com.fichajespi.dto.entity.PaginaCursor;
+
 public interface CommonService<E> {
 
 	public E save(E entity);
@@ -22,6 +24,9 @@ public interface CommonService<E> {
 
 	public Page<E> pagesAndSpec(Specification<E> s, Pageable pageable);
 
+	public PaginaCursor<E> seekAndSpec(Specification<E> s, String order, boolean asc,
+			String cursor, int size, boolean total);
+
 	public Optional<E> findById(Long id);
 
 	public void delete(Long id);
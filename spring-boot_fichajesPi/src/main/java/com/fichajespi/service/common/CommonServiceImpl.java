@@ -1,9 +1,27 @@
 package com.fichajespi.service.common;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,12 +29,24 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
+import com.fichajespi.dto.entity.PaginaCursor;
+
 public class CommonServiceImpl<E, R extends JpaRepository<E, Long> & JpaSpecificationExecutor<E>>
 		implements CommonService<E> {
 
+	private static final String ID = "id";
+
 	@Autowired
 	protected R repository;
 
+	@PersistenceContext
+	protected EntityManager entityManager;
+
+	@Value("${paginacion.total.max:10000}")
+	private int totalMax = 10000;
+	@Value("${paginacion.size.max:100}")
+	private int sizeMax = 100;
+
 	@Override
 	public E save(E entity) {
 		return repository.save(entity);
@@ -56,4 +86,179 @@ public class CommonServiceImpl<E, R extends JpaRepository<E, Long> & JpaSpecific
 	public Page<E> pagesAndSpec(Specification<E> s, Pageable pageable) {
 		return repository.findAll(s, pageable);
 	}
+
+	/*
+	 * Paginación por cursor: en vez de saltar OFFSET filas y contar todas las
+	 * que cumplen el filtro, cada página continúa desde la última fila de la
+	 * anterior (valor de la columna de orden e id). Cuesta lo mismo la página
+	 * 1 que la 10.000. Los nulos van primero en orden ascendente, como en
+	 * MySQL. Una página de más de sizeMax filas se recorta a sizeMax.
+	 */
+	@Override
+	public PaginaCursor<E> seekAndSpec(Specification<E> s, String order, boolean asc,
+			String cursor, int size, boolean total) {
+		if (size < 1)
+			throw new PaginacionNoValidaException("El tamaño de página debe ser mayor que 0");
+		size = Math.min(size, sizeMax);
+
+		Class<E> clase = getEntityClass();
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<E> query = cb.createQuery(clase);
+		Root<E> root = query.from(clase);
+		Path<Comparable<Object>> columna = ruta(root, order);
+		Path<Long> id = root.get(ID);
+
+		List<Predicate> where = new ArrayList<>();
+		Predicate filtro = s == null ? null : s.toPredicate(root, query, cb);
+		if (filtro != null)
+			where.add(filtro);
+		if (cursor != null && !cursor.isEmpty())
+			where.add(desde(cb, columna, id, Cursor.leer(cursor, order, asc, columna.getJavaType())));
+		query.select(root).where(where.toArray(new Predicate[0]));
+		if (ID.equals(order))
+			query.orderBy(asc ? cb.asc(id) : cb.desc(id));
+		else
+			query.orderBy(asc ? cb.asc(columna) : cb.desc(columna),
+					asc ? cb.asc(id) : cb.desc(id));
+
+		// Una fila de más para saber si hay página siguiente
+		List<E> filas = entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+		String siguiente = null;
+		if (filas.size() > size) {
+			filas = new ArrayList<>(filas.subList(0, size));
+			BeanWrapper ultima = PropertyAccessorFactory.forBeanPropertyAccess(filas.get(size - 1));
+			siguiente = new Cursor(order, asc, (Long) ultima.getPropertyValue(ID),
+					ultima.getPropertyValue(order)).escribir();
+		}
+
+		Long contadas = null;
+		Boolean exacto = null;
+		if (total) {
+			long n = contar(s, clase);
+			contadas = Math.min(n, totalMax);
+			exacto = n <= totalMax;
+		}
+		return new PaginaCursor<E>(filas, size, siguiente, contadas, exacto);
+	}
+
+	// Filas posteriores a la del cursor en el orden (columna, id)
+	private Predicate desde(CriteriaBuilder cb, Path<Comparable<Object>> columna, Path<Long> id,
+			Cursor cursor) {
+		Predicate siguienteId = cursor.asc ? cb.greaterThan(id, cursor.id)
+				: cb.lessThan(id, cursor.id);
+		if (ID.equals(cursor.order))
+			return siguienteId;
+
+		@SuppressWarnings("unchecked")
+		Comparable<Object> valor = (Comparable<Object>) cursor.valor;
+		if (valor == null)
+			return cursor.asc ? cb.or(cb.and(cb.isNull(columna), siguienteId), cb.isNotNull(columna))
+					: cb.and(cb.isNull(columna), siguienteId);
+		Predicate mismoValor = cb.and(cb.equal(columna, valor), siguienteId);
+		return cursor.asc ? cb.or(cb.greaterThan(columna, valor), mismoValor)
+				: cb.or(cb.lessThan(columna, valor), mismoValor, cb.isNull(columna));
+	}
+
+	// Como mucho totalMax + 1 ids: el coste no crece con la tabla
+	private long contar(Specification<E> s, Class<E> clase) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<E> root = query.from(clase);
+		query.select(root.get(ID));
+		Predicate filtro = s == null ? null : s.toPredicate(root, query, cb);
+		if (filtro != null)
+			query.where(filtro);
+		return entityManager.createQuery(query).setMaxResults(totalMax + 1).getResultList().size();
+	}
+
+	// "usuario.nombreEmpleado" igual que en Sort.by
+	private Path<Comparable<Object>> ruta(Root<E> root, String order) {
+		Path<?> ruta = root;
+		try {
+			for (String atributo : order.split("\\."))
+				ruta = ruta.get(atributo);
+		} catch (IllegalArgumentException e) {
+			throw new PaginacionNoValidaException("No se puede ordenar por " + order);
+		}
+		@SuppressWarnings("unchecked")
+		Path<Comparable<Object>> columna = (Path<Comparable<Object>>) ruta;
+		if (!Comparable.class.isAssignableFrom(columna.getJavaType())
+				&& !columna.getJavaType().isPrimitive())
+			throw new PaginacionNoValidaException("No se puede ordenar por " + order);
+		return columna;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Class<E> getEntityClass() {
+		return (Class<E>) GenericTypeResolver.resolveTypeArguments(getClass(),
+				CommonServiceImpl.class)[0];
+	}
+
+	/** Posición de la última fila devuelta, opaca para el cliente. */
+	static class Cursor {
+		private final String order;
+		private final boolean asc;
+		private final Long id;
+		private final Object valor;
+
+		Cursor(String order, boolean asc, Long id, Object valor) {
+			this.order = order;
+			this.asc = asc;
+			this.id = id;
+			this.valor = valor;
+		}
+
+		String escribir() {
+			String plano = order + "\n" + (asc ? "a" : "d") + "\n" + id + "\n"
+					+ (valor == null ? "n" : "v" + valor);
+			return Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(plano.getBytes(StandardCharsets.UTF_8));
+		}
+
+		static Cursor leer(String cursor, String order, boolean asc, Class<?> tipo) {
+			String[] partes;
+			try {
+				partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+						.split("\n", 4);
+			} catch (IllegalArgumentException e) {
+				throw new PaginacionNoValidaException("Cursor no válido");
+			}
+			if (partes.length != 4 || partes[3].isEmpty())
+				throw new PaginacionNoValidaException("Cursor no válido");
+			if (!partes[0].equals(order) || !partes[1].equals(asc ? "a" : "d"))
+				throw new PaginacionNoValidaException("El cursor es de otra ordenación");
+			try {
+				Object valor = partes[3].charAt(0) == 'n' ? null
+						: convertir(partes[3].substring(1), tipo);
+				return new Cursor(order, asc, Long.valueOf(partes[2]), valor);
+			} catch (RuntimeException e) {
+				throw new PaginacionNoValidaException("Cursor no válido");
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static Object convertir(String valor, Class<?> tipo) {
+			if (tipo == String.class)
+				return valor;
+			if (tipo == Long.class || tipo == long.class)
+				return Long.valueOf(valor);
+			if (tipo == Integer.class || tipo == int.class)
+				return Integer.valueOf(valor);
+			if (tipo == Double.class || tipo == double.class)
+				return Double.valueOf(valor);
+			if (tipo == Float.class || tipo == float.class)
+				return Float.valueOf(valor);
+			if (tipo == Boolean.class || tipo == boolean.class)
+				return Boolean.valueOf(valor);
+			if (tipo == LocalDate.class)
+				return LocalDate.parse(valor);
+			if (tipo == LocalTime.class)
+				return LocalTime.parse(valor);
+			if (tipo == LocalDateTime.class)
+				return LocalDateTime.parse(valor);
+			if (tipo.isEnum())
+				return Enum.valueOf((Class) tipo, valor);
+			throw new PaginacionNoValidaException("No se puede ordenar por " + tipo.getSimpleName());
+		}
+	}
 }
@@ -0,0 +1,16 @@
+package com.fichajespi.service.common;
+
+/**
+ * Orden, página o cursor pedidos por el cliente que no se pueden usar. Los
+ * controladores la devuelven como 400; cualquier otro
+ * IllegalArgumentException sigue siendo un error del servidor.
+ */
+public class PaginacionNoValidaException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PaginacionNoValidaException(String message) {
+		super(message);
+	}
+
+}
@@ -15,7 +15,8 @@ public final class FichajeSpecifications extends CommonSpecificationImpl<Fichaje
 
 	public Specification<Fichaje> tipoContains(String expression) {
 		return (root, query, builder) -> builder.like(root.get("tipo"),
-				SpecificationHelper.contains(expression));
+				SpecificationHelper.contains(expression),
+				SpecificationHelper.ESCAPE);
 	}
 
 	public Specification<Fichaje> diaMayorQue(LocalDate dia) {
@@ -30,13 +30,15 @@ public final class IncidenciaSpecifications extends CommonSpecificationImpl<Inci
 	public Specification<Incidencia> explicacionContains(
 			String expression) {
 		return (root, query, builder) -> builder
-				.like(root.get("explicacion"), SpecificationHelper.contains(expression));
+				.like(root.get("explicacion"), SpecificationHelper.contains(expression),
+						SpecificationHelper.ESCAPE);
 	}
 
 	public Specification<Incidencia> resumenContains(
 			String expression) {
 		return (root, query, builder) -> builder
-				.like(root.get("resumen"), SpecificationHelper.contains(expression));
+				.like(root.get("resumen"), SpecificationHelper.contains(expression),
+						SpecificationHelper.ESCAPE);
 	}
 
 }
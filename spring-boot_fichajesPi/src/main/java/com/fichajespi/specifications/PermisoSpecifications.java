@@ -45,12 +45,14 @@ public final class PermisoSpecifications extends CommonSpecificationImpl<Permiso
 
 	public Specification<Permiso> descripcionContains(String expression) {
 		return (root, query, builder) -> builder
-				.like(root.get("descripcion"), SpecificationHelper.contains(expression));
+				.like(root.get("descripcion"), SpecificationHelper.contains(expression),
+						SpecificationHelper.ESCAPE);
 	}
 
 	public Specification<Permiso> estadoContains(String expression) {
 		return (root, query, builder) -> builder
-				.like(root.get("estado"), SpecificationHelper.contains(expression));
+				.like(root.get("estado"), SpecificationHelper.contains(expression),
+						SpecificationHelper.ESCAPE);
 	}
 
 //	public Specification<Permiso> isAprobada(Boolean b) {
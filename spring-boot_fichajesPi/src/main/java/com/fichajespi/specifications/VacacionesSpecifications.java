@@ -44,6 +44,7 @@ public final class VacacionesSpecifications extends CommonSpecificationImpl<Vaca
 
 	public Specification<Vacaciones> estadoContains(String expression) {
 		return (root, query, builder) -> builder
-				.like(root.get("estado"), SpecificationHelper.contains(expression));
+				.like(root.get("estado"), SpecificationHelper.contains(expression),
+						SpecificationHelper.ESCAPE);
 	}
 }
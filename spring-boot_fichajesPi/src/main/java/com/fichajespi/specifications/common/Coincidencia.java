@@ -0,0 +1,12 @@
+package com.fichajespi.specifications.common;
+
+/**
+ * Cómo se compara el texto de un filtro. EXACTO e INICIO pueden usar el
+ * índice de la columna; CONTIENE, el de siempre en las tablas, la recorre
+ * entera.
+ */
+public enum Coincidencia {
+	EXACTO,
+	INICIO,
+	CONTIENE
+}
@@ -1,42 +1,56 @@
 package com.fichajespi.specifications.common;
 
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+
 import org.springframework.data.jpa.domain.Specification;
 
 public class CommonSpecificationImpl<E> implements SpecificationTemplate<E> {
-	
-	SpecificationHelper helper;
 
 	@Override
-	public Specification<E> nombreUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.join("usuario").get("nombreEmpleado"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> nombreUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, usuario(root).get("nombreEmpleado"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> numeroUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.join("usuario").get("numero"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> numeroUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, usuario(root).get("numero"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> dniUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.join("usuario").get("dni"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> dniUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, usuario(root).get("dni"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> emailUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.join("usuario").get("email"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> emailUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, usuario(root).get("email"), expression, modo);
 	}
 
+	// usuario_id de la propia tabla; un id nulo no devuelve nada
+	@Override
+	public Specification<E> usuarioId(Long id) {
+		return (root, query, builder) -> id == null ? builder.disjunction()
+				: builder.equal(root.get("usuario").get("id"), id);
+	}
+
+	// Un solo join con usuario aunque se filtre por varios de sus campos
+	private From<?, ?> usuario(Root<E> root) {
+		for (Join<E, ?> join : root.getJoins())
+			if (join.getAttribute().getName().equals("usuario")
+					&& join.getJoinType() == JoinType.INNER)
+				return join;
+		return root.join("usuario");
+	}
 
 }
@@ -1,11 +1,43 @@
 package com.fichajespi.specifications.common;
 
-import java.text.MessageFormat;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 
 public class SpecificationHelper {
 
+	public static final char ESCAPE = '\\';
+
 	public static String contains(String expression) {
-		return MessageFormat.format("%{0}%", expression);
+		return "%" + escape(expression) + "%";
+	}
+
+	public static String startsWith(String expression) {
+		return escape(expression) + "%";
+	}
+
+	// Sin modo, como hasta ahora: CONTIENE
+	public static Predicate matches(CriteriaBuilder builder, Expression<String> field,
+			String expression, Coincidencia modo) {
+		switch (modo == null ? Coincidencia.CONTIENE : modo) {
+		case EXACTO:
+			return builder.equal(field, expression);
+		case INICIO:
+			return builder.like(field, startsWith(expression), ESCAPE);
+		default:
+			return builder.like(field, contains(expression), ESCAPE);
+		}
+	}
+
+	// %, _ y \ escritos en el filtro se buscan tal cual
+	private static String escape(String expression) {
+		StringBuilder sb = new StringBuilder(expression.length() + 4);
+		for (char c : expression.toCharArray()) {
+			if (c == '%' || c == '_' || c == ESCAPE)
+				sb.append(ESCAPE);
+			sb.append(c);
+		}
+		return sb.toString();
 	}
 
 }
@@ -4,12 +4,31 @@ import org.springframework.data.jpa.domain.Specification;
 
 public interface SpecificationTemplate<E> {
 
-	public Specification<E> nombreUsuarioContains(String expression);
+	public Specification<E> nombreUsuario(String expression, Coincidencia modo);
 
-	public Specification<E> numeroUsuarioContains(String expression);
+	public Specification<E> numeroUsuario(String expression, Coincidencia modo);
 
-	public Specification<E> dniUsuarioContains(String expression);
+	public Specification<E> dniUsuario(String expression, Coincidencia modo);
 
-	public Specification<E> emailUsuarioContains(String expression);
+	public Specification<E> emailUsuario(String expression, Coincidencia modo);
+
+	// Por la clave del usuario: sin join ni LIKE
+	public Specification<E> usuarioId(Long id);
+
+	public default Specification<E> nombreUsuarioContains(String expression) {
+		return nombreUsuario(expression, Coincidencia.CONTIENE);
+	}
+
+	public default Specification<E> numeroUsuarioContains(String expression) {
+		return numeroUsuario(expression, Coincidencia.CONTIENE);
+	}
+
+	public default Specification<E> dniUsuarioContains(String expression) {
+		return dniUsuario(expression, Coincidencia.CONTIENE);
+	}
+
+	public default Specification<E> emailUsuarioContains(String expression) {
+		return emailUsuario(expression, Coincidencia.CONTIENE);
+	}
 
 }
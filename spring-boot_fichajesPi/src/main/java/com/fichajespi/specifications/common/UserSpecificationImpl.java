@@ -5,35 +5,37 @@ import org.springframework.data.jpa.domain.Specification;
 public class UserSpecificationImpl<E> implements SpecificationTemplate<E> {
 
 	@Override
-	public Specification<E> nombreUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.get("nombreEmpleado"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> nombreUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, root.get("nombreEmpleado"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> numeroUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.get("numero"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> numeroUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, root.get("numero"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> dniUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.get("dni"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> dniUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, root.get("dni"), expression, modo);
 	}
 
 	@Override
-	public Specification<E> emailUsuarioContains(
-			String expression) {
-		return (root, query, builder) -> builder
-				.like(root.get("email"),
-						SpecificationHelper.contains(expression));
+	public Specification<E> emailUsuario(
+			String expression, Coincidencia modo) {
+		return (root, query, builder) -> SpecificationHelper
+				.matches(builder, root.get("email"), expression, modo);
+	}
+
+	@Override
+	public Specification<E> usuarioId(Long id) {
+		return (root, query, builder) -> id == null ? builder.disjunction()
+				: builder.equal(root.get("id"), id);
 	}
 
 }
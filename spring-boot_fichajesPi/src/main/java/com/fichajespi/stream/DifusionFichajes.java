@@ -0,0 +1,270 @@
+package com.fichajespi.stream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.config.Ejecutores.Rechazo;
+import com.fichajespi.dto.entity.FichajeStreamDto;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Difunde los fichajes confirmados a los paneles conectados a
+ * GET /fichaje/stream (Server-Sent Events, text/event-stream). Desde el
+ * navegador el stream se abre con un ticket de TicketsStream.
+ *
+ * Cada fichaje se serializa una sola vez como trama SSE y se encola en un
+ * búfer acotado por suscriptor. Un pequeño grupo de hilos vacía los búferes
+ * por turnos, así que un panel lento ocupa como mucho un hilo y no retrasa a
+ * los demás mientras queden hilos libres: si su búfer se llena se
+ * descartan sus tramas más antiguas y, pasado un máximo de descartes, se
+ * cierra la conexión para que el navegador reconecte y recargue la tabla.
+ */
+@Component
+public class DifusionFichajes {
+
+	private static final MediaType TEXTO = new MediaType("text", "plain",
+			StandardCharsets.UTF_8);
+	private static final Trama LATIDO = new Trama(":\n\n");
+	// Tramas por turno antes de ceder el hilo a otro suscriptor
+	private static final int TURNO = 64;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Autowired
+	private Ejecutores ejecutores;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private LoggerService logger;
+
+	@Value("${fichaje.stream.buffer:256}")
+	private int buffer;
+	@Value("${fichaje.stream.max-descartes:1024}")
+	private int maxDescartes;
+	@Value("${fichaje.stream.max-suscriptores:2000}")
+	private int maxSuscriptores;
+	@Value("${fichaje.stream.timeout-ms:1800000}")
+	private long timeoutMs;
+	@Value("${fichaje.stream.hilos:8}")
+	private int hilos;
+
+	private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+	private ExecutorService envios;
+	private Counter descartadas;
+	private Counter cerrados;
+
+	@PostConstruct
+	public void init() {
+		// Cada suscriptor está en la cola como mucho una vez
+		envios = ejecutores.crear("sse", "SseThread-", hilos, maxSuscriptores,
+				Rechazo.LLAMANTE);
+		Gauge.builder("fichajes.stream.suscriptores", suscriptores, Set::size)
+				.description("Paneles conectados a /fichaje/stream")
+				.register(meterRegistry);
+		descartadas = Counter.builder("fichajes.stream.descartadas")
+				.description("Tramas descartadas por suscriptores lentos")
+				.register(meterRegistry);
+		cerrados = Counter.builder("fichajes.stream.cerrados")
+				.description("Suscriptores cerrados por superar el máximo de descartes")
+				.register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void close() {
+		suscriptores.forEach(s -> s.emitter.complete());
+		envios.shutdownNow();
+	}
+
+	/** Devuelve null si se ha alcanzado el máximo de suscriptores. */
+	public SseEmitter suscribir() {
+		if (suscriptores.size() >= maxSuscriptores)
+			return null;
+		SseEmitter emitter = new SseEmitter(timeoutMs);
+		agregar(emitter);
+		return emitter;
+	}
+
+	@TransactionalEventListener
+	public void onFichajeRegistrado(FichajeRegistradoEvent event) {
+		if (suscriptores.isEmpty())
+			return;
+		try {
+			difundir(new Trama("id: " + event.getFichajeId() + "\nevent: fichaje\ndata: "
+					+ objectMapper.writeValueAsString(toDto(event)) + "\n\n"));
+		} catch (JsonProcessingException e) {
+			logger.logError("No se pudo serializar el fichaje "
+					+ event.getFichajeId() + ": " + e.getMessage());
+		}
+	}
+
+	/** Mantiene viva la conexión y detecta los paneles desconectados. */
+	@Scheduled(fixedDelayString = "${fichaje.stream.latido-ms:15000}")
+	public void latido() {
+		difundir(LATIDO);
+	}
+
+	public int getSuscriptores() {
+		return suscriptores.size();
+	}
+
+	Suscriptor agregar(SseEmitter emitter) {
+		Suscriptor suscriptor = new Suscriptor(emitter);
+		emitter.onCompletion(() -> suscriptores.remove(suscriptor));
+		emitter.onTimeout(() -> suscriptores.remove(suscriptor));
+		emitter.onError(e -> suscriptores.remove(suscriptor));
+		suscriptores.add(suscriptor);
+		return suscriptor;
+	}
+
+	void difundir(Trama trama) {
+		for (Suscriptor suscriptor : suscriptores)
+			suscriptor.ofrecer(trama);
+	}
+
+	private FichajeStreamDto toDto(FichajeRegistradoEvent event) {
+		return FichajeStreamDto.builder()
+				.id(event.getFichajeId())
+				.dia(event.getDia())
+				.hora(event.getHora())
+				.tipo(event.getTipo())
+				.origen(event.getOrigen())
+				.numeroUsuario(event.getNumeroUsuario())
+				.nombreUsuario(event.getNombreUsuario())
+				.build();
+	}
+
+	class Suscriptor implements Runnable {
+		private final SseEmitter emitter;
+		private final ArrayBlockingQueue<Trama> cola;
+		private final AtomicBoolean programado = new AtomicBoolean();
+		private final AtomicInteger descartes = new AtomicInteger();
+
+		Suscriptor(SseEmitter emitter) {
+			this.emitter = emitter;
+			this.cola = new ArrayBlockingQueue<>(buffer);
+		}
+
+		void ofrecer(Trama trama) {
+			while (!cola.offer(trama)) {
+				// Búfer lleno: se pierde la trama más antigua
+				if (cola.poll() != null) {
+					descartadas.increment();
+					if (descartes.incrementAndGet() > maxDescartes) {
+						cerrados.increment();
+						cerrar();
+						return;
+					}
+				}
+			}
+			if (programado.compareAndSet(false, true))
+				envios.execute(this);
+		}
+
+		@Override
+		public void run() {
+			try {
+				Trama trama;
+				for (int i = 0; i < TURNO && (trama = cola.poll()) != null; i++)
+					emitter.send(trama);
+			} catch (IOException | IllegalStateException e) {
+				cerrar();
+				return;
+			} finally {
+				programado.set(false);
+			}
+			// Tramas pendientes o llegadas mientras se terminaba el turno
+			if (!cola.isEmpty() && programado.compareAndSet(false, true))
+				envios.execute(this);
+		}
+
+		int getDescartes() {
+			return descartes.get();
+		}
+
+		private void cerrar() {
+			suscriptores.remove(this);
+			cola.clear();
+			try {
+				emitter.complete();
+			} catch (IllegalStateException e) {
+				// Ya estaba cerrado
+			}
+		}
+	}
+
+	/**
+	 * Trama SSE ya formada (id, event y data): SseEmitter la escribe tal
+	 * cual, sin volver a serializarla para cada suscriptor.
+	 */
+	static class Trama implements SseEventBuilder {
+		private final Set<DataWithMediaType> datos;
+
+		Trama(String texto) {
+			this.datos = Collections.singleton(new DataWithMediaType(texto, TEXTO));
+		}
+
+		@Override
+		public Set<DataWithMediaType> build() {
+			return datos;
+		}
+
+		@Override
+		public SseEventBuilder id(String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SseEventBuilder name(String eventName) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SseEventBuilder comment(String comment) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SseEventBuilder data(Object object) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SseEventBuilder data(Object object, MediaType mediaType) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
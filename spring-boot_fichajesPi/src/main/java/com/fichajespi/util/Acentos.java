@@ -0,0 +1,31 @@
+package com.fichajespi.util;
+
+/**
+ * Quita tildes y diéresis y cambia la ñ por n y la ç por c, respetando
+ * mayúsculas y minúsculas. Lo usan el nombre del token JWT y la búsqueda de
+ * empleados.
+ */
+public final class Acentos {
+
+	private static final String ACENTOS = "ÃÀÁÄÂÈÉËÊÌÍÏÎÒÓÖÔÙÚÜÛãàáäâèéëêìíïîòóöôùúüûÑñÇç";
+	private static final String ORIGINAL = "AAAAAEEEEIIIIOOOOUUUUaaaaaeeeeiiiioooouuuunncc";
+
+	private Acentos() {
+	}
+
+	public static String quitar(String input) {
+		if (input == null)
+			return null;
+		char[] letras = null;
+		for (int i = 0; i < input.length(); i++) {
+			int j = ACENTOS.indexOf(input.charAt(i));
+			if (j < 0)
+				continue;
+			if (letras == null)
+				letras = input.toCharArray();
+			letras[i] = ORIGINAL.charAt(j);
+		}
+		return letras == null ? input : new String(letras);
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.fichajespi.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Mapa de claves long primitivas con direccionamiento abierto.
+ *
+ * Evita crear un Long por cada consulta y guarda claves y valores en dos
+ * arrays contiguos. No es seguro para hilos: quien lo use debe
+ * sincronizar el acceso.
+ */
+public class LongHashMap<V> {
+
+	private static final float CARGA = 0.5f;
+
+	private long[] claves;
+	private Object[] valores;
+	private int size;
+	private int mask;
+
+	public LongHashMap() {
+		this(16);
+	}
+
+	public LongHashMap(int capacidad) {
+		int tamano = Integer.highestOneBit(Math.max(8, (int) (capacidad / CARGA)) - 1) << 1;
+		claves = new long[tamano];
+		valores = new Object[tamano];
+		mask = tamano - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long clave) {
+		for (int i = indice(clave);; i = (i + 1) & mask) {
+			if (valores[i] == null)
+				return null;
+			if (claves[i] == clave)
+				return (V) valores[i];
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long clave, V valor) {
+		if (valor == null)
+			throw new IllegalArgumentException("El valor no puede ser null");
+		for (int i = indice(clave);; i = (i + 1) & mask) {
+			if (valores[i] == null) {
+				claves[i] = clave;
+				valores[i] = valor;
+				if (++size > claves.length * CARGA)
+					redimensionar(claves.length << 1);
+				return null;
+			}
+			if (claves[i] == clave) {
+				V anterior = (V) valores[i];
+				valores[i] = valor;
+				return anterior;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(valores, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEachValue(Consumer<V> accion) {
+		for (Object valor : valores)
+			if (valor != null)
+				accion.accept((V) valor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void redimensionar(int tamano) {
+		long[] viejasClaves = claves;
+		Object[] viejosValores = valores;
+		claves = new long[tamano];
+		valores = new Object[tamano];
+		mask = tamano - 1;
+		size = 0;
+		for (int i = 0; i < viejasClaves.length; i++)
+			if (viejosValores[i] != null)
+				put(viejasClaves[i], (V) viejosValores[i]);
+	}
+
+	private int indice(long clave) {
+		long h = clave * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+}
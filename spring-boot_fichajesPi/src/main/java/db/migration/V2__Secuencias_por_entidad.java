@@ -0,0 +1,81 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Pasa Fichaje, Usuario, Incidencia, DiaLaborable y Calendario de la tabla
+ * compartida hibernate_sequence a una tabla de secuencia por entidad
+ * (optimizador pooled-lo, bloques de 50 ids).
+ *
+ * Cada secuencia arranca en el siguiente id libre de su tabla para no
+ * repetir ids ya asignados. Si la tabla de la entidad aún no existe (base de
+ * datos nueva) la secuencia empieza en 1 y Hibernate crea la tabla después.
+ */
+public class V2__Secuencias_por_entidad extends BaseJavaMigration {
+
+	// { tabla de secuencia, tabla de la entidad }
+	private static final String[][] SECUENCIAS = {
+			{ "fichajes_seq", "fichajes" },
+			{ "usuarios_seq", "usuarios" },
+			{ "incidencias_seq", "incidencias" },
+			{ "dias_laborables_seq", "dias_laborables" },
+			{ "calendarios_seq", "calendarios" } };
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		for (String[] secuencia : SECUENCIAS) {
+			long siguiente = existe(connection, secuencia[1])
+					? siguienteId(connection, secuencia[1])
+					: 1;
+
+			try (Statement st = connection.createStatement()) {
+				if (!existe(connection, secuencia[0]))
+					st.execute("CREATE TABLE " + secuencia[0] + " (next_val BIGINT)");
+				if (vacia(connection, secuencia[0]))
+					st.execute("INSERT INTO " + secuencia[0] + " VALUES (1)");
+			}
+
+			try (PreparedStatement ps = connection.prepareStatement("UPDATE "
+					+ secuencia[0] + " SET next_val = GREATEST(next_val, ?)")) {
+				ps.setLong(1, siguiente);
+				ps.executeUpdate();
+			}
+		}
+	}
+
+	private boolean existe(Connection connection, String tabla)
+			throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(
+				connection.getCatalog(), null, tabla, new String[] { "TABLE" })) {
+			return rs.next();
+		}
+	}
+
+	private boolean vacia(Connection connection, String tabla)
+			throws SQLException {
+		try (Statement st = connection.createStatement();
+				ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + tabla)) {
+			rs.next();
+			return rs.getLong(1) == 0;
+		}
+	}
+
+	private long siguienteId(Connection connection, String tabla)
+			throws SQLException {
+		try (Statement st = connection.createStatement();
+				ResultSet rs = st.executeQuery(
+						"SELECT COALESCE(MAX(id), 0) + 1 FROM " + tabla)) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+}
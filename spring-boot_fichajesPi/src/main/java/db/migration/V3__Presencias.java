@@ -0,0 +1,53 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Crea la tabla presencias y la rellena con el último fichaje de cada
+ * empleado, de modo que el texto usuarios.ultimo_fichaje deja de ser la
+ * fuente del estado de presencia.
+ */
+public class V3__Presencias extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		try (Statement st = connection.createStatement()) {
+			st.execute("CREATE TABLE IF NOT EXISTS presencias ("
+					+ " usuario_id BIGINT NOT NULL PRIMARY KEY,"
+					+ " working BIT,"
+					+ " last_tipo VARCHAR(10),"
+					+ " last_punch_at DATETIME,"
+					+ " last_fichaje_id BIGINT,"
+					+ " INDEX idx_presencias_working_tipo (working, last_tipo))");
+
+			// En una base de datos nueva Hibernate crea después el resto de tablas
+			if (!existe(connection, "usuarios") || !existe(connection, "fichajes"))
+				return;
+
+			st.executeUpdate("INSERT INTO presencias"
+					+ " (usuario_id, working, last_tipo, last_punch_at, last_fichaje_id)"
+					+ " SELECT u.id, u.working, f.tipo, TIMESTAMP(f.dia, f.hora), f.id"
+					+ " FROM usuarios u"
+					+ " JOIN fichajes f ON f.id = (SELECT f2.id FROM fichajes f2"
+					+ " WHERE f2.usuario_id = u.id"
+					+ " ORDER BY f2.dia DESC, f2.hora DESC, f2.id DESC LIMIT 1)"
+					+ " WHERE NOT EXISTS (SELECT 1 FROM presencias p WHERE p.usuario_id = u.id)");
+		}
+	}
+
+	private boolean existe(Connection connection, String tabla)
+			throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(
+				connection.getCatalog(), null, tabla, new String[] { "TABLE" })) {
+			return rs.next();
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package db.migration;
+
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Crea la tabla analisis_dias con los días ya analizados por el análisis
+ * nocturno. Empieza vacía: los días anteriores a esta versión no se
+ * recuperan al arrancar, solo los que falten a partir del primer análisis.
+ */
+public class V4__Analisis_dias extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		try (Statement st = context.getConnection().createStatement()) {
+			st.execute("CREATE TABLE IF NOT EXISTS analisis_dias ("
+					+ " dia DATE NOT NULL PRIMARY KEY,"
+					+ " analizado_en DATETIME,"
+					+ " usuarios INT,"
+					+ " incidencias INT,"
+					+ " duracion_ms BIGINT)");
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Deja una sola incidencia por usuario, día y resumen y crea la clave única
+ * uk_incidencias_usuario_dia_resumen.
+ *
+ * De cada grupo repetido se conserva la de menor id, marcada como resuelta
+ * si lo estaba alguna y con la explicación no vacía que haya. Si la tabla
+ * aún no existe la crea Hibernate después, ya con la clave.
+ */
+public class V5__Incidencias_unicas extends BaseJavaMigration {
+
+	private static final String CLAVE = "uk_incidencias_usuario_dia_resumen";
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		if (!existe(connection, "incidencias") || tieneIndice(connection))
+			return;
+
+		try (Statement st = connection.createStatement()) {
+			st.executeUpdate("UPDATE incidencias k JOIN ("
+					+ " SELECT MIN(id) id, MAX(resuelta) resuelta, MAX(explicacion) explicacion"
+					+ " FROM incidencias GROUP BY usuario_id, dia, resumen"
+					+ " HAVING COUNT(*) > 1) g ON g.id = k.id"
+					+ " SET k.resuelta = g.resuelta, k.explicacion = g.explicacion");
+			st.executeUpdate("DELETE i FROM incidencias i JOIN incidencias k"
+					+ " ON k.usuario_id = i.usuario_id AND k.dia = i.dia"
+					+ " AND k.resumen = i.resumen AND k.id < i.id");
+			st.execute("ALTER TABLE incidencias ADD CONSTRAINT " + CLAVE
+					+ " UNIQUE (usuario_id, dia, resumen)");
+		}
+	}
+
+	private boolean existe(Connection connection, String tabla)
+			throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(
+				connection.getCatalog(), null, tabla, new String[] { "TABLE" })) {
+			return rs.next();
+		}
+	}
+
+	private boolean tieneIndice(Connection connection) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getIndexInfo(
+				connection.getCatalog(), null, "incidencias", true, false)) {
+			while (rs.next())
+				if (CLAVE.equalsIgnoreCase(rs.getString("INDEX_NAME")))
+					return true;
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package db.migration;
+
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Crea la bandeja de salida de emails (emails_salida) y su tabla de
+ * secuencia, con bloques de 50 ids como el resto de entidades.
+ */
+public class V6__Emails_salida extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		try (Statement st = context.getConnection().createStatement()) {
+			st.execute("CREATE TABLE IF NOT EXISTS emails_salida ("
+					+ " id BIGINT NOT NULL PRIMARY KEY,"
+					+ " destinatario VARCHAR(255),"
+					+ " copia_rrhh BIT,"
+					+ " asunto VARCHAR(255),"
+					+ " cuerpo TEXT,"
+					+ " intentos INT,"
+					+ " siguiente_intento DATETIME,"
+					+ " fallido BIT,"
+					+ " error VARCHAR(500),"
+					+ " creado_en DATETIME,"
+					+ " INDEX idx_emails_salida_pendientes (fallido, siguiente_intento))");
+			st.execute("CREATE TABLE IF NOT EXISTS emails_salida_seq (next_val BIGINT)");
+			st.executeUpdate("INSERT INTO emails_salida_seq (next_val)"
+					+ " SELECT 1 FROM DUAL"
+					+ " WHERE NOT EXISTS (SELECT 1 FROM emails_salida_seq)");
+		}
+	}
+
+}
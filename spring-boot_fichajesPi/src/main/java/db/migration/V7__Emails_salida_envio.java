@@ -0,0 +1,36 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Añade a emails_salida la columna envio, que agrupa los emails de una
+ * ejecución del análisis para mandarlos como resumen.
+ */
+public class V7__Emails_salida_envio extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		if (tieneColumna(connection))
+			return;
+
+		try (Statement st = connection.createStatement()) {
+			st.execute("ALTER TABLE emails_salida ADD COLUMN envio VARCHAR(64),"
+					+ " ADD INDEX idx_emails_salida_envio (envio)");
+		}
+	}
+
+	private boolean tieneColumna(Connection connection) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getColumns(
+				connection.getCatalog(), null, "emails_salida", "envio")) {
+			return rs.next();
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package db.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * Índices de las consultas más frecuentes: los fichajes de un empleado en un
+ * día (findByUsuarioAndDiaOrderByHora), las incidencias del día, los
+ * permisos aprobados de cada empleado y sus vacaciones pendientes.
+ *
+ * Son los mismos que declaran las entidades en @Table(indexes); si una tabla
+ * aún no existe la crea Hibernate después, ya con ellos.
+ */
+public class V8__Indices_consultas extends BaseJavaMigration {
+
+	private static final String[][] INDICES = {
+			{ "fichajes", "idx_fichajes_usuario_dia_hora", "usuario_id, dia, hora" },
+			{ "incidencias", "idx_incidencias_dia", "dia" },
+			{ "permisos", "idx_permisos_usuario_aprobado_dia", "usuario_id, aprobado, dia" },
+			{ "vacaciones", "idx_vacaciones_usuario_consumidas_aprobado",
+					"usuario_id, consumidas, aprobado" } };
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		try (Statement st = connection.createStatement()) {
+			for (String[] indice : INDICES)
+				if (existe(connection, indice[0]) && !tieneIndice(connection, indice[0], indice[1]))
+					st.execute("CREATE INDEX " + indice[1] + " ON " + indice[0]
+							+ " (" + indice[2] + ")");
+		}
+	}
+
+	private boolean existe(Connection connection, String tabla)
+			throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(
+				connection.getCatalog(), null, nombre(connection, tabla), new String[] { "TABLE" })) {
+			return rs.next();
+		}
+	}
+
+	private boolean tieneIndice(Connection connection, String tabla, String indice)
+			throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getIndexInfo(
+				connection.getCatalog(), null, nombre(connection, tabla), false, false)) {
+			while (rs.next())
+				if (indice.equalsIgnoreCase(rs.getString("INDEX_NAME")))
+					return true;
+			return false;
+		}
+	}
+
+	// MySQL guarda los nombres tal cual; H2 (pruebas) en mayúsculas
+	private String nombre(Connection connection, String tabla) throws SQLException {
+		return connection.getMetaData().storesUpperCaseIdentifiers()
+				? tabla.toUpperCase(Locale.ROOT)
+				: tabla;
+	}
+
+}
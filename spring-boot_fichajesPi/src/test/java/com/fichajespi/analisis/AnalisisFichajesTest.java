@@ -0,0 +1,517 @@
+package com.fichajespi.analisis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.dto.entity.AnalisisResumenDto;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
+import com.fichajespi.dto.interfaces.IIncidenciaAnalisis;
+import com.fichajespi.dto.interfaces.IPermisoAnalisis;
+import com.fichajespi.dto.interfaces.IUsuarioAnalisis;
+import com.fichajespi.dto.interfaces.IVacacionesAnalisis;
+import com.fichajespi.entity.AnalisisDia;
+import com.fichajespi.entity.Calendario;
+import com.fichajespi.entity.DiaLaborable;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.AnalisisDiaRepository;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.repository.VacacionesRepository;
+import com.fichajespi.service.CalendarioService;
+import com.fichajespi.service.DiaLaborableService;
+import com.fichajespi.service.FicharService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Analiza días completos contra repositorios en memoria y comprueba las
+ * incidencias generadas, las consultas por día y que repetir un día no
+ * duplica nada. Los tiempos, con la latencia de cada consulta simulada, se
+ * miden con mvn test -Pbenchmark.
+ */
+class AnalisisFichajesTest {
+
+	private static final LocalDate DIA = LocalDate.of(2024, 1, 15);
+
+	// Ida y vuelta simulada de cada consulta o escritura, solo en las medidas
+	private long latenciaMs;
+	private int empleados = 10_000;
+	// Incidencias guardadas por día; el snapshot las lee al repetir el día
+	private final Map<LocalDate, List<IIncidenciaAnalisis>> generadas = new ConcurrentHashMap<>();
+	private final AtomicInteger emails = new AtomicInteger();
+	private final NavigableMap<LocalDate, AnalisisDia> anotados = new ConcurrentSkipListMap<>();
+	private final List<FichajeLoteDto> cierres = Collections.synchronizedList(new ArrayList<>());
+	// Empleados cuyo cierre rechaza FicharService
+	private final Set<String> rechazados = ConcurrentHashMap.newKeySet();
+	// Salidas de los días pasados, guardadas sin pasar por FicharService
+	private final List<Fichaje> salidas = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, Set<Long>> cambios = new ConcurrentHashMap<>();
+	private final List<String> consultas = Collections.synchronizedList(new ArrayList<>());
+
+	private AnalisisFichajes analisis;
+
+	@BeforeEach
+	void setUp() {
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class, withSettings().stubOnly());
+		DaySnapshotLoader snapshotLoader = mock(DaySnapshotLoader.class, withSettings().stubOnly());
+		VacacionesRepository vacacionesRepository = mock(VacacionesRepository.class, withSettings().stubOnly());
+		CalendarioService calendarioService = mock(CalendarioService.class, withSettings().stubOnly());
+		DiaLaborableService diaService = mock(DiaLaborableService.class, withSettings().stubOnly());
+		AnalisisDiaRepository analisisDiaRepository = mock(AnalisisDiaRepository.class, withSettings().stubOnly());
+		EventSender eventSender = mock(EventSender.class, withSettings().stubOnly());
+		FicharService ficharService = mock(FicharService.class, withSettings().stubOnly());
+		FichajeRepository fichajeRepository = mock(FichajeRepository.class, withSettings().stubOnly());
+		PlatformTransactionManager transactionManager = mock(
+				PlatformTransactionManager.class, withSettings().stubOnly());
+
+		Calendario calendario = new Calendario();
+		calendario.setMinutosMasEntrada(10);
+		calendario.setMinutosMenosEntrada(10);
+		when(calendarioService.getActive()).thenReturn(Optional.of(calendario));
+		when(diaService.getByDiaInActiveCalendar(any(), any())).thenAnswer(inv -> {
+			DiaLaborable dia = new DiaLaborable();
+			dia.setDia(inv.getArgument(0));
+			dia.setHoraInicio(LocalTime.of(8, 0));
+			dia.setHoraFin(LocalTime.of(15, 0));
+			return Optional.of(dia);
+		});
+
+		when(analisisDiaRepository.existsById(any()))
+				.thenAnswer(inv -> anotados.containsKey(inv.<LocalDate> getArgument(0)));
+		when(analisisDiaRepository.save(any())).thenAnswer(inv -> {
+			AnalisisDia a = inv.getArgument(0);
+			anotados.put(a.getDia(), a);
+			return a;
+		});
+		when(analisisDiaRepository.findPrimerDia())
+				.thenAnswer(inv -> Optional.ofNullable(anotados.isEmpty() ? null
+						: anotados.firstKey()));
+		when(analisisDiaRepository.findDiasEntre(any(), any()))
+				.thenAnswer(inv -> new ArrayList<>(anotados.subMap(
+						inv.getArgument(0), true, inv.getArgument(1), true).keySet()));
+
+		when(usuarioRepository.findAnalisisDesde(anyLong(), any(Pageable.class)))
+				.thenAnswer(inv -> consulta("usuarios", () -> {
+					long desde = inv.getArgument(0);
+					int tamano = inv.<Pageable> getArgument(1).getPageSize();
+					List<IUsuarioAnalisis> pagina = new ArrayList<>();
+					for (long id = desde + 1; id <= empleados && pagina.size() < tamano; id++)
+						pagina.add(usuario(id));
+					return pagina;
+				}));
+		when(snapshotLoader.cargar(any(), anyBoolean())).thenAnswer(inv -> {
+			LocalDate dia = inv.getArgument(0);
+			List<Long> ids = new ArrayList<>();
+			for (long id = 1; id <= empleados; id++)
+				ids.add(id);
+			return new DaySnapshot(dia,
+					consulta("fichajes", () -> porUsuario(ids, this::fichajes)),
+					consulta("permisos", () -> porUsuario(ids, this::permisos)),
+					consulta("vacaciones", () -> porUsuario(ids, this::vacaciones)),
+					new ArrayList<>(generadas.getOrDefault(dia, Collections.emptyList())));
+		});
+		when(vacacionesRepository.marcarConsumidas(anyCollection()))
+				.thenAnswer(inv -> cambio("consumidas", inv.getArgument(0)));
+		when(usuarioRepository.updateEnVacaciones(anyCollection(), anyBoolean()))
+				.thenAnswer(inv -> cambio("enVacaciones=" + inv.getArgument(1),
+						inv.getArgument(0)));
+		when(usuarioRepository.descontarDiaVacaciones(anyCollection()))
+				.thenAnswer(inv -> cambio("descontar", inv.getArgument(0)));
+		when(usuarioRepository.getById(anyLong())).thenAnswer(inv -> {
+			Usuario u = new Usuario();
+			u.setId(inv.getArgument(0));
+			return u;
+		});
+		doAnswer(inv -> consulta("incidencias", () -> guardar(inv.getArgument(0))))
+				.when(eventSender).createEvents(anyList());
+		doAnswer(inv -> emails.addAndGet(inv.<List<?>> getArgument(1).size()))
+				.when(eventSender).queueEvents(any(), anyList(), any(), any());
+		when(ficharService.ficharLote(anyList())).thenAnswer(inv -> {
+			List<FichajeLoteResultado> resultados = new ArrayList<>();
+			for (FichajeLoteDto item : inv.<List<FichajeLoteDto>> getArgument(0)) {
+				boolean rechazado = rechazados.contains(item.getNumeroUsuario());
+				if (!rechazado)
+					cierres.add(item);
+				resultados.add(FichajeLoteResultado.builder()
+						.clave(item.getClave())
+						.numeroUsuario(item.getNumeroUsuario())
+						.estado((rechazado ? EstadosFichajeLote.RECHAZADO
+								: EstadosFichajeLote.CREADO).toString())
+						.mensaje(rechazado ? "Fichaje anterior al último registrado" : null)
+						.build());
+			}
+			return resultados;
+		});
+		when(fichajeRepository.findClavesExistentes(anyCollection())).thenAnswer(inv -> {
+			Collection<String> claves = inv.getArgument(0);
+			synchronized (salidas) {
+				return salidas.stream().map(Fichaje::getClave)
+						.filter(claves::contains).collect(Collectors.toList());
+			}
+		});
+		when(fichajeRepository.saveAll(anyList())).thenAnswer(inv -> {
+			salidas.addAll(inv.getArgument(0));
+			return inv.getArgument(0);
+		});
+		when(transactionManager.getTransaction(any()))
+				.thenReturn(new SimpleTransactionStatus());
+
+		analisis = new AnalisisFichajes();
+		ReflectionTestUtils.setField(analisis, "calendarioService", calendarioService);
+		ReflectionTestUtils.setField(analisis, "diaService", diaService);
+		ReflectionTestUtils.setField(analisis, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(analisis, "snapshotLoader", snapshotLoader);
+		// Sin seguimiento en tiempo real: el análisis lee el día completo
+		ReflectionTestUtils.setField(analisis, "evaluador",
+				mock(EvaluadorIncremental.class, withSettings().stubOnly()));
+		ReflectionTestUtils.setField(analisis, "vacacionesRepository", vacacionesRepository);
+		ReflectionTestUtils.setField(analisis, "analisisDiaRepository", analisisDiaRepository);
+		ReflectionTestUtils.setField(analisis, "eventSender", eventSender);
+		ReflectionTestUtils.setField(analisis, "ficharService", ficharService);
+		ReflectionTestUtils.setField(analisis, "fichajeRepository", fichajeRepository);
+		ReflectionTestUtils.setField(analisis, "transactionManager", transactionManager);
+		ReflectionTestUtils.setField(analisis, "ejecutores",
+				new Ejecutores(new SimpleMeterRegistry(), false));
+		ReflectionTestUtils.setField(analisis, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(analisis, "logger", new LoggerService());
+		ReflectionTestUtils.setField(analisis, "lote", 500);
+		ReflectionTestUtils.setField(analisis, "hilos", 4);
+		ReflectionTestUtils.setField(analisis, "diasParalelo", 4);
+		ReflectionTestUtils.setField(analisis, "recuperarMaxDias", 400);
+		analisis.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		analisis.close();
+	}
+
+	@Test
+	void analizaDiezMilEmpleadosPorBloques() {
+		AnalisisResumenDto resumen = analisis.analizar(DIA);
+
+		Map<String, Long> porTipo = generadas.get(DIA).stream().collect(
+				Collectors.groupingBy(IIncidenciaAnalisis::getResumen, Collectors.counting()));
+		assertEquals(2000L, porTipo.get(Incidencias.AUSENCIA));
+		assertEquals(1000L, porTipo.get(Incidencias.FICHAJE_IMPAR));
+		assertEquals(1000L, porTipo.get(Incidencias.NO_ENTRA_A_TIEMPO));
+		assertEquals(2000L, porTipo.get(Incidencias.MENOS_HORAS));
+		assertEquals(1000L, porTipo.get(Incidencias.AUSENCIA_NO_AUTORIZADA));
+		assertEquals(7000, resumen.getIncidencias());
+		assertEquals(empleados, resumen.getUsuarios());
+		assertEquals(0, resumen.getBloquesFallidos());
+		assertEquals(7000, emails.get());
+		assertTrue(anotados.containsKey(DIA));
+
+		assertEquals(1000, cierres.size());
+		assertEquals(1000, resumen.getFichajesCerrados());
+		assertTrue(cierres.stream().allMatch(c -> DIA.equals(c.getDia())));
+		assertEquals(1000, cambios.get("consumidas").size());
+		assertEquals(1000, cambios.get("enVacaciones=true").size());
+		assertEquals(1000, cambios.get("enVacaciones=false").size());
+		assertEquals(1000, cambios.get("descontar").size());
+
+		// Una consulta por tabla para todo el día y una escritura de
+		// incidencias por bloque, nunca por empleado
+		assertEquals(1, consultas.stream().filter("fichajes"::equals).count());
+		assertEquals(1, consultas.stream().filter("permisos"::equals).count());
+		assertEquals(1, consultas.stream().filter("vacaciones"::equals).count());
+		assertEquals(empleados / 500,
+				consultas.stream().filter("incidencias"::equals).count());
+	}
+
+	@Test
+	void unCierreRechazadoNoCuentaYQuedaComoIncidencia() {
+		// Han fichado después de medianoche
+		rechazados.addAll(List.of("1", "11"));
+		AnalisisResumenDto resumen = analisis.analizar(DIA);
+
+		assertEquals(998, resumen.getFichajesCerrados());
+		assertEquals(7002, resumen.getIncidencias());
+		assertEquals(List.of(1L, 11L), generadas.get(DIA).stream()
+				.filter(i -> Incidencias.CIERRE_RECHAZADO.equals(i.getResumen()))
+				.map(IIncidenciaAnalisis::getUsuarioId)
+				.sorted()
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	void repetirUnDiaNoDuplicaIncidenciasNiDescuentos() {
+		analisis.analizar(DIA);
+		long descuentos = consultas.stream().filter("descontar"::equals).count();
+
+		AnalisisResumenDto otraVez = analisis.analizar(DIA);
+		List<AnalisisResumenDto> rango = analisis.reanalizar(DIA, DIA).join();
+
+		assertTrue(otraVez.isRepetido());
+		assertEquals(0, otraVez.getIncidencias());
+		assertEquals(1, rango.size());
+		assertEquals(0, rango.get(0).getIncidencias());
+		assertEquals(7000, generadas.get(DIA).size());
+		assertEquals(7000, emails.get());
+		assertEquals(descuentos, consultas.stream().filter("descontar"::equals).count());
+	}
+
+	@Test
+	void unDiaPasadoSeCierraConUnaSalidaExplicita() {
+		AnalisisResumenDto resumen = analisis.reanalizar(DIA, DIA).join().get(0);
+
+		// Nada pasa por FicharService, que tomaría el tipo del estado de hoy
+		assertEquals(0, cierres.size());
+		assertEquals(1000, resumen.getFichajesCerrados());
+		assertEquals(1000, salidas.size());
+		assertTrue(salidas.stream().allMatch(f -> DIA.equals(f.getDia())
+				&& LocalTime.of(23, 59, 59).equals(f.getHora())
+				&& TipoFichaje.SALIDA.toString().equals(f.getTipo())));
+		assertEquals(1000, salidas.stream().map(Fichaje::getClave).distinct().count());
+
+		// Repetirlo no vuelve a insertar las salidas
+		analisis.reanalizar(DIA, DIA).join();
+		assertEquals(1000, salidas.size());
+		assertEquals(0, cierres.size());
+	}
+
+	@Test
+	void recuperaLosDiasPendientesEnOrden() {
+		empleados = 1_000;
+		List<AnalisisResumenDto> resumenes = recuperar(60);
+
+		assertEquals(60, resumenes.size());
+		assertEquals(61, anotados.size());
+		assertEquals(60L * empleados,
+				resumenes.stream().mapToLong(AnalisisResumenDto::getUsuarios).sum());
+		assertTrue(resumenes.stream().noneMatch(r -> r.isRepetido() || r.isOmitido()));
+		// El último día es el nocturno y va al final
+		assertEquals(DIA, resumenes.get(resumenes.size() - 1).getDia());
+		assertEquals(60, generadas.size());
+
+		// Ya al día: no queda nada pendiente
+		assertEquals(0, analisis.ponerAlDia(DIA).join().size());
+	}
+
+	@Test
+	@Tag("benchmark")
+	void tiempoDeAnalizarUnDia() {
+		latenciaMs = 5;
+		long inicio = System.nanoTime();
+		AnalisisResumenDto resumen = analisis.analizar(DIA);
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+
+		System.out.printf("%d empleados: %.2f s, %d consultas (carga %d ms, evaluación %d ms, escritura %d ms)%n",
+				empleados, segundos, consultas.size(), resumen.getMsCarga(),
+				resumen.getMsEvaluacion(), resumen.getMsEscritura());
+	}
+
+	@Test
+	@Tag("benchmark")
+	void tiempoDeRecuperarUnAno() {
+		latenciaMs = 5;
+		empleados = 5_000;
+		long inicio = System.nanoTime();
+		List<AnalisisResumenDto> resumenes = recuperar(365);
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+
+		long analizados = resumenes.stream().mapToLong(AnalisisResumenDto::getUsuarios).sum();
+		System.out.printf("%d días de %d empleados: %.2f s, %.0f empleados-día/s%n",
+				resumenes.size(), empleados, segundos, analizados / segundos);
+	}
+
+	// Días pendientes desde el último analizado hasta DIA
+	private List<AnalisisResumenDto> recuperar(int dias) {
+		LocalDate primero = DIA.minusDays(dias);
+		anotados.put(primero, AnalisisDia.builder().dia(primero).build());
+		return analisis.ponerAlDia(DIA).join();
+	}
+
+	private IUsuarioAnalisis usuario(long id) {
+		return new IUsuarioAnalisis() {
+			public Long getId() {
+				return id;
+			}
+
+			public String getNumero() {
+				return String.valueOf(id);
+			}
+
+			public String getNombreEmpleado() {
+				return "Empleado " + id;
+			}
+
+			public String getEmail() {
+				return id + "@fichajespi.es";
+			}
+
+			public Boolean getEnVacaciones() {
+				return id % 10 == 7;
+			}
+
+			public Boolean getDeBaja() {
+				return id % 10 == 8;
+			}
+		};
+	}
+
+	// Cada empleado tiene un día distinto según su id % 10
+	private List<IFichajeAnalisis> fichajes(long id) {
+		switch ((int) (id % 10)) {
+		case 1: // impar
+			return horas(id, "08:00", "11:00", "12:00");
+		case 2: // día completo
+		case 9:
+			return horas(id, "08:00", "15:00");
+		case 3: // llega tarde y sale pronto
+			return horas(id, "09:00", "15:00");
+		case 4: // sale sin permiso
+		case 5: // sale con permiso
+			return horas(id, "08:00", "11:00", "12:00", "15:00");
+		default:
+			return Collections.emptyList();
+		}
+	}
+
+	private List<IPermisoAnalisis> permisos(long id) {
+		if (id % 10 != 5)
+			return Collections.emptyList();
+		return Collections.singletonList(new IPermisoAnalisis() {
+			public Long getUsuarioId() {
+				return id;
+			}
+
+			public LocalTime getHoraInicio() {
+				return LocalTime.of(11, 0);
+			}
+
+			public LocalTime getHoraFin() {
+				return LocalTime.of(12, 0);
+			}
+		});
+	}
+
+	private List<IVacacionesAnalisis> vacaciones(long id) {
+		if (id % 10 != 6 && id % 10 != 7)
+			return Collections.emptyList();
+		// 6: periodo vigente; 7: periodo ya pasado
+		LocalDate inicio = id % 10 == 6 ? DIA.minusDays(2) : DIA.minusDays(20);
+		LocalDate fin = id % 10 == 6 ? DIA.plusDays(2) : DIA.minusDays(10);
+		return Collections.singletonList(new IVacacionesAnalisis() {
+			public Long getId() {
+				return id;
+			}
+
+			public Long getUsuarioId() {
+				return id;
+			}
+
+			public LocalDate getInicio() {
+				return inicio;
+			}
+
+			public LocalDate getFin() {
+				return fin;
+			}
+		});
+	}
+
+	private List<IFichajeAnalisis> horas(long id, String... horas) {
+		List<IFichajeAnalisis> lista = new ArrayList<>();
+		for (String hora : horas)
+			lista.add(new IFichajeAnalisis() {
+				public Long getId() {
+					return null;
+				}
+
+				public Long getUsuarioId() {
+					return id;
+				}
+
+				public LocalTime getHora() {
+					return LocalTime.parse(hora);
+				}
+			});
+		return lista;
+	}
+
+	private boolean guardar(List<Incidencia> lista) {
+		for (Incidencia i : lista) {
+			Long usuarioId = i.getUsuario().getId();
+			String resumen = i.getResumen();
+			generadas.computeIfAbsent(i.getDia(),
+					d -> Collections.synchronizedList(new ArrayList<>()))
+					.add(new IIncidenciaAnalisis() {
+						public Long getUsuarioId() {
+							return usuarioId;
+						}
+
+						public String getResumen() {
+							return resumen;
+						}
+					});
+		}
+		return true;
+	}
+
+	private <T> List<T> porUsuario(Collection<Long> ids, Function<Long, List<T>> filas) {
+		return ids.stream().flatMap(id -> filas.apply(id).stream())
+				.collect(Collectors.toList());
+	}
+
+	private int cambio(String tipo, Collection<Long> ids)
+			throws InterruptedException {
+		cambios.computeIfAbsent(tipo, t -> ConcurrentHashMap.newKeySet()).addAll(ids);
+		return consulta(tipo, ids::size);
+	}
+
+	private <T> T consulta(String nombre, Supplier<T> resultado)
+			throws InterruptedException {
+		consultas.add(nombre);
+		if (latenciaMs > 0)
+			Thread.sleep(latenciaMs);
+		return resultado.get();
+	}
+
+}
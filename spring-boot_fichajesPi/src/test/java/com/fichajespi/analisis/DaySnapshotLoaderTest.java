@@ -0,0 +1,140 @@
+package com.fichajespi.analisis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.entity.Permiso;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.entity.Vacaciones;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.h2.Empleados;
+import com.fichajespi.h2.H2JpaTest;
+
+/**
+ * Contra H2: cargar el día cuesta cuatro consultas tanto con 10 como con
+ * 500 empleados.
+ */
+@H2JpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(DaySnapshotLoader.class)
+class DaySnapshotLoaderTest {
+
+	private static final LocalDate DIA = LocalDate.of(2024, 1, 15);
+
+	@Autowired
+	private DaySnapshotLoader loader;
+	@Autowired
+	private EntityManager entityManager;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void cargaElDiaConCuatroConsultas() {
+		assertEquals(4, consultasAlCargar(1, 10));
+		assertEquals(4, consultasAlCargar(11, 500));
+
+		DaySnapshot snapshot = loader.cargar(DIA, false);
+		long id = usuario(7);
+		assertEquals(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(11, 0),
+				LocalTime.of(12, 0), LocalTime.of(15, 0)), snapshot.fichajes(id));
+		assertEquals(1, snapshot.permisos(id).size());
+		assertEquals(1, snapshot.vacaciones(id).size());
+		assertEquals(Collections.singletonList(Incidencias.MENOS_HORAS),
+				snapshot.incidencias(id));
+		assertEquals(Collections.emptyList(), snapshot.fichajes(-1));
+	}
+
+	@Test
+	void alReanalizarTomaLasVacacionesYaAgotadas() {
+		crearEmpleado(1);
+		entityManager.createQuery("UPDATE Vacaciones v SET v.consumidas = TRUE")
+				.executeUpdate();
+
+		assertEquals(0, loader.cargar(DIA, false).vacaciones(usuario(1)).size());
+		assertEquals(1, loader.cargar(DIA, true).vacaciones(usuario(1)).size());
+		// Un periodo que ya había terminado no cubre el día
+		assertEquals(0, loader.cargar(DIA.plusDays(5), true).vacaciones(usuario(1)).size());
+	}
+
+	private long consultasAlCargar(int desde, int hasta) {
+		for (int i = desde; i <= hasta; i++)
+			crearEmpleado(i);
+		entityManager.flush();
+		entityManager.clear();
+
+		Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class)
+				.getStatistics();
+		estadisticas.clear();
+		DaySnapshot snapshot = loader.cargar(DIA, false);
+		long consultas = estadisticas.getPrepareStatementCount();
+		assertEquals(4, snapshot.fichajes(usuario(desde)).size());
+		return consultas;
+	}
+
+	private void crearEmpleado(int i) {
+		Usuario u = Empleados.crear(entityManager, i);
+
+		for (String hora : Arrays.asList("08:00", "15:00", "11:00", "12:00"))
+			entityManager.persist(Fichaje.builder()
+					.dia(DIA)
+					.hora(LocalTime.parse(hora))
+					.tipo("ENTRADA")
+					.origen("test")
+					.usuario(u)
+					.build());
+		// Otro día: no entra en el snapshot
+		entityManager.persist(Fichaje.builder()
+				.dia(DIA.minusDays(1))
+				.hora(LocalTime.of(8, 0))
+				.tipo("ENTRADA")
+				.origen("test")
+				.usuario(u)
+				.build());
+
+		Permiso permiso = new Permiso();
+		permiso.setDia(DIA);
+		permiso.setHoraInicio(LocalTime.of(11, 0));
+		permiso.setHoraFin(LocalTime.of(12, 0));
+		permiso.setDescripcion("Médico");
+		permiso.setAprobado(true);
+		permiso.setUsuario(u);
+		entityManager.persist(permiso);
+
+		Vacaciones vacaciones = new Vacaciones();
+		vacaciones.setInicio(DIA.minusDays(1));
+		vacaciones.setFin(DIA.plusDays(1));
+		vacaciones.setConsumidas(false);
+		vacaciones.setAprobado(true);
+		vacaciones.setUsuario(u);
+		entityManager.persist(vacaciones);
+
+		Incidencia incidencia = new Incidencia();
+		incidencia.setDia(DIA);
+		incidencia.setResumen(Incidencias.MENOS_HORAS);
+		incidencia.setDescripcion("Menos horas");
+		incidencia.setUsuario(u);
+		entityManager.persist(incidencia);
+	}
+
+	private long usuario(int numero) {
+		return entityManager
+				.createQuery("SELECT u.id FROM Usuario u WHERE u.numero = ?1", Long.class)
+				.setParameter(1, String.valueOf(numero))
+				.getSingleResult();
+	}
+
+}
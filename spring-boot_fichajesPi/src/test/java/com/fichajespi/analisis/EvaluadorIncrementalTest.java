@@ -0,0 +1,242 @@
+package com.fichajespi.analisis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.dto.interfaces.IFichajeAnalisis;
+import com.fichajespi.entity.Calendario;
+import com.fichajespi.entity.DiaLaborable;
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.IncidenciaRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.service.CalendarioService;
+import com.fichajespi.service.DiaLaborableService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EvaluadorIncrementalTest {
+
+	private static final LocalDate DIA = LocalDate.of(2024, 1, 15);
+	// Empleado de baja: no se le controla la entrada
+	private static final long DE_BAJA = 99;
+
+	private final List<Incidencia> incidencias = Collections.synchronizedList(new ArrayList<>());
+	private final List<IFichajeAnalisis> enBaseDeDatos = new ArrayList<>();
+	private final AtomicLong contados = new AtomicLong();
+
+	private EvaluadorIncremental evaluador;
+
+	@BeforeEach
+	void setUp() {
+		CalendarioService calendarioService = mock(CalendarioService.class, withSettings().stubOnly());
+		DiaLaborableService diaService = mock(DiaLaborableService.class, withSettings().stubOnly());
+		FichajeRepository fichajeRepository = mock(FichajeRepository.class, withSettings().stubOnly());
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class, withSettings().stubOnly());
+		IncidenciaRepository incidenciaRepository = mock(IncidenciaRepository.class, withSettings().stubOnly());
+		EventSender eventSender = mock(EventSender.class, withSettings().stubOnly());
+		PlatformTransactionManager transactionManager = mock(
+				PlatformTransactionManager.class, withSettings().stubOnly());
+
+		Calendario calendario = new Calendario();
+		calendario.setMinutosMasEntrada(10);
+		calendario.setMinutosMenosEntrada(10);
+		DiaLaborable dia = new DiaLaborable();
+		dia.setDia(DIA);
+		dia.setHoraInicio(LocalTime.of(8, 0));
+		dia.setHoraFin(LocalTime.of(15, 0));
+		when(calendarioService.getActive()).thenReturn(Optional.of(calendario));
+		when(diaService.getByDiaInActiveCalendar(any(), any())).thenReturn(Optional.of(dia));
+
+		when(fichajeRepository.findAnalisisByDia(DIA)).thenAnswer(inv -> enBaseDeDatos);
+		when(fichajeRepository.countByDia(DIA)).thenAnswer(inv -> contados.get());
+		when(usuarioRepository.findIdsSinControlHorario())
+				.thenReturn(Collections.singletonList(DE_BAJA));
+		when(usuarioRepository.getById(anyLong())).thenAnswer(inv -> {
+			Usuario u = new Usuario();
+			u.setId(inv.getArgument(0));
+			return u;
+		});
+		when(usuarioRepository.findEmailById(anyLong())).thenReturn(Optional.of("x@fichajespi.es"));
+		when(incidenciaRepository.findUsuarioIdsByDiaAndResumen(any(), any()))
+				.thenReturn(Collections.emptyList());
+		doAnswer(inv -> incidencias.addAll(inv.getArgument(0)))
+				.when(eventSender).createEvents(anyList());
+		when(transactionManager.getTransaction(any()))
+				.thenReturn(new SimpleTransactionStatus());
+
+		evaluador = new EvaluadorIncremental();
+		ReflectionTestUtils.setField(evaluador, "calendarioService", calendarioService);
+		ReflectionTestUtils.setField(evaluador, "diaService", diaService);
+		ReflectionTestUtils.setField(evaluador, "fichajeRepository", fichajeRepository);
+		ReflectionTestUtils.setField(evaluador, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(evaluador, "incidenciaRepository", incidenciaRepository);
+		ReflectionTestUtils.setField(evaluador, "eventSender", eventSender);
+		ReflectionTestUtils.setField(evaluador, "transactionManager", transactionManager);
+		ReflectionTestUtils.setField(evaluador, "ejecutores",
+				new Ejecutores(new SimpleMeterRegistry(), false));
+		ReflectionTestUtils.setField(evaluador, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(evaluador, "logger", new LoggerService());
+		evaluador.init();
+	}
+
+	@Test
+	void avisaDeLasEntradasFueraDeHoraAlFichar() throws Exception {
+		fichar(1, 1, "08:05"); // dentro del margen
+		fichar(2, 2, "09:00"); // tarde
+		fichar(3, 2, "15:00");
+		fichar(3, 2, "15:00"); // repetido
+		fichar(4, 3, "07:30"); // demasiado pronto
+		fichar(5, DE_BAJA, "10:00");
+
+		esperarAvisos(2);
+		assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), incidencias.stream()
+				.map(i -> i.getUsuario().getId()).collect(Collectors.toSet()));
+		assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), evaluador.avisados(DIA));
+	}
+
+	@Test
+	void elAnalisisNocturnoReutilizaLosFichajesSiCoincidenConLaBaseDeDatos() {
+		// Un fichaje anterior al arranque, que se recupera de la base de datos
+		enBaseDeDatos.add(fila(1, 1, "08:00"));
+		fichar(2, 2, "08:02");
+		fichar(3, 1, "15:00");
+
+		contados.set(3);
+		List<IFichajeAnalisis> fichajes = evaluador.fichajes(DIA).get();
+		assertEquals(3, fichajes.size());
+		assertEquals(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(15, 0)),
+				fichajes.stream().filter(f -> f.getUsuarioId() == 1)
+						.map(IFichajeAnalisis::getHora).collect(Collectors.toList()));
+
+		// Un script ha fichado directamente en la tabla
+		contados.set(4);
+		assertFalse(evaluador.fichajes(DIA).isPresent());
+		assertFalse(evaluador.fichajes(DIA.minusDays(1)).isPresent());
+	}
+
+	@Test
+	void elEstadoDelDiaAdmiteFichajesAtrasados() {
+		EvaluadorIncremental.EstadoDia estado = new EvaluadorIncremental.EstadoDia(1L);
+		assertTrue(estado.anadir(1L, LocalTime.of(8, 0)));
+		assertTrue(estado.anadir(2L, LocalTime.of(11, 0)));
+		assertTrue(estado.anadir(3L, LocalTime.of(12, 0)));
+		assertFalse(estado.anadir(3L, LocalTime.of(12, 0)));
+		assertEquals(180, estado.getMinutosTrabajados());
+		assertEquals(LocalTime.of(12, 0), estado.getTramoAbierto());
+
+		// Llega tarde la salida de las 10:00 y la entrada de las 10:30
+		estado.anadir(4L, LocalTime.of(10, 0));
+		estado.anadir(5L, LocalTime.of(10, 30));
+		assertEquals(LocalTime.of(8, 0), estado.primeraEntrada());
+		assertEquals(120 + 30, estado.getMinutosTrabajados());
+		assertEquals(LocalTime.of(12, 0), estado.getTramoAbierto());
+
+		estado.anadir(6L, LocalTime.of(15, 0));
+		assertEquals(120 + 30 + 180, estado.getMinutosTrabajados());
+		assertNull(estado.getTramoAbierto());
+	}
+
+	@Test
+	void cargarUnDiaNuevoNoBloqueaLosFichajesDelDiaEnCurso() throws Exception {
+		LocalDate siguiente = DIA.plusDays(1);
+		CountDownLatch cargando = new CountDownLatch(1);
+		CountDownLatch seguir = new CountDownLatch(1);
+		FichajeRepository fichajeRepository = (FichajeRepository) ReflectionTestUtils
+				.getField(evaluador, "fichajeRepository");
+		when(fichajeRepository.findAnalisisByDia(siguiente)).thenAnswer(inv -> {
+			cargando.countDown();
+			seguir.await();
+			return Collections.emptyList();
+		});
+		fichar(1, 1, "08:00");
+
+		CompletableFuture<Void> nuevoDia = CompletableFuture
+				.runAsync(() -> fichar(siguiente, 2, 2, "08:00"));
+		try {
+			assertTrue(cargando.await(5, TimeUnit.SECONDS));
+			// Mientras se consulta la base de datos el día en curso sigue fichando
+			CompletableFuture.runAsync(() -> fichar(3, 1, "15:00")).get(5, TimeUnit.SECONDS);
+			contados.set(2);
+			assertEquals(2, evaluador.fichajes(DIA).get().size());
+		} finally {
+			seguir.countDown();
+		}
+		nuevoDia.get(5, TimeUnit.SECONDS);
+		assertEquals(2, evaluador.fichajes(DIA).get().size());
+	}
+
+	private void fichar(long fichajeId, long usuarioId, String hora) {
+		fichar(DIA, fichajeId, usuarioId, hora);
+	}
+
+	private void fichar(LocalDate dia, long fichajeId, long usuarioId, String hora) {
+		evaluador.onFichajeRegistrado(FichajeRegistradoEvent.builder()
+				.fichajeId(fichajeId)
+				.usuarioId(usuarioId)
+				.numeroUsuario(String.valueOf(usuarioId))
+				.nombreUsuario("Empleado " + usuarioId)
+				.dia(dia)
+				.hora(LocalTime.parse(hora))
+				.tipo("ENTRADA")
+				.build());
+	}
+
+	private IFichajeAnalisis fila(long id, long usuarioId, String hora) {
+		return new IFichajeAnalisis() {
+			public Long getId() {
+				return id;
+			}
+
+			public Long getUsuarioId() {
+				return usuarioId;
+			}
+
+			public LocalTime getHora() {
+				return LocalTime.parse(hora);
+			}
+		};
+	}
+
+	private void esperarAvisos(int esperados) throws InterruptedException {
+		long limite = System.currentTimeMillis() + 5_000;
+		while (incidencias.size() < esperados && System.currentTimeMillis() < limite)
+			Thread.sleep(10);
+		evaluador.close();
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.fichajespi.busqueda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.dto.entity.UsuarioBusquedaDto;
+import com.fichajespi.dto.interfaces.IUsuarioBusqueda;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.util.LongHashMap;
+
+/**
+ * 50.000 empleados con nombres y apellidos repetidos, como en una plantilla
+ * real, y uno con tildes y eñes para buscarlo escrito de varias formas. Los
+ * microsegundos por consulta se miden con mvn test -Pbenchmark.
+ */
+class BuscadorUsuariosTest {
+
+	private static final int EMPLEADOS = 50_000;
+	private static final int CONSULTAS = 20_000;
+	private static final String[] NOMBRES = { "José", "María", "Lucía", "Raúl", "Sofía",
+			"Javier", "Carmen", "David", "Elena", "Andrés", "Marta", "Pablo", "Inés",
+			"Sergio", "Laura", "Óscar", "Paula", "Jesús", "Irene", "Adrián" };
+	private static final String[] APELLIDOS = { "García", "López", "Martínez", "Sánchez",
+			"Pérez", "Gómez", "Fernández", "Muñoz", "Álvarez", "Jiménez", "Ruiz", "Díaz",
+			"Moreno", "Romero", "Alonso", "Gutiérrez", "Navarro", "Torres", "Domínguez",
+			"Vázquez", "Ramos", "Gil", "Ramírez", "Serrano", "Blanco", "Suárez", "Molina",
+			"Castro", "Ortega", "Rubio" };
+	private static final long ID = 900_001;
+
+	private final List<IUsuarioBusqueda> filas = new ArrayList<>();
+	private BuscadorUsuarios buscador;
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 0; i < EMPLEADOS; i++) {
+			String nombre = NOMBRES[i % NOMBRES.length] + " "
+					+ APELLIDOS[i / NOMBRES.length % APELLIDOS.length] + " "
+					+ APELLIDOS[i / (NOMBRES.length * APELLIDOS.length) % APELLIDOS.length];
+			filas.add(fila(i + 1, String.valueOf(100_000 + i), nombre,
+					String.format("%08dX", i * 7919L % 100_000_000), "empleado" + i + "@fichajespi.es"));
+		}
+		filas.add(fila(ID, "1234", "José Ángel Núñez Peña", "12345678Z",
+				"jangel.nunez@fichajespi.es"));
+
+		UsuarioRepository repository = mock(UsuarioRepository.class, withSettings().stubOnly());
+		when(repository.findBusquedaAll()).thenAnswer(inv -> filas);
+		buscador = new BuscadorUsuarios();
+		ReflectionTestUtils.setField(buscador, "usuarioRepository", repository);
+		ReflectionTestUtils.setField(buscador, "logger", new LoggerService());
+		buscador.init();
+	}
+
+	@Test
+	void sinTildesPorInicioYPorTrigramas() {
+		assertEquals(List.of(ID), ids("nunez"));
+		assertEquals(List.of(ID), ids("NÚÑEZ pe"));
+		assertEquals(List.of(ID), ids("jose angel"));
+		assertEquals(List.of(ID), ids("uñe"));
+		assertEquals(List.of(ID), ids("jangel"));
+		assertEquals(List.of(ID), ids("12345678z"));
+
+		// Los que coinciden enteros con un campo van primero
+		List<Long> numero = ids("1234");
+		assertEquals(10, numero.size());
+		assertEquals(ID, numero.get(0));
+
+		// Las palabras cortas solo al inicio de palabra, en cualquier orden, y por nombre
+		List<UsuarioBusquedaDto> ma = buscador.buscar("ma ro", 50);
+		assertEquals(50, ma.size());
+		List<String> nombres = ma.stream()
+				.map(u -> BuscadorUsuarios.normalizar(u.getNombreEmpleado()))
+				.collect(Collectors.toList());
+		for (String nombre : nombres)
+			assertTrue(nombre.matches(".*\\bma.*") && nombre.matches(".*\\bro.*"), nombre);
+		assertEquals(nombres.stream().sorted().collect(Collectors.toList()), nombres);
+
+		assertEquals(List.of(), ids("zzz"));
+		assertEquals(List.of(), ids("   "));
+	}
+
+	@Test
+	void seActualizaAlGuardarYBorrar() {
+		Usuario usuario = new Usuario();
+		usuario.setId(ID);
+		usuario.setNumero("1234");
+		usuario.setNombreEmpleado("José Ángel Núñez Peña");
+		usuario.setDni("12345678Z");
+		usuario.setEmail("jangel.nunez@fichajespi.es");
+		usuario.setDiasVacaciones(30);
+
+		// Sin cambios en los campos buscados no hay nada que aplicar
+		buscador.guardado(usuario);
+		assertEquals(0, ((LongHashMap<?>) ReflectionTestUtils.getField(buscador, "cambios")).size());
+
+		usuario.setNombreEmpleado("José Ángel Núñez Ibáñez");
+		buscador.guardado(usuario);
+		assertEquals(List.of(ID), ids("ibanez"));
+		assertEquals(List.of(), ids("nunez pena"));
+
+		Usuario nuevo = new Usuario();
+		nuevo.setId(ID + 1);
+		nuevo.setNumero("Z-1");
+		nuevo.setNombreEmpleado("Íñigo Zubizarreta");
+		nuevo.setEmail("izubi@fichajespi.es");
+		buscador.guardado(nuevo);
+		assertEquals(List.of(ID + 1), ids("inigo zubi"));
+		assertEquals(List.of(ID + 1), ids("z-1"));
+
+		buscador.borrado(ID);
+		assertEquals(List.of(), ids("ibanez"));
+		assertEquals(List.of(), ids("jangel"));
+		assertFalse(ids("1234").contains(ID));
+	}
+
+	@Test
+	@Tag("benchmark")
+	void consultasPorSegundo() {
+		String[] consultas = { "garcia", "jose lo", "ma", "mar gar", "nunez", "1234",
+				"12345678z", "empleado4999", "ortega rubio", "rez", "s", "elena vaz",
+				"fichajespi", "ínes", "oscar" };
+		for (int i = 0; i < CONSULTAS; i++)
+			buscador.buscar(consultas[i % consultas.length], 10);
+
+		long inicio = System.nanoTime();
+		for (int i = 0; i < CONSULTAS; i++)
+			buscador.buscar(consultas[i % consultas.length], 10);
+		double micros = (System.nanoTime() - inicio) / 1e3 / CONSULTAS;
+		System.out.printf("Búsqueda de empleados entre %d: %.1f µs por consulta, %.0f consultas/s%n",
+				EMPLEADOS, micros, 1e6 / micros);
+	}
+
+	private List<Long> ids(String q) {
+		return buscador.buscar(q, 10).stream()
+				.map(UsuarioBusquedaDto::getId)
+				.collect(Collectors.toList());
+	}
+
+	private static IUsuarioBusqueda fila(long id, String numero, String nombre, String dni,
+			String email) {
+		return new IUsuarioBusqueda() {
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getNumero() {
+				return numero;
+			}
+
+			@Override
+			public String getNombreEmpleado() {
+				return nombre;
+			}
+
+			@Override
+			public String getDni() {
+				return dni;
+			}
+
+			@Override
+			public String getEmail() {
+				return email;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.fichajespi.config;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.h2.H2JpaTest;
+
+import db.migration.V8__Indices_consultas;
+
+/**
+ * Contra H2 en modo MySQL: sin los índices de las entidades se avisa o no se
+ * arranca, y V8 los vuelve a crear.
+ */
+@H2JpaTest
+class ComprobacionIndicesTest {
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	@Autowired
+	private DataSource dataSource;
+
+	private ComprobacionIndices comprobacion;
+
+	@BeforeEach
+	void setUp() {
+		comprobacion = new ComprobacionIndices();
+		ReflectionTestUtils.setField(comprobacion, "entityManagerFactory", entityManagerFactory);
+		ReflectionTestUtils.setField(comprobacion, "dataSource", dataSource);
+	}
+
+	@Test
+	void avisaOFallaSiFaltanYV8LosCrea() throws Exception {
+		// Los crea Hibernate a partir de @Table(indexes)
+		assertEquals(List.of(), comprobacion.ausentes());
+
+		try (Connection connection = dataSource.getConnection();
+				Statement st = connection.createStatement()) {
+			st.execute("DROP INDEX idx_fichajes_usuario_dia_hora");
+			st.execute("DROP INDEX idx_vacaciones_usuario_consumidas_aprobado");
+		}
+		List<String> ausentes = comprobacion.ausentes();
+		assertEquals(2, ausentes.size(), ausentes.toString());
+		assertTrue(ausentes.contains("fichajes.idx_fichajes_usuario_dia_hora"), ausentes.toString());
+		assertTrue(ausentes.contains("vacaciones.idx_vacaciones_usuario_consumidas_aprobado"),
+				ausentes.toString());
+
+		assertDoesNotThrow(comprobacion::init);
+		ReflectionTestUtils.setField(comprobacion, "estricto", true);
+		IllegalStateException e = assertThrows(IllegalStateException.class, comprobacion::init);
+		assertTrue(e.getMessage().contains("idx_fichajes_usuario_dia_hora"), e.getMessage());
+
+		try (Connection connection = dataSource.getConnection()) {
+			migrar(connection);
+			// Una segunda vez no hace nada
+			migrar(connection);
+			assertEquals(List.of(), comprobacion.ausentes());
+
+			// findByUsuarioAndDiaOrderByHora, con 20 empleados y 100 días de fichajes
+			try (Statement st = connection.createStatement()) {
+				st.executeUpdate("INSERT INTO usuarios (id, email, password, numero, nombre_empleado, dni)"
+						+ " SELECT X, X || '@fichajespi.es', 'x', X, 'Empleado ' || X, 'DNI' || X"
+						+ " FROM SYSTEM_RANGE(1, 20)");
+				st.executeUpdate("INSERT INTO fichajes (id, hora, dia, tipo, origen, usuario_id)"
+						+ " SELECT X, TIME '08:00:00', DATEADD('DAY', X / 40, DATE '2024-01-01'),"
+						+ " 'ENTRADA', 'TEST', MOD(X, 20) + 1 FROM SYSTEM_RANGE(1, 4000)");
+				st.execute("ANALYZE");
+			}
+			try (Statement st = connection.createStatement();
+					ResultSet rs = st.executeQuery("EXPLAIN SELECT * FROM fichajes"
+							+ " WHERE usuario_id = 1 AND dia = DATE '2024-01-15' ORDER BY hora")) {
+				rs.next();
+				String plan = rs.getString(1).toUpperCase(Locale.ROOT);
+				assertTrue(plan.contains("IDX_FICHAJES_USUARIO_DIA_HORA"), plan);
+			}
+		}
+		assertDoesNotThrow(comprobacion::init);
+	}
+
+	private void migrar(Connection connection) throws Exception {
+		Context context = mock(Context.class, withSettings().stubOnly());
+		when(context.getConnection()).thenReturn(connection);
+		new V8__Indices_consultas().migrate(context);
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.fichajespi.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fichajespi.config.Ejecutores.Rechazo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EjecutoresTest {
+
+	private final CountDownLatch liberar = new CountDownLatch(1);
+	private SimpleMeterRegistry meterRegistry;
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@AfterEach
+	void tearDown() {
+		liberar.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	void conLaColaLlenaEjecutaElLlamanteYLoCuenta() throws Exception {
+		executor = new Ejecutores(meterRegistry, false)
+				.crear("prueba", "PruebaThread-", 1, 1, Rechazo.LLAMANTE);
+		Future<String> ocupado = executor.submit(() -> {
+			liberar.await();
+			return Thread.currentThread().getName();
+		});
+		Future<String> encolado = executor.submit(() -> Thread.currentThread().getName());
+		assertEquals(1.0, gauge("fichajes.ejecutor.cola"));
+		assertEquals(1.0, gauge("fichajes.ejecutor.activos"));
+
+		Future<String> rechazado = executor.submit(() -> Thread.currentThread().getName());
+		assertEquals(Thread.currentThread().getName(), rechazado.get());
+
+		liberar.countDown();
+		assertEquals("PruebaThread-1", ocupado.get(5, TimeUnit.SECONDS));
+		assertEquals("PruebaThread-1", encolado.get(5, TimeUnit.SECONDS));
+		assertEquals(1.0, meterRegistry.get("fichajes.ejecutor.rechazos")
+				.tag("ejecutor", "prueba").counter().count());
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		assertEquals(3, meterRegistry.get("fichajes.ejecutor.tarea")
+				.tag("ejecutor", "prueba").timer().count());
+		assertTrue(meterRegistry.get("fichajes.ejecutor.espera").timer()
+				.max(TimeUnit.MILLISECONDS) >= 0);
+	}
+
+	@Test
+	void conAbortarElRechazoLoResuelveQuienEnvia() {
+		executor = new Ejecutores(meterRegistry, false)
+				.crear("prueba", "PruebaThread-", 1, 1, Rechazo.ABORTAR);
+		executor.execute(() -> esperar());
+		executor.execute(() -> esperar());
+
+		assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+		}));
+		assertEquals(1.0, meterRegistry.get("fichajes.ejecutor.rechazos")
+				.counter().count());
+	}
+
+	@Test
+	void conHilosVirtualesMantieneNombreYLimite() throws Exception {
+		// En una JVM sin hilos virtuales se usan hilos normales
+		executor = new Ejecutores(meterRegistry, true)
+				.crear("prueba", "PruebaThread-", 2, 10, Rechazo.LLAMANTE);
+		Future<String> nombre = executor.submit(() -> Thread.currentThread().getName());
+
+		assertTrue(nombre.get(5, TimeUnit.SECONDS).startsWith("PruebaThread-"));
+		assertEquals(2, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+	}
+
+	private double gauge(String nombre) {
+		return meterRegistry.get(nombre).tag("ejecutor", "prueba").gauge().value();
+	}
+
+	private void esperar() {
+		try {
+			liberar.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
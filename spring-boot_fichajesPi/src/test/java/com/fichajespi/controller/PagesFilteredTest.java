@@ -0,0 +1,262 @@
+package com.fichajespi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.dto.converter.UsuarioDtoConverter;
+import com.fichajespi.dto.entity.FichajeDto;
+import com.fichajespi.dto.entity.IncidenciaDtoFilter;
+import com.fichajespi.dto.entity.PermisoDtoFilter;
+import com.fichajespi.dto.entity.UsuarioDtoFilter;
+import com.fichajespi.dto.entity.VacacionesDtoFilter;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Permiso;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.entity.Vacaciones;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.h2.Empleados;
+import com.fichajespi.h2.H2JpaTest;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.IncidenciaRepository;
+import com.fichajespi.repository.PermisoRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.repository.VacacionesRepository;
+import com.fichajespi.security.entity.RrhhDto;
+import com.fichajespi.security.service.GetInfoFromToken;
+import com.fichajespi.service.FichajeService;
+import com.fichajespi.service.IncidenciaService;
+import com.fichajespi.service.PermisoService;
+import com.fichajespi.service.UsuarioService;
+import com.fichajespi.service.VacacionesService;
+import com.fichajespi.service.common.CommonServiceImpl;
+import com.fichajespi.service.common.PaginacionNoValidaException;
+import com.fichajespi.specifications.FichajeSpecifications;
+import com.fichajespi.specifications.IncidenciaSpecifications;
+import com.fichajespi.specifications.PermisoSpecifications;
+import com.fichajespi.specifications.UsuarioSpecifications;
+import com.fichajespi.specifications.VacacionesSpecifications;
+
+/**
+ * Contra H2 en modo MySQL: cada /pagesFiltered lanza una consulta de datos y
+ * un count, también en orden descendente, y rechaza columnas no ordenables.
+ */
+@H2JpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PagesFilteredTest {
+
+	private static final LocalDate DIA = LocalDate.of(2024, 1, 15);
+	// Más de una página: hace falta el count
+	private static final int EMPLEADOS = 30;
+	private static final int SIZE = 20;
+	private static final String TOKEN = "Bearer token";
+
+	@Autowired
+	private EntityManager entityManager;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+	@Autowired
+	private IncidenciaRepository incidenciaRepository;
+	@Autowired
+	private PermisoRepository permisoRepository;
+	@Autowired
+	private VacacionesRepository vacacionesRepository;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+
+	private Statistics statistics;
+	private GetInfoFromToken getInfoFromToken;
+	private final List<Usuario> usuarios = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class)
+				.getStatistics();
+		// RRHH: sin restringir al usuario del token
+		getInfoFromToken = mock(GetInfoFromToken.class, withSettings().stubOnly());
+		when(getInfoFromToken.rrhhInfo(anyString())).thenReturn(new RrhhDto(false, "1", 1L));
+
+		for (int i = 1; i <= EMPLEADOS; i++)
+			usuarios.add(Empleados.crear(entityManager, i));
+		for (int i = 0; i < EMPLEADOS; i++) {
+			Usuario u = usuarios.get(i);
+			entityManager.persist(Fichaje.builder().hora(LocalTime.of(8, i)).dia(DIA)
+					.usuario(u).tipo("ENTRADA").origen("TEST").build());
+			entityManager.persist(EventSender.nuevaIncidencia(DIA.plusDays(i), u,
+					u.getNombreEmpleado(), u.getNumero(), Incidencias.AUSENCIA));
+			entityManager.persist(permiso(u, i));
+			entityManager.persist(vacaciones(u, i));
+		}
+		entityManager.flush();
+	}
+
+	@Test
+	void fichajes() {
+		FichajeController controller = fichajeController();
+
+		for (String order : new String[] { "id", "hora", "usuarioNombreEmpleado" })
+			for (boolean asc : new boolean[] { true, false })
+				assertUnaConsultaYUnCount(() -> controller.pageDtoSpec(new FichajeDto(), 0, SIZE,
+						order, asc, TOKEN));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> controller.pageDtoSpec(new FichajeDto(), 0, SIZE, "clave", false, TOKEN));
+	}
+
+	@Test
+	void incidencias() {
+		IncidenciaController controller = new IncidenciaController();
+		ReflectionTestUtils.setField(controller, "service", servicio(new IncidenciaService(), incidenciaRepository));
+		ReflectionTestUtils.setField(controller, "specifications", new IncidenciaSpecifications());
+
+		for (String order : new String[] { "id", "dia", "usuarioNumero" })
+			for (boolean asc : new boolean[] { true, false })
+				assertUnaConsultaYUnCount(() -> controller.pageDtoSpec(new IncidenciaDtoFilter(), 0,
+						SIZE, order, asc));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> controller.pageDtoSpec(new IncidenciaDtoFilter(), 0, SIZE, "explicacion", true));
+	}
+
+	@Test
+	void permisos() {
+		PermisosController controller = permisosController();
+
+		for (String order : new String[] { "id", "horaInicio", "usuarioNombreEmpleado" })
+			for (boolean asc : new boolean[] { true, false })
+				assertUnaConsultaYUnCount(() -> controller.pageDtoSpec(new PermisoDtoFilter(), 0,
+						SIZE, order, asc, TOKEN));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> controller.pageDtoSpec(new PermisoDtoFilter(), 0, SIZE, "aprobado", true, TOKEN));
+	}
+
+	@Test
+	void vacaciones() {
+		VacacionesController controller = vacacionesController();
+
+		for (String order : new String[] { "id", "inicio", "usuarioNumero" })
+			for (boolean asc : new boolean[] { true, false })
+				assertUnaConsultaYUnCount(() -> controller.pageDtoSpec(new VacacionesDtoFilter(), 0,
+						SIZE, order, asc, TOKEN));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> controller.pageDtoSpec(new VacacionesDtoFilter(), 0, SIZE, "aprobado", false, TOKEN));
+	}
+
+	@Test
+	void usuarios() {
+		UsuarioController controller = new UsuarioController();
+		ReflectionTestUtils.setField(controller, "service", servicio(new UsuarioService(), usuarioRepository));
+		ReflectionTestUtils.setField(controller, "specifications", new UsuarioSpecifications());
+		ReflectionTestUtils.setField(controller, "dtoConverter", new UsuarioDtoConverter());
+
+		for (String order : new String[] { "id", "nombreEmpleado", "numero" })
+			for (boolean asc : new boolean[] { true, false })
+				assertUnaConsultaYUnCount(() -> controller.pageDtoSpec(new UsuarioDtoFilter(), 0,
+						SIZE, order, asc));
+
+		PaginacionNoValidaException e = assertThrows(PaginacionNoValidaException.class,
+				() -> controller.pageDtoSpec(new UsuarioDtoFilter(), 0, SIZE, "password", false));
+		assertEquals(HttpStatus.BAD_REQUEST, controller.peticionNoValida(e).getStatusCode());
+	}
+
+	private FichajeController fichajeController() {
+		FichajeController controller = new FichajeController();
+		ReflectionTestUtils.setField(controller, "service", servicio(new FichajeService(), fichajeRepository));
+		ReflectionTestUtils.setField(controller, "specifications", new FichajeSpecifications());
+		ReflectionTestUtils.setField(controller, "getInfoFromToken", getInfoFromToken);
+		return controller;
+	}
+
+	private PermisosController permisosController() {
+		PermisosController controller = new PermisosController();
+		ReflectionTestUtils.setField(controller, "service", servicio(new PermisoService(), permisoRepository));
+		ReflectionTestUtils.setField(controller, "specifications", new PermisoSpecifications());
+		ReflectionTestUtils.setField(controller, "getInfoFromToken", getInfoFromToken);
+		return controller;
+	}
+
+	private VacacionesController vacacionesController() {
+		VacacionesController controller = new VacacionesController();
+		ReflectionTestUtils.setField(controller, "service", servicio(new VacacionesService(), vacacionesRepository));
+		ReflectionTestUtils.setField(controller, "specifications", new VacacionesSpecifications());
+		ReflectionTestUtils.setField(controller, "getInfoFromToken", getInfoFromToken);
+		return controller;
+	}
+
+	@Test
+	void sinRrhhCadaUnoVeSoloLoSuyo() {
+		Usuario empleado = usuarios.get(11);
+		when(getInfoFromToken.rrhhInfo(anyString()))
+				.thenReturn(new RrhhDto(true, empleado.getNumero(), empleado.getId()));
+
+		assertSoloDe(empleado, fichajeController().pageDtoSpec(new FichajeDto(), 0, SIZE,
+				"id", true, TOKEN).getBody().getContent(), Fichaje::getUsuario);
+		assertSoloDe(empleado, fichajeController().filteredList(new FichajeDto(), TOKEN)
+				.getBody(), Fichaje::getUsuario);
+		assertSoloDe(empleado, permisosController().pageDtoSpec(new PermisoDtoFilter(), 0,
+				SIZE, "id", true, TOKEN).getBody().getContent(), Permiso::getUsuario);
+		assertSoloDe(empleado, vacacionesController().pageDtoSpec(new VacacionesDtoFilter(), 0,
+				SIZE, "id", true, TOKEN).getBody().getContent(), Vacaciones::getUsuario);
+	}
+
+	private <T> void assertSoloDe(Usuario empleado, List<T> filas, Function<T, Usuario> usuario) {
+		assertEquals(1, filas.size());
+		assertEquals(empleado.getId(), usuario.apply(filas.get(0)).getId());
+	}
+
+	// Datos y count, nada más; antes asc=false repetía las dos
+	private void assertUnaConsultaYUnCount(Supplier<ResponseEntity<? extends Page<?>>> pagina) {
+		statistics.clear();
+		Page<?> resultado = pagina.get().getBody();
+		assertEquals(SIZE, resultado.getNumberOfElements());
+		assertEquals(EMPLEADOS, resultado.getTotalElements());
+		assertEquals(2, statistics.getQueryExecutionCount());
+	}
+
+	private <S extends CommonServiceImpl<?, ?>> S servicio(S service, Object repository) {
+		ReflectionTestUtils.setField(service, "repository", repository);
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+		return service;
+	}
+
+	private Permiso permiso(Usuario u, int i) {
+		Permiso p = new Permiso();
+		p.setUsuario(u);
+		p.setDia(DIA.plusDays(i));
+		p.setHoraInicio(LocalTime.of(9, i));
+		p.setHoraFin(LocalTime.of(11, i));
+		p.setDescripcion("Médico");
+		return p;
+	}
+
+	private Vacaciones vacaciones(Usuario u, int i) {
+		Vacaciones v = new Vacaciones();
+		v.setUsuario(u);
+		v.setInicio(DIA.plusDays(i));
+		v.setFin(DIA.plusDays(i + 5));
+		v.setConsumidas(false);
+		v.setAprobado(false);
+		return v;
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.fichajespi.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.presencia.RegistroPresencias;
+import com.fichajespi.repository.PresenciaRepository;
+
+// Una página o un tamaño no válidos son un 400, no un 500
+class PresenciaControllerTest {
+
+	private MockMvc mvc;
+
+	@BeforeEach
+	void setUp() {
+		PresenciaRepository repository = mock(PresenciaRepository.class);
+		when(repository.findAllConUsuario()).thenReturn(Collections.emptyList());
+		RegistroPresencias registro = new RegistroPresencias();
+		ReflectionTestUtils.setField(registro, "presenciaRepository", repository);
+		ReflectionTestUtils.setField(registro, "logger", new LoggerService());
+		registro.init();
+
+		PresenciaController controller = new PresenciaController();
+		ReflectionTestUtils.setField(controller, "registro", registro);
+		mvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@Test
+	void paginasNoValidas() throws Exception {
+		mvc.perform(get("/presence").param("page", "-1")).andExpect(status().isBadRequest());
+		mvc.perform(get("/presence").param("size", "0")).andExpect(status().isBadRequest());
+		mvc.perform(get("/presence").param("size", String.valueOf(Integer.MAX_VALUE)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.size").value(100));
+	}
+
+}
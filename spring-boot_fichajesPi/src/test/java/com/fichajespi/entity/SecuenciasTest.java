@@ -0,0 +1,138 @@
+package com.fichajespi.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.fichajespi.h2.H2JpaTest;
+
+import db.migration.V2__Secuencias_por_entidad;
+
+/**
+ * Contra H2 en modo MySQL y con el dialecto de MySQL, así que las secuencias
+ * son tablas como en producción: V2 las crea sobre un esquema con datos en
+ * el siguiente id libre, y los ids que reparte Hibernate no chocan con los
+ * existentes.
+ */
+@H2JpaTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:secuencias;MODE=MySQL;DATABASE_TO_UPPER=FALSE;DB_CLOSE_DELAY=-1",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.MySQL5Dialect",
+		"spring.jpa.properties.hibernate.id.optimizer.pooled.preferred=pooled-lo" })
+class SecuenciasTest {
+
+	private static final String[] SECUENCIAS = { "fichajes_seq", "usuarios_seq",
+			"incidencias_seq", "dias_laborables_seq", "calendarios_seq" };
+
+	@Autowired
+	private DataSource dataSource;
+	@Autowired
+	private EntityManager entityManager;
+
+	@Test
+	void v2ArrancaCadaSecuenciaTrasElMayorIdYNoSeRepitenIds() throws Exception {
+		try (Connection connection = dataSource.getConnection();
+				Statement st = connection.createStatement()) {
+			// Esquema anterior a V2: datos, pero sin tablas de secuencia
+			for (String secuencia : SECUENCIAS)
+				st.execute("DROP TABLE " + secuencia);
+			st.executeUpdate("INSERT INTO usuarios (id, email, password, numero, nombre_empleado, dni)"
+					+ " VALUES (1, '1@fichajespi.es', 'x', '1', 'Uno', 'D1'),"
+					+ " (2, '2@fichajespi.es', 'x', '2', 'Dos', 'D2'),"
+					+ " (500, '500@fichajespi.es', 'x', '500', 'Quinientos', 'D500')");
+			st.executeUpdate("INSERT INTO fichajes (id, hora, dia, tipo, origen, usuario_id)"
+					+ " SELECT X, TIME '08:00:00', DATE '2024-01-01', 'ENTRADA', 'TEST', 1"
+					+ " FROM SYSTEM_RANGE(1, 120)");
+			st.executeUpdate("INSERT INTO incidencias (id, descripcion, resumen, dia, usuario_id)"
+					+ " VALUES (7, 'Incidencia', 'AUSENCIA', DATE '2024-01-01', 2)");
+			st.executeUpdate("INSERT INTO calendarios (id, nombre, active, year,"
+					+ " minutos_mas_entrada, minutos_menos_entrada)"
+					+ " VALUES (30, '2024', true, 2024, 10, 10)");
+
+			migrar(connection);
+			assertEquals(121, siguiente(st, "fichajes_seq"));
+			assertEquals(501, siguiente(st, "usuarios_seq"));
+			assertEquals(8, siguiente(st, "incidencias_seq"));
+			assertEquals(1, siguiente(st, "dias_laborables_seq"));
+			assertEquals(31, siguiente(st, "calendarios_seq"));
+
+			// Repetirla no hace retroceder ni duplicar nada
+			migrar(connection);
+			assertEquals(121, siguiente(st, "fichajes_seq"));
+			assertEquals(501, siguiente(st, "usuarios_seq"));
+		}
+
+		Usuario uno = entityManager.find(Usuario.class, 1L);
+		List<Fichaje> fichajes = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			Fichaje fichaje = Fichaje.builder()
+					.dia(LocalDate.of(2024, 1, 2))
+					.hora(LocalTime.of(8, 0).plusMinutes(i))
+					.tipo("ENTRADA")
+					.origen("TEST")
+					.usuario(uno)
+					.build();
+			entityManager.persist(fichaje);
+			fichajes.add(fichaje);
+		}
+		Usuario nuevo = new Usuario();
+		nuevo.setNumero("501");
+		nuevo.setNombreEmpleado("Nuevo");
+		nuevo.setEmail("nuevo@fichajespi.es");
+		nuevo.setPassword("x");
+		nuevo.setDni("D501");
+		entityManager.persist(nuevo);
+		entityManager.flush();
+
+		Set<Long> ids = new HashSet<>();
+		for (Fichaje fichaje : fichajes) {
+			assertTrue(fichaje.getId() > 120, "Id ya usado: " + fichaje.getId());
+			ids.add(fichaje.getId());
+		}
+		assertEquals(60, ids.size());
+		assertEquals(121L, fichajes.get(0).getId());
+		assertEquals(501L, nuevo.getId());
+
+		// pooled-lo: dos accesos a la tabla para 60 ids, en bloques de 50
+		try (Connection connection = dataSource.getConnection();
+				Statement st = connection.createStatement()) {
+			assertEquals(221, siguiente(st, "fichajes_seq"));
+			assertEquals(551, siguiente(st, "usuarios_seq"));
+		}
+	}
+
+	private void migrar(Connection connection) throws Exception {
+		Context context = mock(Context.class, withSettings().stubOnly());
+		when(context.getConnection()).thenReturn(connection);
+		new V2__Secuencias_por_entidad().migrate(context);
+	}
+
+	private static long siguiente(Statement st, String secuencia) throws SQLException {
+		try (ResultSet rs = st.executeQuery("SELECT next_val FROM " + secuencia)) {
+			rs.next();
+			long valor = rs.getLong(1);
+			assertTrue(!rs.next(), secuencia + " debe tener una sola fila");
+			return valor;
+		}
+	}
+
+}
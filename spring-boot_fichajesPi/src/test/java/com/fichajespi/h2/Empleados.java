@@ -0,0 +1,28 @@
+package com.fichajespi.h2;
+
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+
+import com.fichajespi.entity.Usuario;
+
+// Empleados de prueba: número i, email i@fichajespi.es, sin roles
+public final class Empleados {
+
+	private Empleados() {
+	}
+
+	public static Usuario crear(EntityManager entityManager, int i) {
+		Usuario u = new Usuario();
+		u.setEmail(i + "@fichajespi.es");
+		u.setPassword("x");
+		u.setNumero(String.valueOf(i));
+		u.setNombreEmpleado("Empleado " + i);
+		u.setDni("DNI" + i);
+		u.setAdmin(false);
+		u.setRoles(Collections.emptyList());
+		entityManager.persist(u);
+		return u;
+	}
+
+}
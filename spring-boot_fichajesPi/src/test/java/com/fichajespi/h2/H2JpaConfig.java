@@ -0,0 +1,15 @@
+package com.fichajespi.h2;
+
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Application escanea todos los componentes; a los tests de JPA solo les
+ * hacen falta las entidades y los repositorios. Lo demás, con @Import.
+ * Sin @Configuration, para que el escaneo de Application no la recoja:
+ * la registra @H2JpaTest.
+ */
+@EntityScan("com.fichajespi.entity")
+@EnableJpaRepositories("com.fichajespi.repository")
+public class H2JpaConfig {
+}
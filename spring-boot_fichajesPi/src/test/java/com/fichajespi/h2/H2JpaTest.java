@@ -0,0 +1,38 @@
+package com.fichajespi.h2;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.annotation.AliasFor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * @DataJpaTest contra H2 en modo MySQL (perfil "h2") con H2JpaConfig.
+ * properties añade o cambia propiedades de ese perfil. Cada clase tiene su
+ * propio contexto y su propia base: algunos tests confirman datos o tocan
+ * índices y secuencias fuera de la transacción del test.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@ActiveProfiles("h2")
+@ContextConfiguration(classes = H2JpaConfig.class)
+@DirtiesContext
+public @interface H2JpaTest {
+
+	@AliasFor(annotation = DataJpaTest.class)
+	String[] properties() default {};
+
+}
@@ -0,0 +1,222 @@
+package com.fichajespi.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.dto.entity.FichajeDtoReqRes;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IUsuarioFichaje;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.service.FicharService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * El tipo que el diario contesta al terminal coincide con el que guarda
+ * después el volcado, aunque entre medias fichen otros caminos.
+ */
+class FichajeJournalServiceTest {
+
+	@TempDir
+	Path dir;
+
+	// Estado guardado en base de datos y tipos guardados, por empleado
+	private final Map<String, Boolean> working = new ConcurrentHashMap<>();
+	private final Map<String, List<String>> guardados = new ConcurrentHashMap<>();
+	// Hora del último fichaje guardado y claves guardadas detrás de él
+	private final Map<String, LocalDateTime> ultimos = new ConcurrentHashMap<>();
+	private final List<String> atrasados = new ArrayList<>();
+
+	private FichajeJournalService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		working.put("1", false);
+		guardados.put("1", new ArrayList<>());
+
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class, withSettings().stubOnly());
+		FichajeRepository fichajeRepository = mock(FichajeRepository.class, withSettings().stubOnly());
+		FicharService ficharService = mock(FicharService.class, withSettings().stubOnly());
+		when(usuarioRepository.findFichajeAll()).thenAnswer(inv -> List.of(usuario("1")));
+		when(fichajeRepository.findClavesExistentes(anyCollection()))
+				.thenReturn(Collections.emptyList());
+		// Como FicharService.ficharLote: el tipo sale del estado guardado y los
+		// anteriores al último solo se guardan si se pide
+		when(ficharService.ficharLote(anyList(), anyBoolean())).thenAnswer(inv -> {
+			List<FichajeLoteResultado> resultados = new ArrayList<>();
+			for (FichajeLoteDto item : inv.<List<FichajeLoteDto>> getArgument(0)) {
+				LocalDateTime en = LocalDateTime.of(item.getDia(), item.getHora());
+				LocalDateTime ultimo = ultimos.get(item.getNumeroUsuario());
+				FichajeLoteResultado.FichajeLoteResultadoBuilder resultado = FichajeLoteResultado
+						.builder()
+						.clave(item.getClave())
+						.numeroUsuario(item.getNumeroUsuario());
+				if (ultimo == null || !en.isBefore(ultimo)) {
+					ultimos.put(item.getNumeroUsuario(), en);
+					resultado.estado(EstadosFichajeLote.CREADO.toString())
+							.tipo(guardar(item.getNumeroUsuario()));
+				} else if (inv.<Boolean> getArgument(1)) {
+					// Sin fichajes previos a su hora: entrada, y el estado no cambia
+					atrasados.add(item.getClave());
+					resultado.estado(EstadosFichajeLote.CREADO.toString())
+							.tipo(TipoFichaje.ENTRADA.toString());
+				} else {
+					resultado.estado(EstadosFichajeLote.RECHAZADO.toString())
+							.mensaje("Fichaje anterior al último registrado");
+				}
+				resultados.add(resultado.build());
+			}
+			return resultados;
+		});
+
+		service = new FichajeJournalService();
+		ReflectionTestUtils.setField(service, "ficharService", ficharService);
+		ReflectionTestUtils.setField(service, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(service, "fichajeRepository", fichajeRepository);
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "logger", new LoggerService());
+		ReflectionTestUtils.setField(service, "path", dir.resolve("fichajes.journal").toString());
+		ReflectionTestUtils.setField(service, "capacidad", 64L);
+		ReflectionTestUtils.setField(service, "maxLote", 100);
+		// Sin refrescos: el estado solo cambia por los eventos y los volcados
+		ReflectionTestUtils.setField(service, "refrescoMs", Long.MAX_VALUE);
+		service.init();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		service.close();
+	}
+
+	@Test
+	void losFichajesDeOtrosCaminosCambianElTipoContestado() {
+		List<String> contestados = new ArrayList<>();
+
+		contestados.add(fichar());
+		service.volcar();
+		// Un lote cierra la jornada mientras el diario está al día
+		otroCamino(LocalDateTime.now(ZoneOffset.UTC));
+		contestados.add(fichar());
+		contestados.add(fichar());
+		service.volcar();
+		// Y vuelve a fichar por otro camino
+		otroCamino(LocalDateTime.now(ZoneOffset.UTC));
+		contestados.add(fichar());
+		service.volcar();
+
+		assertEquals(List.of("entrada", "entrada", "salida", "salida"), contestados);
+		assertEquals(List.of("ENTRADA", "SALIDA", "ENTRADA", "SALIDA", "ENTRADA", "SALIDA"),
+				guardados.get("1"));
+	}
+
+	@Test
+	void unEventoAnteriorAlUltimoFichajeNoCambiaElEstado() {
+		LocalDateTime antes = LocalDateTime.now(ZoneOffset.UTC).minusMinutes(5);
+		assertEquals("entrada", fichar());
+		service.volcar();
+
+		// Llega tarde el evento de un fichaje anterior
+		service.onFichajeRegistrado(evento(TipoFichaje.SALIDA, antes));
+		assertEquals("salida", fichar());
+	}
+
+	@Test
+	void unFichajeDelDiarioAnteriorAlDeOtroCaminoNoSePierde() {
+		assertEquals("entrada", fichar());
+		// Antes del volcado, otro camino guarda un fichaje posterior
+		otroCamino(LocalDateTime.now(ZoneOffset.UTC).plusMinutes(1));
+		service.volcar();
+
+		// El del diario se guarda en su hora, detrás del último
+		assertEquals(1, atrasados.size());
+		// Y el siguiente sigue al guardado por el otro camino
+		assertEquals("salida", fichar());
+	}
+
+	private String fichar() {
+		FichajeDtoReqRes dto = new FichajeDtoReqRes();
+		dto.setNumeroUsuario("1");
+		dto.setOrigen("terminal");
+		return service.encolar(dto).getTipo();
+	}
+
+	// Fichaje guardado por un lote o por el análisis, con su evento
+	private void otroCamino(LocalDateTime en) {
+		// El diario guarda los instantes en milisegundos
+		ultimos.put("1", en.truncatedTo(ChronoUnit.MILLIS));
+		TipoFichaje tipo = TipoFichaje.valueOf(guardar("1"));
+		service.onFichajeRegistrado(evento(tipo, en));
+	}
+
+	private String guardar(String numero) {
+		boolean antes = working.get(numero);
+		working.put(numero, !antes);
+		String tipo = (antes ? TipoFichaje.SALIDA : TipoFichaje.ENTRADA).toString();
+		guardados.get(numero).add(tipo);
+		return tipo;
+	}
+
+	private static FichajeRegistradoEvent evento(TipoFichaje tipo, LocalDateTime en) {
+		return FichajeRegistradoEvent.builder()
+				.usuarioId(1L)
+				.numeroUsuario("1")
+				.nombreUsuario("Empleado 1")
+				.dia(en.toLocalDate())
+				.hora(en.toLocalTime())
+				.tipo(tipo.toString())
+				.origen("batch")
+				.build();
+	}
+
+	private IUsuarioFichaje usuario(String numero) {
+		return new IUsuarioFichaje() {
+			public Long getId() {
+				return Long.valueOf(numero);
+			}
+
+			public String getNumero() {
+				return numero;
+			}
+
+			public String getNombreEmpleado() {
+				return "Empleado " + numero;
+			}
+
+			public Boolean getWorking() {
+				return working.get(numero);
+			}
+
+			public Long getVersion() {
+				return 0L;
+			}
+		};
+	}
+
+}
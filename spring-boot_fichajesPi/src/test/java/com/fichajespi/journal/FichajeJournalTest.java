@@ -0,0 +1,94 @@
+package com.fichajespi.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fichajespi.journal.FichajeJournal.Entrada;
+
+/**
+ * Comprueba que el diario conserva los fichajes no volcados entre
+ * reinicios y descarta los registros que quedaron a medio escribir.
+ */
+class FichajeJournalTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void conservaPendientesAlReabrir() throws Exception {
+		Path path = dir.resolve("fichajes.journal");
+		long id;
+		try (FichajeJournal journal = new FichajeJournal(path, 16)) {
+			id = journal.getId();
+			for (int i = 0; i < 5; i++)
+				assertTrue(journal.append(1000L + i, "00" + i, "terminal"));
+			journal.confirmar(journal.pendientes(2).get(1).getSeq());
+		}
+
+		try (FichajeJournal journal = new FichajeJournal(path, 1024)) {
+			assertEquals(id, journal.getId());
+			assertEquals(16, journal.getCapacidad());
+			List<Entrada> pendientes = journal.pendientes(100);
+			assertEquals(3, pendientes.size());
+			assertEquals(2, pendientes.get(0).getSeq());
+			assertEquals("002", pendientes.get(0).getNumero());
+			assertEquals("terminal", pendientes.get(0).getOrigen());
+			assertEquals(1002L, journal.instantePrimerPendiente());
+		}
+	}
+
+	@Test
+	void rechazaCuandoEstaLlenoYReutilizaHuecos() throws Exception {
+		try (FichajeJournal journal = new FichajeJournal(
+				dir.resolve("lleno.journal"), 4)) {
+			for (int i = 0; i < 4; i++)
+				assertTrue(journal.append(i, "1", null));
+			assertFalse(journal.append(4, "1", null));
+
+			journal.confirmar(1);
+			assertTrue(journal.append(4, "2", "web"));
+			assertTrue(journal.append(5, "3", "web"));
+			assertFalse(journal.append(6, "4", "web"));
+
+			List<Entrada> pendientes = journal.pendientes(10);
+			assertEquals(4, pendientes.size());
+			assertEquals(5, pendientes.get(3).getSeq());
+			assertEquals("3", pendientes.get(3).getNumero());
+
+			journal.confirmar(5);
+			assertEquals(0, journal.profundidad());
+			assertNull(journal.instantePrimerPendiente());
+		}
+	}
+
+	@Test
+	void descartaRegistroIncompleto() throws Exception {
+		Path path = dir.resolve("roto.journal");
+		try (FichajeJournal journal = new FichajeJournal(path, 8)) {
+			journal.append(1, "1", "terminal");
+			journal.append(2, "2", "terminal");
+		}
+
+		// Corrompe el último registro como si la caída lo hubiera cortado
+		try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+			raf.seek(64 + FichajeJournal.REGISTRO + 20);
+			raf.write(new byte[] { 9, 9, 9 });
+		}
+
+		try (FichajeJournal journal = new FichajeJournal(path, 8)) {
+			assertEquals(1, journal.profundidad());
+			assertTrue(journal.append(3, "3", "terminal"));
+			assertEquals("3", journal.pendientes(10).get(1).getNumero());
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.fichajespi.mail;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.mail.MessagingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.fichajespi.entity.EmailSalida;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.EmailSalidaRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Una mala noche de 500 incidencias se envía entera, consultando RRHH una
+ * vez por lote, y los emails que fallan se reintentan con espera creciente.
+ * En modo resumen salen un email a RRHH y uno por empleado afectado.
+ */
+class DespachadorEmailsTest {
+
+	private static final String FALLA = "falla@fichajespi.es";
+
+	private final List<EmailSalida> bandeja = Collections.synchronizedList(new ArrayList<>());
+	private final List<SimpleMailMessage> enviados = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger consultasRrhh = new AtomicInteger();
+	private final AtomicInteger conexiones = new AtomicInteger();
+
+	private DespachadorEmails despachador;
+
+	@BeforeEach
+	void setUp() {
+		EmailSalidaRepository repository = mock(EmailSalidaRepository.class, withSettings().stubOnly());
+		JavaMailSender mailSender = mock(JavaMailSender.class, withSettings().stubOnly());
+		EmailService emailService = mock(EmailService.class, withSettings().stubOnly());
+		PlatformTransactionManager transactionManager = mock(
+				PlatformTransactionManager.class, withSettings().stubOnly());
+
+		when(repository.findPendientes(any(), any())).thenAnswer(inv -> {
+			LocalDateTime ahora = inv.getArgument(0);
+			synchronized (bandeja) {
+				return bandeja.stream()
+						.filter(e -> !e.getFallido() && !e.getSiguienteIntento().isAfter(ahora))
+						.sorted(Comparator.comparing(EmailSalida::getId))
+						.limit(inv.<Pageable> getArgument(1).getPageSize())
+						.collect(Collectors.toList());
+			}
+		});
+		when(repository.findPendientesByEnvio(any(), any())).thenAnswer(inv -> {
+			String envio = inv.getArgument(0);
+			LocalDateTime ahora = inv.getArgument(1);
+			synchronized (bandeja) {
+				return bandeja.stream()
+						.filter(e -> envio.equals(e.getEnvio()) && !e.getFallido()
+								&& !e.getSiguienteIntento().isAfter(ahora))
+						.sorted(Comparator.comparing(EmailSalida::getId))
+						.collect(Collectors.toList());
+			}
+		});
+		when(repository.deleteEnviados(anyCollection())).thenAnswer(inv -> {
+			Collection<Long> ids = inv.getArgument(0);
+			bandeja.removeIf(e -> ids.contains(e.getId()));
+			return ids.size();
+		});
+		when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+		when(emailService.getDestinatariosRrhh()).thenAnswer(inv -> {
+			consultasRrhh.incrementAndGet();
+			return Collections.singletonList("rrhh@fichajespi.es");
+		});
+		doAnswer(inv -> {
+			SimpleMailMessage msg = inv.getArgument(0);
+			if (msg.getTo()[msg.getTo().length - 1].equals(FALLA))
+				throw new MailSendException("Servidor no disponible");
+			return enviados.add(msg);
+		}).when(mailSender).send(any(SimpleMailMessage.class));
+		// Varios mensajes por conexión: falla solo el del empleado que falla
+		doAnswer(inv -> {
+			conexiones.incrementAndGet();
+			Map<Object, Exception> fallos = new LinkedHashMap<>();
+			for (Object o : inv.getArguments()) {
+				SimpleMailMessage msg = (SimpleMailMessage) o;
+				if (Arrays.asList(msg.getTo()).contains(FALLA))
+					fallos.put(msg, new MessagingException("Buzón no disponible"));
+				else
+					enviados.add(msg);
+			}
+			if (!fallos.isEmpty())
+				throw new MailSendException(fallos);
+			return null;
+		}).when(mailSender).send((SimpleMailMessage[]) any());
+		when(transactionManager.getTransaction(any()))
+				.thenReturn(new SimpleTransactionStatus());
+
+		despachador = new DespachadorEmails();
+		ReflectionTestUtils.setField(despachador, "repository", repository);
+		ReflectionTestUtils.setField(despachador, "javaMailSender", mailSender);
+		ReflectionTestUtils.setField(despachador, "emailService", emailService);
+		ReflectionTestUtils.setField(despachador, "transactionManager", transactionManager);
+		ReflectionTestUtils.setField(despachador, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(despachador, "logger", new LoggerService());
+		// Las pasadas se lanzan a mano
+		ReflectionTestUtils.setField(despachador, "intervaloMs", 3_600_000L);
+		ReflectionTestUtils.setField(despachador, "lote", 100);
+		ReflectionTestUtils.setField(despachador, "porMinuto", 600_000);
+		ReflectionTestUtils.setField(despachador, "maxIntentos", 3);
+		ReflectionTestUtils.setField(despachador, "esperaInicialMs", 60_000L);
+		ReflectionTestUtils.setField(despachador, "esperaMaxMs", 3_600_000L);
+		despachador.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		despachador.close();
+	}
+
+	@Test
+	void enviaQuinientasIncidenciasConsultandoRrhhUnaVezPorLote() throws Exception {
+		for (int i = 1; i <= 500; i++)
+			encolar(i, i + "@fichajespi.es");
+
+		assertEquals(500, despachador.despachar());
+
+		assertEquals(500, enviados.size());
+		assertEquals(0, bandeja.size());
+		assertEquals(5, consultasRrhh.get());
+		assertArrayEquals(new String[] { "rrhh@fichajespi.es", "1@fichajespi.es" },
+				enviados.get(0).getTo());
+	}
+
+	@Test
+	void reintentaConEsperaCrecienteHastaDarloPorFallido() throws Exception {
+		encolar(1, FALLA);
+		encolar(2, "2@fichajespi.es");
+		EmailSalida falla = bandeja.get(0);
+
+		assertEquals(1, despachador.despachar());
+		assertEquals(1, falla.getIntentos());
+		assertEsperaDe(Duration.ofMinutes(1), falla);
+
+		// Aún no toca reintentar
+		assertEquals(0, despachador.despachar());
+		assertEquals(1, falla.getIntentos());
+
+		falla.setSiguienteIntento(LocalDateTime.now());
+		despachador.despachar();
+		assertEquals(2, falla.getIntentos());
+		assertEsperaDe(Duration.ofMinutes(2), falla);
+
+		falla.setSiguienteIntento(LocalDateTime.now());
+		despachador.despachar();
+		assertEquals(3, falla.getIntentos());
+		assertTrue(falla.getFallido());
+		// Se conserva para revisarlo
+		assertEquals(Collections.singletonList(falla), bandeja);
+		assertEquals(1, enviados.size());
+	}
+
+	@Test
+	void respetaElRitmoMaximoDeEnvio() throws Exception {
+		ReflectionTestUtils.setField(despachador, "porMinuto", 1200);
+		for (int i = 1; i <= 21; i++)
+			encolar(i, i + "@fichajespi.es");
+
+		long inicio = System.nanoTime();
+		despachador.despachar();
+
+		// Cada envío reserva un hueco de 50 ms: el siguiente queda 21 huecos
+		// después del primero, tarde lo que tarde la máquina
+		assertEquals(21, enviados.size());
+		long siguienteEnvio = (long) ReflectionTestUtils.getField(despachador, "siguienteEnvio");
+		assertTrue(siguienteEnvio - inicio >= TimeUnit.MILLISECONDS.toNanos(21 * 50));
+	}
+
+	@Test
+	void agrupaLasIncidenciasDeUnEnvioPorDestinatario() throws Exception {
+		malaNoche();
+		int resueltos = despachador.despachar();
+
+		// RRHH + 49 empleados en una conexión, más el suelto
+		assertEquals(51, enviados.size());
+		assertEquals(1, conexiones.get());
+		assertEquals(1, consultasRrhh.get());
+		SimpleMailMessage rrhh = enviados.stream()
+				.filter(m -> m.getSubject().equals("Incidencia (500)"))
+				.findFirst().get();
+		assertArrayEquals(new String[] { "rrhh@fichajespi.es" }, rrhh.getTo());
+		assertTrue(rrhh.getText().contains("Incidencia 0") && rrhh.getText().contains("Incidencia 499"));
+		SimpleMailMessage empleado = enviados.stream()
+				.filter(m -> m.getTo()[0].equals("7@fichajespi.es"))
+				.findFirst().get();
+		assertEquals("Incidencia (10)", empleado.getSubject());
+
+		// Solo se reintenta el resumen que ha fallado, sin repetir el de RRHH
+		assertEquals(991, resueltos);
+		assertEquals(10, bandeja.size());
+		assertTrue(bandeja.stream().allMatch(e -> FALLA.equals(e.getDestinatario())
+				&& e.getIntentos() == 1));
+	}
+
+	@Test
+	@Tag("benchmark")
+	void emailsPorSegundo() throws Exception {
+		malaNoche();
+		long inicio = System.nanoTime();
+		int resueltos = despachador.despachar();
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+		System.out.printf("%d emails de la bandeja en %d mensajes por %d conexiones: %.0f emails/s%n",
+				resueltos, enviados.size(), conexiones.get(), resueltos / segundos);
+	}
+
+	private void malaNoche() {
+		// Un email suelto en la misma bandeja no se mezcla con el resumen
+		encolar(0, "suelto@fichajespi.es");
+		// 500 incidencias de 50 empleados: cada una va a RRHH y al empleado
+		long id = 0;
+		for (int i = 0; i < 500; i++) {
+			String empleado = (i % 50 == 0 ? FALLA : (i % 50) + "@fichajespi.es");
+			agrupar(++id, "analisis-1", null, true, "Incidencia " + i);
+			agrupar(++id, "analisis-1", empleado, false, "Incidencia " + i);
+		}
+	}
+
+	private void agrupar(long id, String envio, String destinatario, boolean copiaRrhh,
+			String cuerpo) {
+		EmailSalida email = EmailSalida.nuevo(destinatario, copiaRrhh, "Incidencia", cuerpo);
+		email.setId(id);
+		email.setEnvio(envio);
+		bandeja.add(email);
+	}
+
+	private void encolar(long id, String destinatario) {
+		EmailSalida email = EmailSalida.nuevo(destinatario, true, "Incidencia",
+				"Incidencia " + id);
+		email.setId(id);
+		bandeja.add(email);
+	}
+
+	private void assertEsperaDe(Duration espera, EmailSalida email) {
+		long segundos = Duration.between(LocalDateTime.now(),
+				email.getSiguienteIntento()).getSeconds();
+		assertTrue(Math.abs(segundos - espera.getSeconds()) <= 2,
+				"Espera de " + segundos + " s");
+	}
+
+}
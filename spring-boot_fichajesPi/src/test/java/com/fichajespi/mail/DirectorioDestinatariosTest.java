@@ -0,0 +1,135 @@
+package com.fichajespi.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fichajespi.entity.Rol;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.repository.RolRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.security.enums.RolNombre;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Las notificaciones de vacaciones, permisos e incidencias ya no consultan
+ * la base de datos para saber a quién avisar, salvo tras un cambio.
+ */
+class DirectorioDestinatariosTest {
+
+	private final AtomicInteger consultas = new AtomicInteger();
+	private List<Usuario> rrhh;
+	private Runnable durante = () -> {
+	};
+	private SimpleMeterRegistry meterRegistry;
+	private DirectorioDestinatarios directorio;
+
+	@BeforeEach
+	void setUp() {
+		RolRepository rolRepository = mock(RolRepository.class, withSettings().stubOnly());
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class,
+				withSettings().stubOnly());
+		when(rolRepository.findByRolNombre(any())).thenAnswer(inv -> {
+			consultas.incrementAndGet();
+			Rol rol = new Rol();
+			rol.setRolNombre(inv.getArgument(0));
+			return Optional.of(rol);
+		});
+		when(usuarioRepository.findByRolesIn(anySet())).thenAnswer(inv -> {
+			consultas.incrementAndGet();
+			durante.run();
+			return rrhh;
+		});
+		rrhh = Arrays.asList(usuario("rrhh1@fichajespi.es"), usuario("rrhh2@fichajespi.es"));
+
+		meterRegistry = new SimpleMeterRegistry();
+		directorio = new DirectorioDestinatarios();
+		ReflectionTestUtils.setField(directorio, "rolRepository", rolRepository);
+		ReflectionTestUtils.setField(directorio, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(directorio, "meterRegistry", meterRegistry);
+		directorio.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.clearSynchronization();
+	}
+
+	@Test
+	void milNotificacionesConsultanUnaVez() {
+		for (int i = 0; i < 1000; i++) {
+			directorio.getRol(RolNombre.ROLE_USER);
+			assertEquals(2, directorio.getDestinatariosRrhh().size());
+		}
+
+		// ROLE_USER, ROLE_RRHH y los usuarios de RRHH
+		assertEquals(3, consultas.get());
+		assertEquals(999.0, contador("rrhh", "acierto"));
+		assertEquals(1.0, contador("rrhh", "fallo"));
+		assertEquals(2.0, contador("roles", "fallo"));
+
+		rrhh = Arrays.asList(usuario("rrhh1@fichajespi.es"));
+		directorio.invalidar();
+		assertEquals(Arrays.asList("rrhh1@fichajespi.es"), directorio.getDestinatariosRrhh());
+		assertEquals(5, consultas.get());
+	}
+
+	@Test
+	void seVuelveALeerAlConfirmarLaTransaccion() {
+		TransactionSynchronizationManager.initSynchronization();
+		directorio.invalidar();
+		// Leído dentro de la transacción, antes de confirmar el cambio
+		directorio.getDestinatariosRrhh();
+		rrhh = Arrays.asList(usuario("nuevo@fichajespi.es"));
+
+		for (TransactionSynchronization s : TransactionSynchronizationManager
+				.getSynchronizations())
+			s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+		assertEquals(Arrays.asList("nuevo@fichajespi.es"), directorio.getDestinatariosRrhh());
+	}
+
+	@Test
+	void noGuardaLoLeidoMientrasSeInvalidaba() {
+		durante = () -> {
+			durante = () -> {
+			};
+			directorio.invalidar();
+		};
+		directorio.getDestinatariosRrhh();
+		int antes = consultas.get();
+
+		directorio.getDestinatariosRrhh();
+
+		assertEquals(antes + 2, consultas.get());
+	}
+
+	private double contador(String cache, String resultado) {
+		return meterRegistry.get("fichajes.email.directorio").tag("cache", cache)
+				.tag("resultado", resultado).counter().count();
+	}
+
+	private Usuario usuario(String email) {
+		Usuario usuario = new Usuario();
+		usuario.setEmail(email);
+		return usuario;
+	}
+
+}
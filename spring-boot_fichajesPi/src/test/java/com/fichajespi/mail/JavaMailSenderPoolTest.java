@@ -0,0 +1,223 @@
+package com.fichajespi.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Envío contra un servidor SMTP local que tarda en aceptar cada conexión,
+ * como lo hace uno real con STARTTLS y autenticación. La medida de mensajes
+ * por segundo solo se ejecuta con mvn test -Pbenchmark.
+ */
+class JavaMailSenderPoolTest {
+
+	private static final int MENSAJES = 200;
+	private static final int HILOS = 4;
+	// Saludo, STARTTLS y AUTH de un servidor remoto
+	private static final long CONEXION_MS = 25;
+
+	private ServidorSmtp servidor;
+	private JavaMailSenderPool pool;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		servidor = new ServidorSmtp(CONEXION_MS);
+		pool = new JavaMailSenderPool(2, 100, 60_000, 5_000);
+		configurar(pool);
+		meterRegistry = new SimpleMeterRegistry();
+		pool.registrar(meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		pool.close();
+		servidor.close();
+	}
+
+	@Test
+	void reutilizaLasConexiones() throws Exception {
+		enviar(pool);
+
+		assertEquals(MENSAJES, servidor.recibidos.get());
+		// 2 conexiones renovadas cada 100 mensajes
+		assertTrue(servidor.conexiones.get() <= 4, "Conexiones: " + servidor.conexiones.get());
+		assertEquals(MENSAJES, meterRegistry.get("fichajes.email.smtp.envio").timer().count());
+	}
+
+	@Test
+	@Tag("benchmark")
+	void mensajesPorSegundoConYSinPool() throws Exception {
+		JavaMailSenderImpl directo = new JavaMailSenderImpl();
+		configurar(directo);
+		double antes = enviar(directo);
+		assertEquals(MENSAJES, servidor.conexiones.get());
+
+		servidor.reiniciarContadores();
+		double despues = enviar(pool);
+		System.out.printf("SMTP, %d mensajes desde %d hilos: %.0f msg/s con una"
+				+ " conexión por email, %.0f msg/s con el pool%n",
+				MENSAJES, HILOS, antes, despues);
+	}
+
+	@Test
+	void reconectaSiElServidorCierraLaConexion() throws Exception {
+		servidor.cerrarTras = 10;
+
+		// Se corta dos veces a mitad del lote y otra justo al terminarlo
+		SimpleMailMessage[] lote = new SimpleMailMessage[30];
+		for (int i = 0; i < lote.length; i++)
+			lote[i] = mensaje(i);
+		pool.send(lote);
+		// La conexión devuelta al pool está cerrada: se detecta al tomarla
+		pool.send(mensaje(30));
+
+		assertEquals(31, servidor.recibidos.get());
+		assertEquals(4, servidor.conexiones.get());
+		assertEquals(3.0, meterRegistry.get("fichajes.email.smtp.reconexiones")
+				.counter().count());
+		assertEquals(0.0, meterRegistry.get("fichajes.email.smtp.fallos")
+				.counter().count());
+	}
+
+	// Mensajes por segundo enviando uno a uno desde varios hilos
+	private double enviar(JavaMailSenderImpl sender) throws Exception {
+		ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+		try {
+			long inicio = System.nanoTime();
+			List<Future<?>> envios = new ArrayList<>();
+			for (int i = 0; i < MENSAJES; i++) {
+				SimpleMailMessage msg = mensaje(i);
+				envios.add(hilos.submit(() -> sender.send(msg)));
+			}
+			for (Future<?> envio : envios)
+				envio.get();
+			return MENSAJES / ((System.nanoTime() - inicio) / 1e9);
+		} finally {
+			hilos.shutdown();
+		}
+	}
+
+	private void configurar(JavaMailSenderImpl sender) {
+		sender.setHost("localhost");
+		sender.setPort(servidor.getPuerto());
+	}
+
+	private SimpleMailMessage mensaje(int i) {
+		SimpleMailMessage msg = new SimpleMailMessage();
+		msg.setFrom("noreply@fichajespi.es");
+		msg.setTo(i + "@fichajespi.es");
+		msg.setSubject("Incidencia");
+		msg.setText("Incidencia " + i);
+		return msg;
+	}
+
+	/** Servidor SMTP mínimo: acepta todo y cuenta conexiones y mensajes. */
+	private static class ServidorSmtp implements AutoCloseable {
+		private final ServerSocket socket;
+		private final ExecutorService hilos = Executors.newCachedThreadPool();
+		private final long conexionMs;
+		private final AtomicInteger conexiones = new AtomicInteger();
+		private final AtomicInteger recibidos = new AtomicInteger();
+		// Cierra la conexión tras ese número de mensajes (0: nunca)
+		private volatile int cerrarTras;
+
+		ServidorSmtp(long conexionMs) throws IOException {
+			this.conexionMs = conexionMs;
+			this.socket = new ServerSocket(0);
+			hilos.execute(this::aceptar);
+		}
+
+		int getPuerto() {
+			return socket.getLocalPort();
+		}
+
+		void reiniciarContadores() {
+			conexiones.set(0);
+			recibidos.set(0);
+		}
+
+		private void aceptar() {
+			while (!socket.isClosed()) {
+				try {
+					Socket cliente = socket.accept();
+					hilos.execute(() -> atender(cliente));
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		private void atender(Socket cliente) {
+			conexiones.incrementAndGet();
+			try (Socket s = cliente;
+					BufferedReader in = new BufferedReader(new InputStreamReader(
+							s.getInputStream(), StandardCharsets.US_ASCII));
+					OutputStream out = s.getOutputStream()) {
+				Thread.sleep(conexionMs);
+				responder(out, "220 localhost ESMTP");
+				int mensajes = 0;
+				String linea;
+				while ((linea = in.readLine()) != null) {
+					String comando = linea.length() < 4 ? linea
+							: linea.substring(0, 4).toUpperCase();
+					switch (comando) {
+					case "DATA":
+						responder(out, "354 End data with <CR><LF>.<CR><LF>");
+						while (!".".equals(in.readLine()))
+							;
+						recibidos.incrementAndGet();
+						responder(out, "250 OK");
+						if (++mensajes == cerrarTras)
+							return;
+						break;
+					case "QUIT":
+						responder(out, "221 Bye");
+						return;
+					default:
+						// EHLO, MAIL, RCPT, RSET, NOOP
+						responder(out, "250 OK");
+					}
+				}
+			} catch (IOException e) {
+				// El cliente ha cerrado
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void responder(OutputStream out, String linea) throws IOException {
+			out.write((linea + "\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+			hilos.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.fichajespi.presencia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.dto.entity.PresenciaDto;
+import com.fichajespi.dto.interfaces.IPresencia;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+import com.fichajespi.repository.PresenciaRepository;
+import com.fichajespi.service.common.PaginacionNoValidaException;
+
+class RegistroPresenciasTest {
+
+	// Último fichaje de cada empleado al cargar, anterior a los eventos
+	private final LocalDateTime cargado = LocalDateTime.now().minusHours(1);
+	private final List<IPresencia> filas = new ArrayList<>();
+	private RegistroPresencias registro;
+
+	@BeforeEach
+	void setUp() {
+		PresenciaRepository repository = mock(PresenciaRepository.class);
+		when(repository.findAllConUsuario()).thenAnswer(inv -> filas);
+
+		for (long id = 1; id <= 1000; id++)
+			filas.add(fila(id, id % 4 == 0 ? "ENTRADA" : "SALIDA"));
+
+		registro = new RegistroPresencias();
+		ReflectionTestUtils.setField(registro, "presenciaRepository", repository);
+		ReflectionTestUtils.setField(registro, "logger", new LoggerService());
+		registro.init();
+	}
+
+	@Test
+	void cuentaYPaginaLosPresentes() {
+		assertEquals(250, registro.resumen().getPresentes());
+		assertEquals(750, registro.resumen().getAusentes());
+
+		registro.onFichajeRegistrado(evento(1, "ENTRADA"));
+		registro.onFichajeRegistrado(evento(4, "SALIDA"));
+		registro.onFichajeRegistrado(evento(2000, "ENTRADA"));
+		assertEquals(251, registro.resumen().getPresentes());
+		assertEquals(750, registro.resumen().getAusentes());
+
+		Page<PresenciaDto> pagina = registro.presentes(0, 20);
+		assertEquals(251, pagina.getTotalElements());
+		assertEquals(20, pagina.getContent().size());
+		assertEquals("Empleado 0001", pagina.getContent().get(0).getNombreEmpleado());
+		assertEquals("Empleado 0008", pagina.getContent().get(1).getNombreEmpleado());
+		assertEquals(11, registro.presentes(12, 20).getContent().size());
+		assertEquals(0, registro.presentes(50, 20).getContent().size());
+	}
+
+	@Test
+	void laRecargaRespetaLosFichajesRecibidosDuranteLaConsulta() {
+		PresenciaRepository lento = mock(PresenciaRepository.class);
+		when(lento.findAllConUsuario()).thenAnswer(inv -> {
+			// Un fichaje confirmado mientras se leía la tabla
+			registro.onFichajeRegistrado(evento(1, "ENTRADA"));
+			return filas;
+		});
+		ReflectionTestUtils.setField(registro, "presenciaRepository", lento);
+
+		registro.cargar();
+
+		Page<PresenciaDto> pagina = registro.presentes(0, 100);
+		assertEquals(251, pagina.getTotalElements());
+		assertEquals(1L, pagina.getContent().get(0).getUsuarioId());
+	}
+
+	@Test
+	void rechazaPaginasNoValidasYRecortaElTamano() {
+		assertThrows(PaginacionNoValidaException.class, () -> registro.presentes(-1, 20));
+		assertThrows(PaginacionNoValidaException.class, () -> registro.presentes(0, 0));
+
+		assertEquals(100, registro.presentes(0, Integer.MAX_VALUE).getContent().size());
+		assertEquals(50, registro.presentes(2, Integer.MAX_VALUE).getContent().size());
+		assertEquals(0, registro.presentes(Integer.MAX_VALUE, Integer.MAX_VALUE)
+				.getContent().size());
+	}
+
+	@Test
+	void unFichajeAnteriorAlUltimoNoCambiaLaPresencia() {
+		registro.onFichajeRegistrado(evento(4, "SALIDA", cargado.minusMinutes(30)));
+		registro.onFichajeRegistrado(evento(1, "ENTRADA", cargado.minusMinutes(30)));
+
+		assertEquals(250, registro.resumen().getPresentes());
+		assertEquals("Empleado 0004",
+				registro.presentes(0, 1).getContent().get(0).getNombreEmpleado());
+	}
+
+	private FichajeRegistradoEvent evento(long id, String tipo) {
+		return evento(id, tipo, LocalDateTime.now());
+	}
+
+	private FichajeRegistradoEvent evento(long id, String tipo, LocalDateTime en) {
+		return FichajeRegistradoEvent.builder()
+				.usuarioId(id)
+				.numeroUsuario(String.valueOf(id))
+				.nombreUsuario(String.format("Empleado %04d", id))
+				.dia(en.toLocalDate())
+				.hora(en.toLocalTime())
+				.tipo(tipo)
+				.build();
+	}
+
+	private IPresencia fila(long id, String tipo) {
+		return new IPresencia() {
+			public Long getUsuarioId() {
+				return id;
+			}
+
+			public String getNumero() {
+				return String.valueOf(id);
+			}
+
+			public String getNombreEmpleado() {
+				return String.format("Empleado %04d", id);
+			}
+
+			public String getUltimoTipo() {
+				return tipo;
+			}
+
+			public LocalDateTime getUltimoFichajeEn() {
+				return cargado;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.fichajespi.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.fichajespi.entity.Incidencia;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.events.EventSender;
+import com.fichajespi.events.Incidencias;
+import com.fichajespi.h2.Empleados;
+import com.fichajespi.h2.H2JpaTest;
+
+/**
+ * Contra H2 en modo MySQL: repetir el upsert de un día no duplica filas ni
+ * pisa la explicación de las incidencias ya revisadas.
+ */
+@H2JpaTest
+class IncidenciaRepositoryTest {
+
+	private static final LocalDate DIA = LocalDate.of(2024, 1, 15);
+	private static final int EMPLEADOS = 300;
+
+	@Autowired
+	private IncidenciaRepository repository;
+	@Autowired
+	private EntityManager entityManager;
+
+	@Test
+	void repetirElUpsertNoDuplicaIncidencias() {
+		List<Usuario> usuarios = new ArrayList<>();
+		for (int i = 1; i <= EMPLEADOS; i++)
+			usuarios.add(Empleados.crear(entityManager, i));
+
+		repository.upsertAll(incidencias(usuarios, Incidencias.AUSENCIA));
+		assertEquals(EMPLEADOS, repository.count());
+
+		// RRHH revisa una incidencia antes de repetir el análisis
+		Incidencia revisada = repository.findByUsuarioId(usuarios.get(0).getId()).get(0);
+		revisada.setResuelta(true);
+		revisada.setExplicacion("Cita médica");
+		repository.saveAndFlush(revisada);
+		entityManager.clear();
+
+		List<Incidencia> otraVez = incidencias(usuarios, Incidencias.AUSENCIA);
+		otraVez.addAll(incidencias(usuarios.subList(0, 10), Incidencias.MENOS_HORAS));
+		repository.upsertAll(otraVez);
+
+		assertEquals(EMPLEADOS + 10, repository.count());
+		assertEquals(EMPLEADOS, repository
+				.findUsuarioIdsByDiaAndResumen(DIA, Incidencias.AUSENCIA).size());
+		Incidencia despues = repository.findById(revisada.getId()).get();
+		assertEquals(true, despues.getResuelta());
+		assertEquals("Cita médica", despues.getExplicacion());
+	}
+
+	private List<Incidencia> incidencias(List<Usuario> usuarios, String resumen) {
+		List<Incidencia> lista = new ArrayList<>();
+		for (Usuario u : usuarios)
+			lista.add(EventSender.nuevaIncidencia(DIA, u, u.getNombreEmpleado(),
+					u.getNumero(), resumen));
+		return lista;
+	}
+
+}
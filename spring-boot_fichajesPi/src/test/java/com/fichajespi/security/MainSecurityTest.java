@@ -0,0 +1,105 @@
+package com.fichajespi.security;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import com.fichajespi.security.jwt.JwtEntryPoint;
+import com.fichajespi.security.jwt.JwtProvider;
+import com.fichajespi.security.service.RevocacionTokens;
+import com.fichajespi.security.service.TicketsStream;
+import com.fichajespi.security.service.UserDetailsServiceImpl;
+
+/**
+ * Reglas de acceso de MainSecurity sin controladores: una petición que pasa
+ * la seguridad acaba en 404, una que no, en 401 o 403.
+ */
+@SpringJUnitWebConfig
+class MainSecurityTest {
+
+	@Configuration
+	@EnableWebMvc
+	@Import({ MainSecurity.class, JwtEntryPoint.class, TicketsStream.class })
+	static class Config {
+	}
+
+	@MockBean
+	private UserDetailsServiceImpl userDetailsService;
+	@MockBean
+	private JwtProvider jwtProvider;
+	@MockBean
+	private RevocacionTokens revocacionTokens;
+
+	@Autowired
+	private WebApplicationContext context;
+	@Autowired
+	private TicketsStream ticketsStream;
+
+	private MockMvc mvc;
+
+	@BeforeEach
+	void setUp() {
+		mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+	}
+
+	@Test
+	void unLoteSinCredencialesSeRechaza() throws Exception {
+		mvc.perform(lote()).andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	@WithMockUser(roles = "USER")
+	void unEmpleadoNoPuedeEnviarLotes() throws Exception {
+		mvc.perform(lote()).andExpect(status().isForbidden());
+	}
+
+	@Test
+	@WithMockUser(roles = "RRHH")
+	void rrhhPuedeEnviarLotes() throws Exception {
+		mvc.perform(lote()).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void ficharConLaHoraDelServidorSigueSiendoPublico() throws Exception {
+		mvc.perform(post("/fichaje/now").contentType(MediaType.APPLICATION_JSON).content("{}"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void elStreamSeAbreConUnTicketDeRrhh() throws Exception {
+		mvc.perform(get("/fichaje/stream")).andExpect(status().isUnauthorized());
+		mvc.perform(post("/fichaje/stream/ticket")).andExpect(status().isUnauthorized());
+
+		String ticket = ticketsStream.emitir(new UsernamePasswordAuthenticationToken("2002",
+				null, List.of(new SimpleGrantedAuthority("ROLE_RRHH"))));
+		mvc.perform(get("/fichaje/stream").param("ticket", ticket))
+				.andExpect(status().isNotFound());
+		mvc.perform(get("/fichaje/stream").param("ticket", ticket))
+				.andExpect(status().isUnauthorized());
+	}
+
+	private static RequestBuilder lote() {
+		return post("/fichaje/batch").contentType(MediaType.APPLICATION_JSON).content("[]");
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.fichajespi.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.security.entity.UsuarioPrincipal;
+import com.fichajespi.security.service.RevocacionTokens;
+
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Caché de tokens verificados del filtro JWT. Las peticiones por segundo con
+ * tokens válidos, caducados y mal formados, frente a verificar cada token dos
+ * veces con un parser nuevo, se miden con mvn test -Pbenchmark.
+ */
+class JwtProviderTest {
+
+	private static final String SECRET = "very-secure-secret";
+	private static final int PETICIONES = 20_000;
+	// Cada token rechazado deja una línea en el log
+	private static final int RECHAZADOS = 200;
+
+	private SimpleMeterRegistry meterRegistry;
+	private JwtProvider jwtProvider;
+	private JwtTokenFilter filtro;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		jwtProvider = proveedor(3_600_000, 10_000);
+
+		// Sin comprobar usuarios borrados: solo se mide el token
+		RevocacionTokens revocacionTokens = new RevocacionTokens();
+		ReflectionTestUtils.setField(revocacionTokens, "ttlMs", 0L);
+		filtro = new JwtTokenFilter();
+		ReflectionTestUtils.setField(filtro, "jwtProvider", jwtProvider);
+		ReflectionTestUtils.setField(filtro, "revocacionTokens", revocacionTokens);
+	}
+
+	@Test
+	void losTokensVerificadosNoSeVuelvenAComprobar() throws Exception {
+		filtrar(token(jwtProvider, "1001"), 100);
+		assertEquals(99.0, meterRegistry.get("fichajes.jwt.cache")
+				.tag("resultado", "acierto").counter().count());
+		assertEquals(1.0, meterRegistry.get("fichajes.jwt.cache")
+				.tag("resultado", "fallo").counter().count());
+	}
+
+	@Test
+	void losTokensCaducadosOMalFormadosNoAutentican() throws Exception {
+		JwtProvider caducan = proveedor(-1_000, 10_000);
+		for (String token : new String[] { token(caducan, "1001"), "no-es-un-token" }) {
+			MockHttpServletRequest req = new MockHttpServletRequest("GET", "/fichaje");
+			req.addHeader("Authorization", "Bearer " + token);
+			filtro.doFilter(req, new MockHttpServletResponse(), new MockFilterChain());
+			assertNull(SecurityContextHolder.getContext().getAuthentication());
+		}
+		assertTrue(verificados(jwtProvider).isEmpty());
+	}
+
+	@Test
+	@Tag("benchmark")
+	void peticionesPorSegundo() throws Exception {
+		String token = token(jwtProvider, "1001");
+
+		// Antes: validateToken y getSubjectFromToken con un parser nuevo cada uno
+		long inicio = System.nanoTime();
+		for (int i = 0; i < PETICIONES; i++) {
+			Jwts.parser().setSigningKey(SECRET.getBytes()).parseClaimsJws(token);
+			Jwts.parser().setSigningKey(SECRET.getBytes()).parseClaimsJws(token).getBody()
+					.getSubject();
+		}
+		double antes = PETICIONES / ((System.nanoTime() - inicio) / 1e9);
+
+		double validos = filtrar(token, PETICIONES);
+		JwtProvider caducan = proveedor(-1_000, 10_000);
+		double caducados = filtrar(token(caducan, "1001"), RECHAZADOS);
+		double malFormados = filtrar("no-es-un-token", RECHAZADOS);
+
+		System.out.printf("JWT, peticiones/s: %.0f verificando dos veces, %.0f con tokens"
+				+ " válidos, %.0f caducados, %.0f mal formados%n",
+				antes, validos, caducados, malFormados);
+	}
+
+	@Test
+	void unTokenGuardadoDejaDeValerAlCaducar() throws Exception {
+		// exp va en segundos: caduca entre 0,5 y 1,5 s después de emitirlo
+		JwtProvider corto = proveedor(1_500, 10_000);
+		String token = token(corto, "1001");
+		assertEquals("1001", corto.getSubjectFromToken(token));
+
+		Thread.sleep(1_600);
+		assertNull(corto.getClaims(token));
+		assertTrue(verificados(corto).isEmpty());
+	}
+
+	@Test
+	void laFirmaDeUnTokenNoValidaOtroContenido() {
+		String token = token(jwtProvider, "1001");
+		assertNotNull(jwtProvider.getClaims(token));
+
+		String otro = token(jwtProvider, "2002");
+		String falsificado = otro.substring(0, otro.lastIndexOf('.'))
+				+ token.substring(token.lastIndexOf('.'));
+		assertNull(jwtProvider.getClaims(falsificado));
+		assertNull(jwtProvider.getClaims(""));
+		assertNull(jwtProvider.getClaims("a.b."));
+	}
+
+	@Test
+	void laCacheNoPasaDelMaximo() {
+		JwtProvider pequeno = proveedor(3_600_000, 2);
+		for (int i = 0; i < 5; i++)
+			assertNotNull(pequeno.getClaims(token(pequeno, "100" + i)));
+		assertTrue(verificados(pequeno).size() <= 2);
+	}
+
+	private double filtrar(String token, int peticiones) throws Exception {
+		long inicio = System.nanoTime();
+		for (int i = 0; i < peticiones; i++) {
+			SecurityContextHolder.clearContext();
+			MockHttpServletRequest req = new MockHttpServletRequest("GET", "/fichaje");
+			req.addHeader("Authorization", "Bearer " + token);
+			filtro.doFilter(req, new MockHttpServletResponse(), new MockFilterChain());
+		}
+		SecurityContextHolder.clearContext();
+		return peticiones / ((System.nanoTime() - inicio) / 1e9);
+	}
+
+	private JwtProvider proveedor(int expiration, int cacheMax) {
+		JwtProvider proveedor = new JwtProvider();
+		ReflectionTestUtils.setField(proveedor, "secret", SECRET);
+		ReflectionTestUtils.setField(proveedor, "expiration", expiration);
+		ReflectionTestUtils.setField(proveedor, "cacheMax", cacheMax);
+		ReflectionTestUtils.setField(proveedor, "meterRegistry", meterRegistry);
+		proveedor.init();
+		return proveedor;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, ?> verificados(JwtProvider proveedor) {
+		return (Map<String, ?>) ReflectionTestUtils.getField(proveedor, "verificados");
+	}
+
+	private String token(JwtProvider proveedor, String numero) {
+		List<SimpleGrantedAuthority> authorities = Collections
+				.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+		UsuarioPrincipal principal = new UsuarioPrincipal(numero, "Ana", "x", 7L, authorities);
+		return proveedor.generateToken(
+				new UsernamePasswordAuthenticationToken(principal, null, authorities));
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.fichajespi.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.security.entity.RrhhDto;
+import com.fichajespi.security.entity.UsuarioPrincipal;
+import com.fichajespi.security.service.GetInfoFromToken;
+import com.fichajespi.security.service.RevocacionTokens;
+import com.fichajespi.security.service.TicketsStream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Las peticiones autenticadas ya no leen el usuario: el principal sale del
+ * token firmado y solo se consultan los usuarios existentes cada ttl.
+ */
+class JwtTokenFilterTest {
+
+	private final AtomicInteger consultas = new AtomicInteger();
+	private final List<String> numeros = new ArrayList<>(Arrays.asList("1001", "2002"));
+	private JwtProvider jwtProvider;
+	private RevocacionTokens revocacionTokens;
+	private JwtTokenFilter filtro;
+	private GetInfoFromToken getInfoFromToken;
+	private TicketsStream ticketsStream;
+
+	@BeforeEach
+	void setUp() {
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class,
+				withSettings().stubOnly());
+		when(usuarioRepository.findAllNumeros()).thenAnswer(inv -> {
+			consultas.incrementAndGet();
+			return new ArrayList<>(numeros);
+		});
+
+		jwtProvider = new JwtProvider();
+		ReflectionTestUtils.setField(jwtProvider, "secret", "very-secure-secret");
+		ReflectionTestUtils.setField(jwtProvider, "expiration", 3_600_000);
+		ReflectionTestUtils.setField(jwtProvider, "cacheMax", 10_000);
+		ReflectionTestUtils.setField(jwtProvider, "meterRegistry", new SimpleMeterRegistry());
+		jwtProvider.init();
+		revocacionTokens = new RevocacionTokens();
+		ReflectionTestUtils.setField(revocacionTokens, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(revocacionTokens, "ttlMs", 60_000L);
+
+		ticketsStream = new TicketsStream();
+		filtro = new JwtTokenFilter();
+		ReflectionTestUtils.setField(filtro, "jwtProvider", jwtProvider);
+		ReflectionTestUtils.setField(filtro, "revocacionTokens", revocacionTokens);
+		ReflectionTestUtils.setField(filtro, "ticketsStream", ticketsStream);
+		getInfoFromToken = new GetInfoFromToken();
+		ReflectionTestUtils.setField(getInfoFromToken, "jwtProvider", jwtProvider);
+		ReflectionTestUtils.setField(getInfoFromToken, "revocacionTokens", revocacionTokens);
+	}
+
+	@AfterEach
+	void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void milPeticionesNoLeenElUsuario() throws Exception {
+		String token = token("1001", 7L, "ROLE_USER", "ROLE_RRHH");
+
+		for (int i = 0; i < 1000; i++) {
+			SecurityContextHolder.clearContext();
+			filtrar(token);
+			RrhhDto info = getInfoFromToken.rrhhInfo("Bearer " + token);
+			// rrhh=false es que sí tiene el rol, como lo leen los controladores
+			assertFalse(info.isRrhh());
+			assertEquals("1001", info.getNumber());
+		}
+
+		// Solo la carga de los usuarios existentes
+		assertEquals(1, consultas.get());
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		UsuarioPrincipal principal = (UsuarioPrincipal) auth.getPrincipal();
+		assertEquals(Long.valueOf(7), principal.getId());
+		assertEquals("Ana", principal.getNombre());
+		assertTrue(auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_RRHH")));
+	}
+
+	@Test
+	void otroTokenSeLeeSinUsarElDelContexto() throws Exception {
+		filtrar(token("2002", 8L, "ROLE_RRHH"));
+
+		RrhhDto info = getInfoFromToken.rrhhInfo("Bearer " + token("1001", 7L, "ROLE_USER"));
+		assertTrue(info.isRrhh());
+		assertEquals("1001", info.getNumber());
+	}
+
+	@Test
+	void elTokenDeUnUsuarioBorradoDejaDeValer() throws Exception {
+		String token = token("2002", 8L, "ROLE_USER");
+		filtrar(token);
+		assertTrue(SecurityContextHolder.getContext().getAuthentication() != null);
+
+		numeros.remove("2002");
+		revocacionTokens.invalidar();
+		SecurityContextHolder.clearContext();
+		filtrar(token);
+
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+		assertEquals("", getInfoFromToken.rrhhInfo("Bearer " + token).getNumber());
+		assertEquals(2, consultas.get());
+	}
+
+	@Test
+	void elStreamSeAbreConUnTicketDeUnSoloUso() throws Exception {
+		filtrar(token("2002", 8L, "ROLE_RRHH"));
+		String ticket = ticketsStream.emitir(SecurityContextHolder.getContext().getAuthentication());
+
+		// Solo vale para el stream
+		assertNull(conTicket("/fichaje/pagesFiltered", ticket));
+		Authentication auth = conTicket("/fichaje/stream", ticket);
+		assertEquals("2002", auth.getName());
+		assertTrue(auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_RRHH")));
+		// Y una sola vez
+		assertNull(conTicket("/fichaje/stream", ticket));
+		assertNull(conTicket("/fichaje/stream", "inventado"));
+	}
+
+	@Test
+	void unTicketCaducadoNoAutentica() throws Exception {
+		ReflectionTestUtils.setField(ticketsStream, "ttlMs", -1L);
+		filtrar(token("2002", 8L, "ROLE_RRHH"));
+		String ticket = ticketsStream.emitir(SecurityContextHolder.getContext().getAuthentication());
+
+		assertNull(conTicket("/fichaje/stream", ticket));
+	}
+
+	// Como EventSource: sin cabecera Authorization
+	private Authentication conTicket(String uri, String ticket) throws Exception {
+		SecurityContextHolder.clearContext();
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", uri);
+		req.setParameter("ticket", ticket);
+		filtro.doFilter(req, new MockHttpServletResponse(), new MockFilterChain());
+		return SecurityContextHolder.getContext().getAuthentication();
+	}
+
+	private void filtrar(String token) throws Exception {
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", "/fichaje");
+		req.addHeader("Authorization", "Bearer " + token);
+		filtro.doFilter(req, new MockHttpServletResponse(), new MockFilterChain());
+	}
+
+	private String token(String numero, Long id, String... roles) {
+		List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+		for (String rol : roles)
+			authorities.add(new SimpleGrantedAuthority(rol));
+		UsuarioPrincipal principal = new UsuarioPrincipal(numero, "Ana", "x", id, authorities);
+		return jwtProvider.generateToken(
+				new UsernamePasswordAuthenticationToken(principal, null, authorities));
+	}
+
+}
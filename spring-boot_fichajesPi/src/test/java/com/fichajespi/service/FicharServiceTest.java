@@ -0,0 +1,318 @@
+package com.fichajespi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.fichajespi.dto.entity.FichajeDtoReqRes;
+import com.fichajespi.dto.entity.FichajeLoteDto;
+import com.fichajespi.dto.entity.FichajeLoteResultado;
+import com.fichajespi.dto.interfaces.IUsuarioFichaje;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Presencia;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.entity.enums.EstadosFichajeLote;
+import com.fichajespi.entity.enums.TipoFichaje;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.PresenciaRepository;
+import com.fichajespi.repository.UsuarioRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Dispara miles de fichajes concurrentes contra un almacén en memoria y
+ * comprueba que cada empleado alterna estrictamente ENTRADA y SALIDA.
+ */
+class FicharServiceTest {
+
+	private static final int EMPLEADOS = 50;
+	private static final int FICHAJES_POR_EMPLEADO = 100;
+
+	private final Map<Long, Estado> estados = new ConcurrentHashMap<>();
+	private final Map<Long, List<String>> fichajes = new ConcurrentHashMap<>();
+	// Presencia guardada de cada empleado: último fichaje
+	private final Map<Long, LocalDateTime> presencias = new ConcurrentHashMap<>();
+	// Fichajes guardados por lotes, con su hora
+	private final List<Fichaje> guardados = Collections.synchronizedList(new ArrayList<>());
+
+	private FicharService service;
+
+	@BeforeEach
+	void setUp() {
+		for (long id = 1; id <= EMPLEADOS; id++) {
+			estados.put(id, new Estado());
+			fichajes.put(id, Collections.synchronizedList(new ArrayList<>()));
+		}
+
+		UsuarioRepository usuarioRepository = mock(UsuarioRepository.class,
+				withSettings().stubOnly());
+		FichajeRepository fichajeRepository = mock(FichajeRepository.class,
+				withSettings().stubOnly());
+		PresenciaRepository presenciaRepository = mock(PresenciaRepository.class,
+				withSettings().stubOnly());
+		PlatformTransactionManager transactionManager = mock(
+				PlatformTransactionManager.class, withSettings().stubOnly());
+
+		when(usuarioRepository.findFichajeByNumero(anyString()))
+				.thenAnswer(inv -> leer(Long.valueOf(inv.getArgument(0))));
+		when(usuarioRepository.findFichajeByNumeroIn(anyCollection()))
+				.thenAnswer(inv -> inv.<Collection<String>> getArgument(0)
+						.stream()
+						.filter(n -> estados.containsKey(Long.valueOf(n)))
+						.map(n -> leer(Long.valueOf(n)).get())
+						.collect(Collectors.toList()));
+		when(usuarioRepository.updateEstadoFichaje(anyLong(), anyBoolean(),
+				nullable(Long.class)))
+				.thenAnswer(inv -> estados.get(inv.getArgument(0, Long.class))
+						.cambiar(inv.getArgument(1), inv.getArgument(2)));
+		when(usuarioRepository.getById(anyLong())).thenAnswer(inv -> {
+			Usuario u = new Usuario();
+			u.setId(inv.getArgument(0));
+			return u;
+		});
+		when(fichajeRepository.save(any(Fichaje.class))).thenAnswer(inv -> {
+			Fichaje f = inv.getArgument(0);
+			fichajes.get(f.getUsuario().getId()).add(f.getTipo());
+			return f;
+		});
+		when(fichajeRepository.saveAll(anyIterable())).thenAnswer(inv -> {
+			inv.<Iterable<Fichaje>> getArgument(0).forEach(f -> {
+				fichajes.get(f.getUsuario().getId()).add(f.getTipo());
+				guardados.add(f);
+			});
+			return inv.getArgument(0);
+		});
+		when(fichajeRepository.findTiposAnteriores(anyLong(), any(LocalDate.class),
+				any(LocalTime.class), any(Pageable.class))).thenAnswer(inv -> {
+					LocalDateTime en = LocalDateTime.of(inv.getArgument(1, LocalDate.class),
+							inv.getArgument(2, LocalTime.class));
+					synchronized (guardados) {
+						return guardados.stream()
+								.filter(f -> f.getUsuario().getId().equals(inv.getArgument(0))
+										&& LocalDateTime.of(f.getDia(), f.getHora()).isBefore(en))
+								.sorted(Comparator.comparing((Fichaje f) -> LocalDateTime
+										.of(f.getDia(), f.getHora())).reversed())
+								.limit(1)
+								.map(Fichaje::getTipo)
+								.collect(Collectors.toList());
+					}
+				});
+		when(fichajeRepository.findClavesExistentes(anyCollection()))
+				.thenReturn(Arrays.asList("repetida"));
+		when(presenciaRepository.findAllById(anyIterable())).thenAnswer(inv -> {
+			List<Presencia> lista = new ArrayList<>();
+			inv.<Iterable<Long>> getArgument(0).forEach(id -> {
+				if (presencias.containsKey(id))
+					lista.add(Presencia.builder().usuarioId(id)
+							.ultimoFichajeEn(presencias.get(id)).build());
+			});
+			return lista;
+		});
+		when(presenciaRepository.registrar(anyLong(), anyBoolean(), anyString(),
+				any(LocalDateTime.class), nullable(Long.class)))
+				.thenAnswer(inv -> {
+					presencias.put(inv.getArgument(0), inv.getArgument(3));
+					return 1;
+				});
+		when(transactionManager.getTransaction(any()))
+				.thenReturn(new SimpleTransactionStatus());
+
+		service = new FicharService();
+		ReflectionTestUtils.setField(service, "usuarioRepository", usuarioRepository);
+		ReflectionTestUtils.setField(service, "fichajeRepository", fichajeRepository);
+		ReflectionTestUtils.setField(service, "presenciaRepository", presenciaRepository);
+		ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "eventPublisher",
+				mock(ApplicationEventPublisher.class, withSettings().stubOnly()));
+		ReflectionTestUtils.setField(service, "stripes", 16);
+		ReflectionTestUtils.setField(service, "reintentos", 5);
+		service.init();
+	}
+
+	@Test
+	void fichajesConcurrentesAlternanEntradaYSalida() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(32);
+		List<Future<FichajeDtoReqRes>> resultados = new ArrayList<>();
+		for (int i = 0; i < FICHAJES_POR_EMPLEADO; i++) {
+			for (long id = 1; id <= EMPLEADOS; id++) {
+				FichajeDtoReqRes dto = new FichajeDtoReqRes();
+				dto.setNumeroUsuario(String.valueOf(id));
+				dto.setOrigen("test");
+				resultados.add(pool.submit(() -> service.fichar(dto)));
+			}
+		}
+		for (Future<FichajeDtoReqRes> r : resultados)
+			r.get();
+		pool.shutdown();
+
+		fichajes.forEach((id, tipos) -> {
+			assertEquals(FICHAJES_POR_EMPLEADO, tipos.size());
+			for (int i = 0; i < tipos.size(); i++) {
+				TipoFichaje esperado = i % 2 == 0 ? TipoFichaje.ENTRADA
+						: TipoFichaje.SALIDA;
+				assertEquals(esperado.toString(), tipos.get(i),
+						"Empleado " + id + ", fichaje " + i);
+			}
+			assertEquals(false, estados.get(id).working);
+		});
+	}
+
+	@Test
+	void loteOrdenaPorHoraYDescartaDuplicados() {
+		LocalDate ayer = LocalDate.now().minusDays(1);
+		List<FichajeLoteDto> lote = Arrays.asList(
+				item("1", ayer, LocalTime.of(14, 0), "b"),
+				item("1", ayer, LocalTime.of(8, 0), "a"),
+				item("1", ayer, LocalTime.of(9, 0), "a"),
+				item("2", ayer, LocalTime.of(8, 0), "repetida"),
+				item("999", ayer, LocalTime.of(8, 0), "c"),
+				item("3", ayer.plusDays(3), LocalTime.of(8, 0), "d"));
+
+		List<FichajeLoteResultado> resultados = service.ficharLote(lote);
+
+		assertEquals(EstadosFichajeLote.CREADO.toString(), resultados.get(0).getEstado());
+		assertEquals(TipoFichaje.SALIDA.toString(), resultados.get(0).getTipo());
+		assertEquals(TipoFichaje.ENTRADA.toString(), resultados.get(1).getTipo());
+		assertEquals(EstadosFichajeLote.DUPLICADO.toString(), resultados.get(2).getEstado());
+		assertEquals(EstadosFichajeLote.DUPLICADO.toString(), resultados.get(3).getEstado());
+		assertEquals(EstadosFichajeLote.RECHAZADO.toString(), resultados.get(4).getEstado());
+		assertEquals(EstadosFichajeLote.RECHAZADO.toString(), resultados.get(5).getEstado());
+		assertEquals(Arrays.asList("ENTRADA", "SALIDA"), fichajes.get(1L));
+		assertEquals(false, estados.get(1L).working);
+		assertEquals(0, fichajes.get(2L).size());
+	}
+
+	@Test
+	void loteRechazaFichajesAnterioresAlUltimoGuardado() {
+		LocalDate ayer = LocalDate.now().minusDays(1);
+		// El empleado 4 ya fichó la entrada ayer a las 12:00 desde otro terminal
+		service.ficharLote(Arrays.asList(item("4", ayer, LocalTime.of(12, 0), "e")));
+		assertEquals(true, estados.get(4L).working);
+
+		List<FichajeLoteResultado> resultados = service.ficharLote(Arrays.asList(
+				item("4", ayer, LocalTime.of(8, 0), "f"),
+				item("4", ayer, LocalTime.of(12, 0), "g"),
+				item("4", ayer, LocalTime.of(16, 0), "h")));
+
+		assertEquals(EstadosFichajeLote.RECHAZADO.toString(), resultados.get(0).getEstado());
+		assertEquals(EstadosFichajeLote.CREADO.toString(), resultados.get(1).getEstado());
+		assertEquals(EstadosFichajeLote.CREADO.toString(), resultados.get(2).getEstado());
+		assertEquals(Arrays.asList("ENTRADA", "SALIDA", "ENTRADA"), fichajes.get(4L));
+		// La presencia no retrocede a las 8:00
+		assertEquals(LocalDateTime.of(ayer, LocalTime.of(16, 0)), presencias.get(4L));
+	}
+
+	@Test
+	void elDiarioGuardaLosAtrasadosEnSuHoraSinTocarElEstado() {
+		LocalDate ayer = LocalDate.now().minusDays(1);
+		// Entrada y salida del empleado 5 desde un terminal
+		service.ficharLote(Arrays.asList(
+				item("5", ayer, LocalTime.of(8, 0), "i"),
+				item("5", ayer, LocalTime.of(12, 0), "j")));
+
+		// El diario vuelca después una salida y una entrada de las 10:00
+		List<FichajeLoteResultado> resultados = service.ficharLote(Arrays.asList(
+				item("5", ayer, LocalTime.of(10, 0), "J-1"),
+				item("5", ayer, LocalTime.of(10, 30), "J-2")), true);
+
+		assertEquals(EstadosFichajeLote.CREADO.toString(), resultados.get(0).getEstado());
+		assertEquals(TipoFichaje.SALIDA.toString(), resultados.get(0).getTipo());
+		assertEquals(TipoFichaje.ENTRADA.toString(), resultados.get(1).getTipo());
+		assertEquals(Arrays.asList("ENTRADA", "SALIDA", "SALIDA", "ENTRADA"), fichajes.get(5L));
+		// El último sigue siendo la salida de las 12:00
+		assertEquals(false, estados.get(5L).working);
+		assertEquals(LocalDateTime.of(ayer, LocalTime.of(12, 0)), presencias.get(5L));
+	}
+
+	private FichajeLoteDto item(String numero, LocalDate dia, LocalTime hora,
+			String clave) {
+		return FichajeLoteDto.builder()
+				.numeroUsuario(numero)
+				.dia(dia)
+				.hora(hora)
+				.origen("terminal")
+				.clave(clave)
+				.build();
+	}
+
+	private Optional<IUsuarioFichaje> leer(Long id) {
+		Estado e = estados.get(id);
+		boolean working;
+		long version;
+		synchronized (e) {
+			working = e.working;
+			version = e.version;
+		}
+		// Ensanchamos la ventana entre lectura y escritura
+		Thread.yield();
+		return Optional.of(new IUsuarioFichaje() {
+			public Long getId() {
+				return id;
+			}
+
+			public String getNumero() {
+				return String.valueOf(id);
+			}
+
+			public String getNombreEmpleado() {
+				return "Empleado " + id;
+			}
+
+			public Boolean getWorking() {
+				return working;
+			}
+
+			public Long getVersion() {
+				return version;
+			}
+		});
+	}
+
+	private static class Estado {
+		boolean working;
+		long version;
+
+		synchronized int cambiar(boolean nuevo, Long esperada) {
+			if (esperada == null || esperada != version)
+				return 0;
+			working = nuevo;
+			version++;
+			return 1;
+		}
+	}
+
+}
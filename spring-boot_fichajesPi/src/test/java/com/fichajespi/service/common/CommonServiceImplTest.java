@@ -0,0 +1,186 @@
+package com.fichajespi.service.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fichajespi.dto.entity.PaginaCursor;
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.h2.H2JpaTest;
+import com.fichajespi.repository.FichajeRepository;
+
+/**
+ * Contra H2 en modo MySQL: la paginación por cursor devuelve las mismas filas
+ * que la de OFFSET, sin saltarse ni repetir filas cuando cambia la tabla
+ * entre páginas, y el total y el tamaño de página tienen un máximo.
+ */
+@H2JpaTest
+class CommonServiceImplTest {
+
+	private static final int SIZE = 20;
+	private static final int PAGINA = 100;
+
+	@Autowired
+	private FichajeRepository repository;
+	@Autowired
+	private EntityManager entityManager;
+
+	private CommonServiceImpl<Fichaje, FichajeRepository> service;
+
+	@BeforeEach
+	void setUp() {
+		service = new CommonServiceImpl<Fichaje, FichajeRepository>() {
+		};
+		ReflectionTestUtils.setField(service, "repository", repository);
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+	}
+
+	@Test
+	void elCursorContinuaTrasLaUltimaFilaDevuelta() {
+		insertar(5_000);
+		String cursor = new CommonServiceImpl.Cursor("id", true, (long) PAGINA * SIZE,
+				(long) PAGINA * SIZE).escribir();
+
+		PaginaCursor<Fichaje> profunda = service.seekAndSpec(null, "id", true, cursor, SIZE, false);
+		assertEquals(ids(offset(PAGINA).getContent()), ids(profunda.getContent()));
+		assertNull(profunda.getTotal());
+
+		// El cursor de la página siguiente lleva la última fila, con el valor de la columna
+		Fichaje ultima = profunda.getContent().get(SIZE - 1);
+		assertEquals(new CommonServiceImpl.Cursor("id", true, ultima.getId(), ultima.getId())
+				.escribir(), profunda.getSiguiente());
+		PaginaCursor<Fichaje> porDia = service.seekAndSpec(null, "dia", false, null, SIZE, false);
+		ultima = porDia.getContent().get(SIZE - 1);
+		assertEquals(new CommonServiceImpl.Cursor("dia", false, ultima.getId(), ultima.getDia())
+				.escribir(), porDia.getSiguiente());
+	}
+
+	@Test
+	void borrarFilasYaVistasNoHaceSaltarseNingunaNiRepetirla() {
+		insertar(100);
+		for (String order : new String[] { "id", "dia" }) {
+			List<Long> recorridos = new ArrayList<>();
+			PaginaCursor<Fichaje> pagina = service.seekAndSpec(null, order, true, null, SIZE, false);
+			List<Long> esperados = ids(repository.findAll(Sort.by(order, "id")));
+			recorridos.addAll(ids(pagina.getContent()));
+
+			// Con OFFSET la página siguiente empezaría una fila más tarde
+			repository.deleteAllById(recorridos.subList(0, 5));
+			repository.flush();
+			for (String cursor = pagina.getSiguiente(); cursor != null; cursor = pagina.getSiguiente()) {
+				pagina = service.seekAndSpec(null, order, true, cursor, SIZE, false);
+				recorridos.addAll(ids(pagina.getContent()));
+			}
+
+			assertEquals(esperados, recorridos, order);
+			entityManager.createNativeQuery("DELETE FROM fichajes").executeUpdate();
+			insertar(100);
+		}
+	}
+
+	@Test
+	void elTamanoDePaginaSeRecortaAlMaximo() {
+		insertar(300);
+		ReflectionTestUtils.setField(service, "sizeMax", 100);
+
+		PaginaCursor<Fichaje> pagina = service.seekAndSpec(null, "id", true, null, 100_000, false);
+		assertEquals(100, pagina.getContent().size());
+		assertEquals(100, pagina.getSize());
+		assertNotNull(pagina.getSiguiente());
+		assertThrows(PaginacionNoValidaException.class,
+				() -> service.seekAndSpec(null, "id", true, null, 0, false));
+	}
+
+	@Test
+	void recorrerConCursorDevuelveLasMismasFilasQueConOffset() {
+		insertar(1_000);
+		Specification<Fichaje> spec = (root, query, cb) -> cb.equal(root.get("tipo"), "ENTRADA");
+
+		for (String order : new String[] { "id", "dia", "hora" })
+			for (boolean asc : new boolean[] { true, false }) {
+				Sort sort = asc ? Sort.by(order, "id") : Sort.by(order, "id").descending();
+				List<Long> esperados = ids(repository.findAll(spec, sort));
+
+				List<Long> recorridos = new ArrayList<>();
+				String cursor = null;
+				do {
+					PaginaCursor<Fichaje> pagina = service.seekAndSpec(spec, order, asc, cursor,
+							SIZE * 3, false);
+					recorridos.addAll(ids(pagina.getContent()));
+					cursor = pagina.getSiguiente();
+				} while (cursor != null);
+
+				assertEquals(esperados, recorridos, order + (asc ? " asc" : " desc"));
+			}
+	}
+
+	@Test
+	void elTotalSoloSeCuentaSiSePideYHastaElMaximo() {
+		insertar(1_000);
+		ReflectionTestUtils.setField(service, "totalMax", 100);
+
+		PaginaCursor<Fichaje> pagina = service.seekAndSpec(null, "id", true, null, SIZE, false);
+		assertNull(pagina.getTotal());
+		pagina = service.seekAndSpec(null, "id", true, null, SIZE, true);
+		assertEquals(Long.valueOf(100), pagina.getTotal());
+		assertFalse(pagina.getTotalExacto());
+
+		Specification<Fichaje> pocos = (root, query, cb) -> cb.le(root.get("id"), 50L);
+		pagina = service.seekAndSpec(pocos, "id", true, null, SIZE, true);
+		assertEquals(Long.valueOf(50), pagina.getTotal());
+		assertTrue(pagina.getTotalExacto());
+	}
+
+	@Test
+	void unCursorManipuladoODeOtraOrdenacionSeRechaza() {
+		insertar(100);
+		String cursor = service.seekAndSpec(null, "dia", true, null, SIZE, false).getSiguiente();
+
+		assertThrows(PaginacionNoValidaException.class,
+				() -> service.seekAndSpec(null, "hora", true, cursor, SIZE, false));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> service.seekAndSpec(null, "dia", false, cursor, SIZE, false));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> service.seekAndSpec(null, "dia", true, "%%%", SIZE, false));
+		assertThrows(PaginacionNoValidaException.class,
+				() -> service.seekAndSpec(null, "noExiste", true, null, SIZE, false));
+	}
+
+	private Page<Fichaje> offset(int pagina) {
+		return service.pagesAndSpec(null, PageRequest.of(pagina, SIZE, Sort.by("id")));
+	}
+
+	// Varios fichajes por día y por hora, para que haya empates en el orden
+	private void insertar(int filas) {
+		entityManager.createNativeQuery("INSERT INTO fichajes (id, hora, dia, tipo, origen)"
+				+ " SELECT X,"
+				+ " CAST(DATEADD('MINUTE', MOD(X, 600), TIMESTAMP '2020-01-01 08:00:00') AS TIME),"
+				+ " CAST(DATEADD('DAY', X / 400, TIMESTAMP '2020-01-01 00:00:00') AS DATE),"
+				+ " CASE MOD(X, 2) WHEN 0 THEN 'ENTRADA' ELSE 'SALIDA' END, 'TEST'"
+				+ " FROM SYSTEM_RANGE(1, " + filas + ")")
+				.executeUpdate();
+	}
+
+	private static List<Long> ids(List<Fichaje> fichajes) {
+		return fichajes.stream().map(Fichaje::getId).collect(Collectors.toList());
+	}
+
+}
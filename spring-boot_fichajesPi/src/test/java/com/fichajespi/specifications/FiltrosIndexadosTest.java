@@ -0,0 +1,158 @@
+package com.fichajespi.specifications;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+
+import com.fichajespi.entity.Fichaje;
+import com.fichajespi.entity.Usuario;
+import com.fichajespi.h2.Empleados;
+import com.fichajespi.h2.H2JpaTest;
+import com.fichajespi.repository.FichajeRepository;
+import com.fichajespi.repository.UsuarioRepository;
+import com.fichajespi.specifications.common.Coincidencia;
+
+/**
+ * Contra H2 en modo MySQL: el plan (EXPLAIN) de la consulta que genera cada
+ * modo. EXACTO e INICIO buscan en el índice único de usuarios.numero y el
+ * filtro por usuario_id en uno que empieza por esa columna; CONTIENE recorre
+ * la tabla.
+ */
+@H2JpaTest(properties = {
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector="
+				+ "com.fichajespi.specifications.FiltrosIndexadosTest$Consultas" })
+class FiltrosIndexadosTest {
+
+	private static final int EMPLEADOS = 120;
+
+	@Autowired
+	private EntityManager entityManager;
+	@Autowired
+	private UsuarioRepository usuarioRepository;
+	@Autowired
+	private FichajeRepository fichajeRepository;
+
+	private final UsuarioSpecifications usuarios = new UsuarioSpecifications();
+	private final FichajeSpecifications fichajes = new FichajeSpecifications();
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 1; i <= EMPLEADOS; i++) {
+			Usuario u = Empleados.crear(entityManager, i);
+			entityManager.persist(Fichaje.builder().hora(LocalTime.of(8, 0))
+					.dia(LocalDate.of(2024, 1, 15)).usuario(u).tipo("ENTRADA")
+					.origen("TEST").build());
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void exactoEInicioUsanElIndiceYContieneNo() {
+		assertEquals(List.of("12"), numeros(usuarios.numeroUsuario("12", Coincidencia.EXACTO)));
+		assertIndice(plan("12"));
+
+		assertEquals(List.of("12", "120"), numeros(usuarios.numeroUsuario("12", Coincidencia.INICIO)));
+		assertIndice(plan("12%", "\\"));
+
+		assertEquals(List.of("112", "12", "120"),
+				numeros(usuarios.numeroUsuario("12", Coincidencia.CONTIENE)));
+		assertTrue(plan("%12%", "\\").contains("TABLESCAN"), plan("%12%", "\\"));
+	}
+
+	@Test
+	void losPropiosSeFiltranPorLaClaveAjenaSinJoin() {
+		Usuario uno = usuarioRepository.findAll(usuarios.numeroUsuario("1", Coincidencia.EXACTO))
+				.get(0);
+
+		Consultas.lanzadas.clear();
+		List<Fichaje> propios = fichajeRepository.findAll(fichajes.usuarioId(uno.getId()));
+		assertEquals(1, propios.size());
+		String sql = Consultas.primera().toLowerCase(Locale.ROOT);
+		assertFalse(sql.contains(" join "), sql);
+		// El de la clave ajena o idx_fichajes_usuario_dia_hora, nunca la tabla entera
+		assertFalse(plan().contains("TABLESCAN"), plan());
+
+		// El número por LIKE también trae los del 10, 11, 21...
+		assertEquals(40, fichajeRepository.findAll(fichajes.numeroUsuarioContains("1")).size());
+		assertEquals(0, fichajeRepository.findAll(fichajes.usuarioId(null)).size());
+	}
+
+	@Test
+	void unSoloJoinConUsuarioYComodinesLiterales() {
+		Consultas.lanzadas.clear();
+		fichajeRepository.findAll(Specification
+				.where(fichajes.nombreUsuario("Empleado", Coincidencia.INICIO))
+				.and(fichajes.numeroUsuario("1", Coincidencia.EXACTO)));
+		String sql = Consultas.primera().toLowerCase(Locale.ROOT);
+		assertEquals(sql.indexOf(" join "), sql.lastIndexOf(" join "), sql);
+
+		// % y _ escritos en el filtro no son comodines
+		assertEquals(0, usuarioRepository.findAll(usuarios.numeroUsuario("1_", Coincidencia.INICIO)).size());
+		assertEquals(0, usuarioRepository.findAll(usuarios.emailUsuario("%", Coincidencia.CONTIENE)).size());
+	}
+
+	// H2 lo indica en el comentario del FROM: /* PUBLIC.UK_..._INDEX_x: NUMERO = ?1 */
+	private void assertIndice(String plan) {
+		assertTrue(plan.contains("_INDEX"), plan);
+		assertFalse(plan.contains("TABLESCAN"), plan);
+	}
+
+	private List<String> numeros(Specification<Usuario> spec) {
+		Consultas.lanzadas.clear();
+		return usuarioRepository.findAll(spec).stream()
+				.map(Usuario::getNumero)
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	// EXPLAIN de la consulta del filtro con sus parámetros
+	private String plan(String... parametros) {
+		String sql = Consultas.primera();
+		return entityManager.unwrap(Session.class).doReturningWork(conexion -> {
+			try (PreparedStatement ps = conexion.prepareStatement("EXPLAIN " + sql)) {
+				for (int i = 0; i < parametros.length; i++)
+					ps.setString(i + 1, parametros[i]);
+				try (ResultSet rs = ps.executeQuery()) {
+					rs.next();
+					return rs.getString(1).toUpperCase(Locale.ROOT);
+				}
+			}
+		});
+	}
+
+	// Las consultas lanzadas; la primera es la del filtro, luego vienen los roles
+	public static class Consultas implements StatementInspector {
+		private static final long serialVersionUID = 1L;
+		static final List<String> lanzadas = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			lanzadas.add(sql);
+			return sql;
+		}
+
+		static String primera() {
+			return lanzadas.get(0);
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.fichajespi.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fichajespi.config.Ejecutores;
+import com.fichajespi.config.JacksonConfig;
+import com.fichajespi.events.FichajeRegistradoEvent;
+import com.fichajespi.logger.LoggerService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Prueba de carga: 1.000 paneles conectados reciben todos los fichajes
+ * mientras unos pocos paneles lentos se descartan sin frenar al resto.
+ */
+class DifusionFichajesTest {
+
+	private static final int SUSCRIPTORES = 1000;
+	private static final int LENTOS = 5;
+	private static final int FICHAJES = 2000;
+
+	private DifusionFichajes difusion;
+
+	@BeforeEach
+	void setUp() {
+		difusion = new DifusionFichajes();
+		ReflectionTestUtils.setField(difusion, "objectMapper",
+				new JacksonConfig().objectMapper());
+		ReflectionTestUtils.setField(difusion, "ejecutores",
+				new Ejecutores(new SimpleMeterRegistry(), false));
+		ReflectionTestUtils.setField(difusion, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(difusion, "logger", new LoggerService());
+		ReflectionTestUtils.setField(difusion, "buffer", 256);
+		ReflectionTestUtils.setField(difusion, "maxDescartes", 100);
+		ReflectionTestUtils.setField(difusion, "maxSuscriptores", 2000);
+		ReflectionTestUtils.setField(difusion, "hilos", 8);
+		difusion.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		difusion.close();
+	}
+
+	@Test
+	void milSuscriptoresRecibenTodosLosFichajes() throws Exception {
+		List<Panel> rapidos = new ArrayList<>();
+		for (int i = 0; i < SUSCRIPTORES - LENTOS; i++) {
+			Panel panel = new Panel(0);
+			difusion.agregar(panel);
+			rapidos.add(panel);
+		}
+		for (int i = 0; i < LENTOS; i++)
+			difusion.agregar(new Panel(50));
+
+		for (long id = 1; id <= FICHAJES; id++) {
+			difusion.onFichajeRegistrado(evento(id));
+			// Ritmo de una entrada de turno: ráfagas con pequeñas pausas
+			if (id % 100 == 0)
+				Thread.sleep(5);
+		}
+
+		long limite = System.currentTimeMillis() + 30_000;
+		while (rapidos.stream().anyMatch(p -> p.recibidas() < FICHAJES)
+				&& System.currentTimeMillis() < limite)
+			Thread.sleep(10);
+
+		for (Panel panel : rapidos) {
+			assertEquals(FICHAJES, panel.recibidas());
+			assertTrue(panel.primera().startsWith("id: 1\nevent: fichaje\ndata: {"));
+		}
+		assertEquals(SUSCRIPTORES - LENTOS, difusion.getSuscriptores());
+	}
+
+	private FichajeRegistradoEvent evento(long id) {
+		return FichajeRegistradoEvent.builder()
+				.fichajeId(id)
+				.usuarioId(id % 50)
+				.numeroUsuario(String.valueOf(id % 50))
+				.nombreUsuario("Empleado " + id % 50)
+				.dia(LocalDate.of(2024, 1, 15))
+				.hora(LocalTime.of(8, 0))
+				.tipo("ENTRADA")
+				.origen("terminal")
+				.build();
+	}
+
+	private static class Panel extends SseEmitter {
+		private final long retardoMs;
+		private final List<String> tramas = new ArrayList<>();
+
+		Panel(long retardoMs) {
+			this.retardoMs = retardoMs;
+		}
+
+		@Override
+		public synchronized void send(SseEventBuilder builder) throws IOException {
+			if (retardoMs > 0) {
+				try {
+					Thread.sleep(retardoMs);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (DataWithMediaType datos : builder.build())
+				sb.append(datos.getData());
+			String trama = sb.toString();
+			// Los latidos no cuentan como fichajes
+			if (!trama.startsWith(":"))
+				tramas.add(trama);
+		}
+
+		synchronized int recibidas() {
+			return tramas.size();
+		}
+
+		synchronized String primera() {
+			return tramas.get(0);
+		}
+	}
+
+}
@@ -11,11 +11,12 @@ fi
 
 echo "=== USUARIOS ACTUALMENTE TRABAJANDO ==="
 mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
-SELECT u.id, u.numero, u.nombre_empleado, u.working, u.ultimo_fichaje 
-FROM usuarios u 
-WHERE u.working = 1 
-AND u.de_baja = 0 
-AND u.ultimo_fichaje LIKE '%ENTRADA%';"
+SELECT u.id, u.numero, u.nombre_empleado, p.working, p.last_tipo, p.last_punch_at
+FROM presencias p
+JOIN usuarios u ON u.id = p.usuario_id
+WHERE p.working = 1
+AND p.last_tipo = 'ENTRADA'
+AND u.de_baja = 0;"
 
 echo
 echo "=== ESTIMACIONES DISPONIBLES PARA HOY ==="
@@ -26,11 +26,12 @@ mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "S
 echo ""
 echo "=== PRUEBA DE USUARIOS CON ENTRADA ==="
 mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
-SELECT u.id, u.numero, u.nombre_empleado, u.ultimo_fichaje, u.working
-FROM usuarios u
-WHERE u.working = 1
-AND u.de_baja = 0
-AND u.ultimo_fichaje LIKE '%ENTRADA%';"
+SELECT u.id, u.numero, u.nombre_empleado, p.last_punch_at, p.working
+FROM presencias p
+JOIN usuarios u ON u.id = p.usuario_id
+WHERE p.working = 1
+AND p.last_tipo = 'ENTRADA'
+AND u.de_baja = 0;"
 
 echo ""
 echo "=== PRUEBA DE ESTIMACIONES ==="
@@ -11,8 +11,9 @@ fi
 
 echo "=== ESTADO ACTUALIZADO DEL USUARIO ==="
 mysql -h"$DB_HOST" -P"$DB_PORT" -u"$DB_USER" -p"$DB_PASSWORD" -D"$DB_NAME" -e "
-SELECT u.id, u.numero, u.nombre_empleado, u.working, u.ultimo_fichaje 
-FROM usuarios u 
+SELECT u.id, u.numero, u.nombre_empleado, p.working, p.last_tipo, p.last_punch_at
+FROM usuarios u
+LEFT JOIN presencias p ON p.usuario_id = u.id
 WHERE u.numero = '4086855489';"
 
 echo